@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+/**
+ * Steps through the same blocks as {@link SAMUtils#getAlignmentBlocks(Cigar, int, String)} without creating an
+ * AlignmentBlock or a List for them.  After each successful call to {@link #advance()} the current block is described
+ * by {@link #getReadStart()}, {@link #getReferenceStart()} and {@link #getLength()}.  A cursor can be reused for
+ * another CIGAR by calling {@link #reset(Cigar, int)}.
+ * <p/>
+ * Typical use:
+ * <pre>
+ *     final AlignmentBlockCursor cursor = new AlignmentBlockCursor();
+ *     for (final SAMRecord rec : reader) {
+ *         cursor.reset(rec);
+ *         while (cursor.advance()) {
+ *             ... cursor.getReferenceStart() ...
+ *         }
+ *     }
+ * </pre>
+ */
+public class AlignmentBlockCursor {
+    private Cigar cigar;
+    private int elementIndex;
+    private int nextReadBase;
+    private int nextReferenceBase;
+
+    private int readStart;
+    private int referenceStart;
+    private int length;
+
+    /** Creates a cursor with no blocks; call one of the reset methods before use. */
+    public AlignmentBlockCursor() {
+    }
+
+    /** Creates a cursor over the alignment blocks of the given record. */
+    public AlignmentBlockCursor(final SAMRecord rec) {
+        reset(rec);
+    }
+
+    /** Positions the cursor before the first alignment block of the given record. */
+    public void reset(final SAMRecord rec) {
+        reset(rec.getCigar(), rec.getAlignmentStart());
+    }
+
+    /**
+     * Positions the cursor before the first alignment block of the given CIGAR.
+     *
+     * @param cigar The cigar containing the alignment information, or null for no blocks.
+     * @param alignmentStart The start (1-based) of the alignment.
+     */
+    public void reset(final Cigar cigar, final int alignmentStart) {
+        this.cigar = cigar;
+        this.elementIndex = 0;
+        this.nextReadBase = 1;
+        this.nextReferenceBase = alignmentStart;
+        this.length = 0;
+    }
+
+    /**
+     * Moves to the next alignment block.
+     *
+     * @return false if there are no more blocks.
+     */
+    public boolean advance() {
+        if (cigar == null) return false;
+        while (elementIndex < cigar.numCigarElements()) {
+            final int elementLength = cigar.getCigarElementLength(elementIndex);
+            final CigarOperator operator = cigar.getCigarElementOperator(elementIndex);
+            ++elementIndex;
+            switch (operator) {
+                case H:
+                case P:
+                    break;
+                case S:
+                case I:
+                    nextReadBase += elementLength;
+                    break;
+                case N:
+                case D:
+                    nextReferenceBase += elementLength;
+                    break;
+                case M:
+                case EQ:
+                case X:
+                    readStart = nextReadBase;
+                    referenceStart = nextReferenceBase;
+                    length = elementLength;
+                    nextReadBase += elementLength;
+                    nextReferenceBase += elementLength;
+                    return true;
+                default:
+                    throw new IllegalStateException("Case statement didn't deal with cigar op: " + operator);
+            }
+        }
+        length = 0;
+        return false;
+    }
+
+    /** The first, 1-based, base in the read that is aligned to the reference in the current block. */
+    public int getReadStart() { return readStart; }
+
+    /** The first, 1-based, position in the reference to which the read is aligned in the current block. */
+    public int getReferenceStart() { return referenceStart; }
+
+    /** The number of contiguous bases aligned to the reference in the current block. */
+    public int getLength() { return length; }
+}
@@ -35,21 +35,7 @@ class BinaryCigarCodec {
      * @return Array of unsigned ints, one for each element of CIGAR.
      */
     static int[] encode(final Cigar cigar) {
-        if (cigar.numCigarElements() == 0) {
-            return new int[0];
-        }
-
-        // Binary rep can be no longer than 1/2 of text rep
-        // Although this is documented as uint, I think lengths will never get that long,
-        // and it's a pain in Java.
-        final int[] binaryCigar = new int[cigar.numCigarElements()];
-        int binaryCigarLength = 0;
-        for (int i = 0; i < cigar.numCigarElements(); ++i) {
-            final CigarElement cigarElement = cigar.getCigarElement(i);
-            final int op = CigarOperator.enumToBinary(cigarElement.getOperator());
-            binaryCigar[binaryCigarLength++] = cigarElement.getLength() << 4 | op;
-        }
-        return binaryCigar;
+        return cigar.toBinaryCigar();
     }
 
     /**
@@ -57,12 +43,10 @@ class BinaryCigarCodec {
      * @param binaryCigar ByteArray that is assumed to have byte order set appropriately for extracting ints.
      */
     static Cigar decode(final ByteBuffer binaryCigar) {
-        final Cigar ret = new Cigar();
-        while (binaryCigar.hasRemaining()) {
-            final int cigarette = binaryCigar.getInt();
-            ret.add(binaryCigarToCigarElement(cigarette));
-        }
-        return ret;
+        final int[] cigarettes = new int[binaryCigar.remaining() / 4];
+        binaryCigar.asIntBuffer().get(cigarettes);
+        binaryCigar.position(binaryCigar.position() + cigarettes.length * 4);
+        return new Cigar(cigarettes);
     }
 
     /**
@@ -70,20 +54,6 @@ class BinaryCigarCodec {
      * @param binaryCigar Array of unsigned ints, one for each CIGAR element.
      */
     static Cigar decode(final int[] binaryCigar) {
-        final Cigar ret = new Cigar();
-        for (final int cigarette : binaryCigar) {
-            ret.add(binaryCigarToCigarElement(cigarette));
-        }
-        return ret;
-    }
-
-    /**
-     * @param cigarette CIGAR element (operator + length) encoded as an unsigned int.
-     * @return Object representation of the CIGAR element.
-     */
-    private static CigarElement binaryCigarToCigarElement(final int cigarette) {
-        final int binaryOp = cigarette & 0xf;
-        final int length = cigarette >>> 4;
-        return new CigarElement(length, CigarOperator.binaryToEnum(binaryOp));
+        return new Cigar(binaryCigar.clone());
     }
 }
@@ -149,7 +149,7 @@ public class BinaryTagCodec {
      * @param val Integer tag value.
      * @return Tag type corresponding to the smallest integer type that will hold the given value.
      */
-    static private char getIntegerType(final long val) {
+    static char getIntegerType(final long val) {
         if (val > MAX_UINT) {
             throw new IllegalArgumentException("Integer attribute value too large to be encoded in BAM");
         }
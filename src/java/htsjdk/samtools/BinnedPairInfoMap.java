@@ -0,0 +1,367 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds info about a mate pair for use when processing a coordinate sorted file, as {@link CoordinateSortedPairInfoMap}
+ * does, but partitions records by coordinate bin rather than by whole reference sequence.  When one read of a pair is
+ * encountered the caller puts a record under the mate's reference index and alignment start; when the mate is
+ * encountered the caller removes it using the mate's own reference index and alignment start.
+ * <p/>
+ * At most maxRecordsInRam records are held in RAM.  When that is exceeded, whole bins are appended to temp files,
+ * starting with those that the caller will reach last: bins behind the most recent removal, then bins from the
+ * furthest ahead inwards, until half the budget is free.  A remove() only ever loads the one bin it needs, so reads
+ * whose mates are on other sequences no longer force whole sequences to be spilled and reloaded.
+ * <p/>
+ * put(), remove() and size() may be called concurrently from multiple threads.  Iteration may not overlap with any
+ * other call.  {@link #close()} deletes the temp files; if it is not called, they are deleted when the JVM exits.
+ *
+ * @param <KEY> KEY + reference sequence index + position are used to identify the record being stored or retrieved.
+ * @param <REC> The type of record being retrieved.
+ */
+public class BinnedPairInfoMap<KEY, REC> implements Iterable<Map.Entry<KEY, REC>>, Closeable {
+    public static final int DEFAULT_BIN_SIZE = 1 << 16;
+
+    private final File workDir = IOUtil.createTempDir("BPIM.", null);
+    private final Thread deleteWorkDirAtExit = new DeleteDirectoryTree(workDir);
+    private final CoordinateSortedPairInfoMap.Codec<KEY, REC> elementCodec;
+    private final int maxRecordsInRam;
+    private final int binShift;
+
+    private final ConcurrentMap<Long, Bin> bins = new ConcurrentHashMap<Long, Bin>();
+    private final AtomicInteger recordsInRam = new AtomicInteger(0);
+    private final AtomicInteger recordsOnDisk = new AtomicInteger(0);
+    /** The bin of the most recent removal, which approximates where the caller is in the input. */
+    private volatile long currentBinKey = Long.MIN_VALUE;
+    private final Object spillLock = new Object();
+
+    private volatile boolean iterationInProgress = false;
+
+    public BinnedPairInfoMap(final int maxRecordsInRam, final CoordinateSortedPairInfoMap.Codec<KEY, REC> elementCodec) {
+        this(maxRecordsInRam, DEFAULT_BIN_SIZE, elementCodec);
+    }
+
+    /**
+     * @param maxRecordsInRam the most records to hold in RAM before spilling bins to disk
+     * @param binSize         the number of bases covered by each bin; rounded up to a power of two
+     * @param elementCodec    used to write records to and read them from temp files.  The codec is only ever used
+     *                        by one thread at a time.
+     */
+    public BinnedPairInfoMap(final int maxRecordsInRam, final int binSize, final CoordinateSortedPairInfoMap.Codec<KEY, REC> elementCodec) {
+        if (maxRecordsInRam < 1) throw new IllegalArgumentException("maxRecordsInRam must be > 0");
+        if (binSize < 1) throw new IllegalArgumentException("binSize must be > 0");
+        this.maxRecordsInRam = maxRecordsInRam;
+        this.binShift = 32 - Integer.numberOfLeadingZeros(binSize - 1);
+        this.elementCodec = elementCodec;
+        Runtime.getRuntime().addShutdownHook(deleteWorkDirAtExit);
+    }
+
+    /**
+     * Store the record with the given sequence index, position and key.  It is assumed that value did not previously
+     * exist in the map, and an exception is thrown (possibly at a later time) if that is not the case.
+     * @param sequenceIndex the reference index at which the record will be removed, typically the mate reference index
+     * @param position      the position at which the record will be removed, typically the mate alignment start
+     */
+    public void put(final int sequenceIndex, final int position, final KEY key, final REC record) {
+        if (iterationInProgress) throw new IllegalStateException("Cannot be called when iteration is in progress");
+        final long binKey = binKey(sequenceIndex, position);
+        // A bin emptied by a concurrent remove() is discarded, in which case another is made
+        while (true) {
+            Bin bin = bins.get(binKey);
+            if (bin == null) {
+                final Bin newBin = new Bin(binKey);
+                bin = bins.putIfAbsent(binKey, newBin);
+                if (bin == null) bin = newBin;
+            }
+            if (bin.put(key, record)) break;
+        }
+        if (recordsInRam.get() > maxRecordsInRam) spill();
+    }
+
+    /**
+     * @return The record corresponding to the given sequenceIndex, position and key, or null if it is not present.
+     */
+    public REC remove(final int sequenceIndex, final int position, final KEY key) {
+        if (iterationInProgress) throw new IllegalStateException("Cannot be called when iteration is in progress");
+        final long binKey = binKey(sequenceIndex, position);
+        currentBinKey = binKey;
+        final Bin bin = bins.get(binKey);
+        if (bin == null) return null;
+        final REC rec = bin.remove(key);
+        if (recordsInRam.get() > maxRecordsInRam) spill();
+        return rec;
+    }
+
+    public int size() {
+        return recordsInRam.get() + recordsOnDisk.get();
+    }
+
+    /**
+     * @return number of elements stored in RAM.  Always <= size()
+     */
+    public int sizeInRam() {
+        return recordsInRam.get();
+    }
+
+    /** @return The number of bins holding records, in RAM or on disk. */
+    int numBins() {
+        return bins.size();
+    }
+
+    /** @return The directory holding the temp files. */
+    File getWorkDir() {
+        return workDir;
+    }
+
+    private long binKey(final int sequenceIndex, final int position) {
+        // -1 is a valid sequence index here, so offset to keep keys in sequence order
+        return ((long) (sequenceIndex + 1) << 32) | (Math.max(0, position) >>> binShift);
+    }
+
+    /** Spills bins, furthest from the current position first, until the RAM budget is half used. */
+    private void spill() {
+        synchronized (spillLock) {
+            if (recordsInRam.get() <= maxRecordsInRam) return;
+            final long current = currentBinKey;
+            final List<Bin> candidates = new ArrayList<Bin>(bins.values());
+            Collections.sort(candidates, new Comparator<Bin>() {
+                public int compare(final Bin lhs, final Bin rhs) {
+                    final boolean lhsBehind = lhs.key < current, rhsBehind = rhs.key < current;
+                    if (lhsBehind != rhsBehind) return lhsBehind ? -1 : 1;
+                    return lhs.key > rhs.key ? -1 : lhs.key < rhs.key ? 1 : 0;
+                }
+            });
+            final int target = maxRecordsInRam / 2;
+            for (final Bin bin : candidates) {
+                if (recordsInRam.get() <= target) break;
+                bin.spill();
+            }
+        }
+    }
+
+    /**
+     * Deletes the temp files and discards all the records.  The map may not be used afterwards.
+     */
+    public void close() {
+        try {
+            Runtime.getRuntime().removeShutdownHook(deleteWorkDirAtExit);
+        } catch (final IllegalStateException e) {
+            // The JVM is already exiting, so the hook deletes the directory
+            return;
+        }
+        IOUtil.deleteDirectoryTree(workDir);
+        bins.clear();
+        recordsInRam.set(0);
+        recordsOnDisk.set(0);
+    }
+
+    /** Deletes a directory and its contents.  Holds only the directory, so that a map left open can be collected. */
+    private static class DeleteDirectoryTree extends Thread {
+        private final File directory;
+
+        DeleteDirectoryTree(final File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public void run() {
+            IOUtil.deleteDirectoryTree(directory);
+        }
+    }
+
+    /**
+     * Creates an iterator over all elements in map, in arbitrary order.  Elements may not be added
+     * or removed from map when iteration is in progress, nor may a second iteration be started.
+     * Iterator must be closed in order to allow normal access to the map.
+     */
+    public CloseableIterator<Map.Entry<KEY, REC>> iterator() {
+        if (iterationInProgress) throw new IllegalStateException("Cannot be called when iteration is in progress");
+        iterationInProgress = true;
+        return new MapIterator();
+    }
+
+    private class MapIterator implements CloseableIterator<Map.Entry<KEY, REC>> {
+        private boolean closed = false;
+        private final Iterator<Bin> binIterator = new ArrayList<Bin>(bins.values()).iterator();
+        private Iterator<Map.Entry<KEY, REC>> currentBinIterator = null;
+
+        private MapIterator() {
+            advanceToNextNonEmptyBin();
+        }
+
+        private void advanceToNextNonEmptyBin() {
+            while (binIterator.hasNext()) {
+                final Bin bin = binIterator.next();
+                synchronized (bin) {
+                    bin.ensureLoaded();
+                    if (!bin.inRam.isEmpty()) {
+                        currentBinIterator = bin.inRam.entrySet().iterator();
+                        return;
+                    }
+                }
+            }
+            currentBinIterator = null;
+        }
+
+        public void close() {
+            closed = true;
+            iterationInProgress = false;
+        }
+
+        public boolean hasNext() {
+            if (closed) throw new IllegalStateException("Iterator has been closed");
+            return currentBinIterator != null;
+        }
+
+        public Map.Entry<KEY, REC> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final Map.Entry<KEY, REC> ret = currentBinIterator.next();
+            if (!currentBinIterator.hasNext()) advanceToNextNonEmptyBin();
+            return ret;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /** The records for one coordinate bin, some in RAM and the rest appended to a temp file. */
+    private class Bin {
+        private final long key;
+        private final Map<KEY, REC> inRam = new HashMap<KEY, REC>();
+        private int numOnDisk = 0;
+        /** Set when the last record has been removed and the bin has been dropped from the map. */
+        private boolean discarded = false;
+
+        Bin(final long key) {
+            this.key = key;
+        }
+
+        private File file() {
+            return new File(workDir, key + ".tmp");
+        }
+
+        /** @return false if the bin has been discarded, in which case the record must be put in a new bin. */
+        synchronized boolean put(final KEY k, final REC record) {
+            if (discarded) return false;
+            if (inRam.put(k, record) != null) {
+                throw new IllegalArgumentException("Putting value into PairInfoMap that already existed. " + key + ": " + k);
+            }
+            recordsInRam.incrementAndGet();
+            return true;
+        }
+
+        synchronized REC remove(final KEY k) {
+            REC rec = inRam.remove(k);
+            if (rec == null && numOnDisk > 0) {
+                ensureLoaded();
+                rec = inRam.remove(k);
+            }
+            if (rec != null) {
+                recordsInRam.decrementAndGet();
+                if (inRam.isEmpty() && numOnDisk == 0) {
+                    discarded = true;
+                    bins.remove(key, this);
+                }
+            }
+            return rec;
+        }
+
+        /** Appends the records in RAM to the temp file for this bin. */
+        synchronized void spill() {
+            if (inRam.isEmpty()) return;
+            OutputStream os = null;
+            try {
+                os = new BufferedOutputStream(new FileOutputStream(file(), true));
+                synchronized (elementCodec) {
+                    elementCodec.setOutputStream(os);
+                    for (final Map.Entry<KEY, REC> entry : inRam.entrySet()) {
+                        elementCodec.encode(entry.getKey(), entry.getValue());
+                    }
+                }
+                os.flush();
+            } catch (final IOException e) {
+                throw new SAMException("Error spilling PairInfoMap bin to disk", e);
+            } finally {
+                CloserUtil.close(os);
+            }
+            numOnDisk += inRam.size();
+            recordsOnDisk.addAndGet(inRam.size());
+            recordsInRam.addAndGet(-inRam.size());
+            inRam.clear();
+        }
+
+        /** Moves any records in the temp file for this bin into RAM. */
+        synchronized void ensureLoaded() {
+            if (numOnDisk == 0) return;
+            final File file = file();
+            InputStream is = null;
+            try {
+                is = new BufferedInputStream(new FileInputStream(file));
+                synchronized (elementCodec) {
+                    elementCodec.setInputStream(is);
+                    for (int i = 0; i < numOnDisk; ++i) {
+                        final Map.Entry<KEY, REC> keyAndRecord = elementCodec.decode();
+                        if (inRam.put(keyAndRecord.getKey(), keyAndRecord.getValue()) != null) {
+                            throw new SAMException("Value was put into PairInfoMap more than once.  " + key + ": " + keyAndRecord.getKey());
+                        }
+                    }
+                }
+            } catch (final IOException e) {
+                throw new SAMException("Error loading PairInfoMap bin from disk.", e);
+            } finally {
+                CloserUtil.close(is);
+            }
+            IOUtil.deleteFiles(file);
+            recordsInRam.addAndGet(numOnDisk);
+            recordsOnDisk.addAndGet(-numOnDisk);
+            numOnDisk = 0;
+        }
+    }
+}
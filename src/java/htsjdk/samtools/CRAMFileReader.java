@@ -52,6 +52,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
     private File mIndexFile;
     private boolean mEnableIndexCaching;
     private boolean mEnableIndexMemoryMapping;
+    private int decodingThreads = 1;
 
     private ValidationStringency validationStringency;
 
@@ -166,6 +167,16 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         mEnableIndexMemoryMapping = enabled;
     }
 
+    /**
+     * If numThreads is greater than one, iterators read containers ahead and decode them on that many threads.
+     *
+     * @see SamReaderFactory.Option#DECODE_CRAM_IN_PARALLEL
+     */
+    void enableParallelDecoding(final int numThreads) {
+        this.decodingThreads = numThreads;
+        if (iterator != null) iterator.setDecodingThreads(numThreads);
+    }
+
     @Override
     void enableCrcChecking(final boolean enabled) {
         // inapplicable to CRAM: do nothing
@@ -228,7 +239,9 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
         try {
             // create an input stream that reads the source cram stream only within the coordinate pairs:
             final SeekableStream seekableStream = getSeekableStreamOrFailWithRTE();
-            return new CRAMIterator(seekableStream, referenceSource, coordinateArray);
+            final CRAMIterator newIterator = new CRAMIterator(seekableStream, referenceSource, coordinateArray);
+            newIterator.setDecodingThreads(decodingThreads);
+            return newIterator;
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
@@ -252,6 +265,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
                 newIterator = new CRAMIterator(inputStream, referenceSource);
 
             newIterator.setValidationStringency(validationStringency);
+            newIterator.setDecodingThreads(decodingThreads);
             iterator = newIterator;
             return iterator;
         } catch (final Exception e) {
@@ -360,6 +374,7 @@ public class CRAMFileReader extends SamReader.ReaderImplementation implements Sa
             return emptyIterator;
 
         final CRAMIterator newIterator = new CRAMIterator(getSeekableStreamOrFailWithRTE(), referenceSource, filePointers);
+        newIterator.setDecodingThreads(decodingThreads);
         return new IntervalIterator(newIterator, new QueryInterval(referenceIndex, start, end), overlap);
     }
 
@@ -19,6 +19,7 @@ import htsjdk.samtools.cram.build.ContainerFactory;
 import htsjdk.samtools.cram.build.Cram2SamRecordFactory;
 import htsjdk.samtools.cram.build.CramIO;
 import htsjdk.samtools.cram.build.CramNormalizer;
+import htsjdk.samtools.cram.build.ExternalCompressorSelector;
 import htsjdk.samtools.cram.build.Sam2CramRecordFactory;
 import htsjdk.samtools.cram.common.CramVersions;
 import htsjdk.samtools.cram.common.Version;
@@ -33,15 +34,22 @@ import htsjdk.samtools.cram.structure.CramHeader;
 import htsjdk.samtools.cram.structure.Slice;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.StringLineReader;
+import htsjdk.samtools.util.ThreadPoolUtil;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 @SuppressWarnings("UnusedDeclaration")
 public class CRAMFileWriter extends SAMFileWriterImpl {
@@ -50,8 +58,11 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
     private static final int DEFAULT_SLICES_PER_CONTAINER = 1;
     private static final Version cramVersion = CramVersions.CRAM_v2_1;
 
+    /** The number of containers that may be queued or being built, per encoding thread. */
+    private static final int CONTAINERS_PER_THREAD = 2;
+
     private final String fileName;
-    private final List<SAMRecord> samRecords = new ArrayList<SAMRecord>();
+    private List<SAMRecord> samRecords = new ArrayList<SAMRecord>();
     private ContainerFactory containerFactory;
     protected final int recordsPerSlice = DEFAULT_RECORDS_PER_SLICE;
     protected final int containerSize = recordsPerSlice * DEFAULT_SLICES_PER_CONTAINER;
@@ -64,6 +75,7 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
 
     private final SAMFileHeader samFileHeader;
     private boolean preserveReadNames = true;
+    private ExternalCompressorSelector compressorSelector = null;
     private QualityScorePreservation preservation = null;
     private boolean captureAllTags = true;
     private Set<String> captureTags = new TreeSet<String>();
@@ -71,6 +83,13 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
 
     private CRAMIndexer indexer;
     private long offset;
+    /** The number of records in the containers flushed so far. */
+    private long globalRecordCounter = 0;
+
+    // Used only when encoding in parallel
+    private ExecutorService encodingExecutor = null;
+    private int maxPendingContainers;
+    private final Deque<Future<Container>> pendingContainers = new ArrayDeque<Future<Container>>();
 
     public CRAMFileWriter(final OutputStream outputStream, final ReferenceSource source, final SAMFileHeader samFileHeader, final String fileName) {
         this(outputStream, null, source, samFileHeader, fileName);
@@ -90,6 +109,25 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
         if (indexOS != null) indexer = new CRAMIndexer(indexOS, samFileHeader);
     }
 
+    /**
+     * Build and compress containers on the given number of threads, if greater than one.  Containers are written
+     * in the order their records were added, but a record may be encoded after addAlignment() has returned, so
+     * records must not be modified once added.  Must be called before any records are written.
+     */
+    public void setEncodingThreads(final int numThreads) {
+        if (!samRecords.isEmpty() || !pendingContainers.isEmpty()) {
+            throw new IllegalStateException("Cannot change the number of encoding threads after writing records");
+        }
+        if (encodingExecutor != null) {
+            encodingExecutor.shutdown();
+            encodingExecutor = null;
+        }
+        if (numThreads > 1) {
+            maxPendingContainers = numThreads * CONTAINERS_PER_THREAD;
+            encodingExecutor = ThreadPoolUtil.newDaemonFixedThreadPool("CRAMFileWriterEncoder", numThreads);
+        }
+    }
+
     /**
      * Decide if the current container should be completed and flushed. The decision is based on a) number of records and b) if the
      * reference sequence id has changed.
@@ -135,14 +173,76 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
     }
 
     /**
-     * Complete the current container and flush it to the output stream.
+     * Complete the current container and flush it to the output stream, or if encoding in parallel, queue it to be
+     * built and then written once the containers before it have been.
      *
      * @throws IllegalArgumentException
-     * @throws IllegalAccessException
      * @throws IOException
      */
-    protected void flushContainer() throws IllegalArgumentException, IllegalAccessException, IOException {
+    protected void flushContainer() throws IllegalArgumentException, IOException {
+        final List<SAMRecord> containerRecords = samRecords;
+        final int containerRefSeqIndex = refSeqIndex;
+        final long containerRecordCounter = globalRecordCounter;
+        samRecords = new ArrayList<SAMRecord>();
+        globalRecordCounter += containerRecords.size();
+        containerFactory.setPreserveReadNames(preserveReadNames);
+        containerFactory.setCompressorSelector(compressorSelector);
+
+        if (encodingExecutor == null) {
+            writeContainer(buildContainer(containerRecords, containerRefSeqIndex, containerRecordCounter));
+            return;
+        }
+        while (pendingContainers.size() >= maxPendingContainers) {
+            writeContainer(getResult(pendingContainers.removeFirst()));
+        }
+        pendingContainers.addLast(encodingExecutor.submit(new Callable<Container>() {
+            public Container call() throws Exception {
+                return buildContainer(containerRecords, containerRefSeqIndex, containerRecordCounter);
+            }
+        }));
+    }
 
+    /** Writes any containers still being built. */
+    private void flushPendingContainers() throws IOException {
+        while (!pendingContainers.isEmpty()) {
+            writeContainer(getResult(pendingContainers.removeFirst()));
+        }
+    }
+
+    private Container getResult(final Future<Container> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new SAMException("Interrupted while building CRAM container", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new SAMException("Exception building CRAM container", e.getCause());
+        }
+    }
+
+    /**
+     * Writes a container at the current offset and adds its slices to the index.
+     */
+    private void writeContainer(final Container container) throws IOException {
+        container.offset = offset;
+        offset += ContainerIO.writeContainer(cramVersion, container, outputStream);
+        if (indexer != null) {
+            for (final Slice slice : container.slices) {
+                indexer.processAlignment(slice);
+            }
+        }
+    }
+
+    /**
+     * Converts records to CRAM and builds them into a container, compressing its blocks.  Uses no mutable state of
+     * the writer, so containers may be built concurrently.
+     *
+     * @param globalRecordCounter The number of records in the preceding containers.
+     */
+    private Container buildContainer(final List<SAMRecord> samRecords, final int refSeqIndex, final long globalRecordCounter)
+            throws IllegalArgumentException, IOException {
         final byte[] refs;
         String refSeqName = null;
         if (refSeqIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) refs = new byte[0];
@@ -178,7 +278,6 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
         sam2CramRecordFactory.captureAllTags = captureAllTags;
         sam2CramRecordFactory.captureTags.addAll(captureTags);
         sam2CramRecordFactory.ignoreTags.addAll(ignoreTags);
-        containerFactory.setPreserveReadNames(preserveReadNames);
 
         int index = 0;
         int prevAlStart = start;
@@ -303,17 +402,10 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
             }
         }
 
-        final Container container = containerFactory.buildContainer(cramRecords);
+        final Container container = containerFactory.buildContainer(cramRecords, globalRecordCounter);
         for (final Slice slice : container.slices)
             slice.setRefMD5(refs);
-        container.offset = offset;
-        offset += ContainerIO.writeContainer(cramVersion, container, outputStream);
-        if (indexer != null) {
-            for (final Slice slice : container.slices) {
-                indexer.processAlignment(slice);
-            }
-        }
-        samRecords.clear();
+        return container;
     }
 
     /**
@@ -375,12 +467,15 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
     protected void finish() {
         try {
             if (!samRecords.isEmpty()) flushContainer();
+            flushPendingContainers();
             CramIO.issueEOF(cramVersion, outputStream);
             outputStream.flush();
             if (indexer != null)
                 indexer.finish();
         } catch (final Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            if (encodingExecutor != null) encodingExecutor.shutdownNow();
         }
     }
 
@@ -397,6 +492,21 @@ public class CRAMFileWriter extends SAMFileWriterImpl {
         this.preserveReadNames = preserveReadNames;
     }
 
+    public ExternalCompressorSelector getCompressorSelector() {
+        return compressorSelector;
+    }
+
+    /**
+     * Choose the compression method of each external block by trial rather than by the fixed rules of
+     * {@link htsjdk.samtools.cram.build.CompressionHeaderFactory}.
+     *
+     * @param compressorSelector The selector, which keeps its choices from one container to the next, or null to
+     *                           use the fixed rules.
+     */
+    public void setCompressorSelector(final ExternalCompressorSelector compressorSelector) {
+        this.compressorSelector = compressorSelector;
+    }
+
     public List<PreservationPolicy> getPreservationPolicies() {
         if (preservation == null) {
             // set up greedy policy by default:
@@ -32,37 +32,52 @@ import htsjdk.samtools.seekablestream.SeekableStream;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeEOFException;
 import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.ThreadPoolUtil;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import htsjdk.samtools.cram.CRAMException;
 
 public class CRAMIterator implements SAMRecordIterator {
     private static final Log log = Log.getInstance(CRAMIterator.class);
+    /** The number of containers read ahead of iteration, per decoding thread. */
+    private static final int CONTAINERS_PER_THREAD = 2;
+
     private final CountingInputStream countingInputStream;
     private CramHeader cramHeader;
-    private ArrayList<SAMRecord> records;
-    private SAMRecord nextRecord = null;
+    /** The records of the current container. */
+    private List<SAMRecord> records = Collections.emptyList();
     @SuppressWarnings({"CanBeFinal", "FieldCanBeLocal"})
     private boolean restoreNMTag = true;
     @SuppressWarnings({"CanBeFinal", "FieldCanBeLocal"})
     private boolean restoreMDTag = false;
-    private CramNormalizer normalizer;
-    private byte[] refs;
-    private int prevSeqId = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
     public Container container;
     private SamReader mReader;
     long firstContainerOffset = 0;
     private Iterator<Container> containerIterator;
 
-    private ContainerParser parser;
     private final ReferenceSource referenceSource;
+    private boolean containersExhausted = false;
+
+    private int decodingThreads = 1;
+    private ExecutorService executor = null;
+    private final Deque<PendingContainer> pendingContainers = new ArrayDeque<PendingContainer>();
+    /** Nanoseconds spent reading each data series, or null if they are not being timed. */
+    private Map<String, Long> dataSeriesNanos = null;
 
     private Iterator<SAMRecord> iterator = Collections.<SAMRecord>emptyList().iterator();
 
@@ -77,8 +92,8 @@ public class CRAMIterator implements SAMRecordIterator {
         this.validationStringency = validationStringency;
     }
 
+    /** The number of records in the containers read so far. */
     private long samRecordIndex;
-    private ArrayList<CramCompressionRecord> cramRecords;
 
     public CRAMIterator(final InputStream inputStream, final ReferenceSource referenceSource)
             throws IOException {
@@ -92,10 +107,6 @@ public class CRAMIterator implements SAMRecordIterator {
         this.containerIterator = containerIterator;
 
         firstContainerOffset = this.countingInputStream.getCount();
-        records = new ArrayList<SAMRecord>(10000);
-        normalizer = new CramNormalizer(cramHeader.getSamFileHeader(),
-                referenceSource);
-        parser = new ContainerParser(cramHeader.getSamFileHeader());
     }
 
     public CRAMIterator(final SeekableStream seekableStream, final ReferenceSource referenceSource, final long[] coordinates)
@@ -110,64 +121,152 @@ public class CRAMIterator implements SAMRecordIterator {
         this.containerIterator = containerIterator;
 
         firstContainerOffset = containerIterator.getFirstContainerOffset();
-        records = new ArrayList<SAMRecord>(10000);
-        normalizer = new CramNormalizer(cramHeader.getSamFileHeader(),
-                referenceSource);
-        parser = new ContainerParser(cramHeader.getSamFileHeader());
     }
 
     public CramHeader getCramHeader() {
         return cramHeader;
     }
 
-    private void nextContainer() throws IOException, IllegalArgumentException,
-            IllegalAccessException, CRAMException {
+    /**
+     * If numThreads is greater than one, containers are read ahead of iteration and decoded on that many threads,
+     * with records returned in their original order.  Must be called before iteration starts.
+     */
+    public void setDecodingThreads(final int numThreads) {
+        if (executor != null) {
+            throw new IllegalStateException("Cannot change the number of decoding threads once iteration has started");
+        }
+        this.decodingThreads = numThreads;
+    }
 
-        if (containerIterator != null) {
-            if (!containerIterator.hasNext()) {
-                records.clear();
-                nextRecord = null;
-                return;
-            }
-            container = containerIterator.next();
-            if (container.isEOF()) {
-                records.clear();
-                nextRecord = null;
-                return;
+    /**
+     * Enables timing of the reading of each CRAM data series, for profiling.  Must be called before iteration starts
+     * to cover all the records.
+     */
+    public void setCollectDataSeriesTimings(final boolean collect) {
+        dataSeriesNanos = collect ? new TreeMap<String, Long>() : null;
+    }
+
+    /**
+     * @return The nanoseconds spent reading each data series so far, by data series or tag name, or an empty map if
+     * timings are not being collected.  With parallel decoding this is the total time over all threads.
+     */
+    public Map<String, Long> getDataSeriesNanos() {
+        final Map<String, Long> totals = dataSeriesNanos;
+        if (totals == null) return Collections.emptyMap();
+        synchronized (totals) {
+            return new TreeMap<String, Long>(totals);
+        }
+    }
+
+    private static void addDataSeriesNanos(final Map<String, Long> totals, final Map<String, Long> nanos) {
+        synchronized (totals) {
+            for (final Map.Entry<String, Long> entry : nanos.entrySet()) {
+                final Long total = totals.get(entry.getKey());
+                totals.put(entry.getKey(), total == null ? entry.getValue() : total + entry.getValue());
             }
+        }
+    }
+
+    /**
+     * @return The next container, or null if there are no more.
+     */
+    private Container readContainer() throws IOException {
+        final Container next;
+        if (containerIterator != null) {
+            if (!containerIterator.hasNext()) return null;
+            next = containerIterator.next();
+        } else {
+            next = ContainerIO.readContainer(cramHeader.getVersion(), countingInputStream);
+        }
+        return next.isEOF() ? null : next;
+    }
+
+    private void nextContainer() throws Exception {
+        if (decodingThreads > 1) {
+            nextDecodedContainer();
+            return;
+        }
+        final Container next = readContainer();
+        if (next == null) {
+            containersExhausted = true;
+            records = Collections.emptyList();
         } else {
-            container = ContainerIO.readContainer(cramHeader.getVersion(), countingInputStream);
-            if (container.isEOF()) {
-                records.clear();
-                nextRecord = null;
-                return;
+            container = next;
+            records = decodeContainer(container, samRecordIndex, validationStringency, mReader);
+            samRecordIndex += container.nofRecords;
+        }
+        iterator = records.iterator();
+    }
+
+    /**
+     * Takes the records of the next container from those being decoded on the thread pool, first reading more
+     * containers if there is room for them.
+     */
+    private void nextDecodedContainer() throws Exception {
+        if (executor == null) {
+            executor = ThreadPoolUtil.newDaemonFixedThreadPool("CRAMIteratorDecoder", decodingThreads);
+        }
+        while (!containersExhausted && pendingContainers.size() < decodingThreads * CONTAINERS_PER_THREAD) {
+            final Container next = readContainer();
+            if (next == null) {
+                containersExhausted = true;
+                break;
             }
+            final long firstRecordIndex = samRecordIndex;
+            final ValidationStringency stringency = validationStringency;
+            final SamReader reader = mReader;
+            pendingContainers.addLast(new PendingContainer(next, executor.submit(new Callable<List<SAMRecord>>() {
+                public List<SAMRecord> call() throws Exception {
+                    return decodeContainer(next, firstRecordIndex, stringency, reader);
+                }
+            })));
+            samRecordIndex += next.nofRecords;
         }
 
-        if (records == null)
-            records = new ArrayList<SAMRecord>(container.nofRecords);
-        else
-            records.clear();
-        if (cramRecords == null)
-            cramRecords = new ArrayList<CramCompressionRecord>(container.nofRecords);
-        else
-            cramRecords.clear();
+        if (pendingContainers.isEmpty()) {
+            executor.shutdown();
+            records = Collections.emptyList();
+        } else {
+            final PendingContainer pending = pendingContainers.removeFirst();
+            container = pending.container;
+            try {
+                records = pending.records.get();
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new CRAMException(e.getCause());
+            }
+        }
+        iterator = records.iterator();
+    }
 
+    /**
+     * Decodes the records of a container.  Uses no mutable state of the iterator other than the synchronized data
+     * series timings, so containers may be decoded concurrently.
+     *
+     * @param firstRecordIndex The number of records in the preceding containers.
+     */
+    private List<SAMRecord> decodeContainer(final Container container, final long firstRecordIndex,
+                                            final ValidationStringency validationStringency, final SamReader reader)
+            throws IllegalArgumentException, CRAMException {
+        final ArrayList<CramCompressionRecord> cramRecords = new ArrayList<CramCompressionRecord>(container.nofRecords);
+        final Map<String, Long> totalDataSeriesNanos = dataSeriesNanos;
+        final ContainerParser parser = new ContainerParser(cramHeader.getSamFileHeader(), totalDataSeriesNanos != null);
         parser.getRecords(container, cramRecords);
+        if (totalDataSeriesNanos != null) addDataSeriesNanos(totalDataSeriesNanos, parser.getDataSeriesNanos());
 
+        final byte[] refs;
         if (container.sequenceId == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
             refs = new byte[]{};
         } else if (container.sequenceId == -2) {
             refs = null;
-            prevSeqId = -2;
-        } else if (prevSeqId < 0 || prevSeqId != container.sequenceId) {
+        } else {
             final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
                     .getSequence(container.sequenceId);
             refs = referenceSource.getReferenceBases(sequence, true);
             if (refs == null) {
                 throw new CRAMException(String.format("Contig %s not found in the reference file.", sequence.getSequenceName()));
             }
-            prevSeqId = container.sequenceId;
         }
 
         for (int i = 0; i < container.slices.length; i++) {
@@ -181,20 +280,27 @@ public class CRAMIterator implements SAMRecordIterator {
             }
         }
 
-        normalizer.normalize(cramRecords, refs, 0,
+        new CramNormalizer(cramHeader.getSamFileHeader(), referenceSource, (int) firstRecordIndex).normalize(cramRecords, refs, 0,
                 container.header.substitutionMatrix);
 
         final Cram2SamRecordFactory cramToSamRecordFactory = new Cram2SamRecordFactory(
                 cramHeader.getSamFileHeader());
 
+        final List<SAMRecord> records = new ArrayList<SAMRecord>(cramRecords.size());
+        long samRecordIndex = firstRecordIndex;
+        int recordRefsSequenceId = container.sequenceId;
+        byte[] recordRefs = refs;
         for (final CramCompressionRecord cramRecord : cramRecords) {
             final SAMRecord samRecord = cramToSamRecordFactory.create(cramRecord);
             if (!cramRecord.isSegmentUnmapped()) {
-                final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
-                        .getSequence(cramRecord.sequenceId);
-                refs = referenceSource.getReferenceBases(sequence, true);
+                if (recordRefs == null || cramRecord.sequenceId != recordRefsSequenceId) {
+                    final SAMSequenceRecord sequence = cramHeader.getSamFileHeader()
+                            .getSequence(cramRecord.sequenceId);
+                    recordRefs = referenceSource.getReferenceBases(sequence, true);
+                    recordRefsSequenceId = cramRecord.sequenceId;
+                }
                 if (samRecord.getReadBases() != SAMRecord.NULL_SEQUENCE)
-                    SequenceUtil.calculateMdAndNmTags(samRecord, refs, restoreMDTag, restoreNMTag);
+                    SequenceUtil.calculateMdAndNmTags(samRecord, recordRefs, restoreMDTag, restoreNMTag);
             }
 
             samRecord.setValidationStringency(validationStringency);
@@ -205,18 +311,17 @@ public class CRAMIterator implements SAMRecordIterator {
                         samRecordIndex, validationStringency);
             }
 
-            if (mReader != null) {
+            if (reader != null) {
                 final long chunkStart = (container.offset << 16) | cramRecord.sliceIndex;
                 final long chunkEnd = ((container.offset << 16) | cramRecord.sliceIndex) + 1;
-                nextRecord.setFileSource(new SAMFileSource(mReader,
+                samRecord.setFileSource(new SAMFileSource(reader,
                         new BAMFileSpan(new Chunk(chunkStart, chunkEnd))));
             }
 
             records.add(samRecord);
             samRecordIndex++;
         }
-        cramRecords.clear();
-        iterator = records.iterator();
+        return records;
     }
 
     /**
@@ -249,16 +354,15 @@ public class CRAMIterator implements SAMRecordIterator {
 
     @Override
     public boolean hasNext() {
-        if (container != null && container.isEOF()) return false;
-        if (!iterator.hasNext()) {
+        while (!iterator.hasNext()) {
+            if (containersExhausted && pendingContainers.isEmpty()) return false;
             try {
                 nextContainer();
             } catch (final Exception e) {
                 throw new RuntimeEOFException(e);
             }
         }
-
-        return !records.isEmpty();
+        return true;
     }
 
     @Override
@@ -273,7 +377,10 @@ public class CRAMIterator implements SAMRecordIterator {
 
     @Override
     public void close() {
-        records.clear();
+        if (executor != null) executor.shutdownNow();
+        pendingContainers.clear();
+        records = Collections.emptyList();
+        iterator = records.iterator();
         //noinspection EmptyCatchBlock
         try {
             if (countingInputStream != null)
@@ -299,4 +406,15 @@ public class CRAMIterator implements SAMRecordIterator {
         return cramHeader.getSamFileHeader();
     }
 
+    /** A container read ahead of iteration, and its records once decoded. */
+    private static class PendingContainer {
+        final Container container;
+        final Future<List<SAMRecord>> records;
+
+        PendingContainer(final Container container, final Future<List<SAMRecord>> records) {
+            this.container = container;
+            this.records = records;
+        }
+    }
+
 }
@@ -23,10 +23,17 @@
  */
 package htsjdk.samtools;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * A list of CigarElements, which describes how a read aligns with the reference.
@@ -36,37 +43,122 @@ import java.util.List;
  * * match or mismatch for 25 bases
  *
  * c.f. http://samtools.sourceforge.net/SAM1.pdf for complete CIGAR specification.
+ * <p/>
+ * The elements are stored as in BAM, one int per element with the length in the upper 28 bits and the binary
+ * operator code in the lower 4 bits, so element lengths must be less than 2^28.  CigarElement objects are created
+ * only when requested, and the primitive accessors such as {@link #getCigarElementLength(int)} avoid creating them.
  */
 public class Cigar implements Serializable {
     public static final long serialVersionUID = 1L;
 
-    private final List<CigarElement> cigarElements = new ArrayList<CigarElement>();
+    private static final int MAX_ELEMENT_LENGTH = (1 << 28) - 1;
+
+    /** CigarOperator for each binary operator code. */
+    private static final CigarOperator[] OPERATORS = new CigarOperator[16];
+    private static final boolean[] CONSUMES_READ_BASES = new boolean[16];
+    private static final boolean[] CONSUMES_REFERENCE_BASES = new boolean[16];
+    private static final int OP_S = CigarOperator.enumToBinary(CigarOperator.S);
+    private static final int OP_H = CigarOperator.enumToBinary(CigarOperator.H);
+    private static final int OP_P = CigarOperator.enumToBinary(CigarOperator.P);
+
+    static {
+        for (final CigarOperator operator : CigarOperator.values()) {
+            final int code = CigarOperator.enumToBinary(operator);
+            OPERATORS[code] = operator;
+            CONSUMES_READ_BASES[code] = operator.consumesReadBases();
+            CONSUMES_REFERENCE_BASES[code] = operator.consumesReferenceBases();
+        }
+    }
+
+    private int[] packedElements;
+    private int numElements = 0;
+
+    /**
+     * The serialized form is that of earlier versions, a List of CigarElements, so that Cigars serialized by either
+     * version can be read by the other.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("cigarElements", List.class)
+    };
 
     public Cigar() {
+        packedElements = new int[4];
     }
 
     public Cigar(final List<CigarElement> cigarElements) {
-        this.cigarElements.addAll(cigarElements);
+        packedElements = new int[Math.max(cigarElements.size(), 1)];
+        for (final CigarElement cigarElement : cigarElements) {
+            add(cigarElement);
+        }
+    }
+
+    /**
+     * Wraps CIGAR elements in BAM binary form, without copying them.
+     *
+     * @param binaryCigar One int per element, with the length shifted left 4 bits and ORed with the binary operator.
+     */
+    Cigar(final int[] binaryCigar) {
+        for (final int element : binaryCigar) {
+            if (OPERATORS[element & 0xf] == null) {
+                throw new IllegalArgumentException("Unrecognized CigarOperator: " + (element & 0xf));
+            }
+        }
+        this.packedElements = binaryCigar;
+        this.numElements = binaryCigar.length;
+    }
+
+    /**
+     * @return The elements in BAM binary form, as accepted by {@link #Cigar(int[])}.
+     */
+    int[] toBinaryCigar() {
+        return Arrays.copyOf(packedElements, numElements);
     }
 
+    /**
+     * @return An unmodifiable view of the elements, each of which is created when it is retrieved.
+     */
     public List<CigarElement> getCigarElements() {
-        return Collections.unmodifiableList(cigarElements);
+        return new CigarElementList();
     }
 
     public CigarElement getCigarElement(final int i) {
-        return cigarElements.get(i);
+        checkIndex(i);
+        return new CigarElement(packedElements[i] >>> 4, OPERATORS[packedElements[i] & 0xf]);
+    }
+
+    /**
+     * @return The length of the i-th element, without creating a CigarElement.
+     */
+    public int getCigarElementLength(final int i) {
+        checkIndex(i);
+        return packedElements[i] >>> 4;
+    }
+
+    /**
+     * @return The operator of the i-th element, without creating a CigarElement.
+     */
+    public CigarOperator getCigarElementOperator(final int i) {
+        checkIndex(i);
+        return OPERATORS[packedElements[i] & 0xf];
     }
 
     public void add(final CigarElement cigarElement) {
-        cigarElements.add(cigarElement);
+        final int length = cigarElement.getLength();
+        if (length < 0 || length > MAX_ELEMENT_LENGTH) {
+            throw new IllegalArgumentException("CIGAR element length out of range: " + length);
+        }
+        if (numElements == packedElements.length) {
+            packedElements = Arrays.copyOf(packedElements, Math.max(numElements * 2, 4));
+        }
+        packedElements[numElements++] = length << 4 | CigarOperator.enumToBinary(cigarElement.getOperator());
     }
 
     public int numCigarElements() {
-        return cigarElements.size();
+        return numElements;
     }
 
     public boolean isEmpty() {
-        return cigarElements.isEmpty();
+        return numElements == 0;
     }
 
     /**
@@ -74,14 +166,9 @@ public class Cigar implements Serializable {
      */
     public int getReferenceLength() {
         int length = 0;
-        for (final CigarElement element : cigarElements) {
-            switch (element.getOperator()) {
-                case M:
-                case D:
-                case N:
-                case EQ:
-                case X:
-                    length += element.getLength();
+        for (int i = 0; i < numElements; ++i) {
+            if (CONSUMES_REFERENCE_BASES[packedElements[i] & 0xf]) {
+                length += packedElements[i] >>> 4;
             }
         }
         return length;
@@ -92,15 +179,10 @@ public class Cigar implements Serializable {
      */
     public int getPaddedReferenceLength() {
         int length = 0;
-        for (final CigarElement element : cigarElements) {
-            switch (element.getOperator()) {
-                case M:
-                case D:
-                case N:
-                case EQ:
-                case X:
-                case P:
-                    length += element.getLength();
+        for (int i = 0; i < numElements; ++i) {
+            final int op = packedElements[i] & 0xf;
+            if (CONSUMES_REFERENCE_BASES[op] || op == OP_P) {
+                length += packedElements[i] >>> 4;
             }
         }
         return length;
@@ -110,7 +192,13 @@ public class Cigar implements Serializable {
      * @return The number of read bases that the read covers.
      */
     public int getReadLength() {
-        return getReadLength(cigarElements);
+        int length = 0;
+        for (int i = 0; i < numElements; ++i) {
+            if (CONSUMES_READ_BASES[packedElements[i] & 0xf]) {
+                length += packedElements[i] >>> 4;
+            }
+        }
+        return length;
     }
 
     /**
@@ -126,6 +214,68 @@ public class Cigar implements Serializable {
         return length;
     }
 
+    /**
+     * @return The number of bases hard or soft clipped at the start of the read.
+     */
+    public int getLeadingClipLength() {
+        int length = 0;
+        for (int i = 0; i < numElements && isClippingOperator(packedElements[i] & 0xf); ++i) {
+            length += packedElements[i] >>> 4;
+        }
+        return length;
+    }
+
+    /**
+     * @return The number of bases hard or soft clipped at the end of the read.
+     */
+    public int getTrailingClipLength() {
+        int length = 0;
+        for (int i = numElements - 1; i >= 0 && isClippingOperator(packedElements[i] & 0xf); --i) {
+            length += packedElements[i] >>> 4;
+        }
+        return length;
+    }
+
+    private static boolean isClippingOperator(final int op) {
+        return op == OP_S || op == OP_H;
+    }
+
+    private void checkIndex(final int i) {
+        if (i < 0 || i >= numElements) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + numElements);
+        }
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        final ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("cigarElements", new ArrayList<CigarElement>(getCigarElements()));
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        final List<CigarElement> cigarElements = (List<CigarElement>) in.readFields().get("cigarElements", null);
+        if (cigarElements == null) throw new InvalidObjectException("Missing CIGAR elements");
+        packedElements = new int[Math.max(cigarElements.size(), 1)];
+        numElements = 0;
+        for (final CigarElement cigarElement : cigarElements) {
+            add(cigarElement);
+        }
+    }
+
+    /** Unmodifiable view of the elements of this Cigar. */
+    private class CigarElementList extends AbstractList<CigarElement> implements RandomAccess {
+        @Override
+        public CigarElement get(final int index) {
+            return getCigarElement(index);
+        }
+
+        @Override
+        public int size() {
+            return numElements;
+        }
+    }
+
     /**
      * Exhaustive validation of CIGAR.
      * Note that this method deliberately returns null rather than Collections.emptyList() if there
@@ -140,38 +290,37 @@ public class Cigar implements Serializable {
         }
         List<SAMValidationError> ret = null;
         boolean seenRealOperator = false;
-        for (int i = 0; i < cigarElements.size(); ++i) {
-            final CigarElement element = cigarElements.get(i);
-            if (element.getLength() == 0) {
+        for (int i = 0; i < numElements; ++i) {
+            if (getCigarElementLength(i) == 0) {
                 if (ret == null) ret = new ArrayList<SAMValidationError>();
                 ret.add(new SAMValidationError(SAMValidationError.Type.INVALID_CIGAR,
                         "CIGAR element with zero length", readName, recordNumber));
             }
             // clipping operator can only be at start or end of CIGAR
-            final CigarOperator op = element.getOperator();
+            final CigarOperator op = getCigarElementOperator(i);
             if (isClippingOperator(op)) {
                 if (op == CigarOperator.H) {
-                    if (i != 0 && i != cigarElements.size() - 1) {
+                    if (i != 0 && i != numElements - 1) {
                         if (ret == null) ret = new ArrayList<SAMValidationError>();
                         ret.add(new SAMValidationError(SAMValidationError.Type.INVALID_CIGAR,
                                 "Hard clipping operator not at start or end of CIGAR", readName, recordNumber));
                     }
                 } else {
                     if (op != CigarOperator.S) throw new IllegalStateException("Should never happen: " + op.name());
-                    if (i == 0 || i == cigarElements.size() - 1) {
+                    if (i == 0 || i == numElements - 1) {
                         // Soft clip at either end is fine
                     } else if (i == 1) {
-                        if (cigarElements.size() == 3 && cigarElements.get(2).getOperator() == CigarOperator.H) {
+                        if (numElements == 3 && getCigarElementOperator(2) == CigarOperator.H) {
                             // Handle funky special case in which S operator is both one from the beginning and one
                             // from the end.
-                        } else if (cigarElements.get(0).getOperator() != CigarOperator.H) {
+                        } else if (getCigarElementOperator(0) != CigarOperator.H) {
                             if (ret == null) ret = new ArrayList<SAMValidationError>();
                             ret.add(new SAMValidationError(SAMValidationError.Type.INVALID_CIGAR,
                                 "Soft clipping CIGAR operator can only be inside of hard clipping operator",
                                     readName, recordNumber));
                         }
-                    } else if (i == cigarElements.size() - 2) {
-                        if (cigarElements.get(cigarElements.size() - 1).getOperator() != CigarOperator.H) {
+                    } else if (i == numElements - 2) {
+                        if (getCigarElementOperator(numElements - 1) != CigarOperator.H) {
                             if (ret == null) ret = new ArrayList<SAMValidationError>();
                             ret.add(new SAMValidationError(SAMValidationError.Type.INVALID_CIGAR,
                                 "Soft clipping CIGAR operator can only be inside of hard clipping operator",
@@ -190,8 +339,8 @@ public class Cigar implements Serializable {
                 seenRealOperator = true;
                 // There should be an M or P operator between any pair of IDN operators
                 if (isInDelOperator(op)) {
-                    for (int j = i+1; j < cigarElements.size(); ++j) {
-                        final CigarOperator nextOperator = cigarElements.get(j).getOperator();
+                    for (int j = i+1; j < numElements; ++j) {
+                        final CigarOperator nextOperator = getCigarElementOperator(j);
                         // Allow
                         if ((isRealOperator(nextOperator) && !isInDelOperator(nextOperator)) || isPaddingOperator(nextOperator)) {
                             break;
@@ -210,12 +359,12 @@ public class Cigar implements Serializable {
                      * in a padded reference, it is necessary to precede the read with padding so that alignment start refers to a
                      * position on the unpadded reference.
                     */
-                } else if (i == cigarElements.size() - 1) {
+                } else if (i == numElements - 1) {
                     if (ret == null) ret = new ArrayList<SAMValidationError>();
                     ret.add(new SAMValidationError(SAMValidationError.Type.INVALID_CIGAR,
                             "Padding operator not valid at end of CIGAR", readName, recordNumber));
-                } else if (!isRealOperator(cigarElements.get(i-1).getOperator()) ||
-                        !isRealOperator(cigarElements.get(i+1).getOperator())) {
+                } else if (!isRealOperator(getCigarElementOperator(i-1)) ||
+                        !isRealOperator(getCigarElementOperator(i+1))) {
                     if (ret == null) ret = new ArrayList<SAMValidationError>();
                     ret.add(new SAMValidationError(SAMValidationError.Type.INVALID_CIGAR,
                             "Padding operator not between real operators in CIGAR", readName, recordNumber));
@@ -253,16 +402,20 @@ public class Cigar implements Serializable {
         if (!(o instanceof Cigar)) return false;
 
         final Cigar cigar = (Cigar) o;
-
-        if (cigarElements != null ? !cigarElements.equals(cigar.cigarElements) : cigar.cigarElements != null)
-            return false;
-
+        if (numElements != cigar.numElements) return false;
+        for (int i = 0; i < numElements; ++i) {
+            if (packedElements[i] != cigar.packedElements[i]) return false;
+        }
         return true;
     }
 
     @Override
     public int hashCode() {
-        return cigarElements != null ? cigarElements.hashCode() : 0;
+        int result = 1;
+        for (int i = 0; i < numElements; ++i) {
+            result = 31 * result + packedElements[i];
+        }
+        return result;
     }
 
     public String toString() {
@@ -0,0 +1,206 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * An iterator of sets of duplicates, as defined by SAMRecordDuplicateComparator, over coordinate-sorted input.
+ * <p/>
+ * Unlike {@link DuplicateSetIterator}, this does not require the input to be sorted in duplicate order, and never
+ * re-sorts the whole input.  Instead records are buffered in a sliding window keyed by their 5' unclipped position
+ * (the unclipped start for forward-strand records and the unclipped end for reverse-strand records).  A record's
+ * alignment start is at most its number of leading clipped bases past its 5' position, so once the input has moved
+ * more than maxClippedBases past a 5' position no further record can have it, and the records buffered at that
+ * position are sorted by SAMRecordDuplicateComparator and grouped into duplicate sets exactly as DuplicateSetIterator
+ * would group them.
+ * <p/>
+ * Duplicate sets are returned in order of reference and 5' position rather than in duplicate order, so
+ * sets from different libraries at the same position may be interleaved differently than by DuplicateSetIterator.
+ * As with SAMRecordDuplicateComparator, paired records with both ends mapped must carry the mate CIGAR (MC) tag.
+ */
+public class CoordinateSortedDuplicateSetIterator implements CloseableIterator<DuplicateSet> {
+    /** Large enough for the clipping seen on reads from current short-read platforms. */
+    public static final int DEFAULT_MAX_CLIPPED_BASES = 1000;
+
+    private final CloseableIterator<SAMRecord> wrappedIterator;
+    private final SAMRecordDuplicateComparator comparator;
+    private final int maxClippedBases;
+
+    /** Records waiting for their 5' position to leave the window, in (5' position, duplicate) order. */
+    private final PriorityQueue<PendingRecord> pending;
+    /** Duplicate sets that are complete and waiting to be returned. */
+    private final Queue<DuplicateSet> ready = new LinkedList<DuplicateSet>();
+
+    private int currentReferenceIndex = -1;
+    private boolean seenUnplacedRecords = false;
+    private int lastAlignmentStart = 0;
+
+    public CoordinateSortedDuplicateSetIterator(final CloseableIterator<SAMRecord> iterator, final SAMFileHeader header) {
+        this(iterator, header, DEFAULT_MAX_CLIPPED_BASES);
+    }
+
+    /**
+     * @param iterator        coordinate-sorted records
+     * @param header          the header of the input, used to find the libraries
+     * @param maxClippedBases the largest number of clipped bases at the 5' end of any record in the input.
+     *                        Larger values buffer more records.  A SAMException is thrown during iteration
+     *                        if a record is clipped by more than this.
+     */
+    public CoordinateSortedDuplicateSetIterator(final CloseableIterator<SAMRecord> iterator, final SAMFileHeader header,
+                                                final int maxClippedBases) {
+        if (header.getSortOrder() != SAMFileHeader.SortOrder.coordinate) {
+            throw new SAMException("CoordinateSortedDuplicateSetIterator requires coordinate sorted input, but sort order is " + header.getSortOrder());
+        }
+        if (maxClippedBases < 0) throw new IllegalArgumentException("maxClippedBases must be >= 0");
+        this.wrappedIterator = iterator;
+        this.comparator = new SAMRecordDuplicateComparator(Collections.singletonList(header));
+        this.maxClippedBases = maxClippedBases;
+        this.pending = new PriorityQueue<PendingRecord>(1024, new Comparator<PendingRecord>() {
+            public int compare(final PendingRecord lhs, final PendingRecord rhs) {
+                if (lhs.fivePrimePosition != rhs.fivePrimePosition) {
+                    return lhs.fivePrimePosition < rhs.fivePrimePosition ? -1 : 1;
+                }
+                return comparator.compare(lhs.record, rhs.record);
+            }
+        });
+    }
+
+    public void setScoringStrategy(final DuplicateScoringStrategy.ScoringStrategy scoringStrategy) {
+        this.comparator.setScoringStrategy(scoringStrategy);
+    }
+
+    public boolean hasNext() {
+        while (ready.isEmpty()) {
+            if (wrappedIterator.hasNext()) {
+                accept(wrappedIterator.next());
+            } else if (!pending.isEmpty()) {
+                flushPositionsBefore(Integer.MAX_VALUE);
+            } else {
+                break;
+            }
+        }
+        return !ready.isEmpty();
+    }
+
+    public DuplicateSet next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return ready.remove();
+    }
+
+    public void close() { wrappedIterator.close(); }
+
+    public void remove() { throw new UnsupportedOperationException(); }
+
+    /** Adds a record to the window, first completing any 5' positions that it proves can no longer be seen. */
+    private void accept(final SAMRecord record) {
+        final int referenceIndex = record.getReferenceIndex();
+
+        // Unplaced unmapped reads are at the end of the input and are never duplicates of anything
+        if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            flushPositionsBefore(Integer.MAX_VALUE);
+            seenUnplacedRecords = true;
+            final DuplicateSet singleton = new DuplicateSet(comparator);
+            singleton.add(record);
+            ready.add(singleton);
+            return;
+        }
+
+        if (referenceIndex != currentReferenceIndex) {
+            if (seenUnplacedRecords || referenceIndex < currentReferenceIndex) {
+                throw new SAMException("The input records were not coordinate sorted at " + record.getSAMString());
+            }
+            flushPositionsBefore(Integer.MAX_VALUE);
+            currentReferenceIndex = referenceIndex;
+            lastAlignmentStart = 0;
+        }
+
+        final int alignmentStart = record.getAlignmentStart();
+        if (alignmentStart < lastAlignmentStart) {
+            throw new SAMException("The input records were not coordinate sorted at " + record.getSAMString());
+        }
+        lastAlignmentStart = alignmentStart;
+
+        final int fivePrimePosition = record.getReadUnmappedFlag() ? alignmentStart :
+                record.getReadNegativeStrandFlag() ? record.getUnclippedEnd() : record.getUnclippedStart();
+        if (alignmentStart - fivePrimePosition > maxClippedBases) {
+            throw new SAMException("Record is clipped by more than the maximum of " + maxClippedBases +
+                    " bases; increase maxClippedBases: " + record.getSAMString());
+        }
+
+        flushPositionsBefore(alignmentStart - maxClippedBases);
+        pending.add(new PendingRecord(record, fivePrimePosition));
+    }
+
+    /** Groups the records at each pending 5' position less than the given position into duplicate sets. */
+    private void flushPositionsBefore(final int position) {
+        final List<SAMRecord> records = new ArrayList<SAMRecord>();
+        while (!pending.isEmpty() && pending.peek().fivePrimePosition < position) {
+            final int fivePrimePosition = pending.peek().fivePrimePosition;
+            records.clear();
+            while (!pending.isEmpty() && pending.peek().fivePrimePosition == fivePrimePosition) {
+                records.add(pending.remove().record);
+            }
+            addDuplicateSets(records);
+        }
+    }
+
+    /** Splits records that are sorted by the duplicate comparator into duplicate sets, as DuplicateSetIterator does. */
+    private void addDuplicateSets(final List<SAMRecord> records) {
+        DuplicateSet duplicateSet = new DuplicateSet(comparator);
+        for (final SAMRecord record : records) {
+            if (!duplicateSet.isEmpty()) {
+                final SAMRecord representative = duplicateSet.getRepresentative();
+                if (representative.getReadUnmappedFlag() || representative.isSecondaryOrSupplementary() ||
+                        duplicateSet.add(record) != 0) {
+                    ready.add(duplicateSet);
+                    duplicateSet = new DuplicateSet(comparator);
+                } else {
+                    continue; // it was added to the current set
+                }
+            }
+            duplicateSet.add(record);
+        }
+        if (!duplicateSet.isEmpty()) ready.add(duplicateSet);
+    }
+
+    private static class PendingRecord {
+        final SAMRecord record;
+        final int fivePrimePosition;
+
+        PendingRecord(final SAMRecord record, final int fivePrimePosition) {
+            this.record = record;
+            this.fivePrimePosition = fivePrimePosition;
+        }
+    }
+}
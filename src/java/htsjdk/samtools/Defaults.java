@@ -18,6 +18,18 @@ public class Defaults {
     /** Should asynchronous I/O be used when writing out SAM and BAM files (one thread per file).  Default = false. */
     public static final boolean USE_ASYNC_IO;
 
+    /**
+     * Number of threads used to parse SAM text files read with {@link SamReaderFactory.Option#PARSE_SAM_IN_PARALLEL}.
+     * Default = the number of available processors.
+     */
+    public static final int SAM_PARSING_THREADS;
+
+    /**
+     * The number of threads on which CRAM containers are decoded when
+     * {@link SamReaderFactory.Option#DECODE_CRAM_IN_PARALLEL} is set.  Defaults to the number of processors.
+     */
+    public static final int CRAM_DECODING_THREADS;
+
     /** Compresion level to be used for writing BAM and other block-compressed outputs.  Default = 5. */
     public static final int COMPRESSION_LEVEL;
 
@@ -65,11 +77,38 @@ public class Defaults {
      */
     public static final String EBI_REFERENCE_SEVICE_URL_MASK;
 
+    /**
+     * The maximum size in megabytes of the reference cache shared by CRAM readers and writers.  Defaults to a
+     * quarter of the maximum heap size.
+     */
+    public static final int REFERENCE_CACHE_SIZE_MB;
+
+    /**
+     * The pattern of the paths of an on-disk cache of reference sequences named by MD5, in the form of samtools'
+     * REF_CACHE, e.g. /home/user/.cache/hts-ref/%2s/%2s/%s.  Defaults to the REF_CACHE environment variable.
+     * If neither is set, there is no disk cache.
+     */
+    public static final String REF_CACHE;
+
+    /**
+     * Patterns like {@link #REF_CACHE}, separated by the path separator, of further locations searched for
+     * reference sequences by MD5.  Defaults to the REF_PATH environment variable.  URL entries are ignored.
+     */
+    public static final String REF_PATH;
+
+    /**
+     * The maximum size in megabytes of the disk cache given by {@link #REF_CACHE}, beyond which the least
+     * recently used sequences are deleted.  0 means no limit.
+     */
+    public static final int REF_CACHE_SIZE_MB;
+
 
     static {
         CREATE_INDEX = getBooleanProperty("create_index", false);
         CREATE_MD5 = getBooleanProperty("create_md5", false);
         USE_ASYNC_IO = getBooleanProperty("use_async_io", false);
+        SAM_PARSING_THREADS = getIntProperty("sam_parsing_threads", Runtime.getRuntime().availableProcessors());
+        CRAM_DECODING_THREADS = getIntProperty("cram_decoding_threads", Runtime.getRuntime().availableProcessors());
         COMPRESSION_LEVEL = getIntProperty("compression_level", 5);
         BUFFER_SIZE = getIntProperty("buffer_size", 1024 * 128);
         TRY_USE_INTEL_DEFLATER = getBooleanProperty("try_use_intel_deflater", true);
@@ -82,6 +121,11 @@ public class Defaults {
         REFERENCE_FASTA = getFileProperty("reference_fasta", null);
         USE_CRAM_REF_DOWNLOAD = getBooleanProperty("use_cram_ref_download", false);
         EBI_REFERENCE_SEVICE_URL_MASK = "http://www.ebi.ac.uk/ena/cram/md5/%s";
+        REFERENCE_CACHE_SIZE_MB = getIntProperty("reference_cache_size_mb",
+                (int) Math.min(Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024), Integer.MAX_VALUE));
+        REF_CACHE = getStringProperty("ref_cache", System.getenv("REF_CACHE"));
+        REF_PATH = getStringProperty("ref_path", System.getenv("REF_PATH"));
+        REF_CACHE_SIZE_MB = getIntProperty("ref_cache_size_mb", 0);
         CUSTOM_READER_FACTORY = getStringProperty("custom_reader", "");
     }
 
@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Murmur3;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An iterator of SAMRecords that downsamples deterministically.  Unlike {@link DownsamplingIterator}, whether a
+ * record is kept depends only on a hash of its read name and the seed, so all records for a read name (mates,
+ * secondary and supplementary alignments) are kept or discarded together without any per-name state, and the same
+ * records are kept every time, whether the input is processed whole or split into shards processed independently.
+ * <p/>
+ * By default the fraction of read names kept is only approximately the requested fraction.  {@link #exactFraction}
+ * makes a first pass over the input to build a histogram of hash values and a second to pick the names whose hash
+ * falls at the cut-off, and then keeps exactly the requested fraction of read names.
+ */
+public class HashDownsamplingIterator implements CloseableIterator<SAMRecord>, Iterable<SAMRecord> {
+    /** The number of bits of the hash used to form the histogram in exact-fraction mode. */
+    private static final int HISTOGRAM_BITS = 16;
+    private static final int HISTOGRAM_SHIFT = 32 - HISTOGRAM_BITS;
+
+    private final Iterator<SAMRecord> underlyingIterator;
+    private final Murmur3 hasher;
+    /** Unsigned hash values below this are kept. */
+    private final long threshold;
+
+    /** In exact-fraction mode, the histogram bucket at the cut-off, or -1 when not in that mode. */
+    private final int boundaryBucket;
+    /** The read names kept from the boundary bucket. */
+    private final Set<String> boundaryNames;
+
+    private SAMRecord nextRecord;
+    private long totalReads, keptReads;
+    private boolean allowSecondaryAlignments = false;
+    private boolean allowSupplementalAlignments = false;
+    private boolean includeNoRefReads = true;
+
+    /**
+     * Constructs a downsampling iterator upon the supplied iterator that keeps read names whose hash, given the seed,
+     * falls in the lowest probabilityOfKeeping of the hash space.
+     */
+    public HashDownsamplingIterator(final Iterator<SAMRecord> iterator, final int seed, final double probabilityOfKeeping) {
+        this(iterator, seed, thresholdFor(probabilityOfKeeping), -1, Collections.<String>emptySet());
+    }
+
+    private HashDownsamplingIterator(final Iterator<SAMRecord> iterator, final int seed, final long threshold,
+                                     final int boundaryBucket, final Set<String> boundaryNames) {
+        this.underlyingIterator = iterator;
+        this.hasher = new Murmur3(seed);
+        this.threshold = threshold;
+        this.boundaryBucket = boundaryBucket;
+        this.boundaryNames = boundaryNames;
+    }
+
+    /**
+     * Constructs a downsampling iterator that keeps exactly round(fraction * N) of the N read names with a primary
+     * record in the input.  The input is iterated three times: twice here, to count hash values and then to pick the
+     * names kept at the cut-off, and again as the returned iterator is consumed.  If the input's iterators are
+     * closeable, the first two are closed after use.
+     *
+     * A name is counted towards N through its unpaired or first-of-pair primary record.  Other records, such as
+     * secondary and supplementary records, or second-of-pair records whose mates are missing, are not counted, and
+     * so follow the decision made for their read name.  Because the names kept at the cut-off depend on the order in which they are seen, this
+     * mode is deterministic for a given input but, unlike the default mode, does not give the same answer when the
+     * input is split into shards.
+     */
+    public static HashDownsamplingIterator exactFraction(final Iterable<SAMRecord> input, final int seed, final double fraction) {
+        final long[] histogram = new long[1 << HISTOGRAM_BITS];
+        final Murmur3 hasher = new Murmur3(seed);
+        long totalNames = 0;
+
+        final Iterator<SAMRecord> firstPass = input.iterator();
+        try {
+            while (firstPass.hasNext()) {
+                final SAMRecord rec = firstPass.next();
+                if (!isCounted(rec)) continue;
+                ++histogram[(int) (unsignedHash(hasher, rec.getReadName()) >>> HISTOGRAM_SHIFT)];
+                ++totalNames;
+            }
+        } finally {
+            CloserUtil.close(firstPass);
+        }
+
+        checkFraction(fraction);
+        long remaining = Math.round(fraction * totalNames);
+        int bucket = 0;
+        while (bucket < histogram.length && remaining >= histogram[bucket]) {
+            remaining -= histogram[bucket];
+            ++bucket;
+        }
+
+        if (bucket == histogram.length) {
+            return new HashDownsamplingIterator(input.iterator(), seed, 1L << 32, -1, Collections.<String>emptySet());
+        }
+
+        // The first names counted at the cut-off are kept, so that only counted records take up the quota
+        final Set<String> boundaryNames = new HashSet<String>();
+        if (remaining > 0) {
+            final Iterator<SAMRecord> secondPass = input.iterator();
+            try {
+                while (boundaryNames.size() < remaining && secondPass.hasNext()) {
+                    final SAMRecord rec = secondPass.next();
+                    if (isCounted(rec) && unsignedHash(hasher, rec.getReadName()) >>> HISTOGRAM_SHIFT == bucket) {
+                        boundaryNames.add(rec.getReadName());
+                    }
+                }
+            } finally {
+                CloserUtil.close(secondPass);
+            }
+        }
+        return new HashDownsamplingIterator(input.iterator(), seed, (long) bucket << HISTOGRAM_SHIFT, bucket, boundaryNames);
+    }
+
+    /** Returns true if the record stands for its read name when counting names in exact-fraction mode. */
+    private static boolean isCounted(final SAMRecord rec) {
+        return !rec.isSecondaryOrSupplementary() && (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag());
+    }
+
+    private static void checkFraction(final double fraction) {
+        if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("Fraction must be between 0 and 1: " + fraction);
+    }
+
+    private static long thresholdFor(final double probabilityOfKeeping) {
+        checkFraction(probabilityOfKeeping);
+        return (long) Math.ceil(probabilityOfKeeping * (1L << 32));
+    }
+
+    private static long unsignedHash(final Murmur3 hasher, final String readName) {
+        return hasher.hashUnencodedChars(readName) & 0xffffffffL;
+    }
+
+    /** Sets whether or not secondary alignments are allowed (true) or all discarded (false). */
+    public HashDownsamplingIterator setAllowSecondaryAlignments(final boolean allowSecondaryAlignments) {
+        this.allowSecondaryAlignments = allowSecondaryAlignments;
+        return this;
+    }
+
+    /** Sets whether or not supplemental alignments are allowed (true) or all discarded (false). */
+    public HashDownsamplingIterator setAllowSupplementalAlignments(final boolean allowSupplementalAlignments) {
+        this.allowSupplementalAlignments = allowSupplementalAlignments;
+        return this;
+    }
+
+    /** Sets whether the iterator will stop when no-ref reads are encountered, or keep downsampling through them. */
+    public HashDownsamplingIterator setIncludeNoRefReads(final boolean includeNoRefReads) {
+        this.includeNoRefReads = includeNoRefReads;
+        return this;
+    }
+
+    /** Returns the total number of reads/records considered up to the point when the method is called. */
+    public long getTotalReads() { return totalReads; }
+
+    /** Returns the number of reads/records kept post-downsampling up to the point when the method is called. */
+    public long getKeptReads() { return keptReads; }
+
+    /** Simple implementation of iterable that returns this iterator. */
+    @Override public Iterator<SAMRecord> iterator() { return this; }
+
+    /** Returns true if records with the given read name are kept. */
+    private boolean isKept(final String readName) {
+        final long hash = unsignedHash(hasher, readName);
+        if (hash < threshold) return true;
+        if (boundaryBucket == -1 || (hash >>> HISTOGRAM_SHIFT) != boundaryBucket) return false;
+        // At the cut-off in exact-fraction mode
+        return boundaryNames.contains(readName);
+    }
+
+    /**
+     * Clears the current record and attempts to advance through the underlying iterator until a
+     * record is kept during downsampling.  If no more records are kept and the end of the input
+     * is reached this.nextRecord will be null.
+     *
+     * @return true if a record is available after advancing, false otherwise
+     */
+    private boolean advance() {
+        this.nextRecord = null;
+
+        while (this.nextRecord == null && this.underlyingIterator.hasNext()) {
+            final SAMRecord rec = this.underlyingIterator.next();
+            if (!this.allowSecondaryAlignments    && rec.getNotPrimaryAlignmentFlag()) continue;
+            if (!this.allowSupplementalAlignments && rec.getSupplementaryAlignmentFlag()) continue;
+            if (!this.includeNoRefReads && rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) break;
+
+            ++totalReads;
+
+            if (isKept(rec.getReadName())) {
+                this.nextRecord = rec;
+                ++keptReads;
+            }
+        }
+
+        return this.nextRecord != null;
+    }
+
+    /** Returns true if there is another record available post-downsampling, false otherwise. */
+    @Override public boolean hasNext() {
+        return this.nextRecord != null || advance();
+    }
+
+    /** Returns the next record from the iterator, or throws an exception if there is no next record. */
+    @Override public SAMRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("Call to next() when hasNext() == false");
+        }
+        final SAMRecord retval = this.nextRecord;
+        this.nextRecord = null;
+        return retval;
+    }
+
+    /** Unsupported operation. */
+    @Override public void remove() {
+        throw new UnsupportedOperationException("remove() is not supported.");
+    }
+
+    @Override public void close() {
+        CloserUtil.close(underlyingIterator);
+    }
+}
@@ -24,24 +24,52 @@
 package htsjdk.samtools;
 
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Provides an iterator interface for merging multiple underlying iterators into a single
  * iterable stream. The underlying iterators/files must all have the same sort order unless
  * the requested output format is unsorted, in which case any combination is valid.
+ * <p/>
+ * The inputs are merged with a loser tree, which needs only log2(k) comparisons per record and,
+ * on ties, returns records from the input that was supplied first.  If {@link #setPrefetch(int)} is
+ * called before iteration starts, each input is read, decoded and has its read group, program group
+ * and sequence indexes remapped on its own thread, into a bounded queue of records.
  */
 public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
-    private final PriorityQueue<ComparableSamRecordIterator> pq;
+    /** The number of records handed from a prefetch thread to the merging thread at a time. */
+    private static final int PREFETCH_BATCH_SIZE = 128;
+    private static final AtomicInteger threadsCreated = new AtomicInteger(0);
+
     private final SamFileHeaderMerger samHeaderMerger;
     private final Collection<SamReader> readers;
     private final SAMFileHeader.SortOrder sortOrder;
     private final SAMRecordComparator comparator;
 
+    /** Iterators supplied up front, or null to iterate over the whole of each reader. */
+    private Map<SamReader, CloseableIterator<SAMRecord>> iterators = null;
+    /** The number of records to read ahead from each input, or 0 to read on the calling thread. */
+    private int prefetchRecords = 0;
+
     private boolean initialized = false;
+    private MergeInput[] inputs;
+    /** The head record of each input, or null once the input is exhausted. */
+    private SAMRecord[] heads;
+    /** tree[0] is the input holding the smallest head record; tree[1..k-1] hold the loser at each internal node. */
+    private int[] tree;
 
     /**
      * Constructs a new merging iterator with the same set of readers and sort order as
@@ -68,8 +96,6 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
         this.comparator = getComparator();
         this.readers = readers;
 
-        this.pq = new PriorityQueue<ComparableSamRecordIterator>(readers.size());
-
         for (final SamReader reader : readers) {
             if (!samHeaderMerger.getHeaders().contains(reader.getFileHeader()))
                 throw new SAMException("All iterators to be merged must be accounted for in the SAM header merger");
@@ -89,48 +115,123 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
      */
     public MergingSamRecordIterator(final SamFileHeaderMerger headerMerger, final Map<SamReader, CloseableIterator<SAMRecord>> iterators, final boolean assumeSorted) {
         this(headerMerger, iterators.keySet(), assumeSorted);
-        for (final Map.Entry<SamReader, CloseableIterator<SAMRecord>> mapping : iterators.entrySet())
-            addIfNotEmpty(new ComparableSamRecordIterator(mapping.getKey(), mapping.getValue(), comparator));
-        initialized = true;
+        this.iterators = new LinkedHashMap<SamReader, CloseableIterator<SAMRecord>>(iterators);
+    }
+
+    /**
+     * Reads each input ahead on its own daemon thread, which also remaps read groups, program groups and
+     * sequence indexes, so that the calling thread only has to merge.  Must be called before iteration starts.
+     *
+     * @param recordsPerInput the maximum number of records to hold in memory for each input.
+     */
+    public MergingSamRecordIterator setPrefetch(final int recordsPerInput) {
+        if (initialized) throw new IllegalStateException("Prefetch must be set before iteration starts");
+        if (recordsPerInput < 0) throw new IllegalArgumentException("recordsPerInput must not be negative: " + recordsPerInput);
+        this.prefetchRecords = recordsPerInput;
+        return this;
     }
 
     private void startIterationIfRequired() {
         if (initialized)
             return;
-        for (final SamReader reader : readers)
-            addIfNotEmpty(new ComparableSamRecordIterator(reader, reader.iterator(), comparator));
         initialized = true;
+
+        if (iterators == null) {
+            iterators = new LinkedHashMap<SamReader, CloseableIterator<SAMRecord>>();
+            for (final SamReader reader : readers) iterators.put(reader, reader.iterator());
+        }
+
+        final int k = iterators.size();
+        inputs = new MergeInput[k];
+        heads = new SAMRecord[k];
+        tree = new int[Math.max(k, 1)];
+        int i = 0;
+        for (final Map.Entry<SamReader, CloseableIterator<SAMRecord>> mapping : iterators.entrySet()) {
+            inputs[i++] = prefetchRecords > 0
+                    ? new PrefetchingMergeInput(mapping.getKey(), mapping.getValue())
+                    : new MergeInput(mapping.getKey(), mapping.getValue());
+        }
+        iterators = null;
+
+        for (i = 0; i < k; ++i) heads[i] = inputs[i].nextOrNull();
+        if (k > 0) tree[0] = buildTree(1);
+    }
+
+    /** Builds the subtree rooted at node, recording the loser at each internal node, and returns its winner. */
+    private int buildTree(final int node) {
+        final int k = inputs.length;
+        if (node >= k) return node - k;
+        final int left = buildTree(2 * node);
+        final int right = buildTree(2 * node + 1);
+        if (beats(left, right)) {
+            tree[node] = right;
+            return left;
+        } else {
+            tree[node] = left;
+            return right;
+        }
+    }
+
+    /** Returns true if the head of input a should be returned before the head of input b. */
+    private boolean beats(final int a, final int b) {
+        if (heads[a] == null) return heads[b] == null && a < b;
+        if (heads[b] == null) return true;
+        final int cmp = comparator.compare(heads[a], heads[b]);
+        return cmp < 0 || (cmp == 0 && a < b);
     }
 
     /**
      * Close down all open iterators.
      */
     public void close() {
-        // Iterators not in the priority queue have already been closed; only close down the iterators that are still in the priority queue.
-        for (CloseableIterator<SAMRecord> iterator : pq)
-            iterator.close();
+        if (!initialized) {
+            if (iterators != null) {
+                for (final CloseableIterator<SAMRecord> iterator : iterators.values()) iterator.close();
+            }
+            return;
+        }
+        for (final MergeInput input : inputs) input.close();
     }
 
     /** Returns true if any of the underlying iterators has more records, otherwise false. */
     public boolean hasNext() {
         startIterationIfRequired();
-        return !this.pq.isEmpty();
+        return inputs.length > 0 && heads[tree[0]] != null;
     }
 
     /** Returns the next record from the top most iterator during merging. */
     public SAMRecord next() {
-        startIterationIfRequired();
+        if (!hasNext()) throw new NoSuchElementException("Call to next() when hasNext() == false");
+
+        final int k = inputs.length;
+        int winner = tree[0];
+        final SAMRecord record = heads[winner];
+        heads[winner] = inputs[winner].nextOrNull();
+
+        // Replay the matches on the path from the winner's leaf to the root
+        for (int node = (winner + k) / 2; node > 0; node /= 2) {
+            if (beats(tree[node], winner)) {
+                final int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+        return record;
+    }
 
-        final ComparableSamRecordIterator iterator = this.pq.poll();
-        final SAMRecord record = iterator.next();
-        addIfNotEmpty(iterator);
+    /**
+     * Sets the merged header on the record and remaps its read group, program group and sequence indexes
+     * from those of the header of the reader it came from.
+     */
+    private void fixRecord(final SAMRecord record, final SAMFileHeader originalHeader) {
         record.setHeader(this.samHeaderMerger.getMergedHeader());
 
         // Fix the read group if needs be
         if (this.samHeaderMerger.hasReadGroupCollisions()) {
             final String oldGroupId = (String) record.getAttribute(ReservedTagConstants.READ_GROUP_ID);
             if (oldGroupId != null) {
-                final String newGroupId = this.samHeaderMerger.getReadGroupId(iterator.getReader().getFileHeader(), oldGroupId);
+                final String newGroupId = this.samHeaderMerger.getReadGroupId(originalHeader, oldGroupId);
                 record.setAttribute(ReservedTagConstants.READ_GROUP_ID, newGroupId);
             }
         }
@@ -139,7 +240,7 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
         if (this.samHeaderMerger.hasProgramGroupCollisions()) {
             final String oldGroupId = (String) record.getAttribute(ReservedTagConstants.PROGRAM_GROUP_ID);
             if (oldGroupId != null) {
-                final String newGroupId = this.samHeaderMerger.getProgramGroupId(iterator.getReader().getFileHeader(), oldGroupId);
+                final String newGroupId = this.samHeaderMerger.getProgramGroupId(originalHeader, oldGroupId);
                 record.setAttribute(ReservedTagConstants.PROGRAM_GROUP_ID, newGroupId);
             }
         }
@@ -147,27 +248,13 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
         // Fix up the sequence indexes if needs be
         if (this.samHeaderMerger.hasMergedSequenceDictionary()) {
             if (record.getReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                record.setReferenceIndex(this.samHeaderMerger.getMergedSequenceIndex(iterator.getReader().getFileHeader(), record.getReferenceIndex()));
+                record.setReferenceIndex(this.samHeaderMerger.getMergedSequenceIndex(originalHeader, record.getReferenceIndex()));
             }
 
             if (record.getReadPairedFlag() && record.getMateReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                record.setMateReferenceIndex(this.samHeaderMerger.getMergedSequenceIndex(iterator.getReader().getFileHeader(), record.getMateReferenceIndex()));
+                record.setMateReferenceIndex(this.samHeaderMerger.getMergedSequenceIndex(originalHeader, record.getMateReferenceIndex()));
             }
         }
-
-        return record;
-    }
-
-    /**
-     * Adds iterator to priority queue. If the iterator has more records it is added
-     * otherwise it is closed and not added.
-     */
-    private void addIfNotEmpty(final ComparableSamRecordIterator iterator) {
-        if (iterator.hasNext()) {
-            pq.offer(iterator);
-        } else {
-            iterator.close();
-        }
     }
 
     /** Unsupported operation. */
@@ -207,9 +294,9 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
     }
 
     /**
-     * Ugh.  Basically does a regular coordinate compare, but looks up the sequence indices in the merged
-     * sequence dictionary.  I hate the fact that this extends SAMRecordCoordinateComparator, but it avoids
-     * more copy & paste.
+     * Ugh.  Basically does a regular coordinate compare, but falls back on the mate's sequence for unmapped
+     * reads.  Records are compared after their sequence indices have been remapped to the merged sequence
+     * dictionary.  I hate the fact that this extends SAMRecordCoordinateComparator, but it avoids more copy & paste.
      */
     private class MergedSequenceDictionaryCoordinateOrderComparator extends SAMRecordCoordinateComparator {
 
@@ -234,12 +321,137 @@ public class MergingSamRecordIterator implements CloseableIterator<SAMRecord> {
 
         private int getReferenceIndex(final SAMRecord samRecord) {
             if (samRecord.getReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                return samHeaderMerger.getMergedSequenceIndex(samRecord.getHeader(), samRecord.getReferenceIndex());
+                return samRecord.getReferenceIndex();
             }
             if (samRecord.getMateReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                return samHeaderMerger.getMergedSequenceIndex(samRecord.getHeader(), samRecord.getMateReferenceIndex());
+                return samRecord.getMateReferenceIndex();
             }
             return SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
         }
     }
+
+    /** One input to the merge, read on the merging thread. */
+    private class MergeInput {
+        protected final SAMFileHeader originalHeader;
+        protected final CloseableIterator<SAMRecord> iterator;
+        private boolean closed = false;
+
+        MergeInput(final SamReader reader, final CloseableIterator<SAMRecord> iterator) {
+            this.originalHeader = reader.getFileHeader();
+            this.iterator = iterator;
+        }
+
+        /** Returns the next record, already fixed up for the merged header, or null and closes the input when exhausted. */
+        SAMRecord nextOrNull() {
+            if (!closed && iterator.hasNext()) {
+                final SAMRecord record = iterator.next();
+                fixRecord(record, originalHeader);
+                return record;
+            }
+            close();
+            return null;
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                iterator.close();
+            }
+        }
+    }
+
+    /**
+     * One input to the merge, read ahead on its own daemon thread into a bounded queue of batches of records.
+     * The thread closes the underlying iterator when it finishes, whether at the end of the input, on error or
+     * when the merge is closed early.
+     */
+    private class PrefetchingMergeInput extends MergeInput implements Runnable {
+        private final BlockingQueue<List<SAMRecord>> queue;
+        private final AtomicReference<Throwable> ex = new AtomicReference<Throwable>(null);
+        private final int batchSize;
+        private final Thread worker;
+        private volatile boolean stopped = false;
+        private Iterator<SAMRecord> batch = Collections.<SAMRecord>emptyList().iterator();
+        private boolean finished = false;
+
+        PrefetchingMergeInput(final SamReader reader, final CloseableIterator<SAMRecord> iterator) {
+            super(reader, iterator);
+            this.batchSize = Math.min(prefetchRecords, PREFETCH_BATCH_SIZE);
+            this.queue = new ArrayBlockingQueue<List<SAMRecord>>(Math.max(1, prefetchRecords / batchSize));
+            this.worker = new Thread(this, "MergingSamRecordIteratorThread-" + threadsCreated.getAndIncrement());
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        public void run() {
+            try {
+                List<SAMRecord> records = new ArrayList<SAMRecord>(batchSize);
+                while (!stopped && iterator.hasNext()) {
+                    final SAMRecord record = iterator.next();
+                    fixRecord(record, originalHeader);
+                    records.add(record);
+                    if (records.size() == batchSize) {
+                        queue.put(records);
+                        records = new ArrayList<SAMRecord>(batchSize);
+                    }
+                }
+                if (!records.isEmpty()) queue.put(records);
+            } catch (final InterruptedException ie) {
+                /* Closed early; nothing more to read. */
+            } catch (final Throwable t) {
+                ex.compareAndSet(null, t);
+            } finally {
+                CloserUtil.close(iterator);
+                // An empty batch marks the end of the input
+                try { queue.put(Collections.<SAMRecord>emptyList()); }
+                catch (final InterruptedException ie) { /* Closed early; nobody is waiting. */ }
+            }
+        }
+
+        @Override
+        SAMRecord nextOrNull() {
+            while (!batch.hasNext()) {
+                if (finished) return null;
+                final List<SAMRecord> records;
+                try { records = queue.take(); }
+                catch (final InterruptedException ie) { throw new RuntimeException("Interrupted waiting for records to merge.", ie); }
+                if (records.isEmpty()) {
+                    finished = true;
+                    checkAndRethrow();
+                    return null;
+                }
+                batch = records.iterator();
+            }
+            return batch.next();
+        }
+
+        /**
+         * Rethrows an exception raised on the prefetch thread as an Error or RuntimeException as appropriate.
+         */
+        private void checkAndRethrow() {
+            final Throwable t = this.ex.get();
+            if (t != null) {
+                if (t instanceof Error) throw (Error) t;
+                if (t instanceof RuntimeException) throw (RuntimeException) t;
+                else throw new RuntimeException(t);
+            }
+        }
+
+        @Override
+        void close() {
+            if (!worker.isAlive()) return;
+            stopped = true;
+            worker.interrupt();
+            try {
+                // Keep the queue empty so that the worker is never left blocked trying to add to it
+                while (worker.isAlive()) {
+                    queue.clear();
+                    worker.join(100);
+                }
+            } catch (final InterruptedException ie) {
+                throw new RuntimeException("Interrupted waiting on prefetch thread.", ie);
+            }
+            queue.clear();
+        }
+    }
 }
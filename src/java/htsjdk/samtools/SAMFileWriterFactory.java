@@ -47,6 +47,8 @@ public class SAMFileWriterFactory {
     private boolean useAsyncIo = Defaults.USE_ASYNC_IO;
     private int asyncOutputBufferSize = AsyncSAMFileWriter.DEFAULT_QUEUE_SIZE;
     private int bufferSize = Defaults.BUFFER_SIZE;
+    private int samFormattingThreads = 1;
+    private int cramEncodingThreads = 1;
     private File tmpDir;
 
 
@@ -136,6 +138,28 @@ public class SAMFileWriterFactory {
         return this;
     }
 
+    /**
+     * Sets the number of threads used to format records by the SAM text writers subsequently created.
+     * Default value: 1, i.e. records are formatted on the thread that writes them.
+     *
+     * @see SAMTextWriter#setFormattingThreads(int)
+     */
+    public SAMFileWriterFactory setSamFormattingThreads(final int samFormattingThreads) {
+        this.samFormattingThreads = samFormattingThreads;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads used to build and compress containers by the CRAM writers subsequently created.
+     * Default value: 1, i.e. containers are built on the thread that writes them.
+     *
+     * @see CRAMFileWriter#setEncodingThreads(int)
+     */
+    public SAMFileWriterFactory setCramEncodingThreads(final int cramEncodingThreads) {
+        this.cramEncodingThreads = cramEncodingThreads;
+        return this;
+    }
+
     /**
      * Set the temporary directory to use when sort data.
      *
@@ -213,6 +237,7 @@ public class SAMFileWriterFactory {
                     ? new SAMTextWriter(new Md5CalculatingOutputStream(new FileOutputStream(outputFile, false),
                     new File(outputFile.getAbsolutePath() + ".md5")))
                     : new SAMTextWriter(outputFile);
+            ret.setFormattingThreads(samFormattingThreads);
             ret.setSortOrder(header.getSortOrder(), presorted);
             if (maxRecordsInRam != null) {
                 ret.setMaxRecordsInRam(maxRecordsInRam);
@@ -236,7 +261,9 @@ public class SAMFileWriterFactory {
      *                  caller must buffer if desired.  Note that PrintStream is buffered.
      */
     public SAMFileWriter makeSAMWriter(final SAMFileHeader header, final boolean presorted, final OutputStream stream) {
-        return initWriter(header, presorted, false, new SAMTextWriter(stream));
+        final SAMTextWriter ret = new SAMTextWriter(stream);
+        ret.setFormattingThreads(samFormattingThreads);
+        return initWriter(header, presorted, false, ret);
     }
 
     /**
@@ -308,6 +335,7 @@ public class SAMFileWriterFactory {
         final CRAMFileWriter writer = new CRAMFileWriter(stream, new ReferenceSource(referenceFasta), header, null);
         writer.setPreserveReadNames(true);
         writer.setCaptureAllTags(true);
+        writer.setEncodingThreads(cramEncodingThreads);
         return writer;
     }
 
@@ -328,6 +356,7 @@ public class SAMFileWriterFactory {
             final CRAMFileWriter writer = new CRAMFileWriter(new FileOutputStream(outputFile), indexOS, new ReferenceSource(referenceFasta), header, null);
             writer.setPreserveReadNames(true);
             writer.setCaptureAllTags(true);
+            writer.setEncodingThreads(cramEncodingThreads);
             return writer;
         } catch (final IOException ioe) {
             throw new RuntimeIOException("Error opening file: " + outputFile.getAbsolutePath());
@@ -0,0 +1,252 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import java.util.Arrays;
+
+/**
+ * Encodes SAMRecords as lines of SAM text directly into a reusable byte array, without creating Strings for
+ * numbers, bases, qualities or tag values.  The characters of Strings are converted to bytes by casting, as
+ * {@link htsjdk.samtools.util.AsciiWriter} does, so the output is identical to what {@link SAMTextWriter} writes
+ * to a file or stream.
+ * <p/>
+ * This class is not thread-safe.
+ */
+public class SAMLineEncoder {
+    private static final byte FIELD_SEPARATOR = '\t';
+
+    private final TextTagCodec tagCodec = new TextTagCodec();
+    private final SAMTagUtil tagUtil = new SAMTagUtil();
+
+    private byte[] buffer;
+    private int length = 0;
+
+    public SAMLineEncoder() {
+        this(1024);
+    }
+
+    /**
+     * @param initialCapacity Initial size of the buffer in bytes, which grows as required.
+     */
+    public SAMLineEncoder(final int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 64)];
+    }
+
+    /** @return the array holding the encoded lines, which are the first {@link #getLength()} bytes. */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /** @return the number of bytes encoded since the last call to {@link #clear()}. */
+    public int getLength() {
+        return length;
+    }
+
+    /** Discards the encoded lines, keeping the buffer for reuse. */
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * Appends the record to the buffer as a line of SAM text, including the terminating newline.
+     *
+     * @param alignment SAMRecord.
+     */
+    public void encode(final SAMRecord alignment) {
+        putString(alignment.getReadName());
+        putByte(FIELD_SEPARATOR);
+        putLong(alignment.getFlags());
+        putByte(FIELD_SEPARATOR);
+        putString(alignment.getReferenceName());
+        putByte(FIELD_SEPARATOR);
+        putLong(alignment.getAlignmentStart());
+        putByte(FIELD_SEPARATOR);
+        putLong(alignment.getMappingQuality());
+        putByte(FIELD_SEPARATOR);
+        // The CIGAR String is cached by the record
+        putString(alignment.getCigarString());
+        putByte(FIELD_SEPARATOR);
+
+        //  == is OK here because these strings are interned
+        if (alignment.getReferenceName() == alignment.getMateReferenceName() &&
+                SAMRecord.NO_ALIGNMENT_REFERENCE_NAME != alignment.getReferenceName()) {
+            putByte((byte) '=');
+        } else {
+            putString(alignment.getMateReferenceName());
+        }
+        putByte(FIELD_SEPARATOR);
+        putLong(alignment.getMateAlignmentStart());
+        putByte(FIELD_SEPARATOR);
+        putLong(alignment.getInferredInsertSize());
+        putByte(FIELD_SEPARATOR);
+
+        final byte[] bases = alignment.getReadBases();
+        if (bases.length == 0) {
+            putString(SAMRecord.NULL_SEQUENCE_STRING);
+        } else {
+            ensureCapacity(bases.length);
+            System.arraycopy(bases, 0, buffer, length, bases.length);
+            length += bases.length;
+        }
+        putByte(FIELD_SEPARATOR);
+
+        final byte[] quals = alignment.getBaseQualities();
+        if (quals.length == 0) {
+            putString(SAMRecord.NULL_QUALS_STRING);
+        } else {
+            ensureCapacity(quals.length);
+            for (final byte qual : quals) {
+                if (qual < 0 || qual > SAMUtils.MAX_PHRED_SCORE) {
+                    throw new IllegalArgumentException("Cannot encode phred score: " + (qual & 0xff));
+                }
+                buffer[length++] = (byte) (qual + 33);
+            }
+        }
+
+        SAMBinaryTagAndValue attribute = alignment.getBinaryAttributes();
+        while (attribute != null) {
+            putByte(FIELD_SEPARATOR);
+            putTag(attribute);
+            attribute = attribute.getNext();
+        }
+        putByte((byte) '\n');
+    }
+
+    /** Appends name:type:value, as TextTagCodec.encode() and TextTagCodec.encodeUnsignedArray() would. */
+    private void putTag(final SAMBinaryTagAndValue attribute) {
+        final Object value = attribute.value;
+        final boolean isArray = value.getClass().isArray();
+        if (isArray && java.lang.reflect.Array.getLength(value) == 0) {
+            // Let TextTagCodec deal with the unusual case
+            final String tagName = tagUtil.makeStringTag(attribute.tag);
+            putString(attribute.isUnsignedArray() ? tagCodec.encodeUnsignedArray(tagName, value) : tagCodec.encode(tagName, value));
+            return;
+        }
+        ensureCapacity(5);
+        buffer[length++] = (byte) attribute.tag;
+        buffer[length++] = (byte) (attribute.tag >> 8);
+        buffer[length++] = ':';
+
+        if (value instanceof String) {
+            buffer[length++] = 'Z';
+            buffer[length++] = ':';
+            putString((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Long) {
+            final long longValue = ((Number) value).longValue();
+            if (longValue > Integer.MAX_VALUE || longValue < Integer.MIN_VALUE) {
+                throw new SAMFormatException("Value for tag " + tagUtil.makeStringTag(attribute.tag) +
+                        " cannot be stored in an Integer: " + longValue);
+            }
+            buffer[length++] = 'i';
+            buffer[length++] = ':';
+            putLong(longValue);
+        } else if (value instanceof Character) {
+            buffer[length++] = 'A';
+            buffer[length++] = ':';
+            putByte((byte) ((Character) value).charValue());
+        } else if (value instanceof Float) {
+            buffer[length++] = 'f';
+            buffer[length++] = ':';
+            putString(value.toString());
+        } else if (value instanceof byte[]) {
+            final byte[] array = (byte[]) value;
+            putArrayType('c', attribute.isUnsignedArray());
+            for (final byte element : array) {
+                putByte((byte) ',');
+                putLong(attribute.isUnsignedArray() ? element & 0xffL : element);
+            }
+        } else if (value instanceof short[]) {
+            final short[] array = (short[]) value;
+            putArrayType('s', attribute.isUnsignedArray());
+            for (final short element : array) {
+                putByte((byte) ',');
+                putLong(attribute.isUnsignedArray() ? element & 0xffffL : element);
+            }
+        } else if (value instanceof int[]) {
+            final int[] array = (int[]) value;
+            putArrayType('i', attribute.isUnsignedArray());
+            for (final int element : array) {
+                putByte((byte) ',');
+                putLong(attribute.isUnsignedArray() ? element & 0xffffffffL : element);
+            }
+        } else if (value instanceof float[]) {
+            if (attribute.isUnsignedArray()) throw new IllegalArgumentException("float array cannot be unsigned");
+            final float[] array = (float[]) value;
+            putArrayType('f', false);
+            for (final float element : array) {
+                putByte((byte) ',');
+                putString(Float.toString(element));
+            }
+        } else {
+            throw new IllegalArgumentException("When writing BAM, unrecognized tag type " + value.getClass().getName());
+        }
+    }
+
+    /** Appends the B type and the element type, without the comma that follows the latter. */
+    private void putArrayType(final char elementType, final boolean isUnsigned) {
+        ensureCapacity(3);
+        buffer[length++] = 'B';
+        buffer[length++] = ':';
+        buffer[length++] = (byte) (isUnsigned ? Character.toUpperCase(elementType) : elementType);
+    }
+
+    private void putByte(final byte b) {
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    private void putString(final String s) {
+        final int stringLength = s.length();
+        ensureCapacity(stringLength);
+        for (int i = 0; i < stringLength; ++i) {
+            buffer[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    /** Appends the decimal representation of value, which must not be Long.MIN_VALUE. */
+    private void putLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        final int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // The digits were written least significant first
+        for (int i = start, j = length - 1; i < j; ++i, --j) {
+            final byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
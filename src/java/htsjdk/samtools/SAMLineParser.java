@@ -26,12 +26,17 @@ package htsjdk.samtools;
 import htsjdk.samtools.util.StringUtil;
 
 import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
  * this class enables creation of a SAMRecord object from a String in SAM text format.
+ * <p/>
+ * A line may also be parsed from bytes with {@link #parseLine(byte[], int, int, int)}, which builds the record in
+ * BAM binary form without creating intermediate Strings.
  */
 public class SAMLineParser {
 
@@ -50,6 +55,26 @@ public class SAMLineParser {
 
     private static final int NUM_REQUIRED_FIELDS = 11;
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Longest read name that can be stored in a BAM record, excluding the terminating null. */
+    private static final int MAX_BAM_READ_NAME_LENGTH = 254;
+    private static final int MAX_BAM_CIGAR_ELEMENT_LENGTH = (1 << 28) - 1;
+
+    /** BAM binary code for each CIGAR operator character, or -1. */
+    private static final byte[] CIGAR_OPERATOR_CODES = new byte[128];
+    /** Whether each CIGAR operator, by BAM binary code, consumes reference bases. */
+    private static final boolean[] CIGAR_CONSUMES_REFERENCE = new boolean[16];
+
+    static {
+        Arrays.fill(CIGAR_OPERATOR_CODES, (byte) -1);
+        for (final CigarOperator operator : CigarOperator.values()) {
+            final int code = CigarOperator.enumToBinary(operator);
+            CIGAR_OPERATOR_CODES[CigarOperator.enumToCharacter(operator)] = (byte) code;
+            CIGAR_CONSUMES_REFERENCE[code] = operator.consumesReferenceBases();
+        }
+    }
+
     // Read string must contain only these characters
     private static final Pattern VALID_BASES = Pattern
             .compile("^[acmgrsvtwyhkdbnACMGRSVTWYHKDBN.=]+$");
@@ -75,6 +100,21 @@ public class SAMLineParser {
     private int currentLineNumber;
     private String currentLine;
 
+    // State for parsing from bytes, allocated on first use
+    private byte[] currentLineBytes;
+    private int currentLineStart;
+    private int currentLineEnd;
+    private int[] fieldStarts;
+    private int[] fieldEnds;
+    private int[] cigarElements;
+    private int cigarReferenceLength;
+    private byte[] tagBuffer;
+    private int tagLength;
+
+    // The most recently looked-up reference name, as reads are usually sorted by reference
+    private byte[] lastReferenceName;
+    private int lastReferenceIndex;
+
     //
     // Constructors
     //
@@ -332,6 +372,210 @@ public class SAMLineParser {
             parseTag(samRecord, mFields[i]);
         }
 
+        validate(samRecord);
+        return samRecord;
+    }
+
+    /**
+     * Parse a SAM line held in a byte array, without creating Strings for its fields.  The record is built directly
+     * in BAM binary form by {@link SAMRecordFactory#createBAMRecord}, so its fields are decoded lazily and it can be
+     * written to a BAM file without being re-encoded.  As when converting SAM to BAM, bases are stored in upper case
+     * and '.' is stored as N.  Lines that cannot be represented in BAM, e.g. because a reference name is not in the
+     * sequence dictionary or the CIGAR is malformed, cause a SAMFormatException regardless of validation stringency.
+     *
+     * @param buffer     holds the line, which must not include its line terminator
+     * @param start      offset in buffer of the first byte of the line
+     * @param end        offset in buffer just past the last byte of the line
+     * @param lineNumber line number in the file. If the line number is not known
+     *                   can be <=0.
+     * @return a new SAMRecord object
+     */
+    public SAMRecord parseLine(final byte[] buffer, final int start, final int end, final int lineNumber) {
+        this.currentLineNumber = lineNumber;
+        this.currentLine = null;
+        this.currentLineBytes = buffer;
+        this.currentLineStart = start;
+        this.currentLineEnd = end;
+        if (fieldStarts == null) {
+            fieldStarts = new int[mFields.length];
+            fieldEnds = new int[mFields.length];
+            cigarElements = new int[16];
+            tagBuffer = new byte[256];
+        }
+
+        final int numFields = splitFields(buffer, start, end);
+        if (numFields < NUM_REQUIRED_FIELDS) {
+            throw reportFatalErrorParsingLine("Not enough fields");
+        }
+        if (numFields == fieldStarts.length) {
+            reportErrorParsingLine("Too many fields in SAM text record.");
+        }
+        for (int i = 0; i < numFields; ++i) {
+            if (fieldStarts[i] == fieldEnds[i]) {
+                reportErrorParsingLine("Empty field at position " + i + " (zero-based)");
+            }
+        }
+
+        final int readNameLength = fieldEnds[QNAME_COL] - fieldStarts[QNAME_COL];
+        if (readNameLength > MAX_BAM_READ_NAME_LENGTH) {
+            throw reportFatalErrorParsingLine("Read name too long to be stored in BAM record");
+        }
+
+        final int flags = parseInt(buffer, FLAG_COL, "FLAG");
+        if (flags < 0 || flags > 0xffff) {
+            throw reportFatalErrorParsingLine("FLAG out of range for BAM record");
+        }
+        final boolean readUnmapped = (flags & SAMFlag.READ_UNMAPPED.intValue()) != 0;
+
+        final int referenceIndex;
+        if (!fieldEquals(buffer, RNAME_COL, '*')) {
+            if (fieldEquals(buffer, RNAME_COL, '=')) {
+                reportErrorParsingLine("= is not a valid value for RNAME field.");
+            }
+            referenceIndex = getReferenceIndex(buffer, RNAME_COL, "RNAME");
+        } else {
+            referenceIndex = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+            if (!readUnmapped) {
+                reportErrorParsingLine("RNAME is not specified but flags indicate mapped");
+            }
+        }
+
+        final int pos = parseInt(buffer, POS_COL, "POS");
+        final int mapq = parseInt(buffer, MAPQ_COL, "MAPQ");
+        final boolean noCigar = fieldEquals(buffer, CIGAR_COL, '*');
+        if (referenceIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            if (pos == 0) {
+                reportErrorParsingLine("POS must be non-zero if RNAME is specified");
+            }
+            if (!readUnmapped && noCigar) {
+                reportErrorParsingLine("CIGAR must not be '*' if RNAME is specified");
+            }
+        } else {
+            if (pos != 0) {
+                reportErrorParsingLine("POS must be zero if RNAME is not specified");
+            }
+            if (mapq != 0) {
+                reportErrorParsingLine("MAPQ must be zero if RNAME is not specified");
+            }
+            if (!noCigar) {
+                reportErrorParsingLine("CIGAR must be '*' if RNAME is not specified");
+            }
+        }
+        if (mapq < 0 || mapq > 255) {
+            throw reportFatalErrorParsingLine("MAPQ out of range for BAM record");
+        }
+        final int cigarLength = noCigar ? 0 : parseCigar(buffer);
+        if (noCigar) cigarReferenceLength = 0;
+
+        final boolean readPaired = (flags & SAMFlag.READ_PAIRED.intValue()) != 0;
+        final int mateReferenceIndex;
+        if (fieldEquals(buffer, MRNM_COL, '*')) {
+            mateReferenceIndex = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+            if (readPaired && (flags & SAMFlag.MATE_UNMAPPED.intValue()) == 0) {
+                reportErrorParsingLine("MRNM not specified but flags indicate mate mapped");
+            }
+        } else {
+            if (!readPaired) {
+                reportErrorParsingLine("MRNM specified but flags indicate unpaired");
+            }
+            if (fieldEquals(buffer, MRNM_COL, '=')) {
+                if (referenceIndex == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    reportErrorParsingLine("MRNM is '=', but RNAME is not set");
+                }
+                mateReferenceIndex = referenceIndex;
+            } else {
+                mateReferenceIndex = getReferenceIndex(buffer, MRNM_COL, "MRNM");
+            }
+        }
+
+        final int matePos = parseInt(buffer, MPOS_COL, "MPOS");
+        final int isize = parseInt(buffer, ISIZE_COL, "ISIZE");
+        if (mateReferenceIndex != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            if (matePos == 0) {
+                reportErrorParsingLine("MPOS must be non-zero if MRNM is specified");
+            }
+        } else {
+            if (matePos != 0) {
+                reportErrorParsingLine("MPOS must be zero if MRNM is not specified");
+            }
+            if (isize != 0) {
+                reportErrorParsingLine("ISIZE must be zero if MRNM is not specified");
+            }
+        }
+
+        final int readLength;
+        if (!fieldEquals(buffer, SEQ_COL, '*')) {
+            readLength = fieldEnds[SEQ_COL] - fieldStarts[SEQ_COL];
+            for (int i = fieldStarts[SEQ_COL]; i < fieldEnds[SEQ_COL]; ++i) {
+                if (!isValidReadBase((char) buffer[i])) {
+                    throw reportFatalErrorParsingLine("Invalid character in read bases");
+                }
+            }
+        } else {
+            readLength = 0;
+        }
+        boolean haveQuals = false;
+        if (!fieldEquals(buffer, QUAL_COL, '*')) {
+            if (readLength == 0) {
+                reportErrorParsingLine("QUAL should not be specified if SEQ is not specified");
+            } else if (fieldEnds[QUAL_COL] - fieldStarts[QUAL_COL] != readLength) {
+                throw reportFatalErrorParsingLine("length(QUAL) != length(SEQ)");
+            } else {
+                haveQuals = true;
+            }
+        }
+
+        tagLength = 0;
+        for (int i = NUM_REQUIRED_FIELDS; i < numFields; ++i) {
+            final int mark = tagLength;
+            try {
+                encodeTag(buffer, fieldStarts[i], fieldEnds[i]);
+            } catch (SAMFormatException e) {
+                tagLength = mark;
+                reportErrorParsingLine(e);
+            }
+        }
+
+        // Assemble the variable-length part of the BAM record
+        final int cigarOffset = readNameLength + 1;
+        final int basesOffset = cigarOffset + 4 * cigarLength;
+        final int qualsOffset = basesOffset + (readLength + 1) / 2;
+        final int tagsOffset = qualsOffset + readLength;
+        final byte[] block = new byte[tagsOffset + tagLength];
+        System.arraycopy(buffer, fieldStarts[QNAME_COL], block, 0, readNameLength);
+        for (int i = 0; i < cigarLength; ++i) {
+            putInt(block, cigarOffset + 4 * i, cigarElements[i]);
+        }
+        SAMUtils.bytesToCompressedBases(buffer, fieldStarts[SEQ_COL], readLength, block, basesOffset);
+        if (haveQuals) {
+            final int qualsStart = fieldStarts[QUAL_COL];
+            for (int i = 0; i < readLength; ++i) {
+                block[qualsOffset + i] = (byte) (buffer[qualsStart + i] - 33);
+            }
+        } else {
+            Arrays.fill(block, qualsOffset, tagsOffset, (byte) 0xff);
+        }
+        System.arraycopy(tagBuffer, 0, block, tagsOffset, tagLength);
+
+        // As SAMRecord.computeIndexingBin()
+        int alignmentEnd = readUnmapped ? 0 : pos + cigarReferenceLength - 1;
+        if (alignmentEnd <= 0) {
+            alignmentEnd = pos;
+        }
+        final int bin = GenomicIndexUtil.reg2bin(pos - 1, alignmentEnd);
+
+        final SAMRecord samRecord = samRecordFactory.createBAMRecord(this.mFileHeader, referenceIndex, pos,
+                (short) (readNameLength + 1), (short) mapq, bin, cigarLength, flags, readLength,
+                mateReferenceIndex, matePos, isize, block);
+        samRecord.setValidationStringency(this.validationStringency);
+        if (mParentReader != null)
+            samRecord.setFileSource(new SAMFileSource(mParentReader, null));
+
+        validate(samRecord);
+        return samRecord;
+    }
+
+    private void validate(final SAMRecord samRecord) {
         // Only call samRecord.isValid() if errors would be reported since the validation
         // is quite expensive in and of itself.
         if (this.validationStringency != ValidationStringency.SILENT) {
@@ -342,8 +586,310 @@ public class SAMLineParser {
                 }
             }
         }
+    }
 
-        return samRecord;
+    /**
+     * Records the offsets of the tab-separated fields of the line in fieldStarts and fieldEnds.
+     * As with StringUtil.split(), anything beyond the capacity is left in the last field.
+     *
+     * @return the number of fields
+     */
+    private int splitFields(final byte[] buffer, final int start, final int end) {
+        int numFields = 0;
+        int fieldStart = start;
+        for (int i = start; i < end && numFields < fieldStarts.length - 1; ++i) {
+            if (buffer[i] == '\t') {
+                fieldStarts[numFields] = fieldStart;
+                fieldEnds[numFields++] = i;
+                fieldStart = i + 1;
+            }
+        }
+        fieldStarts[numFields] = fieldStart;
+        fieldEnds[numFields++] = end;
+        return numFields;
+    }
+
+    private boolean fieldEquals(final byte[] buffer, final int field, final char c) {
+        return fieldEnds[field] - fieldStarts[field] == 1 && buffer[fieldStarts[field]] == c;
+    }
+
+    private int parseInt(final byte[] buffer, final int field, final String fieldName) {
+        final long ret;
+        try {
+            ret = parseLong(buffer, fieldStarts[field], fieldEnds[field]);
+        } catch (NumberFormatException e) {
+            throw reportFatalErrorParsingLine("Non-numeric value in "
+                    + fieldName + " column");
+        }
+        if (ret < Integer.MIN_VALUE || ret > Integer.MAX_VALUE) {
+            throw reportFatalErrorParsingLine("Non-numeric value in "
+                    + fieldName + " column");
+        }
+        return (int) ret;
+    }
+
+    /**
+     * Parses a decimal integer with an optional sign.  Values are limited to 18 digits, which is more than any
+     * SAM field or tag allows, so that overflow need not be checked digit by digit.
+     */
+    private static long parseLong(final byte[] buffer, final int start, final int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            ++i;
+        }
+        if (i == end || end - i > 18) {
+            throw new NumberFormatException();
+        }
+        long value = 0;
+        for (; i < end; ++i) {
+            final int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException();
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Looks up a reference name, truncated at the first whitespace as by SAMSequenceRecord.truncateSequenceName(),
+     * in the sequence dictionary.
+     */
+    private int getReferenceIndex(final byte[] buffer, final int field, final String fieldName) {
+        final int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        for (int i = start; i < end; ++i) {
+            final byte b = buffer[i];
+            if (b == ' ' || b == '\013' || b == '\f' || b == '\r') {
+                end = i;
+                break;
+            }
+        }
+        final int length = end - start;
+        if (lastReferenceName != null && lastReferenceName.length == length) {
+            int i = 0;
+            while (i < length && lastReferenceName[i] == buffer[start + i]) ++i;
+            if (i == length) return lastReferenceIndex;
+        }
+        final String name = new String(buffer, start, length, UTF8);
+        final int index = this.mFileHeader.getSequenceIndex(name);
+        if (index == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+            throw reportFatalErrorParsingLine(fieldName + " '" + name + "' not found in any SQ record");
+        }
+        lastReferenceName = Arrays.copyOfRange(buffer, start, end);
+        lastReferenceIndex = index;
+        return index;
+    }
+
+    /**
+     * Parses the CIGAR field into BAM binary CIGAR elements in cigarElements, and sets cigarReferenceLength.
+     *
+     * @return the number of CIGAR elements
+     */
+    private int parseCigar(final byte[] buffer) {
+        int numElements = 0;
+        int referenceLength = 0;
+        int length = -1;
+        for (int i = fieldStarts[CIGAR_COL]; i < fieldEnds[CIGAR_COL]; ++i) {
+            final byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                length = (length == -1 ? 0 : length * 10) + (b - '0');
+                if (length > MAX_BAM_CIGAR_ELEMENT_LENGTH) {
+                    throw reportFatalErrorParsingLine("CIGAR element too long for BAM record");
+                }
+            } else {
+                final int code = b < 0 ? -1 : CIGAR_OPERATOR_CODES[b];
+                if (length == -1 || code == -1) {
+                    throw reportFatalErrorParsingLine("Malformed CIGAR string: "
+                            + new String(buffer, fieldStarts[CIGAR_COL], fieldEnds[CIGAR_COL] - fieldStarts[CIGAR_COL], UTF8));
+                }
+                if (numElements == cigarElements.length) {
+                    cigarElements = Arrays.copyOf(cigarElements, numElements * 2);
+                }
+                cigarElements[numElements++] = length << 4 | code;
+                if (CIGAR_CONSUMES_REFERENCE[code]) referenceLength += length;
+                length = -1;
+            }
+        }
+        if (length != -1) {
+            throw reportFatalErrorParsingLine("Malformed CIGAR string: "
+                    + new String(buffer, fieldStarts[CIGAR_COL], fieldEnds[CIGAR_COL] - fieldStarts[CIGAR_COL], UTF8));
+        }
+        if (numElements > 0xffff) {
+            throw reportFatalErrorParsingLine("Too many CIGAR elements for BAM record");
+        }
+        cigarReferenceLength = referenceLength;
+        return numElements;
+    }
+
+    /**
+     * Appends a tag of the form TG:TYPE:VALUE to tagBuffer in BAM binary form, with the same value checks
+     * as TextTagCodec.decode().
+     */
+    private void encodeTag(final byte[] buffer, final int start, final int end) {
+        if (end - start < 5 || buffer[start + 2] != ':' || buffer[start + 4] != ':') {
+            throw new SAMFormatException("Not enough fields in tag '" + new String(buffer, start, end - start, UTF8) + "'");
+        }
+        putTagByte(buffer[start]);
+        putTagByte(buffer[start + 1]);
+        final int valueStart = start + 5;
+        final byte type = buffer[start + 3];
+        switch (type) {
+            case 'Z':
+                putTagByte('Z');
+                ensureTagCapacity(end - valueStart + 1);
+                System.arraycopy(buffer, valueStart, tagBuffer, tagLength, end - valueStart);
+                tagLength += end - valueStart;
+                putTagByte(0);
+                break;
+            case 'A':
+                if (end - valueStart != 1) {
+                    throw new SAMFormatException("Tag of type A should have a single-character value");
+                }
+                putTagByte('A');
+                putTagByte(buffer[valueStart]);
+                break;
+            case 'i':
+                final long value;
+                try {
+                    value = parseLong(buffer, valueStart, end);
+                } catch (NumberFormatException e) {
+                    throw new SAMFormatException("Tag of type i should have signed decimal value");
+                }
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    throw new SAMFormatException("Tag of type i should have signed decimal value");
+                }
+                final char integerType = BinaryTagCodec.getIntegerType(value);
+                putTagByte(integerType);
+                putTagValue(integerType, value);
+                break;
+            case 'f':
+                try {
+                    final float f = Float.parseFloat(StringUtil.bytesToString(buffer, valueStart, end - valueStart));
+                    putTagByte('f');
+                    putTagValue('f', Float.floatToIntBits(f));
+                } catch (NumberFormatException e) {
+                    throw new SAMFormatException("Tag of type f should have single-precision floating point value");
+                }
+                break;
+            case 'H':
+                // As for a byte[] attribute set on a SAMRecord, BAM stores this as an array of type c
+                if ((end - valueStart) % 2 != 0) {
+                    throw new SAMFormatException("Tag of type H should have valid hex string with even number of digits");
+                }
+                putTagByte('B');
+                putTagByte('c');
+                putTagValue('i', (end - valueStart) / 2);
+                for (int i = valueStart; i < end; i += 2) {
+                    final int high = Character.digit(buffer[i], 16);
+                    final int low = Character.digit(buffer[i + 1], 16);
+                    if (high == -1 || low == -1) {
+                        throw new SAMFormatException("Tag of type H should have valid hex string with even number of digits");
+                    }
+                    putTagByte(high << 4 | low);
+                }
+                break;
+            case 'B':
+                encodeArrayTagValue(buffer, valueStart, end);
+                break;
+            default:
+                throw new SAMFormatException("Unrecognized tag type: " + (char) type);
+        }
+    }
+
+    private void encodeArrayTagValue(final byte[] buffer, final int start, int end) {
+        if (end - start < 2 || buffer[start + 1] != ',') {
+            throw new SAMFormatException("Tag of type B should have an element type followed by comma");
+        }
+        final char elementType = (char) buffer[start];
+        final long minValue;
+        final long maxValue;
+        switch (elementType) {
+            case 'c': minValue = Byte.MIN_VALUE; maxValue = Byte.MAX_VALUE; break;
+            case 'C': minValue = 0; maxValue = 0xffL; break;
+            case 's': minValue = Short.MIN_VALUE; maxValue = Short.MAX_VALUE; break;
+            case 'S': minValue = 0; maxValue = 0xffffL; break;
+            case 'i': minValue = Integer.MIN_VALUE; maxValue = Integer.MAX_VALUE; break;
+            case 'I': minValue = 0; maxValue = 0xffffffffL; break;
+            case 'f': minValue = 0; maxValue = 0; break;
+            default:
+                throw new SAMFormatException("Unrecognized array tag element type: " + elementType);
+        }
+        // As with String.split(), trailing empty elements are ignored
+        while (end > start + 2 && buffer[end - 1] == ',') --end;
+        if (end == start + 2) throw new SAMFormatException("Tag of type B should have at least one element");
+
+        putTagByte('B');
+        putTagByte(elementType);
+        final int countOffset = tagLength;
+        putTagValue('i', 0);
+        int count = 0;
+        int elementStart = start + 2;
+        for (int i = elementStart; i <= end; ++i) {
+            if (i < end && buffer[i] != ',') continue;
+            if (elementType == 'f') {
+                try {
+                    final float f = Float.parseFloat(StringUtil.bytesToString(buffer, elementStart, i - elementStart));
+                    putTagValue('f', Float.floatToIntBits(f));
+                } catch (NumberFormatException e) {
+                    throw new SAMFormatException("Array tag of type f should have single-precision floating point value");
+                }
+            } else {
+                final long value;
+                try {
+                    value = parseLong(buffer, elementStart, i);
+                } catch (NumberFormatException e) {
+                    throw new SAMFormatException("Array tag of type " + elementType + " should have integral value");
+                }
+                if (value < minValue || value > maxValue) {
+                    throw new SAMFormatException("Value for element of array tag of type " + elementType +
+                            " is out of allowed range: " + value);
+                }
+                putTagValue(elementType, value);
+            }
+            ++count;
+            elementStart = i + 1;
+        }
+        putInt(tagBuffer, countOffset, count);
+    }
+
+    private void ensureTagCapacity(final int extra) {
+        if (tagLength + extra > tagBuffer.length) {
+            tagBuffer = Arrays.copyOf(tagBuffer, Math.max(tagBuffer.length * 2, tagLength + extra));
+        }
+    }
+
+    private void putTagByte(final int b) {
+        ensureTagCapacity(1);
+        tagBuffer[tagLength++] = (byte) b;
+    }
+
+    /** Appends a little-endian value of the size of the given BAM tag type. */
+    private void putTagValue(final char type, final long value) {
+        switch (type) {
+            case 'c':
+            case 'C':
+                putTagByte((int) value);
+                break;
+            case 's':
+            case 'S':
+                putTagByte((int) value);
+                putTagByte((int) (value >> 8));
+                break;
+            default:
+                ensureTagCapacity(4);
+                putInt(tagBuffer, tagLength, (int) value);
+                tagLength += 4;
+        }
+    }
+
+    private static void putInt(final byte[] buffer, final int offset, final int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
     }
 
     private void validateReadBases(final String bases) {
@@ -463,7 +1009,8 @@ public class SAMLineParser {
         return "Error parsing text SAM file. "
                 + reason + "; " + fileMessage + "Line "
                 + (this.currentLineNumber <= 0 ? "unknown" : this.currentLineNumber)
-                + "\nLine: " + this.currentLine;
+                + "\nLine: " + (this.currentLine != null ? this.currentLine
+                : new String(this.currentLineBytes, this.currentLineStart, this.currentLineEnd - this.currentLineStart, UTF8));
     }
 
 }
@@ -142,6 +142,10 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
     private String mReferenceName = NO_ALIGNMENT_REFERENCE_NAME;
     private int mAlignmentStart = NO_ALIGNMENT_START;
     private transient int mAlignmentEnd = NO_ALIGNMENT_START;
+    // Cached unclipped start and end, valid only when mUnclippedBoundsValid
+    private transient int mUnclippedStart;
+    private transient int mUnclippedEnd;
+    private transient boolean mUnclippedBoundsValid = false;
     private int mMappingQuality = NO_MAPPING_QUALITY;
     private String mCigarString = NO_ALIGNMENT_CIGAR;
     private Cigar mCigar = null;
@@ -434,8 +438,7 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
      */
     public void setAlignmentStart(final int value) {
         mAlignmentStart = value;
-        // Clear cached alignment end
-        mAlignmentEnd = NO_ALIGNMENT_START;
+        clearCachedAlignmentCoordinates();
         // Change to alignmentStart could change indexing bin
         setIndexingBin(null);
     }
@@ -462,7 +465,8 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
      * Invalid to call on an unmapped read.
      */
     public int getUnclippedStart() {
-        return SAMUtils.getUnclippedStart(getAlignmentStart(), getCigar());
+        if (!mUnclippedBoundsValid) computeUnclippedBounds();
+        return mUnclippedStart;
     }
 
     /**
@@ -473,7 +477,25 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
      * Invalid to call on an unmapped read.
      */
     public int getUnclippedEnd() {
-        return SAMUtils.getUnclippedEnd(getAlignmentEnd(), getCigar());
+        if (!mUnclippedBoundsValid) computeUnclippedBounds();
+        return mUnclippedEnd;
+    }
+
+    private void computeUnclippedBounds() {
+        final Cigar cigar = getCigar();
+        mUnclippedStart = SAMUtils.getUnclippedStart(getAlignmentStart(), cigar);
+        mUnclippedEnd = SAMUtils.getUnclippedEnd(getAlignmentEnd(), cigar);
+        mUnclippedBoundsValid = true;
+    }
+
+    /**
+     * Clears the alignment end, unclipped start and end, and alignment blocks, which are derived from the
+     * alignment start and CIGAR and computed when first requested.
+     */
+    private void clearCachedAlignmentCoordinates() {
+        mAlignmentEnd = NO_ALIGNMENT_START;
+        mUnclippedBoundsValid = false;
+        mAlignmentBlocks = null;
     }
 
 
@@ -630,9 +652,7 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
     public void setCigarString(final String value) {
         mCigarString = value;
         mCigar = null;
-        mAlignmentBlocks = null;
-        // Clear cached alignment end
-        mAlignmentEnd = NO_ALIGNMENT_START;
+        clearCachedAlignmentCoordinates();
         // Change to cigar could change alignmentEnd, and thus indexing bin
         setIndexingBin(null);
     }
@@ -674,9 +694,7 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
     protected void initializeCigar(final Cigar cigar) {
         this.mCigar = cigar;
         mCigarString = null;
-        mAlignmentBlocks = null;
-        // Clear cached alignment end
-        mAlignmentEnd = NO_ALIGNMENT_START;
+        clearCachedAlignmentCoordinates();
     }
 
     /**
@@ -704,7 +722,8 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
 
     public void setFlags(final int value) {
         mFlags = value;
-        // Could imply change to readUnmapped flag, which could change indexing bin
+        // Could imply change to readUnmapped flag, which could change unclipped end and indexing bin
+        clearCachedAlignmentCoordinates();
         setIndexingBin(null);
     }
 
@@ -851,7 +870,8 @@ public class SAMRecord implements Cloneable, Locatable, Serializable {
      */
     public void setReadUnmappedFlag(final boolean flag) {
         setFlag(flag, SAMFlag.READ_UNMAPPED.flag);
-        // Change to readUnmapped could change indexing bin
+        // Change to readUnmapped could change unclipped end and indexing bin
+        clearCachedAlignmentCoordinates();
         setIndexingBin(null);
     }
 
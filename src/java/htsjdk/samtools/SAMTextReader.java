@@ -24,11 +24,22 @@
 package htsjdk.samtools;
 
 
-import htsjdk.samtools.util.BufferedLineReader;
+import htsjdk.samtools.util.ByteLineReader;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.ThreadPoolUtil;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 
 /**
@@ -36,12 +47,22 @@ import java.io.InputStream;
  */
 class SAMTextReader extends SamReader.ReaderImplementation {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Approximate size in bytes of the chunks of lines parsed by each task when parsing in parallel. */
+    private static final int PARALLEL_CHUNK_SIZE = 256 * 1024;
+    /** The number of chunks read ahead of iteration, per parsing thread. */
+    private static final int PARALLEL_CHUNKS_PER_THREAD = 2;
+
 
     private SAMRecordFactory samRecordFactory;
-    private BufferedLineReader mReader;
+    private ByteLineReader mReader;
     private SAMFileHeader mFileHeader = null;
-    private String mCurrentLine = null;
-    private RecordIterator mIterator = null;
+    /** True if the reader holds a record line that has not yet been parsed. */
+    private boolean mHaveCurrentLine = false;
+    private boolean binaryParsing = false;
+    private int parsingThreads = 1;
+    private CloseableIterator<SAMRecord> mIterator = null;
     private File mFile = null;
 
     private ValidationStringency validationStringency = ValidationStringency.DEFAULT_STRINGENCY;
@@ -57,7 +78,7 @@ class SAMTextReader extends SamReader.ReaderImplementation {
      * @param stream Need not be buffered, as this class provides buffered reading.
      */
     public SAMTextReader(final InputStream stream, final ValidationStringency validationStringency, final SAMRecordFactory factory) {
-        mReader = new BufferedLineReader(stream);
+        mReader = new ByteLineReader(stream);
         this.validationStringency = validationStringency;
         this.samRecordFactory = factory;
         readHeader();
@@ -83,6 +104,24 @@ class SAMTextReader extends SamReader.ReaderImplementation {
         this.mParentReader = enabled ? reader : null;
     }
 
+    /**
+     * If true, records are parsed directly from bytes into BAM binary form.
+     *
+     * @see SamReaderFactory.Option#PARSE_SAM_AS_BINARY
+     */
+    void enableBinaryParsing(final boolean enabled) {
+        this.binaryParsing = enabled;
+    }
+
+    /**
+     * If numThreads is greater than one, records are parsed in chunks on that many threads.
+     *
+     * @see SamReaderFactory.Option#PARSE_SAM_IN_PARALLEL
+     */
+    void enableParallelParsing(final int numThreads) {
+        this.parsingThreads = numThreads;
+    }
+
     void enableIndexCaching(final boolean enabled) {
         throw new UnsupportedOperationException("Cannot enable index caching for a SAM text reader");
     }
@@ -148,7 +187,7 @@ class SAMTextReader extends SamReader.ReaderImplementation {
         if (mIterator != null) {
             throw new IllegalStateException("Iteration in progress");
         }
-        mIterator = new RecordIterator();
+        mIterator = parsingThreads > 1 ? new ParallelRecordIterator(parsingThreads) : new RecordIterator();
         return mIterator;
     }
 
@@ -201,9 +240,9 @@ class SAMTextReader extends SamReader.ReaderImplementation {
         advanceLine();
     }
 
-    private String advanceLine() {
-        mCurrentLine = mReader.readLine();
-        return mCurrentLine;
+    private boolean advanceLine() {
+        mHaveCurrentLine = mReader.advance();
+        return mHaveCurrentLine;
     }
 
     /**
@@ -225,7 +264,7 @@ class SAMTextReader extends SamReader.ReaderImplementation {
         }
 
         public boolean hasNext() {
-            return mCurrentLine != null;
+            return mHaveCurrentLine;
         }
 
         public SAMRecord next() {
@@ -244,10 +283,143 @@ class SAMTextReader extends SamReader.ReaderImplementation {
         }
 
         private SAMRecord parseLine() {
+            if (binaryParsing) {
+                return parser.parseLine(mReader.getLineBuffer(), mReader.getLineStart(), mReader.getLineEnd(),
+                        mReader.getLineNumber());
+            }
+            return parser.parseLine(new String(mReader.getLineBuffer(), mReader.getLineStart(),
+                    mReader.getLineEnd() - mReader.getLineStart(), UTF8), mReader.getLineNumber());
+        }
+
+    }
+
+    /**
+     * SAMRecord iterator for SAMTextReader that reads chunks of lines on the calling thread and parses them
+     * on a pool of threads, returning records in their original order.
+     */
+    private class ParallelRecordIterator implements CloseableIterator<SAMRecord> {
+        private final ExecutorService executor;
+        private final Deque<Future<ParsedChunk>> pendingChunks = new ArrayDeque<Future<ParsedChunk>>();
+        private final int maxPendingChunks;
+        private ParsedChunk currentChunk = null;
+        private int currentIndex = 0;
+
+        private ParallelRecordIterator(final int numThreads) {
+            if (mReader == null) {
+                throw new IllegalStateException("Reader is closed.");
+            }
+            this.maxPendingChunks = numThreads * PARALLEL_CHUNKS_PER_THREAD;
+            this.executor = ThreadPoolUtil.newDaemonFixedThreadPool("SAMTextReaderParser", numThreads);
+        }
+
+        public void close() {
+            executor.shutdownNow();
+            pendingChunks.clear();
+            currentChunk = null;
+            SAMTextReader.this.close();
+        }
+
+        public boolean hasNext() {
+            while (currentChunk == null || currentIndex == currentChunk.records.size()) {
+                if (currentChunk != null && currentChunk.error != null) {
+                    final RuntimeException error = currentChunk.error;
+                    currentChunk = null;
+                    throw error;
+                }
+                fillPendingChunks();
+                if (pendingChunks.isEmpty()) {
+                    currentChunk = null;
+                    executor.shutdown();
+                    return false;
+                }
+                currentChunk = getResult(pendingChunks.removeFirst());
+                currentIndex = 0;
+            }
+            return true;
+        }
 
-            return parser.parseLine(mCurrentLine, mReader.getLineNumber());
+        public SAMRecord next() {
+            if (!hasNext()) {
+                throw new IllegalStateException("Cannot call next() on exhausted iterator");
+            }
+            return currentChunk.records.get(currentIndex++);
         }
 
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported: remove");
+        }
+
+        private void fillPendingChunks() {
+            while (pendingChunks.size() < maxPendingChunks && mReader != null && mHaveCurrentLine) {
+                final int firstLineNumber = mReader.getLineNumber();
+                byte[] chunk = new byte[PARALLEL_CHUNK_SIZE + 1024];
+                int length = 0;
+                do {
+                    final int lineLength = mReader.getLineEnd() - mReader.getLineStart();
+                    if (length + lineLength + 1 > chunk.length) {
+                        chunk = Arrays.copyOf(chunk, Math.max(chunk.length * 2, length + lineLength + 1));
+                    }
+                    System.arraycopy(mReader.getLineBuffer(), mReader.getLineStart(), chunk, length, lineLength);
+                    length += lineLength;
+                    chunk[length++] = '\n';
+                } while (advanceLine() && length < PARALLEL_CHUNK_SIZE);
+                pendingChunks.addLast(executor.submit(new ChunkParser(chunk, length, firstLineNumber)));
+            }
+        }
+
+        private ParsedChunk getResult(final Future<ParsedChunk> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                throw new SAMException("Interrupted while parsing SAM text", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new SAMException("Exception parsing SAM text", e.getCause());
+            }
+        }
     }
-}
 
+    /** The records parsed from a chunk, followed by the error that stopped parsing, if any. */
+    private static class ParsedChunk {
+        final List<SAMRecord> records = new ArrayList<SAMRecord>();
+        RuntimeException error = null;
+    }
+
+    /** Parses a chunk of newline-terminated lines, with a parser of its own. */
+    private class ChunkParser implements Callable<ParsedChunk> {
+        private final byte[] chunk;
+        private final int length;
+        private final int firstLineNumber;
+        private final SAMLineParser parser = new SAMLineParser(samRecordFactory, validationStringency,
+                mFileHeader, mParentReader, mFile);
+        private final boolean binary = binaryParsing;
+
+        private ChunkParser(final byte[] chunk, final int length, final int firstLineNumber) {
+            this.chunk = chunk;
+            this.length = length;
+            this.firstLineNumber = firstLineNumber;
+        }
+
+        public ParsedChunk call() {
+            final ParsedChunk result = new ParsedChunk();
+            int lineNumber = firstLineNumber;
+            int start = 0;
+            try {
+                while (start < length) {
+                    int end = start;
+                    while (chunk[end] != '\n') ++end;
+                    if (binary) {
+                        result.records.add(parser.parseLine(chunk, start, end, lineNumber));
+                    } else {
+                        result.records.add(parser.parseLine(new String(chunk, start, end - start, UTF8), lineNumber));
+                    }
+                    start = end + 1;
+                    ++lineNumber;
+                }
+            } catch (RuntimeException e) {
+                result.error = e;
+            }
+            return result;
+        }
+    }
+}
@@ -25,6 +25,7 @@ package htsjdk.samtools;
 
 import htsjdk.samtools.util.AsciiWriter;
 import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.samtools.util.ThreadPoolUtil;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -32,14 +33,39 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Writer for text-format SAM files.
+ * <p/>
+ * When writing to a file or stream, records are encoded directly to bytes by {@link SAMLineEncoder}, optionally
+ * on several threads (see {@link #setFormattingThreads(int)}).
  */
 public class SAMTextWriter extends SAMFileWriterImpl {
     private static final String FIELD_SEPARATOR = "\t";
+    /** The number of records formatted by each task when formatting in parallel. */
+    private static final int FORMATTING_BATCH_SIZE = 2000;
+    /** The number of batches that may be queued or being formatted, per formatting thread. */
+    private static final int FORMATTING_BATCHES_PER_THREAD = 2;
 
     private final Writer out;
+    /** Non-null if out is an AsciiWriter, in which case records are encoded directly to bytes. */
+    private final AsciiWriter asciiOut;
+    private final SAMLineEncoder encoder = new SAMLineEncoder();
+
+    // Used only when formatting in parallel
+    private ExecutorService formattingExecutor = null;
+    private int maxPendingBatches;
+    private List<SAMRecord> batch;
+    private final Deque<Future<SAMLineEncoder>> pendingBatches = new ArrayDeque<Future<SAMLineEncoder>>();
+
     // For error reporting only.
     private final File file;
     private final TextTagCodec tagCodec = new TextTagCodec();
@@ -51,6 +77,7 @@ public class SAMTextWriter extends SAMFileWriterImpl {
      */
     public SAMTextWriter(Writer out) {
 	this.out = out;
+	this.asciiOut = (out instanceof AsciiWriter) ? (AsciiWriter) out : null;
 	this.file = null;
     }
 
@@ -61,7 +88,8 @@ public class SAMTextWriter extends SAMFileWriterImpl {
     public SAMTextWriter(final File file) {
         try {
             this.file = file;
-            this.out = new AsciiWriter(new FileOutputStream(file));
+            this.asciiOut = new AsciiWriter(new FileOutputStream(file));
+            this.out = this.asciiOut;
         } catch (IOException e) {
             throw new RuntimeIOException(e);
         }
@@ -81,7 +109,28 @@ public class SAMTextWriter extends SAMFileWriterImpl {
      */
     public SAMTextWriter(final OutputStream stream) {
         this.file = null;
-        this.out = new AsciiWriter(stream);
+        this.asciiOut = new AsciiWriter(stream);
+        this.out = this.asciiOut;
+    }
+
+    /**
+     * Format records as SAM text on the given number of threads, in batches, if greater than one.  Records are
+     * written in the order they were added, but a record may be formatted after addAlignment() has returned, so
+     * records must not be modified once added.  Has no effect unless writing to a file or stream.  Must be called
+     * before any records are written.
+     */
+    public void setFormattingThreads(final int numThreads) {
+        if (batch != null || !pendingBatches.isEmpty()) {
+            throw new IllegalStateException("Cannot change the number of formatting threads after writing records");
+        }
+        if (formattingExecutor != null) {
+            formattingExecutor.shutdown();
+            formattingExecutor = null;
+        }
+        if (numThreads > 1 && asciiOut != null) {
+            maxPendingBatches = numThreads * FORMATTING_BATCHES_PER_THREAD;
+            formattingExecutor = ThreadPoolUtil.newDaemonFixedThreadPool("SAMTextWriterFormatter", numThreads);
+        }
     }
 
     /**
@@ -90,6 +139,64 @@ public class SAMTextWriter extends SAMFileWriterImpl {
      * @param alignment SAMRecord.
      */
     public void writeAlignment(final SAMRecord alignment) {
+        if (formattingExecutor != null) {
+            if (batch == null) batch = new ArrayList<SAMRecord>(FORMATTING_BATCH_SIZE);
+            batch.add(alignment);
+            if (batch.size() == FORMATTING_BATCH_SIZE) submitBatch();
+        } else if (asciiOut != null) {
+            encoder.clear();
+            encoder.encode(alignment);
+            writeEncoded(encoder);
+        } else {
+            writeAlignmentAsText(alignment);
+        }
+    }
+
+    private void writeEncoded(final SAMLineEncoder encoded) {
+        try {
+            asciiOut.writeBytes(encoded.getBuffer(), 0, encoded.getLength());
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    private void submitBatch() {
+        final List<SAMRecord> records = batch;
+        batch = null;
+        while (pendingBatches.size() >= maxPendingBatches) {
+            writeEncoded(getResult(pendingBatches.removeFirst()));
+        }
+        pendingBatches.addLast(formattingExecutor.submit(new Callable<SAMLineEncoder>() {
+            public SAMLineEncoder call() {
+                final SAMLineEncoder batchEncoder = new SAMLineEncoder(records.size() * 256);
+                for (final SAMRecord record : records) batchEncoder.encode(record);
+                return batchEncoder;
+            }
+        }));
+    }
+
+    /** Writes any batches of records still being formatted. */
+    private void flushBatches() {
+        if (batch != null) submitBatch();
+        while (!pendingBatches.isEmpty()) {
+            writeEncoded(getResult(pendingBatches.removeFirst()));
+        }
+    }
+
+    private SAMLineEncoder getResult(final Future<SAMLineEncoder> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new SAMException("Interrupted while formatting SAM records", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new SAMException("Exception formatting SAM records", e.getCause());
+        }
+    }
+
+    /** Writes the record through the Writer, for Writers other than AsciiWriter. */
+    private void writeAlignmentAsText(final SAMRecord alignment) {
         try {
             out.write(alignment.getReadName());
             out.write(FIELD_SEPARATOR);
@@ -168,9 +275,15 @@ public class SAMTextWriter extends SAMFileWriterImpl {
      */
     public void finish() {
         try {
-            out.close();
-        } catch (IOException e) {
-            throw new RuntimeIOException(e);
+            if (formattingExecutor != null) flushBatches();
+        } finally {
+            if (formattingExecutor != null) formattingExecutor.shutdownNow();
+            // Closed even if formatting failed, so that the file is not left open
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
         }
     }
 
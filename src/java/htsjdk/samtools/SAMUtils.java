@@ -111,16 +111,30 @@ public final class SAMUtils {
      */
     static byte[] bytesToCompressedBases(final byte[] readBases) {
         final byte[] compressedBases = new byte[(readBases.length + 1) / 2];
+        bytesToCompressedBases(readBases, 0, readBases.length, compressedBases, 0);
+        return compressedBases;
+    }
+
+    /**
+     * Convert bases represented as ASCII to nybbles, as above, writing (length + 1) / 2 bytes into an existing array.
+     *
+     * @param readBases  Bases as ASCII bytes.
+     * @param offset     Offset in readBases of the first base.
+     * @param length     Number of bases to convert.
+     * @param dest       Array to receive the bases in BAM binary format.
+     * @param destOffset Offset in dest at which to write.
+     */
+    static void bytesToCompressedBases(final byte[] readBases, final int offset, final int length,
+                                       final byte[] dest, final int destOffset) {
         int i;
-        for (i = 1; i < readBases.length; i += 2) {
-            compressedBases[i / 2] = (byte) (charToCompressedBaseHigh(readBases[i - 1]) |
-                    charToCompressedBaseLow(readBases[i]));
+        for (i = 1; i < length; i += 2) {
+            dest[destOffset + i / 2] = (byte) (charToCompressedBaseHigh(readBases[offset + i - 1]) |
+                    charToCompressedBaseLow(readBases[offset + i]));
         }
         // Last nybble
-        if (i == readBases.length) {
-            compressedBases[i / 2] = charToCompressedBaseHigh((char) readBases[i - 1]);
+        if (i == length) {
+            dest[destOffset + i / 2] = charToCompressedBaseHigh((char) readBases[offset + i - 1]);
         }
-        return compressedBases;
     }
 
     /**
@@ -674,34 +688,35 @@ public final class SAMUtils {
         int readBase = 1;
         int refBase = alignmentStart;
 
-        for (final CigarElement e : cigar.getCigarElements()) {
-            switch (e.getOperator()) {
+        for (int i = 0; i < cigar.numCigarElements(); ++i) {
+            final CigarOperator operator = cigar.getCigarElementOperator(i);
+            switch (operator) {
                 case H:
                     break; // ignore hard clips
                 case P:
                     break; // ignore pads
                 case S:
-                    readBase += e.getLength();
+                    readBase += cigar.getCigarElementLength(i);
                     break; // soft clip read bases
                 case N:
-                    refBase += e.getLength();
+                    refBase += cigar.getCigarElementLength(i);
                     break;  // reference skip
                 case D:
-                    refBase += e.getLength();
+                    refBase += cigar.getCigarElementLength(i);
                     break;
                 case I:
-                    readBase += e.getLength();
+                    readBase += cigar.getCigarElementLength(i);
                     break;
                 case M:
                 case EQ:
                 case X:
-                    final int length = e.getLength();
+                    final int length = cigar.getCigarElementLength(i);
                     alignmentBlocks.add(new AlignmentBlock(readBase, refBase, length));
                     readBase += length;
                     refBase += length;
                     break;
                 default:
-                    throw new IllegalStateException("Case statement didn't deal with " + cigarTypeName + " op: " + e.getOperator());
+                    throw new IllegalStateException("Case statement didn't deal with " + cigarTypeName + " op: " + operator);
             }
         }
         return Collections.unmodifiableList(alignmentBlocks);
@@ -718,17 +733,7 @@ public final class SAMUtils {
      * Invalid to call with cigar = null
      */
     public static int getUnclippedStart(final int alignmentStart, final Cigar cigar) {
-        int unClippedStart = alignmentStart;
-        for (final CigarElement cig : cigar.getCigarElements()) {
-            final CigarOperator op = cig.getOperator();
-            if (op == CigarOperator.SOFT_CLIP || op == CigarOperator.HARD_CLIP) {
-                unClippedStart -= cig.getLength();
-            } else {
-                break;
-            }
-        }
-
-        return unClippedStart;
+        return alignmentStart - cigar.getLeadingClipLength();
     }
 
     /**
@@ -742,20 +747,7 @@ public final class SAMUtils {
      * Invalid to call with cigar = null
      */
     public static int getUnclippedEnd(final int alignmentEnd, final Cigar cigar) {
-        int unClippedEnd = alignmentEnd;
-        final List<CigarElement> cigs = cigar.getCigarElements();
-        for (int i = cigs.size() - 1; i >= 0; --i) {
-            final CigarElement cig = cigs.get(i);
-            final CigarOperator op = cig.getOperator();
-
-            if (op == CigarOperator.SOFT_CLIP || op == CigarOperator.HARD_CLIP) {
-                unClippedEnd += cig.getLength();
-            } else {
-                break;
-            }
-        }
-
-        return unClippedEnd;
+        return alignmentEnd + cigar.getTrailingClipLength();
     }
 
     /**
@@ -23,8 +23,13 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.StringLineReader;
 
+import java.io.File;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -32,7 +37,6 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -43,6 +47,10 @@ import java.util.Map;
  * Merges SAMFileHeaders that have the same sequences into a single merged header
  * object while providing read group translation for cases where read groups
  * clash across input headers.
+ * <p/>
+ * The result of a merge, including all of the ID translations, can be saved with {@link #write(File)} and
+ * reloaded for the same input headers with {@link #read(File, Collection)}, to avoid repeating the merge of
+ * a large number of headers.
  */
 public class SamFileHeaderMerger {
 
@@ -66,6 +74,10 @@ public class SamFileHeaderMerger {
         }
     }
 
+    /** Identifies a file written by {@link #write(File)}, and the version of its format. */
+    private static final int MERGE_RESULT_MAGIC = 0x4d464853; // "SHFM" in little-endian
+    private static final int MERGE_RESULT_VERSION = 1;
+
     //Super Header to construct
     private final SAMFileHeader mergedHeader;
     private Collection<SamReader> readers;
@@ -88,13 +100,11 @@ public class SamFileHeaderMerger {
 
     private boolean hasMergedSequenceDictionary = false;
 
-    // Translation of old sequence dictionary ids to new dictionary ids
+    // Translation of old sequence dictionary ids to new dictionary ids, indexed by old id.
     // This is an IdentityHashMap because it can be quite expensive to compute the hashCode for
-    // large SAMFileHeaders.  It is possible that two input files will have identical headers so that
-    // the regular HashMap would fold them together, but the value stored in each of the two
-    // Map entries will be the same, so it should not hurt anything.
-    private final Map<SAMFileHeader, Map<Integer, Integer>> samSeqDictionaryIdTranslationViaHeader =
-            new IdentityHashMap<SAMFileHeader, Map<Integer, Integer>>();
+    // large SAMFileHeaders.  Headers with equal sequence dictionaries share the same array.
+    private final Map<SAMFileHeader, int[]> samSeqDictionaryIdTranslationViaHeader =
+            new IdentityHashMap<SAMFileHeader, int[]>();
 
     //HeaderRecordFactory that creates SAMReadGroupRecord instances.
     private static final HeaderRecordFactory<SAMReadGroupRecord> READ_GROUP_RECORD_FACTORY = new HeaderRecordFactory<SAMReadGroupRecord>() {
@@ -154,13 +164,15 @@ public class SamFileHeaderMerger {
         this.headers = new LinkedHashSet<SAMFileHeader>(headers);
         this.mergedHeader = new SAMFileHeader();
 
+        // Many inputs typically share a few distinct sequence dictionaries, so each distinct one is checked and merged once
+        final Map<SAMSequenceDictionary, List<SAMFileHeader>> dictionaries = getDistinctSequenceDictionaries(headers);
         SAMSequenceDictionary sequenceDictionary;
         try {
-            sequenceDictionary = getSequenceDictionary(headers);
+            sequenceDictionary = getSequenceDictionary(dictionaries.keySet());
             this.hasMergedSequenceDictionary = false;
         } catch (SequenceUtil.SequenceListsDifferException pe) {
             if (mergeDictionaries) {
-                sequenceDictionary = mergeSequenceDictionaries(headers);
+                sequenceDictionary = mergeSequenceDictionaries(dictionaries);
                 this.hasMergedSequenceDictionary = true;
             } else {
                 throw pe;
@@ -188,6 +200,12 @@ public class SamFileHeaderMerger {
         }
     }
 
+    /** Used by {@link #read(File, Collection)}, which fills in the translations. */
+    private SamFileHeaderMerger(final SAMFileHeader mergedHeader, final Collection<SAMFileHeader> headers) {
+        this.headers = new LinkedHashSet<SAMFileHeader>(headers);
+        this.mergedHeader = mergedHeader;
+    }
+
     // Utilility method to make use with old constructor
     private static List<SAMFileHeader> getHeadersFromReaders(final Collection<SamReader> readers) {
         final List<SAMFileHeader> headers = new ArrayList<SAMFileHeader>(readers.size());
@@ -271,46 +289,63 @@ public class SamFileHeaderMerger {
         //and so on until all program group headers are processed.
 
         //currentProgramGroups is the list of records to merge next. Start by merging the programGroups that don't have a PP attribute (eg. the tree roots).
-        List<HeaderRecordAndFileHeader<SAMProgramRecord>> currentProgramGroups = new LinkedList<HeaderRecordAndFileHeader<SAMProgramRecord>>();
-        for (final Iterator<HeaderRecordAndFileHeader<SAMProgramRecord>> programGroupsLeftToProcessIterator = programGroupsLeftToProcess.iterator(); programGroupsLeftToProcessIterator.hasNext(); ) {
-            final HeaderRecordAndFileHeader<SAMProgramRecord> pair = programGroupsLeftToProcessIterator.next();
-            if (pair.getHeaderRecord().getAttribute(SAMProgramRecord.PREVIOUS_PROGRAM_GROUP_ID_TAG) == null) {
-                programGroupsLeftToProcessIterator.remove();
-                currentProgramGroups.add(pair);
+        //The others are indexed by the file header and PP id of their parent, so that each level of the trees is found without rescanning
+        //the records that remain. Ids are unique within a header and translated consistently, so the original ids can be used for this.
+        final List<HeaderRecordAndFileHeader<SAMProgramRecord>> allProgramGroups = new ArrayList<HeaderRecordAndFileHeader<SAMProgramRecord>>(programGroupsLeftToProcess);
+        final Map<SAMFileHeader, Map<String, List<Integer>>> childrenByParent = new IdentityHashMap<SAMFileHeader, Map<String, List<Integer>>>();
+        List<Integer> currentIndexes = new ArrayList<Integer>();
+        for (int i = 0; i < allProgramGroups.size(); ++i) {
+            final HeaderRecordAndFileHeader<SAMProgramRecord> pair = allProgramGroups.get(i);
+            final String ppId = pair.getHeaderRecord().getAttribute(SAMProgramRecord.PREVIOUS_PROGRAM_GROUP_ID_TAG);
+            if (ppId == null) {
+                currentIndexes.add(i);
+            } else {
+                Map<String, List<Integer>> children = childrenByParent.get(pair.getFileHeader());
+                if (children == null) {
+                    children = new HashMap<String, List<Integer>>();
+                    childrenByParent.put(pair.getFileHeader(), children);
+                }
+                List<Integer> siblings = children.get(ppId);
+                if (siblings == null) {
+                    siblings = new ArrayList<Integer>(1);
+                    children.put(ppId, siblings);
+                }
+                siblings.add(i);
             }
         }
 
         //merge currentProgramGroups
-        while (!currentProgramGroups.isEmpty()) {
-            final List<SAMProgramRecord> currentResult = new LinkedList<SAMProgramRecord>();
+        final boolean[] processed = new boolean[allProgramGroups.size()];
+        while (!currentIndexes.isEmpty()) {
+            //apply the id translations computed so far to the PP ids of the records in this level, keeping them in input order
+            Collections.sort(currentIndexes);
+            final List<HeaderRecordAndFileHeader<SAMProgramRecord>> currentProgramGroups = new ArrayList<HeaderRecordAndFileHeader<SAMProgramRecord>>(currentIndexes.size());
+            for (final int i : currentIndexes) {
+                currentProgramGroups.add(allProgramGroups.get(i));
+                processed[i] = true;
+            }
+            final List<HeaderRecordAndFileHeader<SAMProgramRecord>> translatedProgramGroups = translateIds(currentProgramGroups, samProgramGroupIdTranslation, true);
 
-            hasProgramGroupCollisions |= mergeHeaderRecords(currentProgramGroups, PROGRAM_RECORD_FACTORY, idsThatAreAlreadyTaken, samProgramGroupIdTranslation, currentResult);
+            final List<SAMProgramRecord> currentResult = new LinkedList<SAMProgramRecord>();
+            hasProgramGroupCollisions |= mergeHeaderRecords(translatedProgramGroups, PROGRAM_RECORD_FACTORY, idsThatAreAlreadyTaken, samProgramGroupIdTranslation, currentResult);
 
             //add currentResults to overallResults
             overallResult.addAll(currentResult);
 
-            //apply the newly-computed id translations to currentProgramGroups and programGroupsLeftToProcess
-            currentProgramGroups = translateIds(currentProgramGroups, samProgramGroupIdTranslation, false);
-            programGroupsLeftToProcess = translateIds(programGroupsLeftToProcess, samProgramGroupIdTranslation, true);
-
-            //find all records in programGroupsLeftToProcess whose ppId points to a record that was just processed (eg. a record that's in currentProgramGroups),
-            //and move them to the list of programGroupsToProcessNext.
-            final LinkedList<HeaderRecordAndFileHeader<SAMProgramRecord>> programGroupsToProcessNext = new LinkedList<HeaderRecordAndFileHeader<SAMProgramRecord>>();
-            for (final Iterator<HeaderRecordAndFileHeader<SAMProgramRecord>> programGroupsLeftToProcessIterator = programGroupsLeftToProcess.iterator(); programGroupsLeftToProcessIterator.hasNext(); ) {
-                final HeaderRecordAndFileHeader<SAMProgramRecord> pairLeftToProcess = programGroupsLeftToProcessIterator.next();
-                final Object ppIdOfRecordLeftToProcess = pairLeftToProcess.getHeaderRecord().getAttribute(SAMProgramRecord.PREVIOUS_PROGRAM_GROUP_ID_TAG);
-                //find what currentProgramGroups this ppId points to (NOTE: they have to come from the same file)
-                for (final HeaderRecordAndFileHeader<SAMProgramRecord> justProcessedPair : currentProgramGroups) {
-                    final String idJustProcessed = justProcessedPair.getHeaderRecord().getId();
-                    if (pairLeftToProcess.getFileHeader() == justProcessedPair.getFileHeader() && ppIdOfRecordLeftToProcess.equals(idJustProcessed)) {
-                        programGroupsLeftToProcessIterator.remove();
-                        programGroupsToProcessNext.add(pairLeftToProcess);
-                        break;
-                    }
-                }
+            //the next level is all records whose PP id points to a record that was just processed
+            final List<Integer> nextIndexes = new ArrayList<Integer>();
+            for (final HeaderRecordAndFileHeader<SAMProgramRecord> justProcessedPair : currentProgramGroups) {
+                final Map<String, List<Integer>> children = childrenByParent.get(justProcessedPair.getFileHeader());
+                if (children == null) continue;
+                final List<Integer> siblings = children.remove(justProcessedPair.getHeaderRecord().getId());
+                if (siblings != null) nextIndexes.addAll(siblings);
             }
+            currentIndexes = nextIndexes;
+        }
 
-            currentProgramGroups = programGroupsToProcessNext;
+        programGroupsLeftToProcess.clear();
+        for (int i = 0; i < allProgramGroups.size(); ++i) {
+            if (!processed[i]) programGroupsLeftToProcess.add(allProgramGroups.get(i));
         }
 
         //verify that all records were processed
@@ -352,7 +387,7 @@ public class SamFileHeaderMerger {
         for (final HeaderRecordAndFileHeader<SAMProgramRecord> pair : programGroups) {
             final SAMProgramRecord record = pair.getHeaderRecord();
             final String id = record.getProgramGroupId();
-            final String ppId = (String) record.getAttribute(SAMProgramRecord.PREVIOUS_PROGRAM_GROUP_ID_TAG);
+            final String ppId = record.getAttribute(SAMProgramRecord.PREVIOUS_PROGRAM_GROUP_ID_TAG);
 
             final SAMFileHeader header = pair.getFileHeader();
             final Map<String, String> translations = idTranslationTable.get(header);
@@ -414,25 +449,27 @@ public class SamFileHeaderMerger {
         //header records which, in addition to having the same id, also have identical attributes.
         //In other words, each key in the nested map represents one or more
         //header records which have both identical ids and identical attributes. The List of
-        //SAMFileHeaders keeps track of which readers these header record(s) came from.
-        final Map<String, Map<RecordType, List<SAMFileHeader>>> idToRecord =
-                new LinkedHashMap<String, Map<RecordType, List<SAMFileHeader>>>();
+        //SAMFileHeaders keeps track of which readers these header record(s) came from.  The nested Map is keyed by
+        //HeaderRecordContent because SAMReadGroupRecord hashes on its id alone, which would put every record in one bucket.
+        final Map<String, Map<HeaderRecordContent<RecordType>, List<SAMFileHeader>>> idToRecord =
+                new LinkedHashMap<String, Map<HeaderRecordContent<RecordType>, List<SAMFileHeader>>>();
 
         //Populate the idToRecord and seenIds data structures
         for (final HeaderRecordAndFileHeader<RecordType> pair : headerRecords) {
             final RecordType record = pair.getHeaderRecord();
             final SAMFileHeader header = pair.getFileHeader();
             final String recordId = record.getId();
-            Map<RecordType, List<SAMFileHeader>> recordsWithSameId = idToRecord.get(recordId);
+            Map<HeaderRecordContent<RecordType>, List<SAMFileHeader>> recordsWithSameId = idToRecord.get(recordId);
             if (recordsWithSameId == null) {
-                recordsWithSameId = new LinkedHashMap<RecordType, List<SAMFileHeader>>();
+                recordsWithSameId = new LinkedHashMap<HeaderRecordContent<RecordType>, List<SAMFileHeader>>();
                 idToRecord.put(recordId, recordsWithSameId);
             }
 
-            List<SAMFileHeader> fileHeaders = recordsWithSameId.get(record);
+            final HeaderRecordContent<RecordType> content = new HeaderRecordContent<RecordType>(record);
+            List<SAMFileHeader> fileHeaders = recordsWithSameId.get(content);
             if (fileHeaders == null) {
                 fileHeaders = new LinkedList<SAMFileHeader>();
-                recordsWithSameId.put(record, fileHeaders);
+                recordsWithSameId.put(content, fileHeaders);
             }
 
             fileHeaders.add(header);
@@ -440,13 +477,13 @@ public class SamFileHeaderMerger {
 
         //Resolve any collisions between header records by remapping their ids.
         boolean hasCollisions = false;
-        for (final Map.Entry<String, Map<RecordType, List<SAMFileHeader>>> entry : idToRecord.entrySet()) {
+        for (final Map.Entry<String, Map<HeaderRecordContent<RecordType>, List<SAMFileHeader>>> entry : idToRecord.entrySet()) {
             final String recordId = entry.getKey();
-            final Map<RecordType, List<SAMFileHeader>> recordsWithSameId = entry.getValue();
+            final Map<HeaderRecordContent<RecordType>, List<SAMFileHeader>> recordsWithSameId = entry.getValue();
 
 
-            for (final Map.Entry<RecordType, List<SAMFileHeader>> recordWithUniqueAttr : recordsWithSameId.entrySet()) {
-                final RecordType record = recordWithUniqueAttr.getKey();
+            for (final Map.Entry<HeaderRecordContent<RecordType>, List<SAMFileHeader>> recordWithUniqueAttr : recordsWithSameId.entrySet()) {
+                final RecordType record = recordWithUniqueAttr.getKey().record;
                 final List<SAMFileHeader> fileHeaders = recordWithUniqueAttr.getValue();
 
                 String newId;
@@ -507,21 +544,47 @@ public class SamFileHeaderMerger {
     }
 
 
+    /**
+     * Groups the headers by sequence dictionary, so that equal dictionaries are only examined once.  Identical
+     * dictionary objects, which are common when the headers were decoded by the same process, are recognised
+     * without comparing their contents.
+     *
+     * @param headers headers to pull sequences from
+     * @return the headers that use each distinct sequence dictionary, in the order the dictionaries are first seen
+     */
+    private static Map<SAMSequenceDictionary, List<SAMFileHeader>> getDistinctSequenceDictionaries(final Collection<SAMFileHeader> headers) {
+        final Map<SAMSequenceDictionary, List<SAMFileHeader>> byIdentity = new IdentityHashMap<SAMSequenceDictionary, List<SAMFileHeader>>();
+        final Map<SAMSequenceDictionary, List<SAMFileHeader>> distinct = new LinkedHashMap<SAMSequenceDictionary, List<SAMFileHeader>>();
+        for (final SAMFileHeader header : headers) {
+            final SAMSequenceDictionary dictionary = header.getSequenceDictionary();
+            List<SAMFileHeader> headersWithDictionary = byIdentity.get(dictionary);
+            if (headersWithDictionary == null) {
+                headersWithDictionary = distinct.get(dictionary);
+                if (headersWithDictionary == null) {
+                    headersWithDictionary = new ArrayList<SAMFileHeader>();
+                    distinct.put(dictionary, headersWithDictionary);
+                }
+                byIdentity.put(dictionary, headersWithDictionary);
+            }
+            headersWithDictionary.add(header);
+        }
+        return distinct;
+    }
+
     /**
      * Get the sequences off the SAMFileHeader.  Throws runtime exception if the sequence
      * are different from one another.
      *
-     * @param headers headers to pull sequences from
+     * @param dictionaries the distinct sequence dictionaries of the headers
      * @return sequences from files.  Each file should have the same sequence
      */
-    private SAMSequenceDictionary getSequenceDictionary(final Collection<SAMFileHeader> headers) {
+    private SAMSequenceDictionary getSequenceDictionary(final Collection<SAMSequenceDictionary> dictionaries) {
         SAMSequenceDictionary sequences = null;
-        for (final SAMFileHeader header : headers) {
+        for (final SAMSequenceDictionary currentSequences : dictionaries) {
 
             if (sequences == null) {
-                sequences = header.getSequenceDictionary();
+                sequences = currentSequences;
             } else {
-                final SAMSequenceDictionary currentSequences = header.getSequenceDictionary();
                 SequenceUtil.assertSequenceDictionariesEqual(sequences, currentSequences);
             }
         }
@@ -532,107 +595,95 @@ public class SamFileHeaderMerger {
     /**
      * Get the sequences from the SAMFileHeader, and merge the resulting sequence dictionaries.
      *
-     * @param headers headers to pull sequences from
+     * @param dictionaries the distinct sequence dictionaries, and the headers that use each of them
      * @return sequences from files.  Each file should have the same sequence
      */
-    private SAMSequenceDictionary mergeSequenceDictionaries(final Collection<SAMFileHeader> headers) {
-        SAMSequenceDictionary sequences = new SAMSequenceDictionary();
-        for (final SAMFileHeader header : headers) {
-            final SAMSequenceDictionary currentSequences = header.getSequenceDictionary();
+    private SAMSequenceDictionary mergeSequenceDictionaries(final Map<SAMSequenceDictionary, List<SAMFileHeader>> dictionaries) {
+        List<SAMSequenceRecord> sequences = new ArrayList<SAMSequenceRecord>();
+        for (final SAMSequenceDictionary currentSequences : dictionaries.keySet()) {
             sequences = mergeSequences(sequences, currentSequences);
         }
+        final SAMSequenceDictionary merged = new SAMSequenceDictionary(sequences);
         // second pass, make a map of the original seqeunce id -> new sequence id
-        createSequenceMapping(headers, sequences);
-        return sequences;
+        createSequenceMapping(dictionaries, merged);
+        return merged;
     }
 
     /**
      * They've asked to merge the sequence headers.  What we support right now is finding the sequence name superset.
+     * Sequences not in mergeIntoList are inserted just before the next sequence from mergeFromDict that is, so the
+     * cost is linear in the size of the two inputs.
      *
-     * @param mergeIntoDict the result of merging so far.  All SAMSequenceRecords in here have been cloned from the originals.
-     * @param mergeFromDict A new sequence dictionary to merge into mergeIntoDict.
-     * @return A new sequence dictionary that resulting from merging the two inputs.
+     * @param mergeIntoList the result of merging so far.  All SAMSequenceRecords in here have been cloned from the originals.
+     * @param mergeFromDict A new sequence dictionary to merge into mergeIntoList.
+     * @return A new list of sequences resulting from merging the two inputs.
      */
-    private SAMSequenceDictionary mergeSequences(final SAMSequenceDictionary mergeIntoDict, final SAMSequenceDictionary mergeFromDict) {
+    private List<SAMSequenceRecord> mergeSequences(final List<SAMSequenceRecord> mergeIntoList, final SAMSequenceDictionary mergeFromDict) {
+        final Map<String, Integer> mergeIntoIndexes = new HashMap<String, Integer>(mergeIntoList.size() * 2);
+        for (int i = 0; i < mergeIntoList.size(); ++i) {
+            mergeIntoIndexes.put(mergeIntoList.get(i).getSequenceName(), i);
+        }
 
         // a place to hold the sequences that we haven't found a home for, in the order the appear in mergeFromDict.
-        final LinkedList<SAMSequenceRecord> holder = new LinkedList<SAMSequenceRecord>();
+        final List<SAMSequenceRecord> holder = new ArrayList<SAMSequenceRecord>();
 
         // Return value will be created from this.
-        final LinkedList<SAMSequenceRecord> resultingDict = new LinkedList<SAMSequenceRecord>();
-        for (final SAMSequenceRecord sequenceRecord : mergeIntoDict.getSequences()) {
-            resultingDict.add(sequenceRecord);
-        }
+        final List<SAMSequenceRecord> resultingList = new ArrayList<SAMSequenceRecord>(mergeIntoList.size() + mergeFromDict.size());
 
-        // Index into resultingDict of previous SAMSequenceRecord from mergeFromDict that already existed in mergeIntoDict.
+        // Index into mergeIntoList of the next sequence not yet copied to resultingList.
+        int nextToCopy = 0;
+        // Index into mergeIntoList of previous SAMSequenceRecord from mergeFromDict that already existed in mergeIntoList.
         int prevloc = -1;
-        // Previous SAMSequenceRecord from mergeFromDict that already existed in mergeIntoDict.
+        // Previous SAMSequenceRecord from mergeFromDict that already existed in mergeIntoList.
         SAMSequenceRecord previouslyMerged = null;
 
         for (final SAMSequenceRecord sequenceRecord : mergeFromDict.getSequences()) {
-            // Does it already exist in resultingDict?
-            final int loc = getIndexOfSequenceName(resultingDict, sequenceRecord.getSequenceName());
-            if (loc == -1) {
-                // If doesn't already exist in resultingDict, save it an decide where to insert it later.
+            // Does it already exist in mergeIntoList?
+            final Integer loc = mergeIntoIndexes.get(sequenceRecord.getSequenceName());
+            if (loc == null) {
+                // If doesn't already exist in mergeIntoList, save it an decide where to insert it later.
                 holder.add(sequenceRecord.clone());
             } else if (prevloc > loc) {
-                // If sequenceRecord already exists in resultingDict, but prior to the previous one
-                // from mergeIntoDict that already existed, cannot merge.
+                // If sequenceRecord already exists in mergeIntoList, but prior to the previous one
+                // from mergeIntoList that already existed, cannot merge.
                 throw new SAMException("Cannot merge sequence dictionaries because sequence " +
                         sequenceRecord.getSequenceName() + " and " + previouslyMerged.getSequenceName() +
                         " are in different orders in two input sequence dictionaries.");
             } else {
-                // Since sequenceRecord already exists in resultingDict, don't need to add it.
+                // Since sequenceRecord already exists, don't need to add it.
                 // Add in all the sequences prior to it that have been held in holder.
-                resultingDict.addAll(loc, holder);
+                resultingList.addAll(mergeIntoList.subList(nextToCopy, loc));
+                resultingList.addAll(holder);
+                nextToCopy = loc;
                 // Remember the index of sequenceRecord so can check for merge imcompatibility.
-                prevloc = loc + holder.size();
+                prevloc = loc;
                 previouslyMerged = sequenceRecord;
                 holder.clear();
             }
         }
-        // Append anything left in holder.
-        if (holder.size() != 0) {
-            resultingDict.addAll(holder);
-        }
-        return new SAMSequenceDictionary(resultingDict);
-    }
-
-    /**
-     * Find sequence in list.
-     *
-     * @param list         List to search for the sequence name.
-     * @param sequenceName Name to search for.
-     * @return Index of SAMSequenceRecord with the given name in list, or -1 if not found.
-     */
-    private static int getIndexOfSequenceName(final List<SAMSequenceRecord> list, final String sequenceName) {
-        for (int i = 0; i < list.size(); ++i) {
-            if (list.get(i).getSequenceName().equals(sequenceName)) {
-                return i;
-            }
-        }
-        return -1;
+        // Append anything left in mergeIntoList and then in holder.
+        resultingList.addAll(mergeIntoList.subList(nextToCopy, mergeIntoList.size()));
+        resultingList.addAll(holder);
+        return resultingList;
     }
 
     /**
      * create the sequence mapping.  This map is used to convert the unmerged header sequence ID's to the merged
-     * list of sequence id's.
+     * list of sequence id's.  Headers with the same sequence dictionary share the same mapping.
      *
-     * @param headers          the collections of headers.
+     * @param dictionaries     the distinct sequence dictionaries, and the headers that use each of them
      * @param masterDictionary the superset dictionary we've created.
      */
-    private void createSequenceMapping(final Collection<SAMFileHeader> headers, final SAMSequenceDictionary masterDictionary) {
-        final LinkedList<String> resultingDictStr = new LinkedList<String>();
-        for (final SAMSequenceRecord r : masterDictionary.getSequences()) {
-            resultingDictStr.add(r.getSequenceName());
-        }
-        for (final SAMFileHeader header : headers) {
-            final Map<Integer, Integer> seqMap = new HashMap<Integer, Integer>();
-            final SAMSequenceDictionary dict = header.getSequenceDictionary();
-            for (final SAMSequenceRecord rec : dict.getSequences()) {
-                seqMap.put(rec.getSequenceIndex(), resultingDictStr.indexOf(rec.getSequenceName()));
+    private void createSequenceMapping(final Map<SAMSequenceDictionary, List<SAMFileHeader>> dictionaries, final SAMSequenceDictionary masterDictionary) {
+        for (final Map.Entry<SAMSequenceDictionary, List<SAMFileHeader>> entry : dictionaries.entrySet()) {
+            final List<SAMSequenceRecord> sequences = entry.getKey().getSequences();
+            final int[] seqMap = new int[sequences.size()];
+            for (final SAMSequenceRecord rec : sequences) {
+                seqMap[rec.getSequenceIndex()] = masterDictionary.getSequenceIndex(rec.getSequenceName());
+            }
+            for (final SAMFileHeader header : entry.getValue()) {
+                this.samSeqDictionaryIdTranslationViaHeader.put(header, seqMap);
             }
-            this.samSeqDictionaryIdTranslationViaHeader.put(header, seqMap);
         }
     }
 
@@ -727,20 +778,146 @@ public class SamFileHeaderMerger {
      * @return the new index value that is compatible with the merged sequence index.
      */
     public Integer getMergedSequenceIndex(final SAMFileHeader header, final Integer oldReferenceSequenceIndex) {
-        final Map<Integer, Integer> mapping = this.samSeqDictionaryIdTranslationViaHeader.get(header);
+        final int[] mapping = this.samSeqDictionaryIdTranslationViaHeader.get(header);
         if (mapping == null) {
             throw new SAMException("No sequence dictionary mapping available for header: " + header);
         }
 
-        final Integer newIndex = mapping.get(oldReferenceSequenceIndex);
-        if (newIndex == null) {
+        if (oldReferenceSequenceIndex == null || oldReferenceSequenceIndex < 0 || oldReferenceSequenceIndex >= mapping.length) {
             throw new SAMException("No mapping for reference index " + oldReferenceSequenceIndex + " from header: " + header);
         }
 
-        return newIndex;
+        return mapping[oldReferenceSequenceIndex];
     }
 
 
+    /**
+     * Saves the merged header and the ID translations for each input header, so that the merge can be reused
+     * with {@link #read(File, Collection)}.
+     */
+    public void write(final File file) {
+        final BinaryCodec codec = new BinaryCodec(IOUtil.maybeBufferOutputStream(IOUtil.openFileForWriting(file)));
+        try {
+            codec.writeInt(MERGE_RESULT_MAGIC);
+            codec.writeInt(MERGE_RESULT_VERSION);
+            final StringWriter headerText = new StringWriter();
+            new SAMTextHeaderCodec().encode(headerText, mergedHeader);
+            codec.writeString(headerText.toString(), true, false);
+            codec.writeBoolean(hasReadGroupCollisions);
+            codec.writeBoolean(hasProgramGroupCollisions);
+            codec.writeBoolean(hasMergedSequenceDictionary);
+
+            // Sequence translations are shared between headers with the same dictionary, so are written once each
+            final Map<int[], Integer> sequenceMappings = new IdentityHashMap<int[], Integer>();
+            final List<int[]> distinctMappings = new ArrayList<int[]>();
+            for (final int[] mapping : samSeqDictionaryIdTranslationViaHeader.values()) {
+                if (!sequenceMappings.containsKey(mapping)) {
+                    sequenceMappings.put(mapping, distinctMappings.size());
+                    distinctMappings.add(mapping);
+                }
+            }
+            codec.writeInt(distinctMappings.size());
+            for (final int[] mapping : distinctMappings) {
+                codec.writeInt(mapping.length);
+                for (final int index : mapping) codec.writeInt(index);
+            }
+
+            codec.writeInt(headers.size());
+            for (final SAMFileHeader header : headers) {
+                codec.writeInt(header.hashCode());
+                writeTranslation(codec, samReadGroupIdTranslation.get(header));
+                writeTranslation(codec, samProgramGroupIdTranslation.get(header));
+                final int[] mapping = samSeqDictionaryIdTranslationViaHeader.get(header);
+                codec.writeInt(mapping == null ? -1 : sequenceMappings.get(mapping));
+            }
+        } finally {
+            codec.close();
+        }
+    }
+
+    /**
+     * Loads a merge saved by {@link #write(File)}.  The headers must be equal to those originally merged, and in
+     * the same order; a SAMException is thrown if they evidently are not.
+     *
+     * @param file    the saved merge
+     * @param headers the headers that were originally merged, typically read again from the same files
+     */
+    public static SamFileHeaderMerger read(final File file, final Collection<SAMFileHeader> headers) {
+        final BinaryCodec codec = new BinaryCodec(IOUtil.maybeBufferInputStream(IOUtil.openFileForReading(file)));
+        try {
+            if (codec.readInt() != MERGE_RESULT_MAGIC || codec.readInt() != MERGE_RESULT_VERSION) {
+                throw new SAMException("Not a saved header merge: " + file);
+            }
+            final SAMTextHeaderCodec headerCodec = new SAMTextHeaderCodec();
+            headerCodec.setValidationStringency(ValidationStringency.SILENT);
+            final SAMFileHeader mergedHeader = headerCodec.decode(new StringLineReader(codec.readLengthAndString(false)), file.toString());
+            final SamFileHeaderMerger merger = new SamFileHeaderMerger(mergedHeader, headers);
+            merger.hasReadGroupCollisions = codec.readBoolean();
+            merger.hasProgramGroupCollisions = codec.readBoolean();
+            merger.hasMergedSequenceDictionary = codec.readBoolean();
+
+            final int[][] sequenceMappings = new int[codec.readInt()][];
+            for (int i = 0; i < sequenceMappings.length; ++i) {
+                sequenceMappings[i] = new int[codec.readInt()];
+                for (int j = 0; j < sequenceMappings[i].length; ++j) sequenceMappings[i][j] = codec.readInt();
+            }
+
+            if (codec.readInt() != merger.headers.size()) {
+                throw new SAMException("Saved header merge " + file + " was made from a different number of headers");
+            }
+            // Headers that are equal but not identical get the same translations, as they would when merged
+            final Map<SAMFileHeader, SAMFileHeader> distinctHeaders = new HashMap<SAMFileHeader, SAMFileHeader>();
+            for (final SAMFileHeader header : merger.headers) {
+                if (codec.readInt() != header.hashCode()) {
+                    throw new SAMException("Saved header merge " + file + " was made from different headers");
+                }
+                distinctHeaders.put(header, header);
+                putTranslation(merger.samReadGroupIdTranslation, header, readTranslation(codec));
+                putTranslation(merger.samProgramGroupIdTranslation, header, readTranslation(codec));
+                final int mappingIndex = codec.readInt();
+                if (mappingIndex != -1) merger.samSeqDictionaryIdTranslationViaHeader.put(header, sequenceMappings[mappingIndex]);
+            }
+            for (final SAMFileHeader header : headers) {
+                final SAMFileHeader distinct = distinctHeaders.get(header);
+                if (distinct == header) continue;
+                putTranslation(merger.samReadGroupIdTranslation, header, merger.samReadGroupIdTranslation.get(distinct));
+                putTranslation(merger.samProgramGroupIdTranslation, header, merger.samProgramGroupIdTranslation.get(distinct));
+                final int[] mapping = merger.samSeqDictionaryIdTranslationViaHeader.get(distinct);
+                if (mapping != null) merger.samSeqDictionaryIdTranslationViaHeader.put(header, mapping);
+            }
+            return merger;
+        } finally {
+            codec.close();
+        }
+    }
+
+    private static void writeTranslation(final BinaryCodec codec, final Map<String, String> translation) {
+        if (translation == null) {
+            codec.writeInt(-1);
+            return;
+        }
+        codec.writeInt(translation.size());
+        for (final Map.Entry<String, String> entry : translation.entrySet()) {
+            codec.writeString(entry.getKey(), true, false);
+            codec.writeString(entry.getValue(), true, false);
+        }
+    }
+
+    private static Map<String, String> readTranslation(final BinaryCodec codec) {
+        final int size = codec.readInt();
+        if (size == -1) return null;
+        final Map<String, String> translation = new HashMap<String, String>(size * 2);
+        for (int i = 0; i < size; ++i) {
+            translation.put(codec.readLengthAndString(false), codec.readLengthAndString(false));
+        }
+        return translation;
+    }
+
+    private static void putTranslation(final Map<SAMFileHeader, Map<String, String>> translations, final SAMFileHeader header,
+                                       final Map<String, String> translation) {
+        if (translation != null) translations.put(header, translation);
+    }
+
     /**
      * Implementations of this interface are used by mergeHeaderRecords(..) to instantiate
      * specific subclasses of AbstractSAMHeaderRecord.
@@ -756,6 +933,30 @@ public class SamFileHeaderMerger {
         public RecordType createRecord(final String id, RecordType srcRecord);
     }
 
+    /**
+     * Wraps a header record so that it is hashed on its attributes as well as its id, while still being
+     * compared with the record's own equals().
+     */
+    private static class HeaderRecordContent<RecordType extends AbstractSAMHeaderRecord> {
+        private final RecordType record;
+        private final int hashCode;
+
+        public HeaderRecordContent(final RecordType record) {
+            this.record = record;
+            this.hashCode = 31 * record.hashCode() + record.attributesHashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof HeaderRecordContent && record.equals(((HeaderRecordContent) o).record);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     /**
      * Struct that groups together a subclass of AbstractSAMHeaderRecord with the
      * SAMFileHeader that it came from.
@@ -410,6 +410,75 @@ public abstract class SamReaderFactory {
                 logDebugIgnoringOption(reader, this);
             }
 
+        },
+
+        /**
+         * For SAM text files, parse each line directly from bytes into the BAM binary representation, which is decoded
+         * lazily as for BAM files.  This avoids creating a String per field and is faster, particularly if only some
+         * fields are used or records are written to BAM.  As when converting to BAM, bases are stored in upper case,
+         * and records that cannot be represented in BAM (e.g. with a reference name not in the sequence dictionary)
+         * cause an error regardless of validation stringency.
+         */
+        PARSE_SAM_AS_BINARY {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableBinaryParsing(true);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+        },
+
+        /**
+         * For SAM text files, read the input in large chunks of whole lines and parse the chunks on
+         * {@link Defaults#SAM_PARSING_THREADS} threads.  Records are returned in their original order, and a parsing
+         * error is thrown when the record in error would have been returned.  May be combined with
+         * {@link #PARSE_SAM_AS_BINARY}.
+         */
+        PARSE_SAM_IN_PARALLEL {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableParallelParsing(Defaults.SAM_PARSING_THREADS);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+        },
+
+        /**
+         * For CRAM files, read containers ahead of iteration and decode them, including decompression, restoring
+         * bases from the reference and conversion to SAMRecords, on {@link Defaults#CRAM_DECODING_THREADS} threads.
+         * Records are returned in their original order.  Applies to iteration over the whole file and to queries.
+         */
+        DECODE_CRAM_IN_PARALLEL {
+            @Override
+            void applyTo(final BAMFileReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final SAMTextReader underlyingReader, final SamReader reader) {
+                logDebugIgnoringOption(reader, this);
+            }
+
+            @Override
+            void applyTo(final CRAMFileReader underlyingReader, final SamReader reader) {
+                underlyingReader.enableParallelDecoding(Defaults.CRAM_DECODING_THREADS);
+            }
         };
 
         public static EnumSet<Option> DEFAULTS = EnumSet.noneOf(Option.class);
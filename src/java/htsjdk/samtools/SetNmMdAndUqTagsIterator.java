@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools;
+
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.PeekableIterator;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.ThreadPoolUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Iterator that recalculates the NM, MD and UQ tags of the records of another iterator against a reference, and
+ * returns the records in their original order.  A tag is set only if its value has changed.
+ * <p/>
+ * Records are gathered into batches, each on a single reference sequence, and the batches are processed on a pool
+ * of threads.  If the reference is indexed, only a window of it covering the records of the current batch is held
+ * in memory, so the input should be coordinate-sorted; otherwise whole reference sequences are loaded in order, and
+ * the input must at least be sorted by reference sequence.
+ * <p/>
+ * Unmapped records, and records without bases, are returned unchanged.  UQ is not calculated for records without
+ * base qualities, or that extend beyond the end of the reference sequence.
+ */
+public class SetNmMdAndUqTagsIterator implements CloseableIterator<SAMRecord> {
+
+    /** The number of records in a batch. */
+    static final int BATCH_SIZE = 2000;
+    /** The minimum number of reference bases loaded at a time from an indexed reference. */
+    static final int WINDOW_SIZE = 1 << 20;
+    /** The number of batches that may be pending for each thread. */
+    private static final int BATCHES_PER_THREAD = 2;
+
+    private final PeekableIterator<SAMRecord> underlyingIterator;
+    private final ReferenceSequenceFile referenceSequenceFile;
+    private final ReferenceSequenceFileWalker referenceSequenceFileWalker;
+    private final boolean calculateMdAndNm;
+    private final boolean calculateUq;
+    private final ExecutorService executor;
+    private final int maxPendingBatches;
+    private final Deque<Future<List<SAMRecord>>> pendingBatches = new ArrayDeque<Future<List<SAMRecord>>>();
+    private final AtomicLong recordsChanged = new AtomicLong(0);
+
+    private List<SAMRecord> currentBatch = null;
+    private int currentIndex = 0;
+
+    // The reference window: bases of windowReferenceIndex starting at 0-based windowOffset
+    private int windowReferenceIndex = SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX;
+    private int windowOffset = 0;
+    private byte[] windowBases = null;
+
+    /**
+     * Recalculates NM, MD and UQ, using as many threads as there are processors.
+     */
+    public SetNmMdAndUqTagsIterator(final Iterator<SAMRecord> iterator, final ReferenceSequenceFile referenceSequenceFile) {
+        this(iterator, referenceSequenceFile, true, true, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param iterator              Records whose tags are to be recalculated.
+     * @param referenceSequenceFile The reference to which the records are aligned.  It is not closed by this object.
+     * @param calculateMdAndNm      Whether to recalculate the MD and NM tags.
+     * @param calculateUq           Whether to recalculate the UQ tag.
+     * @param numThreads            The number of threads to use.  If less than 2, tags are calculated on the
+     *                              calling thread.
+     */
+    public SetNmMdAndUqTagsIterator(final Iterator<SAMRecord> iterator, final ReferenceSequenceFile referenceSequenceFile,
+                                    final boolean calculateMdAndNm, final boolean calculateUq, final int numThreads) {
+        this.underlyingIterator = new PeekableIterator<SAMRecord>(iterator);
+        this.referenceSequenceFile = referenceSequenceFile;
+        this.referenceSequenceFileWalker = referenceSequenceFile.isIndexed() ? null :
+                new ReferenceSequenceFileWalker(referenceSequenceFile);
+        this.calculateMdAndNm = calculateMdAndNm;
+        this.calculateUq = calculateUq;
+        if (numThreads < 2) {
+            this.executor = null;
+            this.maxPendingBatches = 1;
+        } else {
+            this.executor = ThreadPoolUtil.newDaemonFixedThreadPool("SetNmMdAndUqTags", numThreads);
+            this.maxPendingBatches = numThreads * BATCHES_PER_THREAD;
+        }
+    }
+
+    /** @return the number of records processed so far, including some not yet returned, that had at least one tag changed. */
+    public long getRecordsChanged() {
+        return recordsChanged.get();
+    }
+
+    public boolean hasNext() {
+        while (currentBatch == null || currentIndex == currentBatch.size()) {
+            fillPendingBatches();
+            if (pendingBatches.isEmpty()) {
+                currentBatch = null;
+                if (executor != null) executor.shutdown();
+                return false;
+            }
+            currentBatch = getResult(pendingBatches.removeFirst());
+            currentIndex = 0;
+        }
+        return true;
+    }
+
+    public SAMRecord next() {
+        if (!hasNext()) {
+            throw new IllegalStateException("Cannot call next() on exhausted iterator");
+        }
+        return currentBatch.get(currentIndex++);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported: remove");
+    }
+
+    public void close() {
+        if (executor != null) executor.shutdownNow();
+        pendingBatches.clear();
+        currentBatch = null;
+        CloserUtil.close(underlyingIterator);
+    }
+
+    /**
+     * Reads batches of records on the calling thread, loading the reference bases they need, and submits them
+     * for processing.
+     */
+    private void fillPendingBatches() {
+        while (pendingBatches.size() < maxPendingBatches && underlyingIterator.hasNext()) {
+            final List<SAMRecord> records = new ArrayList<SAMRecord>(BATCH_SIZE);
+            final int referenceIndex = underlyingIterator.peek().getReferenceIndex();
+            int minStart = Integer.MAX_VALUE;
+            int maxEnd = 0;
+            while (records.size() < BATCH_SIZE && underlyingIterator.hasNext() &&
+                    underlyingIterator.peek().getReferenceIndex() == referenceIndex) {
+                final SAMRecord rec = underlyingIterator.next();
+                records.add(rec);
+                if (isCalculable(rec)) {
+                    minStart = Math.min(minStart, rec.getAlignmentStart());
+                    maxEnd = Math.max(maxEnd, rec.getAlignmentEnd());
+                }
+            }
+
+            final Callable<List<SAMRecord>> batch;
+            if (minStart > maxEnd) {
+                batch = new Batch(records, null, 0);
+            } else {
+                loadWindow(records.get(0), referenceIndex, minStart, maxEnd);
+                batch = new Batch(records, windowBases, windowOffset);
+            }
+            if (executor != null) {
+                pendingBatches.addLast(executor.submit(batch));
+            } else {
+                final FutureTask<List<SAMRecord>> task = new FutureTask<List<SAMRecord>>(batch);
+                task.run();
+                pendingBatches.addLast(task);
+            }
+        }
+    }
+
+    /** Ensures that the reference window covers 1-based positions start to end of the given reference sequence. */
+    private void loadWindow(final SAMRecord rec, final int referenceIndex, final int start, final int end) {
+        if (referenceIndex == windowReferenceIndex && start > windowOffset && end <= windowOffset + windowBases.length) {
+            return;
+        }
+        if (referenceSequenceFileWalker != null) {
+            windowBases = referenceSequenceFileWalker.get(referenceIndex).getBases();
+            windowOffset = 0;
+        } else {
+            final int sequenceLength = rec.getHeader().getSequence(referenceIndex).getSequenceLength();
+            final int windowEnd = Math.min(Math.max(end, start + WINDOW_SIZE - 1), sequenceLength);
+            if (windowEnd < start) {
+                throw new SAMException("Record starts beyond the end of its reference sequence: " + rec.getSAMString());
+            }
+            windowBases = referenceSequenceFile.getSubsequenceAt(rec.getReferenceName(), start, windowEnd).getBases();
+            windowOffset = start - 1;
+        }
+        windowReferenceIndex = referenceIndex;
+    }
+
+    private static boolean isCalculable(final SAMRecord rec) {
+        return !rec.getReadUnmappedFlag() && rec.getReferenceIndex() != SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX &&
+                rec.getReadLength() > 0;
+    }
+
+    private List<SAMRecord> getResult(final Future<List<SAMRecord>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new SAMException("Interrupted while calculating tags", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            if (e.getCause() instanceof SAMException) throw (SAMException) e.getCause();
+            throw new SAMException("Exception calculating tags", e.getCause());
+        }
+    }
+
+    /** Recalculates the tags of a batch of records against reference bases that cover them all. */
+    private class Batch implements Callable<List<SAMRecord>> {
+        private final List<SAMRecord> records;
+        private final byte[] referenceBases;
+        private final int referenceOffset;
+
+        private Batch(final List<SAMRecord> records, final byte[] referenceBases, final int referenceOffset) {
+            this.records = records;
+            this.referenceBases = referenceBases;
+            this.referenceOffset = referenceOffset;
+        }
+
+        public List<SAMRecord> call() {
+            for (final SAMRecord rec : records) {
+                if (referenceBases != null && isCalculable(rec) && setTags(rec)) {
+                    recordsChanged.incrementAndGet();
+                }
+            }
+            return records;
+        }
+
+        /** @return true if any tag was changed. */
+        private boolean setTags(final SAMRecord rec) {
+            final Object oldMd = rec.getAttribute(SAMTagUtil.getSingleton().MD);
+            final Object oldNm = rec.getAttribute(SAMTagUtil.getSingleton().NM);
+            boolean changed = false;
+            if (calculateMdAndNm) {
+                SequenceUtil.calculateMdAndNmTags(rec, referenceBases, referenceOffset, true, true);
+                changed = rec.getAttribute(SAMTagUtil.getSingleton().MD) != oldMd ||
+                        rec.getAttribute(SAMTagUtil.getSingleton().NM) != oldNm;
+            }
+            if (calculateUq && rec.getBaseQualities().length > 0 &&
+                    rec.getAlignmentEnd() <= referenceOffset + referenceBases.length) {
+                final int uq = SequenceUtil.sumQualitiesOfMismatches(rec, referenceBases, referenceOffset);
+                final Object oldUq = rec.getAttribute(SAMTagUtil.getSingleton().UQ);
+                if (!(oldUq instanceof Number) || ((Number) oldUq).intValue() != uq) {
+                    rec.setAttribute(SAMTag.UQ.name(), uq);
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+    }
+}
@@ -23,7 +23,7 @@ import htsjdk.samtools.cram.digest.ContentDigests;
 import htsjdk.samtools.cram.encoding.ExternalCompressor;
 import htsjdk.samtools.cram.encoding.writer.DataWriterFactory;
 import htsjdk.samtools.cram.encoding.writer.Writer;
-import htsjdk.samtools.cram.io.DefaultBitOutputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitOutputStream;
 import htsjdk.samtools.cram.io.ExposedByteArrayOutputStream;
 import htsjdk.samtools.cram.structure.Block;
 import htsjdk.samtools.cram.structure.BlockContentType;
@@ -44,6 +44,7 @@ public class ContainerFactory {
     private int recordsPerSlice = 10000;
     private boolean preserveReadNames = true;
     private long globalRecordCounter = 0;
+    private ExternalCompressorSelector compressorSelector = null;
 
     public ContainerFactory(final SAMFileHeader samFileHeader, final int recordsPerSlice) {
         this.samFileHeader = samFileHeader;
@@ -51,15 +52,33 @@ public class ContainerFactory {
     }
 
     public Container buildContainer(final List<CramCompressionRecord> records)
-            throws IllegalArgumentException, IllegalAccessException,
-            IOException {
+            throws IllegalArgumentException, IOException {
         return buildContainer(records, null);
     }
 
     Container buildContainer(final List<CramCompressionRecord> records,
                              final SubstitutionMatrix substitutionMatrix)
-            throws IllegalArgumentException, IllegalAccessException,
-            IOException {
+            throws IllegalArgumentException, IOException {
+        final Container container = buildContainer(records, substitutionMatrix, globalRecordCounter);
+        globalRecordCounter += records.size();
+        return container;
+    }
+
+    /**
+     * Builds a container whose first record has the given index in the file.  Does not change the state of the
+     * factory, so containers may be built concurrently.
+     *
+     * @param globalRecordCounter The number of records in the preceding containers.
+     */
+    public Container buildContainer(final List<CramCompressionRecord> records, final long globalRecordCounter)
+            throws IllegalArgumentException, IOException {
+        return buildContainer(records, null, globalRecordCounter);
+    }
+
+    private Container buildContainer(final List<CramCompressionRecord> records,
+                                     final SubstitutionMatrix substitutionMatrix,
+                                     final long globalRecordCounter)
+            throws IllegalArgumentException, IOException {
         // get stats, create compression header and slices
         final long time1 = System.nanoTime();
         final CompressionHeader header = new CompressionHeaderFactory().build(records,
@@ -84,7 +103,7 @@ public class ContainerFactory {
         for (int i = 0; i < records.size(); i += recordsPerSlice) {
             final List<CramCompressionRecord> sliceRecords = records.subList(i,
                     Math.min(records.size(), i + recordsPerSlice));
-            final Slice slice = buildSlice(sliceRecords, header);
+            final Slice slice = buildSlice(sliceRecords, header, compressorSelector, lastGlobalRecordCounter);
             slice.globalRecordCounter = lastGlobalRecordCounter;
             lastGlobalRecordCounter += slice.nofRecords;
             container.bases += slice.bases;
@@ -103,7 +122,6 @@ public class ContainerFactory {
         container.buildHeaderTime = time2 - time1;
         container.buildSlicesTime = time4 - time3;
 
-        globalRecordCounter += records.size();
         return container;
     }
 
@@ -124,17 +142,17 @@ public class ContainerFactory {
     }
 
     private static Slice buildSlice(final List<CramCompressionRecord> records,
-                                    final CompressionHeader header)
-            throws IllegalArgumentException, IllegalAccessException,
-            IOException {
+                                    final CompressionHeader header,
+                                    final ExternalCompressorSelector compressorSelector,
+                                    final long globalRecordCounter)
+            throws IllegalArgumentException, IOException {
         final Map<Integer, ExposedByteArrayOutputStream> map = new HashMap<Integer, ExposedByteArrayOutputStream>();
         for (final int id : header.externalIds) {
             map.put(id, new ExposedByteArrayOutputStream());
         }
 
         final DataWriterFactory dataWriterFactory = new DataWriterFactory();
-        final ExposedByteArrayOutputStream bitBAOS = new ExposedByteArrayOutputStream();
-        final DefaultBitOutputStream bitOutputStream = new DefaultBitOutputStream(bitBAOS);
+        final ByteArrayBitOutputStream bitOutputStream = new ByteArrayBitOutputStream();
 
         final Slice slice = new Slice();
         slice.nofRecords = records.size();
@@ -197,7 +215,7 @@ public class ContainerFactory {
         }
 
         bitOutputStream.close();
-        slice.coreBlock = Block.buildNewCore(bitBAOS.toByteArray());
+        slice.coreBlock = Block.buildNewCore(bitOutputStream.toByteArray());
 
         slice.external = new HashMap<Integer, Block>();
         for (final Integer key : map.keySet()) {
@@ -207,11 +225,17 @@ public class ContainerFactory {
             externalBlock.setContentId(key);
             externalBlock.setContentType(BlockContentType.EXTERNAL);
 
-            final ExternalCompressor compressor = header.externalCompressors.get(key);
             final byte[] rawData = os.toByteArray();
-            final byte[] compressed = compressor.compress(rawData);
-            externalBlock.setContent(rawData, compressed);
-            externalBlock.setMethod(compressor.getMethod());
+            final ExternalCompressor compressor = header.externalCompressors.get(key);
+            if (compressorSelector == null) {
+                externalBlock.setContent(rawData, compressor.compress(rawData));
+                externalBlock.setMethod(compressor.getMethod());
+            } else {
+                final ExternalCompressorSelector.Selection selection = compressorSelector.select(key, rawData,
+                        compressor, globalRecordCounter, records.size());
+                externalBlock.setContent(rawData, selection.compressed);
+                externalBlock.setMethod(selection.compressor.getMethod());
+            }
             slice.external.put(key, externalBlock);
         }
 
@@ -225,4 +249,16 @@ public class ContainerFactory {
     public void setPreserveReadNames(final boolean preserveReadNames) {
         this.preserveReadNames = preserveReadNames;
     }
+
+    public ExternalCompressorSelector getCompressorSelector() {
+        return compressorSelector;
+    }
+
+    /**
+     * @param compressorSelector Chooses the compressors of external blocks by trial in place of those of the
+     *                           compression header, or null to use the compression header's.
+     */
+    public void setCompressorSelector(final ExternalCompressorSelector compressorSelector) {
+        this.compressorSelector = compressorSelector;
+    }
 }
@@ -22,8 +22,7 @@ import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.cram.encoding.reader.CramRecordReader;
 import htsjdk.samtools.cram.encoding.reader.DataReaderFactory;
-import htsjdk.samtools.cram.encoding.reader.DataReaderFactory.DataReaderWithStats;
-import htsjdk.samtools.cram.io.DefaultBitInputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
 import htsjdk.samtools.cram.structure.CompressionHeader;
 import htsjdk.samtools.cram.structure.Container;
 import htsjdk.samtools.cram.structure.CramCompressionRecord;
@@ -37,21 +36,35 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 public class ContainerParser {
     private static final Log log = Log.getInstance(ContainerParser.class);
 
     private final SAMFileHeader samFileHeader;
-    private final Map<String, Long> nanosecondsMap = new TreeMap<String, Long>();
+    private final DataReaderFactory dataReaderFactory;
 
     public ContainerParser(final SAMFileHeader samFileHeader) {
+        this(samFileHeader, false);
+    }
+
+    /**
+     * @param collectStats whether to time the reading of each data series, see {@link #getDataSeriesNanos()}
+     */
+    public ContainerParser(final SAMFileHeader samFileHeader, final boolean collectStats) {
         this.samFileHeader = samFileHeader;
+        this.dataReaderFactory = new DataReaderFactory(collectStats);
+    }
+
+    /**
+     * @return the nanoseconds spent reading each data series, by data series or tag name, summed over all the
+     * containers parsed, or an empty map if stats are not collected
+     */
+    public Map<String, Long> getDataSeriesNanos() {
+        return dataReaderFactory.getStats();
     }
 
     public List<CramCompressionRecord> getRecords(final Container container,
-                                                  ArrayList<CramCompressionRecord> records) throws IllegalArgumentException,
-            IllegalAccessException {
+                                                  ArrayList<CramCompressionRecord> records) throws IllegalArgumentException {
         final long time1 = System.nanoTime();
         if (records == null)
             records = new ArrayList<CramCompressionRecord>(container.nofRecords);
@@ -64,6 +77,7 @@ public class ContainerParser {
         container.parseTime = time2 - time1;
 
         if (log.isEnabled(LogLevel.DEBUG)) {
+            final Map<String, Long> nanosecondsMap = getDataSeriesNanos();
             for (final String key : nanosecondsMap.keySet()) {
                 log.debug(String.format("%s: %dms.", key, nanosecondsMap.get(key) / 1000000));
             }
@@ -73,8 +87,7 @@ public class ContainerParser {
     }
 
     ArrayList<CramCompressionRecord> getRecords(ArrayList<CramCompressionRecord> records,
-                                                final Slice slice, final CompressionHeader header) throws IllegalArgumentException,
-            IllegalAccessException {
+                                                final Slice slice, final CompressionHeader header) throws IllegalArgumentException {
         String seqName = SAMRecord.NO_ALIGNMENT_REFERENCE_NAME;
         switch (slice.sequenceId) {
             case SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX:
@@ -88,7 +101,6 @@ public class ContainerParser {
                 break;
         }
 
-        final DataReaderFactory dataReaderFactory = new DataReaderFactory();
         final Map<Integer, InputStream> inputMap = new HashMap<Integer, InputStream>();
         for (final Integer exId : slice.external.keySet()) {
             log.debug("Adding external data: " + exId);
@@ -98,8 +110,7 @@ public class ContainerParser {
 
         long time;
         final CramRecordReader reader = new CramRecordReader();
-        dataReaderFactory.buildReader(reader, new DefaultBitInputStream(
-                        new ByteArrayInputStream(slice.coreBlock.getRawContent())),
+        dataReaderFactory.buildReader(reader, new ByteArrayBitInputStream(slice.coreBlock.getRawContent()),
                 inputMap, header, slice.sequenceId);
 
         if (records == null)
@@ -137,21 +148,11 @@ public class ContainerParser {
         }
         log.debug("Slice records read time: " + readNanos / 1000000);
 
-        final Map<String, DataReaderWithStats> statMap = dataReaderFactory.getStats(reader);
-        for (final String key : statMap.keySet()) {
-            final long value;
-            if (!nanosecondsMap.containsKey(key)) {
-                nanosecondsMap.put(key, 0L);
-                value = 0;
-            } else
-                value = nanosecondsMap.get(key);
-            nanosecondsMap.put(key, value + statMap.get(key).nanos);
-        }
         return records;
     }
 
     List<CramCompressionRecord> getRecords(final Slice slice, final CompressionHeader header)
-            throws IllegalArgumentException, IllegalAccessException {
+            throws IllegalArgumentException {
         return getRecords(null, slice, header);
     }
 }
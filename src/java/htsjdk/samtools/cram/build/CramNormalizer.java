@@ -53,6 +53,15 @@ public class CramNormalizer {
         this.referenceSource = referenceSource;
     }
 
+    /**
+     * @param readCounter The number of records preceding those to be normalized, from which records are numbered,
+     *                    so that containers can be normalized independently with the same results as in sequence.
+     */
+    public CramNormalizer(final SAMFileHeader header, final ReferenceSource referenceSource, final int readCounter) {
+        this(header, referenceSource);
+        this.readCounter = readCounter;
+    }
+
     public void normalize(final ArrayList<CramCompressionRecord> records,
                           final byte[] ref, final int refOffset_zeroBased,
                           final SubstitutionMatrix substitutionMatrix) {
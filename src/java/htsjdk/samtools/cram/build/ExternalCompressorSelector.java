@@ -0,0 +1,217 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.build;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.cram.encoding.ExternalCompressor;
+import htsjdk.samtools.cram.encoding.rans.RANS;
+import htsjdk.samtools.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Chooses the compressor of each external block by trial.  The records of a file are divided into runs of
+ * {@link #getTrialInterval()} records.  The blocks of the slice holding the first record of a run are compressed and
+ * uncompressed with every candidate, and for each content id the one with the lowest cost is used by the other
+ * slices ending in that run.  The cost of a candidate is its compressed size in bytes plus its encoding and decoding
+ * times in nanoseconds, each multiplied by a weight, so that with zero weights the smallest output wins and larger
+ * weights favour faster compressors.
+ * <p/>
+ * Which slices run trials depends only on their record indexes, so with zero weights the output is the same however
+ * many threads build containers.  With non-zero weights choices depend on timings and the output is not
+ * reproducible.  A selector may be shared by containers built concurrently, provided they are started in file order,
+ * since a slice waits for the trial of its run to finish.
+ */
+public class ExternalCompressorSelector {
+    private static final Log log = Log.getInstance(ExternalCompressorSelector.class);
+
+    public static final int DEFAULT_TRIAL_INTERVAL = 1000000;
+
+    private final List<ExternalCompressor> candidates;
+    private final double encodeNanosWeight;
+    private final double decodeNanosWeight;
+    private int trialInterval = DEFAULT_TRIAL_INTERVAL;
+
+    /**
+     * Keyed by run in the high and content id in the low 32 bits.
+     */
+    private final Map<Long, Choice> choices = new HashMap<Long, Choice>();
+    private final Map<Integer, Choice> latestChoices = new HashMap<Integer, Choice>();
+
+    private static class Choice {
+        final long run;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile ExternalCompressor compressor;
+
+        Choice(final long run) {
+            this.run = run;
+        }
+    }
+
+    /**
+     * A compressor and the content of a block compressed with it.
+     */
+    public static class Selection {
+        public final ExternalCompressor compressor;
+        public final byte[] compressed;
+
+        Selection(final ExternalCompressor compressor, final byte[] compressed) {
+            this.compressor = compressor;
+            this.compressed = compressed;
+        }
+    }
+
+    /**
+     * Selects among {@link #defaultCandidates()}, by size alone.
+     */
+    public ExternalCompressorSelector() {
+        this(defaultCandidates(), 0, 0);
+    }
+
+    /**
+     * @param candidates        The compressors to try.
+     * @param encodeNanosWeight The cost in bytes of a nanosecond of compression.
+     * @param decodeNanosWeight The cost in bytes of a nanosecond of decompression.
+     */
+    public ExternalCompressorSelector(final List<ExternalCompressor> candidates, final double encodeNanosWeight,
+                                      final double decodeNanosWeight) {
+        if (candidates.isEmpty()) throw new IllegalArgumentException("No candidate compressors.");
+        if (encodeNanosWeight < 0 || decodeNanosWeight < 0) {
+            throw new IllegalArgumentException("Weights must not be negative.");
+        }
+        this.candidates = new ArrayList<ExternalCompressor>(candidates);
+        this.encodeNanosWeight = encodeNanosWeight;
+        this.decodeNanosWeight = decodeNanosWeight;
+    }
+
+    /**
+     * @return Raw, gzip at levels 1, 5 and 9, bzip2, rANS of orders 0 and 1 and xz compressors.
+     */
+    public static List<ExternalCompressor> defaultCandidates() {
+        return Arrays.asList(
+                ExternalCompressor.createRAW(),
+                ExternalCompressor.createGZIP(1),
+                ExternalCompressor.createGZIP(5),
+                ExternalCompressor.createGZIP(9),
+                ExternalCompressor.createBZIP2(),
+                ExternalCompressor.createRANS(RANS.ORDER.ZERO),
+                ExternalCompressor.createRANS(RANS.ORDER.ONE),
+                ExternalCompressor.createLZMA());
+    }
+
+    public int getTrialInterval() {
+        return trialInterval;
+    }
+
+    /**
+     * @param trialInterval The number of records between trials.  Must not be changed while a file is written.
+     */
+    public void setTrialInterval(final int trialInterval) {
+        if (trialInterval < 1) throw new IllegalArgumentException("Trial interval must be positive: " + trialInterval);
+        this.trialInterval = trialInterval;
+    }
+
+    /**
+     * @return The compressor chosen by the latest trial of a content id, or null if none has been tried.
+     */
+    public synchronized ExternalCompressor getCompressor(final int contentId) {
+        final Choice choice = latestChoices.get(contentId);
+        return choice == null ? null : choice.compressor;
+    }
+
+    /**
+     * Compresses a block, running a trial on its data if its slice holds the first record of a run, otherwise
+     * waiting for the trial of the run to finish and using the compressor it chose.
+     *
+     * @param contentId         The content id of the block.
+     * @param rawData           The uncompressed content of the block.
+     * @param defaultCompressor The compressor to use when the trial had no data of this content id.
+     * @param firstRecord       The index in the file of the first record of the block's slice.
+     * @param nofRecords        The number of records in the block's slice.
+     */
+    public Selection select(final int contentId, final byte[] rawData, final ExternalCompressor defaultCompressor,
+                            final long firstRecord, final int nofRecords) {
+        final long run = (firstRecord + Math.max(nofRecords, 1) - 1) / trialInterval;
+        final boolean trialSlice = firstRecord <= run * trialInterval;
+        if (!trialSlice && rawData.length == 0) {
+            return new Selection(defaultCompressor, defaultCompressor.compress(rawData));
+        }
+
+        final Choice choice;
+        synchronized (this) {
+            final long key = (run << 32) | (contentId & 0xffffffffL);
+            Choice existing = choices.get(key);
+            if (existing == null) {
+                existing = new Choice(run);
+                choices.put(key, existing);
+            }
+            choice = existing;
+        }
+
+        if (trialSlice) {
+            Selection best = null;
+            try {
+                if (rawData.length > 0) best = trial(rawData);
+            } finally {
+                if (best != null) choice.compressor = best.compressor;
+                choice.done.countDown();
+            }
+            if (best == null) return new Selection(defaultCompressor, defaultCompressor.compress(rawData));
+
+            synchronized (this) {
+                final Choice latest = latestChoices.get(contentId);
+                if (latest == null || latest.run < run) latestChoices.put(contentId, choice);
+            }
+            log.debug("Chose " + best.compressor.getMethod() + " for external block " + contentId);
+            return best;
+        }
+
+        try {
+            choice.done.await();
+        } catch (final InterruptedException e) {
+            throw new SAMException("Interrupted waiting for a compressor trial.", e);
+        }
+        final ExternalCompressor compressor = choice.compressor == null ? defaultCompressor : choice.compressor;
+        return new Selection(compressor, compressor.compress(rawData));
+    }
+
+    private Selection trial(final byte[] rawData) {
+        Selection best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (final ExternalCompressor candidate : candidates) {
+            final long time1 = System.nanoTime();
+            final byte[] compressed = candidate.compress(rawData);
+            final long time2 = System.nanoTime();
+            candidate.uncompress(compressed);
+            final long time3 = System.nanoTime();
+
+            final double cost = compressed.length + encodeNanosWeight * (time2 - time1)
+                    + decodeNanosWeight * (time3 - time2);
+            if (cost < bestCost) {
+                best = new Selection(candidate, compressed);
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.encoding;
+
+import htsjdk.samtools.cram.io.BitInputStream;
+import htsjdk.samtools.cram.io.BitOutputStream;
+
+import java.io.IOException;
+
+/**
+ * A codec for byte values. Data series readers and writers call the primitive methods directly, so values are never
+ * boxed; the {@link BitCodec} methods are bridges for generic callers.
+ */
+public abstract class AbstractByteCodec extends AbstractBitCodec<Byte> {
+
+    /**
+     * Read a single value from the bit stream.
+     *
+     * @param bitInputStream the bit input stream to read from
+     * @return the value read
+     * @throws IOException as per java IO contract
+     */
+    public abstract byte readByte(BitInputStream bitInputStream) throws IOException;
+
+    /**
+     * Write a single value into the bit stream.
+     *
+     * @param bitOutputStream the output bit stream to write to
+     * @param value           the value to write
+     * @return the number of bits written out
+     * @throws IOException as per java IO contract
+     */
+    public abstract long writeByte(BitOutputStream bitOutputStream, byte value) throws IOException;
+
+    /**
+     * Calculate the number of bits that the value would take in bit serialized form.
+     *
+     * @param value a value
+     * @return the number of bits
+     */
+    public abstract long numberOfBits(byte value);
+
+    @Override
+    public final Byte read(final BitInputStream bitInputStream) throws IOException {
+        return readByte(bitInputStream);
+    }
+
+    @Override
+    public Byte read(final BitInputStream bitInputStream, final int valueLen) throws IOException {
+        throw new RuntimeException("Not implemented.");
+    }
+
+    @Override
+    public void skip(final BitInputStream bitInputStream) throws IOException {
+        readByte(bitInputStream);
+    }
+
+    @Override
+    public final long write(final BitOutputStream bitOutputStream, final Byte value) throws IOException {
+        return writeByte(bitOutputStream, value);
+    }
+
+    @Override
+    public final long numberOfBits(final Byte value) {
+        return numberOfBits(value.byteValue());
+    }
+
+    @Override
+    public void readInto(final BitInputStream bitInputStream, final byte[] array, final int offset,
+                         final int valueLen) throws IOException {
+        for (int i = 0; i < valueLen; i++)
+            array[offset + i] = readByte(bitInputStream);
+    }
+}
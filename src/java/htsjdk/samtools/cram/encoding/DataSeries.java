@@ -29,8 +29,9 @@ import java.lang.annotation.Target;
  * Some data can be represented as a set of column (data series) where
  * each column is characterized by it's intention ({@link htsjdk.samtools.cram.structure.EncodingKey} for CRAM)
  * and it's data type, like {@link java.lang.Integer}or {@link java.lang.String}.
- * Annotating fields in a class with this annotation allows for automated discovery of such column (data series)
- * and attaching specific codec to serialise/deserialize data.
+ * Annotating fields in a class with this annotation documents which column (data series) a field reads or writes;
+ * the codecs themselves are attached by {@link htsjdk.samtools.cram.encoding.reader.DataReaderFactory} and
+ * {@link htsjdk.samtools.cram.encoding.writer.DataWriterFactory}.
  */
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
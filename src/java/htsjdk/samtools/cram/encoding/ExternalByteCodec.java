@@ -26,7 +26,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 
-class ExternalByteCodec extends AbstractBitCodec<Byte> {
+class ExternalByteCodec extends AbstractByteCodec {
     private final OutputStream outputStream;
     private final InputStream inputStream;
 
@@ -36,26 +36,21 @@ class ExternalByteCodec extends AbstractBitCodec<Byte> {
     }
 
     @Override
-    public Byte read(final BitInputStream bitInputStream) throws IOException {
+    public byte readByte(final BitInputStream bitInputStream) throws IOException {
         return (byte) inputStream.read();
     }
 
     @Override
-    public long write(final BitOutputStream bitOutputStream, final Byte object) throws IOException {
+    public long writeByte(final BitOutputStream bitOutputStream, final byte object) throws IOException {
         outputStream.write(object);
         return 8;
     }
 
     @Override
-    public long numberOfBits(final Byte object) {
+    public long numberOfBits(final byte object) {
         return 8;
     }
 
-    @Override
-    public Byte read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Not implemented.");
-    }
-
     @Override
     public void readInto(final BitInputStream bitInputStream, final byte[] array, final int offset,
                          final int valueLen) throws IOException {
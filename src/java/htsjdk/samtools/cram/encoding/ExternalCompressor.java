@@ -19,6 +19,30 @@ public abstract class ExternalCompressor {
 
     public abstract byte[] compress(byte[] data);
 
+    /**
+     * Uncompress data compressed with this compressor's method.
+     */
+    public byte[] uncompress(final byte[] data) {
+        try {
+            switch (method) {
+                case RAW:
+                    return data;
+                case GZIP:
+                    return ExternalCompression.gunzip(data);
+                case BZIP2:
+                    return ExternalCompression.unbzip2(data);
+                case LZMA:
+                    return ExternalCompression.unxz(data);
+                case RANS:
+                    return ExternalCompression.unrans(data);
+                default:
+                    throw new RuntimeException("Unknown block compression method: " + method.name());
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static ExternalCompressor createRAW() {
         return new ExternalCompressor(BlockCompressionMethod.RAW) {
 
@@ -43,6 +67,20 @@ public abstract class ExternalCompressor {
         };
     }
 
+    public static ExternalCompressor createGZIP(final int level) {
+        return new ExternalCompressor(BlockCompressionMethod.GZIP) {
+
+            @Override
+            public byte[] compress(final byte[] data) {
+                try {
+                    return ExternalCompression.gzip(data, level);
+                } catch (final IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
     public static ExternalCompressor createLZMA() {
         return new ExternalCompressor(BlockCompressionMethod.LZMA) {
 
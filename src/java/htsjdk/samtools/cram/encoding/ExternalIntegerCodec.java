@@ -26,7 +26,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 
-class ExternalIntegerCodec extends AbstractBitCodec<Integer> {
+class ExternalIntegerCodec extends AbstractIntegerCodec {
     private final OutputStream outputStream;
     private final InputStream inputStream;
     private final OutputStream nullOutputStream = new OutputStream() {
@@ -50,17 +50,17 @@ class ExternalIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public Integer read(final BitInputStream bitInputStream) throws IOException {
+    public int readInt(final BitInputStream bitInputStream) throws IOException {
         return ITF8.readUnsignedITF8(inputStream);
     }
 
     @Override
-    public long write(final BitOutputStream bitOutputStream, final Integer value) throws IOException {
+    public long writeInt(final BitOutputStream bitOutputStream, final int value) throws IOException {
         return ITF8.writeUnsignedITF8(value, outputStream);
     }
 
     @Override
-    public long numberOfBits(final Integer value) {
+    public long numberOfBits(final int value) {
         try {
             return ITF8.writeUnsignedITF8(value, nullOutputStream);
         } catch (final IOException e) {
@@ -68,9 +68,4 @@ class ExternalIntegerCodec extends AbstractBitCodec<Integer> {
             throw new RuntimeException(e);
         }
     }
-
-    @Override
-    public Integer read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Not implemented.");
-    }
 }
@@ -22,7 +22,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
 
 import java.io.IOException;
 
-class GammaIntegerCodec extends AbstractBitCodec<Integer> {
+class GammaIntegerCodec extends AbstractIntegerCodec {
     private int offset = 0;
 
     public GammaIntegerCodec(final int offset) {
@@ -30,7 +30,7 @@ class GammaIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final Integer read(final BitInputStream bitInputStream) throws IOException {
+    public final int readInt(final BitInputStream bitInputStream) throws IOException {
         int length = 1;
         final boolean lenCodingBit = false;
         //noinspection ConstantConditions,PointlessBooleanExpression
@@ -42,7 +42,7 @@ class GammaIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long write(final BitOutputStream bitOutputStream, final Integer value) throws IOException {
+    public final long writeInt(final BitOutputStream bitOutputStream, final int value) throws IOException {
         if (value + offset < 1)
             throw new IllegalArgumentException("Gamma codec handles only positive values: " + value);
 
@@ -56,7 +56,7 @@ class GammaIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long numberOfBits(final Integer value) {
+    public final long numberOfBits(final int value) {
         final long newValue = value + offset;
         if (newValue < 1)
             throw new RuntimeException("Invalid valid: " + newValue);
@@ -64,9 +64,4 @@ class GammaIntegerCodec extends AbstractBitCodec<Integer> {
         return betaCodeLength * 2 - 1;
     }
 
-    @Override
-    public Integer read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Not implemented.");
-    }
-
 }
@@ -23,7 +23,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
 import java.io.IOException;
 
 
-class GolombIntegerCodec extends AbstractBitCodec<Integer> {
+class GolombIntegerCodec extends AbstractIntegerCodec {
     private int m;
     private boolean quotientBit = true;
     private int offset = 0;
@@ -38,7 +38,7 @@ class GolombIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final Integer read(final BitInputStream bitInputStream) throws IOException {
+    public final int readInt(final BitInputStream bitInputStream) throws IOException {
         int quotient = 0;
         while (bitInputStream.readBit() == quotientBit)
             quotient++;
@@ -55,7 +55,7 @@ class GolombIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long write(final BitOutputStream bitOutputStream, final Integer value)
+    public final long writeInt(final BitOutputStream bitOutputStream, final int value)
             throws IOException {
         final int newValue = value + offset;
         final int quotient = newValue / m;
@@ -78,7 +78,7 @@ class GolombIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long numberOfBits(final Integer value) {
+    public final long numberOfBits(final int value) {
         final int newValue = value + offset;
         final int quotient = newValue / m;
         final int reminder = newValue % m;
@@ -93,9 +93,4 @@ class GolombIntegerCodec extends AbstractBitCodec<Integer> {
         return l;
     }
 
-    @Override
-    public Integer read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Multi-value read method not defined.");
-    }
-
 }
@@ -23,7 +23,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
 import java.io.IOException;
 
 
-class GolombLongCodec extends AbstractBitCodec<Long> {
+class GolombLongCodec extends AbstractLongCodec {
     private int m;
     private boolean quotientBit = true;
     private long offset = 0L;
@@ -38,7 +38,7 @@ class GolombLongCodec extends AbstractBitCodec<Long> {
     }
 
     @Override
-    public final Long read(final BitInputStream bitInputStream) throws IOException {
+    public final long readLong(final BitInputStream bitInputStream) throws IOException {
         long quotient = 0L;
         while (bitInputStream.readBit() == quotientBit)
             quotient++;
@@ -55,7 +55,7 @@ class GolombLongCodec extends AbstractBitCodec<Long> {
     }
 
     @Override
-    public final long write(final BitOutputStream bitOutputStream, final Long value)
+    public final long writeLong(final BitOutputStream bitOutputStream, final long value)
             throws IOException {
         final long newValue = value + offset;
         final long quotient = newValue / m;
@@ -78,7 +78,7 @@ class GolombLongCodec extends AbstractBitCodec<Long> {
     }
 
     @Override
-    public final long numberOfBits(final Long value) {
+    public final long numberOfBits(final long value) {
         final long newValue = value + offset;
         final long quotient = newValue / m;
         final long reminder = newValue % m;
@@ -92,9 +92,4 @@ class GolombLongCodec extends AbstractBitCodec<Long> {
 
         return l;
     }
-
-    @Override
-    public Long read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Multi-value read method not defined.");
-    }
 }
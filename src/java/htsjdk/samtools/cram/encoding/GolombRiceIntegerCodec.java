@@ -23,7 +23,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
 import java.io.IOException;
 
 
-class GolombRiceIntegerCodec extends AbstractBitCodec<Integer> {
+class GolombRiceIntegerCodec extends AbstractIntegerCodec {
     private final int m;
     private final int log2m;
     private final long mask;
@@ -38,7 +38,8 @@ class GolombRiceIntegerCodec extends AbstractBitCodec<Integer> {
         mask = ~(~0 << log2m);
     }
 
-    public final Integer read(final BitInputStream bitInputStream) throws IOException {
+    @Override
+    public final int readInt(final BitInputStream bitInputStream) throws IOException {
 
         int unary = 0;
         while (bitInputStream.readBit() == quotientBit)
@@ -51,7 +52,7 @@ class GolombRiceIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long write(final BitOutputStream bitOutputStream, final Integer value) throws IOException {
+    public final long writeInt(final BitOutputStream bitOutputStream, final int value) throws IOException {
         final long newValue = value + offset;
         final long quotient = newValue >>> log2m;
         if (quotient > 0x7fffffffL)
@@ -75,13 +76,8 @@ class GolombRiceIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long numberOfBits(final Integer value) {
+    public final long numberOfBits(final int value) {
         return (value + offset) / m + 1 + log2m;
     }
 
-    @Override
-    public Integer read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Not implemented.");
-    }
-
 }
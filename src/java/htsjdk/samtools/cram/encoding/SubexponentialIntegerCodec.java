@@ -23,7 +23,7 @@ import htsjdk.samtools.cram.io.BitOutputStream;
 import java.io.IOException;
 
 
-class SubexponentialIntegerCodec extends AbstractBitCodec<Integer> {
+class SubexponentialIntegerCodec extends AbstractIntegerCodec {
     private int offset = 0;
     private int k = 2;
     private boolean unaryBit = true;
@@ -35,7 +35,7 @@ class SubexponentialIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final Integer read(final BitInputStream bitInputStream) throws IOException {
+    public final int readInt(final BitInputStream bitInputStream) throws IOException {
         int u = 0;
         while (bitInputStream.readBit() == unaryBit)
             u++;
@@ -54,7 +54,7 @@ class SubexponentialIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long write(final BitOutputStream bitOutputStream, final Integer value) throws IOException {
+    public final long writeInt(final BitOutputStream bitOutputStream, final int value) throws IOException {
         if (value + offset < 0)
             throw new IllegalArgumentException("Value is less then offset: " + value);
 
@@ -77,7 +77,7 @@ class SubexponentialIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public final long numberOfBits(final Integer value) {
+    public final long numberOfBits(final int value) {
         final long newValue = value + offset;
         final long b;
         final long u;
@@ -91,9 +91,4 @@ class SubexponentialIntegerCodec extends AbstractBitCodec<Integer> {
         return u + 1 + b;
     }
 
-    @Override
-    public Integer read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Not implemented.");
-    }
-
 }
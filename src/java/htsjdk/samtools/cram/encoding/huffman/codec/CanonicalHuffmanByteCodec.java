@@ -17,13 +17,13 @@
  */
 package htsjdk.samtools.cram.encoding.huffman.codec;
 
-import htsjdk.samtools.cram.encoding.AbstractBitCodec;
+import htsjdk.samtools.cram.encoding.AbstractByteCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 
 import java.io.IOException;
 
-class CanonicalHuffmanByteCodec extends AbstractBitCodec<Byte> {
+class CanonicalHuffmanByteCodec extends AbstractByteCodec {
     private final HuffmanByteHelper helper;
 
     /*
@@ -35,32 +35,26 @@ class CanonicalHuffmanByteCodec extends AbstractBitCodec<Byte> {
     }
 
     @Override
-    public Byte read(final BitInputStream bitInputStream) throws IOException {
+    public byte readByte(final BitInputStream bitInputStream) throws IOException {
         return helper.read(bitInputStream);
     }
 
     @Override
-    public long write(final BitOutputStream bitOutputStream, final Byte object) throws IOException {
+    public long writeByte(final BitOutputStream bitOutputStream, final byte object) throws IOException {
         return helper.write(bitOutputStream, object);
     }
 
     @Override
-    public long numberOfBits(final Byte object) {
+    public long numberOfBits(final byte object) {
         final HuffmanBitCode bitCode;
         try {
-            //noinspection SuspiciousMethodCalls
-            bitCode = helper.codes.get(object);
+            bitCode = helper.codes.get(0xFF & object);
             return bitCode.bitLength;
         } catch (final NullPointerException e) {
             throw new RuntimeException("Value " + object + " not found.", e);
         }
     }
 
-    @Override
-    public Byte read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Not implemented");
-    }
-
     @Override
     public void readInto(final BitInputStream bitInputStream, final byte[] array, final int offset,
                          final int valueLen) throws IOException {
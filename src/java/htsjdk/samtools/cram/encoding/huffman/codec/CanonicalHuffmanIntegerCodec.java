@@ -17,14 +17,14 @@
  */
 package htsjdk.samtools.cram.encoding.huffman.codec;
 
-import htsjdk.samtools.cram.encoding.AbstractBitCodec;
+import htsjdk.samtools.cram.encoding.AbstractIntegerCodec;
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
 
 import java.io.IOException;
 
 
-class CanonicalHuffmanIntegerCodec extends AbstractBitCodec<Integer> {
+class CanonicalHuffmanIntegerCodec extends AbstractIntegerCodec {
     private final HuffmanIntHelper helper;
 
     /*
@@ -36,17 +36,17 @@ class CanonicalHuffmanIntegerCodec extends AbstractBitCodec<Integer> {
     }
 
     @Override
-    public Integer read(final BitInputStream bitInputStream) throws IOException {
+    public int readInt(final BitInputStream bitInputStream) throws IOException {
         return helper.read(bitInputStream);
     }
 
     @Override
-    public long write(final BitOutputStream bitOutputStream, final Integer object) throws IOException {
+    public long writeInt(final BitOutputStream bitOutputStream, final int object) throws IOException {
         return helper.write(bitOutputStream, object);
     }
 
     @Override
-    public long numberOfBits(final Integer object) {
+    public long numberOfBits(final int object) {
         final HuffmanBitCode bitCode;
         try {
             bitCode = helper.codes.get(object);
@@ -55,9 +55,4 @@ class CanonicalHuffmanIntegerCodec extends AbstractBitCodec<Integer> {
             throw new RuntimeException("Value " + object + " not found.", e);
         }
     }
-
-    @Override
-    public Integer read(final BitInputStream bitInputStream, final int length) throws IOException {
-        throw new RuntimeException("Not implemented");
-    }
 }
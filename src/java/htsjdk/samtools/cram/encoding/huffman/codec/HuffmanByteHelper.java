@@ -19,6 +19,7 @@ package htsjdk.samtools.cram.encoding.huffman.codec;
 
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -40,6 +41,7 @@ class HuffmanByteHelper {
     private final int[] sortedValuesByBitCode;
     private final int[] sortedBitLensByBitCode;
     private final int[] bitCodeToValue;
+    private final HuffmanLookupTable lookupTable;
     private final HuffmanBitCode[] valueToCode;
 
     HuffmanByteHelper(final byte[] values, final int[] bitLengths) {
@@ -77,8 +79,9 @@ class HuffmanByteHelper {
         for (int i = 0; i < sortedCodes.length; i++) {
             bitCodeToValue[sortedCodes[i].bitCode] = i;
         }
+        lookupTable = new HuffmanLookupTable(sortedCodes);
 
-        valueToCode = new HuffmanBitCode[255];
+        valueToCode = new HuffmanBitCode[256];
         Arrays.fill(valueToCode, null);
         for (final HuffmanBitCode code : sortedCodes) {
             valueToCode[code.value] = code;
@@ -128,16 +131,22 @@ class HuffmanByteHelper {
 
     final long write(final BitOutputStream bitOutputStream, final byte value)
             throws IOException {
-        final HuffmanBitCode code = valueToCode[value];
-        if (code.value != value)
+        final HuffmanBitCode code = valueToCode[0xFF & value];
+        if (code == null || code.value != (0xFF & value))
             throw new RuntimeException(String.format(
-                    "Searching for %d but found %s.", value, code.toString()));
+                    "Searching for %d but found %s.", value, code));
         bitOutputStream.write(code.bitCode, code.bitLength);
         // System.out.println("Writing: " + code.toString());
         return code.bitLength;
     }
 
     final byte read(final BitInputStream bitInputStream) throws IOException {
+        if (bitInputStream instanceof ByteArrayBitInputStream) {
+            final int index = lookupTable.read((ByteArrayBitInputStream) bitInputStream);
+            if (index >= 0)
+                return (byte) (0xFF & sortedValuesByBitCode[index]);
+        }
+
         int prevLen = 0;
         int bits = 0;
         for (int i = 0; i < sortedCodes.length; i++) {
@@ -19,6 +19,7 @@ package htsjdk.samtools.cram.encoding.huffman.codec;
 
 import htsjdk.samtools.cram.io.BitInputStream;
 import htsjdk.samtools.cram.io.BitOutputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -42,6 +43,7 @@ class HuffmanIntHelper {
     private final int[] sortedValuesByBitCode;
     private final int[] sortedBitLensByBitCode;
     private final int[] bitCodeToValue;
+    private final HuffmanLookupTable lookupTable;
 
     public HuffmanIntHelper(final int[] values, final int[] bitLengths) {
         this.values = values;
@@ -83,6 +85,7 @@ class HuffmanIntHelper {
         for (int i = 0; i < sortedBitCodes.length; i++) {
             bitCodeToValue[sortedCodes[i].bitCode] = i;
         }
+        lookupTable = new HuffmanLookupTable(sortedCodes);
     }
 
     private void buildCodeBook() {
@@ -137,6 +140,12 @@ class HuffmanIntHelper {
     }
 
     public final int read(final BitInputStream bitInputStream) throws IOException {
+        if (bitInputStream instanceof ByteArrayBitInputStream) {
+            final int index = lookupTable.read((ByteArrayBitInputStream) bitInputStream);
+            if (index >= 0)
+                return sortedValuesByBitCode[index];
+        }
+
         int prevLen = 0;
         int bits = 0;
         for (int i = 0; i < sortedCodes.length; i++) {
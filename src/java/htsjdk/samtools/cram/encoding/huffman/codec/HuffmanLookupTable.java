@@ -0,0 +1,69 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.encoding.huffman.codec;
+
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes canonical Huffman codes of up to {@link #MAX_LOOKUP_BITS} bits with a single table lookup: the next bits
+ * of the stream index a table giving the symbol and the length of its code. Longer codes are left to the caller.
+ */
+class HuffmanLookupTable {
+    static final int MAX_LOOKUP_BITS = 10;
+
+    private final int lookupBits;
+    /** For each lookupBits-bit prefix, the index of its code shifted left by 8 plus the code length, or -1. */
+    private final int[] table;
+
+    /**
+     * @param sortedCodes the codes, each resolved to its index in this array
+     */
+    HuffmanLookupTable(final HuffmanBitCode[] sortedCodes) {
+        int maxBitLength = 0;
+        for (final HuffmanBitCode code : sortedCodes)
+            maxBitLength = Math.max(maxBitLength, code.bitLength);
+        lookupBits = Math.min(maxBitLength, MAX_LOOKUP_BITS);
+
+        table = new int[1 << lookupBits];
+        Arrays.fill(table, -1);
+        for (int i = 0; i < sortedCodes.length; i++) {
+            final HuffmanBitCode code = sortedCodes[i];
+            if (code.bitLength > lookupBits)
+                continue;
+            final int shift = lookupBits - code.bitLength;
+            final int first = code.bitCode << shift;
+            Arrays.fill(table, first, first + (1 << shift), i << 8 | code.bitLength);
+        }
+    }
+
+    /**
+     * Reads a code from the stream if it is short enough to be in the table.
+     *
+     * @return the index of the code read, or -1 if the code is too long, in which case nothing is read
+     */
+    final int read(final ByteArrayBitInputStream bitInputStream) throws IOException {
+        final int entry = table[bitInputStream.peekBits(lookupBits)];
+        if (entry < 0)
+            return -1;
+        bitInputStream.skipBits(entry & 0xFF);
+        return entry >>> 8;
+    }
+}
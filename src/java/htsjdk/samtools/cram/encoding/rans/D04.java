@@ -1,86 +1,56 @@
 package htsjdk.samtools.cram.encoding.rans;
 
-import java.nio.ByteBuffer;
-
 class D04 {
-    static void uncompress(final ByteBuffer in, final Decoding.AriDecoder D,
-                           final Decoding.RansDecSymbol[] syms, final ByteBuffer out) {
+    /**
+     * @return the offset in the input just past the compressed data
+     */
+    static int uncompress(final byte[] in, int inOffset, final int[] table,
+                          final byte[] out, final int outOffset, final int out_sz) {
         int rans0, rans1, rans2, rans3;
-        rans0 = in.getInt();
-        rans1 = in.getInt();
-        rans2 = in.getInt();
-        rans3 = in.getInt();
-
-        final int out_sz = out.remaining();
-        final int out_end = (out_sz & ~3);
-        for (int i = 0; i < out_end; i += 4) {
-            final byte c0 = D.R[Decoding.RansDecGet(rans0, Constants.TF_SHIFT)];
-            final byte c1 = D.R[Decoding.RansDecGet(rans1, Constants.TF_SHIFT)];
-            final byte c2 = D.R[Decoding.RansDecGet(rans2, Constants.TF_SHIFT)];
-            final byte c3 = D.R[Decoding.RansDecGet(rans3, Constants.TF_SHIFT)];
-
-            out.put(i, c0);
-            out.put(i + 1, c1);
-            out.put(i + 2, c2);
-            out.put(i + 3, c3);
-
-            rans0 = Decoding.RansDecAdvanceSymbolStep(rans0, syms[0xFF & c0],
-                    Constants.TF_SHIFT);
-            rans1 = Decoding.RansDecAdvanceSymbolStep(rans1, syms[0xFF & c1],
-                    Constants.TF_SHIFT);
-            rans2 = Decoding.RansDecAdvanceSymbolStep(rans2, syms[0xFF & c2],
-                    Constants.TF_SHIFT);
-            rans3 = Decoding.RansDecAdvanceSymbolStep(rans3, syms[0xFF & c3],
-                    Constants.TF_SHIFT);
-
-            rans0 = Decoding.RansDecRenormalize(rans0, in);
-            rans1 = Decoding.RansDecRenormalize(rans1, in);
-            rans2 = Decoding.RansDecRenormalize(rans2, in);
-            rans3 = Decoding.RansDecRenormalize(rans3, in);
+        rans0 = Utils.getInt(in, inOffset);
+        rans1 = Utils.getInt(in, inOffset + 4);
+        rans2 = Utils.getInt(in, inOffset + 8);
+        rans3 = Utils.getInt(in, inOffset + 12);
+        inOffset += 16;
+
+        final int out_end = outOffset + (out_sz & ~3);
+        for (int i = outOffset; i < out_end; i += 4) {
+            final int e0 = table[Decoding.slot(rans0)];
+            final int e1 = table[Decoding.slot(rans1)];
+            final int e2 = table[Decoding.slot(rans2)];
+            final int e3 = table[Decoding.slot(rans3)];
+
+            out[i] = (byte) Decoding.symbol(e0);
+            out[i + 1] = (byte) Decoding.symbol(e1);
+            out[i + 2] = (byte) Decoding.symbol(e2);
+            out[i + 3] = (byte) Decoding.symbol(e3);
+
+            rans0 = Decoding.advance(rans0, e0);
+            rans1 = Decoding.advance(rans1, e1);
+            rans2 = Decoding.advance(rans2, e2);
+            rans3 = Decoding.advance(rans3, e3);
+
+            // re-normalize
+            while (rans0 < Constants.RANS_BYTE_L)
+                rans0 = (rans0 << 8) | (0xFF & in[inOffset++]);
+            while (rans1 < Constants.RANS_BYTE_L)
+                rans1 = (rans1 << 8) | (0xFF & in[inOffset++]);
+            while (rans2 < Constants.RANS_BYTE_L)
+                rans2 = (rans2 << 8) | (0xFF & in[inOffset++]);
+            while (rans3 < Constants.RANS_BYTE_L)
+                rans3 = (rans3 << 8) | (0xFF & in[inOffset++]);
         }
 
-        out.position(out_end);
-        byte c;
-        switch (out_sz & 3) {
-            case 0:
-                break;
-            case 1:
-                c = D.R[Decoding.RansDecGet(rans0, Constants.TF_SHIFT)];
-                Decoding.RansDecAdvanceSymbol(rans0, in, syms[0xFF & c],
-                        Constants.TF_SHIFT);
-                out.put(c);
-                break;
-
-            case 2:
-                c = D.R[Decoding.RansDecGet(rans0, Constants.TF_SHIFT)];
-                Decoding.RansDecAdvanceSymbol(rans0, in, syms[0xFF & c],
-                        Constants.TF_SHIFT);
-                out.put(c);
-
-                c = D.R[Decoding.RansDecGet(rans1, Constants.TF_SHIFT)];
-                Decoding.RansDecAdvanceSymbol(rans1, in, syms[0xFF & c],
-                        Constants.TF_SHIFT);
-                out.put(c);
-                break;
-
-            case 3:
-                c = D.R[Decoding.RansDecGet(rans0, Constants.TF_SHIFT)];
-                Decoding.RansDecAdvanceSymbol(rans0, in, syms[0xFF & c],
-                        Constants.TF_SHIFT);
-                out.put(c);
-
-                c = D.R[Decoding.RansDecGet(rans1, Constants.TF_SHIFT)];
-                Decoding.RansDecAdvanceSymbol(rans1, in, syms[0xFF & c],
-                        Constants.TF_SHIFT);
-                out.put(c);
-
-                c = D.R[Decoding.RansDecGet(rans2, Constants.TF_SHIFT)];
-                Decoding.RansDecAdvanceSymbol(rans2, in, syms[0xFF & c],
-                        Constants.TF_SHIFT);
-                out.put(c);
-                break;
+        // Remainder, one symbol from each of the first states in turn
+        final int[] remaining = {rans0, rans1, rans2};
+        for (int i = 0; i < (out_sz & 3); i++) {
+            final int e = table[Decoding.slot(remaining[i])];
+            out[out_end + i] = (byte) Decoding.symbol(e);
+            int r = Decoding.advance(remaining[i], e);
+            while (r < Constants.RANS_BYTE_L)
+                r = (r << 8) | (0xFF & in[inOffset++]);
         }
 
-        out.position(0);
+        return inOffset;
     }
 }
@@ -1,71 +1,71 @@
 package htsjdk.samtools.cram.encoding.rans;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 class D14 {
-    static void uncompress(final ByteBuffer in, final ByteBuffer out_buf, final Decoding.AriDecoder[] D,
-                           final Decoding.RansDecSymbol[][] syms) {
-        final int out_sz = out_buf.remaining();
+    /**
+     * @return the offset in the input just past the compressed data
+     */
+    static int uncompress(final byte[] in, int inOffset, final int[][] tables,
+                          final byte[] out, final int outOffset, final int out_sz) {
         int rans0, rans1, rans2, rans7;
-        in.order(ByteOrder.LITTLE_ENDIAN);
-        rans0 = in.getInt();
-        rans1 = in.getInt();
-        rans2 = in.getInt();
-        rans7 = in.getInt();
+        rans0 = Utils.getInt(in, inOffset);
+        rans1 = Utils.getInt(in, inOffset + 4);
+        rans2 = Utils.getInt(in, inOffset + 8);
+        rans7 = Utils.getInt(in, inOffset + 12);
+        inOffset += 16;
 
         final int isz4 = out_sz >> 2;
-        int i0 = 0;
-        int i1 = isz4;
-        int i2 = 2 * isz4;
-        int i7 = 3 * isz4;
+        int i0 = outOffset;
+        int i1 = outOffset + isz4;
+        int i2 = outOffset + 2 * isz4;
+        int i7 = outOffset + 3 * isz4;
+        final int end0 = outOffset + isz4;
         int l0 = 0;
         int l1 = 0;
         int l2 = 0;
         int l7 = 0;
-        for (; i0 < isz4; i0++, i1++, i2++, i7++) {
-            final int c0 = 0xFF & D[l0].R[Decoding.RansDecGet(rans0,
-                    Constants.TF_SHIFT)];
-            final int c1 = 0xFF & D[l1].R[Decoding.RansDecGet(rans1,
-                    Constants.TF_SHIFT)];
-            final int c2 = 0xFF & D[l2].R[Decoding.RansDecGet(rans2,
-                    Constants.TF_SHIFT)];
-            final int c7 = 0xFF & D[l7].R[Decoding.RansDecGet(rans7,
-                    Constants.TF_SHIFT)];
+        for (; i0 < end0; i0++, i1++, i2++, i7++) {
+            final int e0 = tables[l0][Decoding.slot(rans0)];
+            final int e1 = tables[l1][Decoding.slot(rans1)];
+            final int e2 = tables[l2][Decoding.slot(rans2)];
+            final int e7 = tables[l7][Decoding.slot(rans7)];
 
-            out_buf.put(i0, (byte) c0);
-            out_buf.put(i1, (byte) c1);
-            out_buf.put(i2, (byte) c2);
-            out_buf.put(i7, (byte) c7);
+            l0 = Decoding.symbol(e0);
+            l1 = Decoding.symbol(e1);
+            l2 = Decoding.symbol(e2);
+            l7 = Decoding.symbol(e7);
 
-            rans0 = Decoding.RansDecAdvanceSymbolStep(rans0, syms[l0][c0],
-                    Constants.TF_SHIFT);
-            rans1 = Decoding.RansDecAdvanceSymbolStep(rans1, syms[l1][c1],
-                    Constants.TF_SHIFT);
-            rans2 = Decoding.RansDecAdvanceSymbolStep(rans2, syms[l2][c2],
-                    Constants.TF_SHIFT);
-            rans7 = Decoding.RansDecAdvanceSymbolStep(rans7, syms[l7][c7],
-                    Constants.TF_SHIFT);
+            out[i0] = (byte) l0;
+            out[i1] = (byte) l1;
+            out[i2] = (byte) l2;
+            out[i7] = (byte) l7;
 
-            rans0 = Decoding.RansDecRenormalize(rans0, in);
-            rans1 = Decoding.RansDecRenormalize(rans1, in);
-            rans2 = Decoding.RansDecRenormalize(rans2, in);
-            rans7 = Decoding.RansDecRenormalize(rans7, in);
+            rans0 = Decoding.advance(rans0, e0);
+            rans1 = Decoding.advance(rans1, e1);
+            rans2 = Decoding.advance(rans2, e2);
+            rans7 = Decoding.advance(rans7, e7);
 
-            l0 = c0;
-            l1 = c1;
-            l2 = c2;
-            l7 = c7;
+            // re-normalize
+            while (rans0 < Constants.RANS_BYTE_L)
+                rans0 = (rans0 << 8) | (0xFF & in[inOffset++]);
+            while (rans1 < Constants.RANS_BYTE_L)
+                rans1 = (rans1 << 8) | (0xFF & in[inOffset++]);
+            while (rans2 < Constants.RANS_BYTE_L)
+                rans2 = (rans2 << 8) | (0xFF & in[inOffset++]);
+            while (rans7 < Constants.RANS_BYTE_L)
+                rans7 = (rans7 << 8) | (0xFF & in[inOffset++]);
         }
 
         // Remainder
-        for (; i7 < out_sz; i7++) {
-            final int c7 = 0xFF & D[l7].R[Decoding.RansDecGet(rans7,
-                    Constants.TF_SHIFT)];
-            out_buf.put(i7, (byte) c7);
-            rans7 = Decoding.RansDecAdvanceSymbol(rans7, in, syms[l7][c7],
-                    Constants.TF_SHIFT);
-            l7 = c7;
+        final int out_end = outOffset + out_sz;
+        for (; i7 < out_end; i7++) {
+            final int e7 = tables[l7][Decoding.slot(rans7)];
+            l7 = Decoding.symbol(e7);
+            out[i7] = (byte) l7;
+            rans7 = Decoding.advance(rans7, e7);
+            while (rans7 < Constants.RANS_BYTE_L)
+                rans7 = (rans7 << 8) | (0xFF & in[inOffset++]);
         }
+
+        return inOffset;
     }
 }
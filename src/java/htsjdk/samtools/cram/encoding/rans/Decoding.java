@@ -1,93 +1,82 @@
 package htsjdk.samtools.cram.encoding.rans;
 
-import java.nio.ByteBuffer;
-
-@SuppressWarnings("SameParameterValue")
 class Decoding {
 
-    static class FC {
-        int F, C;
-    }
+    /**
+     * Symbol lookup tables, kept per thread and reused from one block to the next. Each table has an entry for every
+     * cumulative frequency slot, packing the symbol in bits 0-7, its frequency less one in bits 8-19 and the offset
+     * of the slot within the symbol's range in bits 20-31, so that a symbol is decoded with a single lookup.
+     * Entries left over from earlier blocks are never reached by a well formed stream.
+     */
+    static class Tables {
+        final int[] order0 = new int[Constants.TOTFREQ];
+        private final int[][] order1 = new int[256][];
+        private int order1Count = 0;
+
+        // Order-1 tables are only allocated for contexts that occur, and kept for later blocks
+        int[] order1(final int context) {
+            if (order1[context] == null) {
+                order1[context] = new int[Constants.TOTFREQ];
+                ++order1Count;
+            }
+            return order1[context];
+        }
 
-    static class AriDecoder {
-        final FC[] fc = new FC[256];
-        byte[] R;
-    }
+        int[][] order1() {
+            return order1;
+        }
 
-    static class RansDecSymbol {
-        int start; // Start of range.
-        int freq; // Symbol frequency.
-    }
+        int order1Count() {
+            return order1Count;
+        }
 
-    // Initialize a decoder symbol to start "start" and frequency "freq"
-    static void RansDecSymbolInit(final RansDecSymbol symbol, final int start, final int freq) {
-        assert (start <= (1 << 16));
-        assert (freq <= (1 << 16) - start);
-        symbol.start = start;
-        symbol.freq = freq;
+        // Drops order-1 tables beyond MAX_KEPT_ORDER1_TABLES, so that a block with many contexts does not pin
+        // its tables to the thread
+        void releaseExcessOrder1() {
+            for (int context = order1.length - 1; context >= 0 && order1Count > MAX_KEPT_ORDER1_TABLES; context--) {
+                if (order1[context] != null) {
+                    order1[context] = null;
+                    --order1Count;
+                }
+            }
+        }
     }
 
-    // Advances in the bit stream by "popping" a single symbol with range start
-    // "start" and frequency "freq". All frequencies are assumed to sum to
-    // "1 << scale_bits".
-    // No renormalization or output happens.
-    private static int RansDecAdvanceStep(final int r, final int start, final int freq, final int scale_bits) {
-        final int mask = ((1 << scale_bits) - 1);
+    /** The most order-1 tables kept per thread between blocks, taking 16KB each. */
+    static final int MAX_KEPT_ORDER1_TABLES = 64;
 
-        // s, x = D(x)
-        return freq * (r >> scale_bits) + (r & mask) - start;
-    }
+    private static final ThreadLocal<Tables> tables = new ThreadLocal<Tables>() {
+        @Override
+        protected Tables initialValue() {
+            return new Tables();
+        }
+    };
 
-    // Equivalent to RansDecAdvanceStep that takes a symbol.
-    static int RansDecAdvanceSymbolStep(final int r, final RansDecSymbol sym, final int scale_bits) {
-        return RansDecAdvanceStep(r, sym.start, sym.freq, scale_bits);
+    static Tables getTables() {
+        return tables.get();
     }
 
-    // Returns the current cumulative frequency (map it to a symbol yourself!)
-    static int RansDecGet(final int r, final int scale_bits) {
-        return r & ((1 << scale_bits) - 1);
+    // Fills the slots of a symbol with start "start" and frequency "freq"
+    static void fill(final int[] table, final int symbol, final int start, final int freq) {
+        assert (start + freq <= Constants.TOTFREQ);
+        final int entry = ((freq - 1) << 8) | symbol;
+        for (int offset = 0; offset < freq; offset++)
+            table[start + offset] = (offset << 20) | entry;
     }
 
-    // Equivalent to RansDecAdvance that takes a symbol.
-    static int RansDecAdvanceSymbol(final int r, final ByteBuffer pptr, final RansDecSymbol sym,
-                                    final int scale_bits) {
-        return Decoding
-                .RansDecAdvance(r, pptr, sym.start, sym.freq, scale_bits);
+    // The symbol of a table entry
+    static int symbol(final int entry) {
+        return entry & 0xFF;
     }
 
-    // Advances in the bit stream by "popping" a single symbol with range start
-    // "start" and frequency "freq". All frequencies are assumed to sum to
-    // "1 << scale_bits",
-    // and the resulting bytes get written to ptr (which is updated).
-    private static int RansDecAdvance(int r, final ByteBuffer pptr, final int start, final int freq,
-                                      final int scale_bits) {
-        final int mask = (1 << scale_bits) - 1;
-
-        // s, x = D(x)
-        r = freq * (r >> scale_bits) + (r & mask) - start;
-
-        // re-normalize
-        if (r < Constants.RANS_BYTE_L) {
-            do {
-                final int b = 0xFF & pptr.get();
-                r = (r << 8) | b;
-            } while (r < Constants.RANS_BYTE_L);
-
-        }
-
-        return r;
+    // Advances the state past the symbol of a table entry; no renormalization happens.
+    // s, x = D(x)
+    static int advance(final int r, final int entry) {
+        return (((entry >>> 8) & 0xFFF) + 1) * (r >> Constants.TF_SHIFT) + (entry >>> 20);
     }
 
-    // Re-normalize.
-    static int RansDecRenormalize(int r, final ByteBuffer pptr) {
-        // re-normalize
-        if (r < Constants.RANS_BYTE_L) {
-            do
-                r = (r << 8) | (0xFF & pptr.get());
-            while (r < Constants.RANS_BYTE_L);
-        }
-
-        return r;
+    // Returns the current cumulative frequency slot
+    static int slot(final int r) {
+        return r & (Constants.TOTFREQ - 1);
     }
-
 }
@@ -3,33 +3,24 @@ package htsjdk.samtools.cram.encoding.rans;
 import htsjdk.samtools.cram.encoding.rans.Encoding.RansEncSymbol;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 @SuppressWarnings({"ConstantConditions", "StatementWithEmptyBody"})
 class Frequencies {
 
-    static void readStats_o0(final ByteBuffer cp, final Decoding.AriDecoder decoder, final Decoding.RansDecSymbol[] syms) {
-        // Pre-compute reverse lookup of frequency.
+    static void readStats_o0(final ByteBuffer cp, final int[] table) {
         int rle = 0;
         int x = 0;
         int j = cp.get() & 0xFF;
         do {
-            if (decoder.fc[j] == null)
-                decoder.fc[j] = new Decoding.FC();
-            if ((decoder.fc[j].F = (cp.get() & 0xFF)) >= 128) {
-                decoder.fc[j].F &= ~128;
-                decoder.fc[j].F = ((decoder.fc[j].F & 127) << 8) | (cp.get() & 0xFF);
+            int F;
+            if ((F = (cp.get() & 0xFF)) >= 128) {
+                F = ((F & 127) << 8) | (cp.get() & 0xFF);
             }
-            decoder.fc[j].C = x;
-
-            Decoding.RansDecSymbolInit(syms[j], decoder.fc[j].C, decoder.fc[j].F);
 
 			/* Build reverse lookup table */
-            if (decoder.R == null)
-                decoder.R = new byte[Constants.TOTFREQ];
-            Arrays.fill(decoder.R, x, x + decoder.fc[j].F, (byte) j);
+            Decoding.fill(table, j, x, F);
 
-            x += decoder.fc[j].F;
+            x += F;
 
             if (rle == 0 && j + 1 == (0xFF & cp.get(cp.position()))) {
                 j = cp.get() & 0xFF;
@@ -45,41 +36,27 @@ class Frequencies {
         assert (x < Constants.TOTFREQ);
     }
 
-    static void readStats_o1(final ByteBuffer cp, final Decoding.AriDecoder[] D,
-                             final Decoding.RansDecSymbol[][] syms) {
+    static void readStats_o1(final ByteBuffer cp, final Decoding.Tables tables) {
         int rle_i = 0;
         int i = 0xFF & cp.get();
         do {
             int rle_j = 0;
             int x = 0;
             int j = 0xFF & cp.get();
-            if (D[i] == null)
-                D[i] = new Decoding.AriDecoder();
+            final int[] table = tables.order1(i);
             do {
-                if (D[i].fc[j] == null)
-                    D[i].fc[j] = new Decoding.FC();
-                if ((D[i].fc[j].F = (0xFF & cp.get())) >= 128) {
-                    D[i].fc[j].F &= ~128;
-                    D[i].fc[j].F = ((D[i].fc[j].F & 127) << 8)
-                            | (0xFF & cp.get());
+                int F;
+                if ((F = (0xFF & cp.get())) >= 128) {
+                    F = ((F & 127) << 8) | (0xFF & cp.get());
                 }
-                D[i].fc[j].C = x;
-
-                if (D[i].fc[j].F == 0)
-                    D[i].fc[j].F = Constants.TOTFREQ;
-
-                if (syms[i][j] == null)
-                    syms[i][j] = new Decoding.RansDecSymbol();
 
-                Decoding.RansDecSymbolInit(syms[i][j], D[i].fc[j].C,
-                        D[i].fc[j].F);
+                if (F == 0)
+                    F = Constants.TOTFREQ;
 
 				/* Build reverse lookup table */
-                if (D[i].R == null)
-                    D[i].R = new byte[Constants.TOTFREQ];
-                Arrays.fill(D[i].R, x, x + D[i].fc[j].F, (byte) j);
+                Decoding.fill(table, j, x, F);
 
-                x += D[i].fc[j].F;
+                x += F;
                 assert (x <= Constants.TOTFREQ);
 
                 if (rle_j == 0 && j + 1 == (0xFF & cp.get(cp.position()))) {
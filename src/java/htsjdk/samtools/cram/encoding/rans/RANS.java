@@ -5,6 +5,10 @@ import htsjdk.samtools.cram.encoding.rans.Encoding.RansEncSymbol;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+/**
+ * The rANS 4x8 codec of CRAM 3.0, with order-0 and order-1 frequency models. Decoding is table driven, using symbol
+ * lookup tables that are kept per thread and reused from block to block.
+ */
 public class RANS {
     public enum ORDER {
         ZERO, ONE;
@@ -74,9 +78,49 @@ public class RANS {
         }
     }
 
+    /**
+     * Compresses a byte array into a new array of exactly the compressed size, encoding into a buffer kept per
+     * thread rather than allocating one large enough for the worst case on every call.  Buffers larger than
+     * {@link #MAX_KEPT_ENCODE_BUFFER_SIZE} are allocated for the call only.
+     */
+    public static byte[] compress(final byte[] in, final ORDER order) {
+        final int compressedSize = maxCompressedSize(in.length);
+        ByteBuffer out_buf;
+        if (compressedSize > MAX_KEPT_ENCODE_BUFFER_SIZE) {
+            // Not kept, so that one large block does not pin a large buffer to the thread
+            out_buf = ByteBuffer.allocate(compressedSize);
+        } else {
+            out_buf = encodeBuffer.get();
+            if (out_buf.capacity() < compressedSize) {
+                out_buf = ByteBuffer.allocate(compressedSize);
+                encodeBuffer.set(out_buf);
+            }
+            out_buf.clear();
+        }
+
+        final ByteBuffer compressed = compress(ByteBuffer.wrap(in), order, out_buf);
+        final byte[] bytes = new byte[compressed.remaining()];
+        compressed.get(bytes);
+        return bytes;
+    }
+
+    /** The largest per-thread encode buffer kept between calls, enough for blocks of up to about 3.8MB. */
+    static final int MAX_KEPT_ENCODE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> encodeBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(0);
+        }
+    };
+
+    private static int maxCompressedSize(final int in_size) {
+        return (int) (1.05 * in_size + 257 * 257 * 3 + 4);
+    }
+
     private static ByteBuffer allocateIfNeeded(final int in_size,
                                                final ByteBuffer out_buf) {
-        final int compressedSize = (int) (1.05 * in_size + 257 * 257 * 3 + 4);
+        final int compressedSize = maxCompressedSize(in_size);
         if (out_buf == null)
             return ByteBuffer.allocate(compressedSize);
         if (out_buf.remaining() < compressedSize)
@@ -143,30 +187,53 @@ public class RANS {
 
     private static ByteBuffer uncompress_order0_way4(final ByteBuffer in,
                                                      final ByteBuffer out) {
-        in.order(ByteOrder.LITTLE_ENDIAN);
-        final Decoding.AriDecoder D = new Decoding.AriDecoder();
-        final Decoding.RansDecSymbol[] syms = new Decoding.RansDecSymbol[256];
-        for (int i = 0; i < syms.length; i++)
-            syms[i] = new Decoding.RansDecSymbol();
+        final Decoding.Tables tables = Decoding.getTables();
+        Frequencies.readStats_o0(in, tables.order0);
 
-        Frequencies.readStats_o0(in, D, syms);
-
-        D04.uncompress(in, D, syms, out);
-
-        return out;
+        return uncompress_way4(in, out, ORDER.ZERO, tables);
     }
 
     private static ByteBuffer uncompress_order1_way4(final ByteBuffer in,
                                                      final ByteBuffer out_buf) {
-        final Decoding.AriDecoder[] D = new Decoding.AriDecoder[256];
-        final Decoding.RansDecSymbol[][] syms = new Decoding.RansDecSymbol[256][256];
-        for (int i = 0; i < syms.length; i++)
-            for (int j = 0; j < syms[i].length; j++)
-                syms[i][j] = new Decoding.RansDecSymbol();
-        Frequencies.readStats_o1(in, D, syms);
+        final Decoding.Tables tables = Decoding.getTables();
+        try {
+            Frequencies.readStats_o1(in, tables);
+            return uncompress_way4(in, out_buf, ORDER.ONE, tables);
+        } finally {
+            tables.releaseExcessOrder1();
+        }
+    }
+
+    /**
+     * Decodes straight from and into the arrays backing the buffers where there are any, copying otherwise.
+     */
+    private static ByteBuffer uncompress_way4(final ByteBuffer in, final ByteBuffer out, final ORDER order,
+                                              final Decoding.Tables tables) {
+        final byte[] in_array;
+        final int in_offset;
+        if (in.hasArray()) {
+            in_array = in.array();
+            in_offset = in.arrayOffset() + in.position();
+        } else {
+            in_array = new byte[in.remaining()];
+            in.duplicate().get(in_array);
+            in_offset = 0;
+        }
 
-        D14.uncompress(in, out_buf, D, syms);
+        final int out_sz = out.remaining();
+        final byte[] out_array = out.hasArray() ? out.array() : new byte[out_sz];
+        final int out_offset = out.hasArray() ? out.arrayOffset() + out.position() : 0;
 
-        return out_buf;
+        final int in_end;
+        if (order == ORDER.ZERO)
+            in_end = D04.uncompress(in_array, in_offset, tables.order0, out_array, out_offset, out_sz);
+        else
+            in_end = D14.uncompress(in_array, in_offset, tables.order1(), out_array, out_offset, out_sz);
+        in.position(in.position() + in_end - in_offset);
+
+        if (!out.hasArray()) {
+            out.duplicate().put(out_array);
+        }
+        return out;
     }
 }
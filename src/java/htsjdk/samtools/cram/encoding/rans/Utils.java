@@ -31,4 +31,10 @@ class Utils {
             }
         }
     }
+
+    // Reads a little-endian int
+    static int getInt(final byte[] array, final int offset) {
+        return (0xFF & array[offset]) | ((0xFF & array[offset + 1]) << 8) | ((0xFF & array[offset + 2]) << 16)
+                | ((0xFF & array[offset + 3]) << 24);
+    }
 }
@@ -33,49 +33,49 @@ public abstract class AbstractReader {
     public byte[][][] tagIdDictionary;
 
     @DataSeries(key = EncodingKey.BF_BitFlags, type = DataSeriesType.INT)
-    public DataReader<Integer> bitFlagsCodec;
+    public IntegerDataReader bitFlagsCodec;
 
     @DataSeries(key = EncodingKey.CF_CompressionBitFlags, type = DataSeriesType.BYTE)
-    public DataReader<Byte> compressionBitFlagsCodec;
+    public ByteDataReader compressionBitFlagsCodec;
 
     @DataSeries(key = EncodingKey.RL_ReadLength, type = DataSeriesType.INT)
-    public DataReader<Integer> readLengthCodec;
+    public IntegerDataReader readLengthCodec;
 
     @DataSeries(key = EncodingKey.AP_AlignmentPositionOffset, type = DataSeriesType.INT)
-    public DataReader<Integer> alignmentStartCodec;
+    public IntegerDataReader alignmentStartCodec;
 
     @DataSeries(key = EncodingKey.RG_ReadGroup, type = DataSeriesType.INT)
-    public DataReader<Integer> readGroupCodec;
+    public IntegerDataReader readGroupCodec;
 
     @DataSeries(key = EncodingKey.RN_ReadName, type = DataSeriesType.BYTE_ARRAY)
     public DataReader<byte[]> readNameCodec;
 
     @DataSeries(key = EncodingKey.NF_RecordsToNextFragment, type = DataSeriesType.INT)
-    public DataReader<Integer> distanceToNextFragmentCodec;
+    public IntegerDataReader distanceToNextFragmentCodec;
 
     @DataSeriesMap(name = "TAG")
     public IntHashMap<DataReader<byte[]>> tagValueCodecs;
 
     @DataSeries(key = EncodingKey.FN_NumberOfReadFeatures, type = DataSeriesType.INT)
-    public DataReader<Integer> numberOfReadFeaturesCodec;
+    public IntegerDataReader numberOfReadFeaturesCodec;
 
     @DataSeries(key = EncodingKey.FP_FeaturePosition, type = DataSeriesType.INT)
-    public DataReader<Integer> readFeaturePositionCodec;
+    public IntegerDataReader readFeaturePositionCodec;
 
     @DataSeries(key = EncodingKey.FC_FeatureCode, type = DataSeriesType.BYTE)
-    public DataReader<Byte> readFeatureCodeCodec;
+    public ByteDataReader readFeatureCodeCodec;
 
     @DataSeries(key = EncodingKey.BA_Base, type = DataSeriesType.BYTE)
-    public DataReader<Byte> baseCodec;
+    public ByteDataReader baseCodec;
 
     @DataSeries(key = EncodingKey.QS_QualityScore, type = DataSeriesType.BYTE)
-    public DataReader<Byte> qualityScoreCodec;
+    public ByteDataReader qualityScoreCodec;
 
     @DataSeries(key = EncodingKey.QS_QualityScore, type = DataSeriesType.BYTE_ARRAY)
     public DataReader<byte[]> qualityScoresCodec;
 
     @DataSeries(key = EncodingKey.BS_BaseSubstitutionCode, type = DataSeriesType.BYTE)
-    public DataReader<Byte> baseSubstitutionCodec;
+    public ByteDataReader baseSubstitutionCodec;
 
     @DataSeries(key = EncodingKey.IN_Insertion, type = DataSeriesType.BYTE_ARRAY)
     public DataReader<byte[]> insertionCodec;
@@ -84,37 +84,37 @@ public abstract class AbstractReader {
     public DataReader<byte[]> softClipCodec;
 
     @DataSeries(key = EncodingKey.HC_HardClip, type = DataSeriesType.INT)
-    public DataReader<Integer> hardClipCodec;
+    public IntegerDataReader hardClipCodec;
 
     @DataSeries(key = EncodingKey.PD_padding, type = DataSeriesType.INT)
-    public DataReader<Integer> paddingCodec;
+    public IntegerDataReader paddingCodec;
 
     @DataSeries(key = EncodingKey.DL_DeletionLength, type = DataSeriesType.INT)
-    public DataReader<Integer> deletionLengthCodec;
+    public IntegerDataReader deletionLengthCodec;
 
     @DataSeries(key = EncodingKey.MQ_MappingQualityScore, type = DataSeriesType.INT)
-    public DataReader<Integer> mappingScoreCodec;
+    public IntegerDataReader mappingScoreCodec;
 
     @DataSeries(key = EncodingKey.MF_MateBitFlags, type = DataSeriesType.BYTE)
-    public DataReader<Byte> mateBitFlagCodec;
+    public ByteDataReader mateBitFlagCodec;
 
     @DataSeries(key = EncodingKey.NS_NextFragmentReferenceSequenceID, type = DataSeriesType.INT)
-    public DataReader<Integer> mateReferenceIdCodec;
+    public IntegerDataReader mateReferenceIdCodec;
 
     @DataSeries(key = EncodingKey.NP_NextFragmentAlignmentStart, type = DataSeriesType.INT)
-    public DataReader<Integer> mateAlignmentStartCodec;
+    public IntegerDataReader mateAlignmentStartCodec;
 
     @DataSeries(key = EncodingKey.TS_InsetSize, type = DataSeriesType.INT)
-    public DataReader<Integer> insertSizeCodec;
+    public IntegerDataReader insertSizeCodec;
 
     @DataSeries(key = EncodingKey.TL_TagIdList, type = DataSeriesType.INT)
-    public DataReader<Integer> tagIdListCodec;
+    public IntegerDataReader tagIdListCodec;
 
     @DataSeries(key = EncodingKey.RI_RefId, type = DataSeriesType.INT)
-    public DataReader<Integer> refIdCodec;
+    public IntegerDataReader refIdCodec;
 
     @DataSeries(key = EncodingKey.RS_RefSkip, type = DataSeriesType.INT)
-    public DataReader<Integer> refSkipCodec;
+    public IntegerDataReader refSkipCodec;
 
     @DataSeries(key = EncodingKey.BB_bases, type = DataSeriesType.BYTE_ARRAY)
     public DataReader<byte[]> basesCodec;
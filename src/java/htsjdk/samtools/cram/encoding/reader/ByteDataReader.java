@@ -0,0 +1,42 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.encoding.reader;
+
+import java.io.IOException;
+
+/**
+ * A {@link DataReader} counterpart for byte data series, which reads values without boxing them.
+ */
+public interface ByteDataReader {
+
+    /**
+     * Read a single value
+     * @return the value read
+     * @throws IOException as per java IO contract
+     */
+    byte readByte() throws IOException;
+
+    /**
+     * Read a number of values into an array.
+     * @param array the array to read into
+     * @param offset offset in the array
+     * @param length the number of values to read
+     * @throws IOException as per java IO contract
+     */
+    void readInto(byte[] array, int offset, int length) throws IOException;
+}
@@ -18,9 +18,9 @@
 package htsjdk.samtools.cram.encoding.reader;
 
 import htsjdk.samtools.cram.common.IntHashMap;
+import htsjdk.samtools.cram.encoding.AbstractByteCodec;
+import htsjdk.samtools.cram.encoding.AbstractIntegerCodec;
 import htsjdk.samtools.cram.encoding.BitCodec;
-import htsjdk.samtools.cram.encoding.DataSeries;
-import htsjdk.samtools.cram.encoding.DataSeriesMap;
 import htsjdk.samtools.cram.encoding.DataSeriesType;
 import htsjdk.samtools.cram.encoding.Encoding;
 import htsjdk.samtools.cram.encoding.EncodingFactory;
@@ -33,89 +33,213 @@ import htsjdk.samtools.cram.structure.ReadTag;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+/**
+ * Attaches codecs for the data series of a compression header to a {@link AbstractReader}. The fields are wired
+ * explicitly rather than discovered by reflection, and codecs that read only from the core block are shared by
+ * consecutive readers built for the same compression header, so a factory should be reused across the slices of a
+ * container.
+ */
 @SuppressWarnings("unchecked")
 public class DataReaderFactory {
 
-    private final static boolean collectStats = false;
+    private final boolean collectStats;
+    private final List<DataReaderWithStats> statsReaders = new ArrayList<DataReaderWithStats>();
+    private final Map<DataSeriesType, Map<EncodingParams, BitCodec<?>>> coreCodecs =
+            new EnumMap<DataSeriesType, Map<EncodingParams, BitCodec<?>>>(DataSeriesType.class);
+    /** The compression header whose codecs are in coreCodecs. */
+    private CompressionHeader coreCodecsHeader;
+
+    public DataReaderFactory() {
+        this(false);
+    }
+
+    /**
+     * @param collectStats whether to time the reading of each data series, see {@link #getStats()}
+     */
+    public DataReaderFactory(final boolean collectStats) {
+        this.collectStats = collectStats;
+    }
 
     public AbstractReader buildReader(final AbstractReader reader,
                                       final BitInputStream bitInputStream, final Map<Integer, InputStream> inputMap,
-                                      final CompressionHeader header, final int refId) throws IllegalArgumentException,
-            IllegalAccessException {
+                                      final CompressionHeader header, final int refId) {
         reader.captureReadNames = header.readNamesIncluded;
         reader.refId = refId;
         reader.APDelta = header.APDelta;
+        if (header != coreCodecsHeader) {
+            coreCodecs.clear();
+            coreCodecsHeader = header;
+        }
 
-        for (final Field field : reader.getClass().getFields()) {
-            if (field.isAnnotationPresent(DataSeries.class)) {
-                final DataSeries dataSeries = field.getAnnotation(DataSeries.class);
-                final EncodingKey key = dataSeries.key();
-                final DataSeriesType type = dataSeries.type();
-                if (header.encodingMap.get(key) == null) {
-                    System.err.println("Encoding not found for key: " + key);
-                }
-                field.set(reader,
-                        createReader(type, header.encodingMap.get(key), bitInputStream, inputMap));
-            }
+        final ReaderBuilder b = new ReaderBuilder(header, bitInputStream, inputMap);
+        reader.bitFlagsCodec = b.intReader(EncodingKey.BF_BitFlags);
+        reader.compressionBitFlagsCodec = b.byteReader(EncodingKey.CF_CompressionBitFlags);
+        reader.readLengthCodec = b.intReader(EncodingKey.RL_ReadLength);
+        reader.alignmentStartCodec = b.intReader(EncodingKey.AP_AlignmentPositionOffset);
+        reader.readGroupCodec = b.intReader(EncodingKey.RG_ReadGroup);
+        reader.readNameCodec = b.byteArrayReader(EncodingKey.RN_ReadName);
+        reader.distanceToNextFragmentCodec = b.intReader(EncodingKey.NF_RecordsToNextFragment);
+        reader.numberOfReadFeaturesCodec = b.intReader(EncodingKey.FN_NumberOfReadFeatures);
+        reader.readFeaturePositionCodec = b.intReader(EncodingKey.FP_FeaturePosition);
+        reader.readFeatureCodeCodec = b.byteReader(EncodingKey.FC_FeatureCode);
+        reader.baseCodec = b.byteReader(EncodingKey.BA_Base);
+        reader.qualityScoreCodec = b.byteReader(EncodingKey.QS_QualityScore);
+        reader.qualityScoresCodec = b.byteArrayReader(EncodingKey.QS_QualityScore);
+        reader.baseSubstitutionCodec = b.byteReader(EncodingKey.BS_BaseSubstitutionCode);
+        reader.insertionCodec = b.byteArrayReader(EncodingKey.IN_Insertion);
+        reader.softClipCodec = b.byteArrayReader(EncodingKey.SC_SoftClip);
+        reader.hardClipCodec = b.intReader(EncodingKey.HC_HardClip);
+        reader.paddingCodec = b.intReader(EncodingKey.PD_padding);
+        reader.deletionLengthCodec = b.intReader(EncodingKey.DL_DeletionLength);
+        reader.mappingScoreCodec = b.intReader(EncodingKey.MQ_MappingQualityScore);
+        reader.mateBitFlagCodec = b.byteReader(EncodingKey.MF_MateBitFlags);
+        reader.mateReferenceIdCodec = b.intReader(EncodingKey.NS_NextFragmentReferenceSequenceID);
+        reader.mateAlignmentStartCodec = b.intReader(EncodingKey.NP_NextFragmentAlignmentStart);
+        reader.insertSizeCodec = b.intReader(EncodingKey.TS_InsetSize);
+        reader.tagIdListCodec = b.intReader(EncodingKey.TL_TagIdList);
+        reader.refIdCodec = b.intReader(EncodingKey.RI_RefId);
+        reader.refSkipCodec = b.intReader(EncodingKey.RS_RefSkip);
+        reader.basesCodec = b.byteArrayReader(EncodingKey.BB_bases);
+        reader.scoresCodec = b.byteArrayReader(EncodingKey.QQ_scores);
 
-            if (field.isAnnotationPresent(DataSeriesMap.class)) {
-                final DataSeriesMap dataSeriesMap = field.getAnnotation(DataSeriesMap.class);
-                final String name = dataSeriesMap.name();
-                if ("TAG".equals(name)) {
-                    final IntHashMap map = new IntHashMap();
-                    for (final Integer key : header.tMap.keySet()) {
-                        final EncodingParams params = header.tMap.get(key);
-                        final DataReader<byte[]> tagReader = createReader(
-                                DataSeriesType.BYTE_ARRAY, params, bitInputStream,
-                                inputMap);
-                        map.put(key, tagReader);
-                    }
-                    field.set(reader, map);
-                }
-            }
+        final IntHashMap<DataReader<byte[]>> tagValueCodecs = new IntHashMap<DataReader<byte[]>>();
+        for (final Integer key : header.tMap.keySet()) {
+            final EncodingParams params = header.tMap.get(key);
+            tagValueCodecs.put(key, (DataReader<byte[]>) b.createReader(ReadTag.intToNameType4Bytes(key),
+                    DataSeriesType.BYTE_ARRAY, params));
         }
+        reader.tagValueCodecs = tagValueCodecs;
 
         reader.tagIdDictionary = header.dictionary;
         return reader;
     }
 
-    private <T> DataReader<T> createReader(final DataSeriesType valueType,
-                                           final EncodingParams params, final BitInputStream bitInputStream,
-                                           final Map<Integer, InputStream> inputMap) {
-        if (params.id == EncodingID.NULL)
-            //noinspection ConstantConditions
-            return collectStats ? new DataReaderWithStats(
-                    buildNullReader(valueType)) : buildNullReader(valueType);
+    /**
+     * Builds the readers of one slice.
+     */
+    private class ReaderBuilder {
+        private final CompressionHeader header;
+        private final BitInputStream bitInputStream;
+        private final Map<Integer, InputStream> inputMap;
+
+        ReaderBuilder(final CompressionHeader header, final BitInputStream bitInputStream,
+                      final Map<Integer, InputStream> inputMap) {
+            this.header = header;
+            this.bitInputStream = bitInputStream;
+            this.inputMap = inputMap;
+        }
+
+        IntegerDataReader intReader(final EncodingKey key) {
+            return (IntegerDataReader) createReader(key.name(), DataSeriesType.INT, getParams(key));
+        }
+
+        ByteDataReader byteReader(final EncodingKey key) {
+            return (ByteDataReader) createReader(key.name(), DataSeriesType.BYTE, getParams(key));
+        }
+
+        DataReader<byte[]> byteArrayReader(final EncodingKey key) {
+            return (DataReader<byte[]>) createReader(key.name(), DataSeriesType.BYTE_ARRAY, getParams(key));
+        }
+
+        private EncodingParams getParams(final EncodingKey key) {
+            final EncodingParams params = header.encodingMap.get(key);
+            if (params == null) {
+                System.err.println("Encoding not found for key: " + key);
+            }
+            return params;
+        }
+
+        Object createReader(final String name, final DataSeriesType valueType, final EncodingParams params) {
+            final Object reader;
+            if (params.id == EncodingID.NULL) {
+                reader = buildNullReader(valueType);
+            } else {
+                final BitCodec<?> codec = getCodec(valueType, params, inputMap);
+                switch (valueType) {
+                    case INT:
+                        reader = new IntegerCodecReader((AbstractIntegerCodec) codec, bitInputStream);
+                        break;
+                    case BYTE:
+                        reader = new ByteCodecReader((AbstractByteCodec) codec, bitInputStream);
+                        break;
+                    default:
+                        reader = new DefaultDataReader<Object>((BitCodec<Object>) codec, bitInputStream);
+                        break;
+                }
+            }
+            if (!collectStats) return reader;
+
+            final DataReaderWithStats readerWithStats = new DataReaderWithStats(name, reader);
+            statsReaders.add(readerWithStats);
+            return readerWithStats;
+        }
+    }
+
+    /**
+     * @return the codec for a data series, shared if it reads only from the core block
+     */
+    private BitCodec<?> getCodec(final DataSeriesType valueType, final EncodingParams params,
+                                 final Map<Integer, InputStream> inputMap) {
+        final boolean coreOnly = isCoreOnly(params.id);
+        Map<EncodingParams, BitCodec<?>> codecs = null;
+        if (coreOnly) {
+            codecs = coreCodecs.get(valueType);
+            if (codecs == null) {
+                codecs = new IdentityHashMap<EncodingParams, BitCodec<?>>();
+                coreCodecs.put(valueType, codecs);
+            }
+            final BitCodec<?> codec = codecs.get(params);
+            if (codec != null) return codec;
+        }
 
         final EncodingFactory encodingFactory = new EncodingFactory();
-        final Encoding<T> encoding = encodingFactory.createEncoding(valueType, params.id);
+        final Encoding<Object> encoding = encodingFactory.createEncoding(valueType, params.id);
         if (encoding == null)
             throw new RuntimeException("Encoding not found for value type "
                     + valueType.name() + ", id=" + params.id);
         encoding.fromByteArray(params.params);
 
-        //noinspection ConstantConditions
-        return collectStats ? new DataReaderWithStats(new DefaultDataReader<T>(
-                encoding.buildCodec(inputMap, null), bitInputStream))
-                : new DefaultDataReader<T>(encoding.buildCodec(inputMap, null),
-                bitInputStream);
+        final BitCodec<?> codec = encoding.buildCodec(inputMap, null);
+        if (coreOnly) codecs.put(params, codec);
+        return codec;
     }
 
-    private static <T> DataReader<T> buildNullReader(final DataSeriesType valueType) {
+    /**
+     * @return true if codecs of the encoding hold no state besides their parameters and read only from the bit
+     * stream passed to them, so may be used for any slice
+     */
+    private static boolean isCoreOnly(final EncodingID id) {
+        switch (id) {
+            case HUFFMAN:
+            case BETA:
+            case GAMMA:
+            case GOLOMB:
+            case GOLOMB_RICE:
+            case SUBEXPONENTIAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Object buildNullReader(final DataSeriesType valueType) {
         switch (valueType) {
             case BYTE:
-                return (DataReader<T>) new SingleValueReader<Byte>((byte) 0);
+                return new NullReader<Byte>((byte) 0);
             case INT:
-                return (DataReader<T>) new SingleValueReader<Integer>(
-                        0);
+                return new NullReader<Integer>(0);
             case LONG:
-                return (DataReader<T>) new SingleValueReader<Long>((long) 0);
+                return new NullReader<Long>((long) 0);
             case BYTE_ARRAY:
-                return (DataReader<T>) new SingleValueReader<byte[]>(new byte[]{});
+                return new NullReader<byte[]>(new byte[]{});
 
             default:
                 throw new RuntimeException("Unknown data type: " + valueType.name());
@@ -143,10 +267,48 @@ public class DataReaderFactory {
 
     }
 
-    private static class SingleValueReader<T> implements DataReader<T> {
+    private static class IntegerCodecReader implements IntegerDataReader {
+        private final AbstractIntegerCodec codec;
+        private final BitInputStream bitInputStream;
+
+        public IntegerCodecReader(final AbstractIntegerCodec codec, final BitInputStream bitInputStream) {
+            this.codec = codec;
+            this.bitInputStream = bitInputStream;
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return codec.readInt(bitInputStream);
+        }
+    }
+
+    private static class ByteCodecReader implements ByteDataReader {
+        private final AbstractByteCodec codec;
+        private final BitInputStream bitInputStream;
+
+        public ByteCodecReader(final AbstractByteCodec codec, final BitInputStream bitInputStream) {
+            this.codec = codec;
+            this.bitInputStream = bitInputStream;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            return codec.readByte(bitInputStream);
+        }
+
+        @Override
+        public void readInto(final byte[] array, final int offset, final int length) throws IOException {
+            codec.readInto(bitInputStream, array, offset, length);
+        }
+    }
+
+    /**
+     * Reads a data series that is not stored, so every value is the given default.
+     */
+    private static class NullReader<T> implements DataReader<T>, IntegerDataReader, ByteDataReader {
         private final T value;
 
-        public SingleValueReader(final T value) {
+        public NullReader(final T value) {
             this.value = value;
         }
 
@@ -159,62 +321,83 @@ public class DataReaderFactory {
         public T readDataArray(final int length) {
             return value;
         }
+
+        @Override
+        public int readInt() {
+            return (Integer) value;
+        }
+
+        @Override
+        public byte readByte() {
+            return (Byte) value;
+        }
+
+        @Override
+        public void readInto(final byte[] array, final int offset, final int length) {
+            Arrays.fill(array, offset, offset + length, (Byte) value);
+        }
     }
 
-    public static class DataReaderWithStats<T> implements DataReader<T> {
-        public long nanos = 0;
-        final DataReader<T> delegate;
+    private static class DataReaderWithStats implements DataReader<Object>, IntegerDataReader, ByteDataReader {
+        private final String name;
+        private final Object delegate;
+        private long nanos = 0;
 
-        public DataReaderWithStats(final DataReader<T> delegate) {
+        public DataReaderWithStats(final String name, final Object delegate) {
+            this.name = name;
             this.delegate = delegate;
         }
 
         @Override
-        public T readData() throws IOException {
+        public Object readData() throws IOException {
             final long time = System.nanoTime();
-            final T value = delegate.readData();
+            final Object value = ((DataReader<Object>) delegate).readData();
             nanos += System.nanoTime() - time;
             return value;
         }
 
         @Override
-        public T readDataArray(final int length) throws IOException {
+        public Object readDataArray(final int length) throws IOException {
             final long time = System.nanoTime();
-            final T value = delegate.readDataArray(length);
+            final Object value = ((DataReader<Object>) delegate).readDataArray(length);
             nanos += System.nanoTime() - time;
             return value;
         }
-    }
 
-    public Map<String, DataReaderWithStats> getStats(final CramRecordReader reader)
-            throws IllegalArgumentException, IllegalAccessException {
-        final Map<String, DataReaderWithStats> map = new TreeMap<String, DataReaderFactory.DataReaderWithStats>();
-        //noinspection ConstantConditions,PointlessBooleanExpression
-        if (!collectStats)
-            return map;
-
-        for (final Field field : reader.getClass().getFields()) {
-            if (field.isAnnotationPresent(DataSeries.class)) {
-                final DataSeries dataSeries = field.getAnnotation(DataSeries.class);
-                final EncodingKey key = dataSeries.key();
-                map.put(key.name(), (DataReaderWithStats) field.get(reader));
-            }
+        @Override
+        public int readInt() throws IOException {
+            final long time = System.nanoTime();
+            final int value = ((IntegerDataReader) delegate).readInt();
+            nanos += System.nanoTime() - time;
+            return value;
+        }
 
-            if (field.isAnnotationPresent(DataSeriesMap.class)) {
-                final DataSeriesMap dataSeriesMap = field.getAnnotation(DataSeriesMap.class);
-                final String name = dataSeriesMap.name();
-                if ("TAG".equals(name)) {
-                    final Map<Integer, DataReader<byte[]>> tagMap = (Map<Integer, DataReader<byte[]>>) field
-                            .get(reader);
-                    for (final Integer key : tagMap.keySet()) {
-                        final String tag = ReadTag.intToNameType4Bytes(key);
-                        map.put(tag, (DataReaderWithStats) tagMap.get(key));
-                    }
-                }
-            }
+        @Override
+        public byte readByte() throws IOException {
+            final long time = System.nanoTime();
+            final byte value = ((ByteDataReader) delegate).readByte();
+            nanos += System.nanoTime() - time;
+            return value;
         }
 
-        return map;
+        @Override
+        public void readInto(final byte[] array, final int offset, final int length) throws IOException {
+            final long time = System.nanoTime();
+            ((ByteDataReader) delegate).readInto(array, offset, length);
+            nanos += System.nanoTime() - time;
+        }
     }
 
+    /**
+     * @return the nanoseconds spent reading each data series, by data series or tag name, summed over all the
+     * readers built by this factory, or an empty map if this factory does not collect stats
+     */
+    public Map<String, Long> getStats() {
+        final Map<String, Long> map = new TreeMap<String, Long>();
+        for (final DataReaderWithStats reader : statsReaders) {
+            final Long nanos = map.get(reader.name);
+            map.put(reader.name, nanos == null ? reader.nanos : nanos + reader.nanos);
+        }
+        return map;
+    }
 }
@@ -0,0 +1,36 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.encoding.writer;
+
+import java.io.IOException;
+
+/**
+ * A {@link DataWriter} counterpart for byte data series, which writes values without boxing them.
+ */
+public interface ByteDataWriter {
+
+    /**
+     * Write a single value.
+     *
+     * @param value value to be written
+     * @return number of bits written
+     * @throws IOException as per java IO contract
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    long writeByte(byte value) throws IOException;
+}
@@ -17,9 +17,9 @@
  */
 package htsjdk.samtools.cram.encoding.writer;
 
+import htsjdk.samtools.cram.encoding.AbstractByteCodec;
+import htsjdk.samtools.cram.encoding.AbstractIntegerCodec;
 import htsjdk.samtools.cram.encoding.BitCodec;
-import htsjdk.samtools.cram.encoding.DataSeries;
-import htsjdk.samtools.cram.encoding.DataSeriesMap;
 import htsjdk.samtools.cram.encoding.DataSeriesType;
 import htsjdk.samtools.cram.encoding.Encoding;
 import htsjdk.samtools.cram.encoding.EncodingFactory;
@@ -30,68 +30,88 @@ import htsjdk.samtools.cram.structure.EncodingKey;
 import htsjdk.samtools.cram.structure.EncodingParams;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
 
+@SuppressWarnings("unchecked")
 public class DataWriterFactory {
 
     public Writer buildWriter(final BitOutputStream bitOutputStream,
                               final Map<Integer, ExposedByteArrayOutputStream> outputMap,
-                              final CompressionHeader h, final int refId) throws IllegalArgumentException,
-            IllegalAccessException {
+                              final CompressionHeader h, final int refId) {
         final Writer writer = new Writer();
         writer.setCaptureReadNames(h.readNamesIncluded);
         writer.refId = refId;
         writer.substitutionMatrix = h.substitutionMatrix;
         writer.AP_delta = h.APDelta;
 
-        for (final Field f : writer.getClass().getFields()) {
-            if (f.isAnnotationPresent(DataSeries.class)) {
-                final DataSeries ds = f.getAnnotation(DataSeries.class);
-                final EncodingKey key = ds.key();
-                final DataSeriesType type = ds.type();
-
-                f.set(writer,
-                        createWriter(type, h.encodingMap.get(key), bitOutputStream, outputMap));
-            }
-
-            if (f.isAnnotationPresent(DataSeriesMap.class)) {
-                final DataSeriesMap dsm = f.getAnnotation(DataSeriesMap.class);
-                final String name = dsm.name();
-                if ("TAG".equals(name)) {
-                    final Map<Integer, DataWriter<byte[]>> map = new HashMap<Integer, DataWriter<byte[]>>();
-                    for (final Integer key : h.tMap.keySet()) {
-                        final EncodingParams params = h.tMap.get(key);
-                        final DataWriter<byte[]> tagWriter = createWriter(
-                                DataSeriesType.BYTE_ARRAY, params, bitOutputStream,
-                                outputMap);
-                        map.put(key, tagWriter);
-                    }
-                    f.set(writer, map);
-                }
-            }
+        writer.bitFlagsC = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.BF_BitFlags, bitOutputStream, outputMap);
+        writer.compBitFlagsC = (ByteDataWriter) createWriter(DataSeriesType.BYTE, h, EncodingKey.CF_CompressionBitFlags, bitOutputStream, outputMap);
+        writer.readLengthC = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.RL_ReadLength, bitOutputStream, outputMap);
+        writer.alStartC = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.AP_AlignmentPositionOffset, bitOutputStream, outputMap);
+        writer.readGroupC = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.RG_ReadGroup, bitOutputStream, outputMap);
+        writer.readNameC = (DataWriter<byte[]>) createWriter(DataSeriesType.BYTE_ARRAY, h, EncodingKey.RN_ReadName, bitOutputStream, outputMap);
+        writer.distanceC = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.NF_RecordsToNextFragment, bitOutputStream, outputMap);
+        writer.numberOfReadFeaturesCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.FN_NumberOfReadFeatures, bitOutputStream, outputMap);
+        writer.featurePositionCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.FP_FeaturePosition, bitOutputStream, outputMap);
+        writer.featuresCodeCodec = (ByteDataWriter) createWriter(DataSeriesType.BYTE, h, EncodingKey.FC_FeatureCode, bitOutputStream, outputMap);
+        writer.baseCodec = (ByteDataWriter) createWriter(DataSeriesType.BYTE, h, EncodingKey.BA_Base, bitOutputStream, outputMap);
+        writer.qualityScoreCodec = (ByteDataWriter) createWriter(DataSeriesType.BYTE, h, EncodingKey.QS_QualityScore, bitOutputStream, outputMap);
+        writer.qualityScoreArrayCodec = (DataWriter<byte[]>) createWriter(DataSeriesType.BYTE_ARRAY, h, EncodingKey.QS_QualityScore, bitOutputStream, outputMap);
+        writer.baseSubstitutionCodeCodec = (ByteDataWriter) createWriter(DataSeriesType.BYTE, h, EncodingKey.BS_BaseSubstitutionCode, bitOutputStream, outputMap);
+        writer.insertionCodec = (DataWriter<byte[]>) createWriter(DataSeriesType.BYTE_ARRAY, h, EncodingKey.IN_Insertion, bitOutputStream, outputMap);
+        writer.softClipCodec = (DataWriter<byte[]>) createWriter(DataSeriesType.BYTE_ARRAY, h, EncodingKey.SC_SoftClip, bitOutputStream, outputMap);
+        writer.hardClipCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.HC_HardClip, bitOutputStream, outputMap);
+        writer.paddingCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.PD_padding, bitOutputStream, outputMap);
+        writer.deletionLengthCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.DL_DeletionLength, bitOutputStream, outputMap);
+        writer.mappingQualityScoreCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.MQ_MappingQualityScore, bitOutputStream, outputMap);
+        writer.mateBitFlagsCodec = (ByteDataWriter) createWriter(DataSeriesType.BYTE, h, EncodingKey.MF_MateBitFlags, bitOutputStream, outputMap);
+        writer.nextFragmentReferenceSequenceIDCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.NS_NextFragmentReferenceSequenceID, bitOutputStream, outputMap);
+        writer.nextFragmentAlignmentStart = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.NP_NextFragmentAlignmentStart, bitOutputStream, outputMap);
+        writer.templateSize = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.TS_InsetSize, bitOutputStream, outputMap);
+        writer.tagIdListCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.TL_TagIdList, bitOutputStream, outputMap);
+        writer.refIdCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.RI_RefId, bitOutputStream, outputMap);
+        writer.refSkipCodec = (IntegerDataWriter) createWriter(DataSeriesType.INT, h, EncodingKey.RS_RefSkip, bitOutputStream, outputMap);
+
+        final Map<Integer, DataWriter<byte[]>> map = new HashMap<Integer, DataWriter<byte[]>>();
+        for (final Integer key : h.tMap.keySet()) {
+            final EncodingParams params = h.tMap.get(key);
+            final DataWriter<byte[]> tagWriter = (DataWriter<byte[]>) createWriter(
+                    DataSeriesType.BYTE_ARRAY, params, bitOutputStream,
+                    outputMap);
+            map.put(key, tagWriter);
         }
+        writer.tagValueCodecs = map;
 
         return writer;
     }
 
-    private <T> DataWriter<T> createWriter(final DataSeriesType valueType,
-                                           final EncodingParams params, final BitOutputStream bitOutputStream,
-                                           final Map<Integer, ExposedByteArrayOutputStream> outputMap) {
+    private Object createWriter(final DataSeriesType valueType, final CompressionHeader h, final EncodingKey key,
+                                final BitOutputStream bitOutputStream,
+                                final Map<Integer, ExposedByteArrayOutputStream> outputMap) {
+        return createWriter(valueType, h.encodingMap.get(key), bitOutputStream, outputMap);
+    }
+
+    private Object createWriter(final DataSeriesType valueType,
+                                final EncodingParams params, final BitOutputStream bitOutputStream,
+                                final Map<Integer, ExposedByteArrayOutputStream> outputMap) {
         final EncodingFactory f = new EncodingFactory();
-        final Encoding<T> encoding = f.createEncoding(valueType, params.id);
+        final Encoding<Object> encoding = f.createEncoding(valueType, params.id);
         if (encoding == null)
             throw new RuntimeException("Encoding not found: value type="
                     + valueType.name() + ", encoding id=" + params.id.name());
 
         encoding.fromByteArray(params.params);
 
-        return new DefaultDataWriter<T>(encoding.buildCodec(null, outputMap),
-                bitOutputStream);
+        final BitCodec<?> codec = encoding.buildCodec(null, outputMap);
+        if (valueType == DataSeriesType.INT && codec instanceof AbstractIntegerCodec)
+            return new IntegerCodecWriter((AbstractIntegerCodec) codec, bitOutputStream);
+        if (valueType == DataSeriesType.BYTE && codec instanceof AbstractByteCodec)
+            return new ByteCodecWriter((AbstractByteCodec) codec, bitOutputStream);
+        return new DefaultDataWriter<Object>((BitCodec<Object>) codec, bitOutputStream);
     }
 
-    private static class DefaultDataWriter<T> implements DataWriter<T> {
+    private static class DefaultDataWriter<T> implements DataWriter<T>, IntegerDataWriter, ByteDataWriter {
         private final BitCodec<T> codec;
         private final BitOutputStream bitOutputStream;
 
@@ -105,5 +125,45 @@ public class DataWriterFactory {
             return codec.write(bitOutputStream, value);
         }
 
+        // Used for null encodings of int and byte data series, which write nothing
+        @Override
+        public long writeInt(final int value) throws IOException {
+            return codec.write(bitOutputStream, (T) Integer.valueOf(value));
+        }
+
+        @Override
+        public long writeByte(final byte value) throws IOException {
+            return codec.write(bitOutputStream, (T) Byte.valueOf(value));
+        }
+    }
+
+    private static class IntegerCodecWriter implements IntegerDataWriter {
+        private final AbstractIntegerCodec codec;
+        private final BitOutputStream bitOutputStream;
+
+        public IntegerCodecWriter(final AbstractIntegerCodec codec, final BitOutputStream bitOutputStream) {
+            this.codec = codec;
+            this.bitOutputStream = bitOutputStream;
+        }
+
+        @Override
+        public long writeInt(final int value) throws IOException {
+            return codec.writeInt(bitOutputStream, value);
+        }
+    }
+
+    private static class ByteCodecWriter implements ByteDataWriter {
+        private final AbstractByteCodec codec;
+        private final BitOutputStream bitOutputStream;
+
+        public ByteCodecWriter(final AbstractByteCodec codec, final BitOutputStream bitOutputStream) {
+            this.codec = codec;
+            this.bitOutputStream = bitOutputStream;
+        }
+
+        @Override
+        public long writeByte(final byte value) throws IOException {
+            return codec.writeByte(bitOutputStream, value);
+        }
     }
 }
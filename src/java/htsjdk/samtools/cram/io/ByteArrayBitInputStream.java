@@ -0,0 +1,118 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A {@link BitInputStream} over a byte array which keeps up to 64 bits buffered in a long, so most reads are a shift
+ * and a mask rather than a byte at a time. Also allows bits to be looked at before they are consumed, for table
+ * driven decoding.
+ */
+public class ByteArrayBitInputStream implements BitInputStream {
+    private final byte[] data;
+    private int position;
+    private final int end;
+
+    /** The buffered bits, the next one being the most significant. Bits below those buffered are zero. */
+    private long buffer = 0;
+    private int bufferedBits = 0;
+
+    public ByteArrayBitInputStream(final byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public ByteArrayBitInputStream(final byte[] data, final int offset, final int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    /** Fills the buffer with as many whole bytes as fit. */
+    private void refill() {
+        while (bufferedBits <= 56 && position < end) {
+            buffer |= (data[position++] & 0xFFL) << (56 - bufferedBits);
+            bufferedBits += 8;
+        }
+    }
+
+    @Override
+    public final boolean readBit() throws IOException {
+        if (bufferedBits == 0) {
+            refill();
+            if (bufferedBits == 0) throw new EOFException("End of stream.");
+        }
+        final boolean bit = buffer < 0;
+        buffer <<= 1;
+        bufferedBits--;
+        return bit;
+    }
+
+    @Override
+    public final int readBits(final int n) throws IOException {
+        if (n == 0)
+            return 0;
+        if (n > 32)
+            throw new RuntimeException("More then 32 bits are requested in one read from bit stream.");
+        if (n > bufferedBits) {
+            refill();
+            if (n > bufferedBits) throw new EOFException("End of stream.");
+        }
+        final int bits = (int) (buffer >>> (64 - n));
+        buffer <<= n;
+        bufferedBits -= n;
+        return bits;
+    }
+
+    @Override
+    public final long readLongBits(final int n) throws IOException {
+        if (n > 64)
+            throw new RuntimeException("More then 64 bits are requested in one read from bit stream.");
+        if (n <= 32)
+            return readBits(n) & 0xFFFFFFFFL;
+        final long high = readBits(n - 32) & 0xFFFFFFFFL;
+        return high << 32 | (readBits(32) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the next bits without consuming them. Past the end of the stream the bits are zero.
+     *
+     * @param n number of bits to look at, at most 32
+     * @return the bits, the first being the most significant
+     */
+    public final int peekBits(final int n) {
+        if (n == 0)
+            return 0;
+        if (n > bufferedBits)
+            refill();
+        return (int) (buffer >>> (64 - n));
+    }
+
+    /**
+     * Consumes bits previously looked at with {@link #peekBits(int)}.
+     *
+     * @param n number of bits to skip, at most the number peeked
+     * @throws EOFException if fewer than n bits remain
+     */
+    public final void skipBits(final int n) throws EOFException {
+        if (n > bufferedBits) throw new EOFException("End of stream.");
+        buffer <<= n;
+        bufferedBits -= n;
+    }
+}
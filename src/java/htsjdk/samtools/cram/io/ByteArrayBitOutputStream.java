@@ -0,0 +1,115 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link BitOutputStream} that collects bits in a long and stores them in a growing byte array, writing whole
+ * bytes rather than a bit or byte at a time. The bits written so far, with the last byte padded with zeros, are
+ * returned by {@link #toByteArray()}.
+ */
+public class ByteArrayBitOutputStream implements BitOutputStream {
+    private byte[] bytes;
+    private int size = 0;
+
+    /** The bits not yet stored, right aligned. At most 7 bits are left here between writes. */
+    private long buffer = 0;
+    private int bufferedBits = 0;
+
+    public ByteArrayBitOutputStream() {
+        this(1024);
+    }
+
+    public ByteArrayBitOutputStream(final int initialCapacity) {
+        bytes = new byte[Math.max(1, initialCapacity)];
+    }
+
+    /** Adds at most 32 bits, storing the whole bytes. */
+    private void append(final long bits, final int n) {
+        buffer = buffer << n | (bits & ((1L << n) - 1));
+        bufferedBits += n;
+        if (bufferedBits < 8)
+            return;
+        if (size + 5 > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(size + 5, bytes.length * 2));
+        while (bufferedBits >= 8) {
+            bufferedBits -= 8;
+            bytes[size++] = (byte) (buffer >>> bufferedBits);
+        }
+        buffer &= (1L << bufferedBits) - 1;
+    }
+
+    @Override
+    public void write(final int bitContainer, final int nofBits) throws IOException {
+        if (nofBits < 0 || nofBits > 32)
+            throw new IOException("Expecting 0 to 32 bits.");
+        append(bitContainer, nofBits);
+    }
+
+    @Override
+    public void write(final long bitContainer, final int nofBits) throws IOException {
+        if (nofBits < 0 || nofBits > 64)
+            throw new IOException("Expecting 0 to 64 bits, got: value=" + bitContainer + ", nofBits=" + nofBits);
+        if (nofBits > 32) {
+            append(bitContainer >>> 32, nofBits - 32);
+            append(bitContainer, 32);
+        } else {
+            append(bitContainer, nofBits);
+        }
+    }
+
+    @Override
+    public void write(final byte bitContainer, final int nofBits) throws IOException {
+        if (nofBits < 0 || nofBits > 8)
+            throw new IOException("Expecting 0 to 8 bits.");
+        append(bitContainer, nofBits);
+    }
+
+    @Override
+    public void write(final boolean bit) throws IOException {
+        append(bit ? 1 : 0, 1);
+    }
+
+    @Override
+    public void write(final boolean bit, final long repeat) throws IOException {
+        final long bits = bit ? -1L : 0L;
+        for (long remaining = repeat; remaining > 0; remaining -= 32)
+            append(bits, (int) Math.min(32, remaining));
+    }
+
+    /**
+     * @return the bits written so far, the last byte padded with zero bits
+     */
+    public byte[] toByteArray() {
+        final byte[] result = Arrays.copyOf(bytes, size + (bufferedBits > 0 ? 1 : 0));
+        if (bufferedBits > 0)
+            result[size] = (byte) (buffer << (8 - bufferedBits));
+        return result;
+    }
+
+    /** Nothing to do: the bits are only padded to a byte by {@link #toByteArray()}. */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -2,7 +2,7 @@ package htsjdk.samtools.cram.io;
 
 import htsjdk.samtools.cram.encoding.rans.RANS;
 import htsjdk.samtools.util.IOUtil;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
 import org.apache.tools.bzip2.CBZip2InputStream;
@@ -27,10 +27,21 @@ public class ExternalCompression {
      * @return compressed blob
      */
     public static byte[] gzip(final byte[] data) throws IOException {
+        return gzip(data, GZIP_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Compress a byte array into GZIP blob with the given compression level.
+     *
+     * @param data  byte array to compress
+     * @param level deflate compression level, 1 to 9
+     * @return compressed blob
+     */
+    public static byte[] gzip(final byte[] data, final int level) throws IOException {
         final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         final GZIPOutputStream gos = new GZIPOutputStream(byteArrayOutputStream) {
             {
-                def.setLevel(GZIP_COMPRESSION_LEVEL);
+                def.setLevel(level);
             }
         };
         IOUtil.copyStream(new ByteArrayInputStream(data), gos);
@@ -58,7 +69,11 @@ public class ExternalCompression {
      * @return compressed blob
      */
     public static byte[] bzip2(final byte[] data) throws IOException {
-        return InputStreamUtils.readFully(new BZip2CompressorInputStream(new ByteArrayInputStream(data)));
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        final BZip2CompressorOutputStream bos = new BZip2CompressorOutputStream(byteArrayOutputStream);
+        bos.write(data);
+        bos.close();
+        return byteArrayOutputStream.toByteArray();
     }
 
     /**
@@ -85,8 +100,7 @@ public class ExternalCompression {
      * @return compressed blob
      */
     public static byte[] rans(final byte[] data, final RANS.ORDER order) {
-        final ByteBuffer buffer = RANS.compress(ByteBuffer.wrap(data), order, null);
-        return toByteArray(buffer);
+        return RANS.compress(data, order);
     }
 
     /**
@@ -97,8 +111,7 @@ public class ExternalCompression {
      * @return compressed blob
      */
     public static byte[] rans(final byte[] data, final int order) {
-        final ByteBuffer buffer = RANS.compress(ByteBuffer.wrap(data), RANS.ORDER.fromInt(order), null);
-        return toByteArray(buffer);
+        return RANS.compress(data, RANS.ORDER.fromInt(order));
     }
 
     /**
@@ -0,0 +1,363 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A cache of reference sequences on disk, each held in a file named by the MD5 of its bases, laid out as by
+ * samtools' REF_CACHE and REF_PATH.  A path pattern is expanded for an MD5 by replacing each %<i>N</i>s with the
+ * next <i>N</i> characters of the MD5, %s with the rest of it, and %% with %.  A pattern with no %s is taken as a
+ * directory to which /%s is appended.
+ * <p/>
+ * Sequences are stored under the cache pattern, and looked for there and under any further search patterns.
+ * Files are written to a temporary file and renamed into place, so concurrent readers, including other processes,
+ * never see part of a sequence.  If a maximum size is given, the least recently used cached sequences are deleted
+ * when it is exceeded.  Only files whose paths are expansions of the cache pattern for some MD5 are counted or
+ * deleted, and symbolic links are not followed.  The cached files are listed once, and then tracked as they are
+ * written and read, so files cached by other processes after that are only counted once this cache reads them.
+ */
+public class DiskReferenceCache {
+    private static final Log log = Log.getInstance(DiskReferenceCache.class);
+    private static final Pattern MD5_PATTERN = Pattern.compile("[0-9a-f]{32}");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static DiskReferenceCache defaultCache = null;
+    private static boolean defaultCacheCreated = false;
+
+    private final String cachePattern;
+    private final List<String> searchPatterns;
+    private final long maxBytes;
+    /** The directory under which all the cached files lie, used when evicting. */
+    private final File cacheRoot;
+    /** Patterns of the names at each level below cacheRoot of the paths of cached files. */
+    private final Pattern[] cachePathPatterns;
+
+    /** The sizes of the cached files, least recently used first, or null until the cache has been listed. */
+    private Map<File, Long> cachedFiles = null;
+    private long cachedBytes = 0;
+
+    /**
+     * @param cachePattern The pattern of the paths of cached sequences.
+     * @param maxBytes     The maximum total size of the cached sequences, or 0 for no limit.
+     */
+    public DiskReferenceCache(final String cachePattern, final long maxBytes) {
+        this(cachePattern, Collections.<String>emptyList(), maxBytes);
+    }
+
+    /**
+     * @param cachePattern   The pattern of the paths of cached sequences, or null to search without caching.
+     * @param searchPatterns Further patterns of the paths of sequences, which are searched in order after the cache
+     *                       but never written to.
+     * @param maxBytes       The maximum total size of the cached sequences, or 0 for no limit.
+     */
+    public DiskReferenceCache(final String cachePattern, final List<String> searchPatterns, final long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+        this.cachePattern = cachePattern == null ? null : normalizePattern(cachePattern);
+        this.searchPatterns = new ArrayList<String>();
+        for (final String pattern : searchPatterns) this.searchPatterns.add(normalizePattern(pattern));
+        this.maxBytes = maxBytes;
+        if (this.cachePattern == null) {
+            this.cacheRoot = null;
+            this.cachePathPatterns = null;
+        } else {
+            // Expand the pattern with placeholders for the MD5 characters, and split it at the last separator
+            // before the first of them
+            final String template = expand(this.cachePattern, new String(new char[32])).getPath();
+            final int lastSeparator = template.substring(0, template.indexOf('\0')).lastIndexOf(File.separatorChar);
+            this.cacheRoot = new File(lastSeparator < 0 ? "" : template.substring(0, lastSeparator + 1)).getAbsoluteFile();
+            final String[] names = template.substring(lastSeparator + 1).split(Pattern.quote(File.separator));
+            this.cachePathPatterns = new Pattern[names.length];
+            for (int i = 0; i < names.length; ++i) this.cachePathPatterns[i] = toNamePattern(names[i]);
+        }
+    }
+
+    /** Turns a file name with placeholders for MD5 characters into a pattern matching it for any MD5. */
+    private static Pattern toNamePattern(final String name) {
+        final StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < name.length()) {
+            int j = i;
+            if (name.charAt(i) == '\0') {
+                while (j < name.length() && name.charAt(j) == '\0') ++j;
+                regex.append("[0-9a-f]{").append(j - i).append('}');
+            } else {
+                while (j < name.length() && name.charAt(j) != '\0') ++j;
+                regex.append(Pattern.quote(name.substring(i, j)));
+            }
+            i = j;
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * @return The disk cache configured by {@link Defaults#REF_CACHE}, {@link Defaults#REF_PATH} and
+     * {@link Defaults#REF_CACHE_SIZE_MB}, or null if neither REF_CACHE nor REF_PATH is set.
+     */
+    public static synchronized DiskReferenceCache getDefault() {
+        if (!defaultCacheCreated) {
+            final List<String> searchPatterns = parseSearchPath(Defaults.REF_PATH);
+            final String cachePattern = Defaults.REF_CACHE == null || Defaults.REF_CACHE.isEmpty() ? null : Defaults.REF_CACHE;
+            if (cachePattern != null || !searchPatterns.isEmpty()) {
+                defaultCache = new DiskReferenceCache(cachePattern, searchPatterns, Defaults.REF_CACHE_SIZE_MB * 1024L * 1024L);
+            }
+            defaultCacheCreated = true;
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Splits a REF_PATH-style list of patterns, dropping URLs, which may themselves contain the separator.
+     */
+    static List<String> parseSearchPath(final String searchPath) {
+        final List<String> patterns = new ArrayList<String>();
+        if (searchPath == null) return patterns;
+        final String[] parts = searchPath.split(Pattern.quote(File.pathSeparator));
+        for (int i = 0; i < parts.length; ++i) {
+            if (parts[i].matches("[a-zA-Z]+") && i + 1 < parts.length && parts[i + 1].startsWith("//")) {
+                // A URL such as http://host/%s, split at its scheme
+                ++i;
+            } else if (!parts[i].isEmpty() && !parts[i].contains("://")) {
+                patterns.add(parts[i]);
+            }
+        }
+        return patterns;
+    }
+
+    private static String normalizePattern(final String pattern) {
+        if (pattern.matches(".*(^|[^%])%[0-9]*s.*")) return pattern;
+        return pattern + File.separator + "%s";
+    }
+
+    /**
+     * @return The path of the given MD5 under a pattern.
+     */
+    static File expand(final String pattern, final String md5) {
+        final StringBuilder path = new StringBuilder();
+        int md5Offset = 0;
+        for (int i = 0; i < pattern.length(); ++i) {
+            final char c = pattern.charAt(i);
+            if (c != '%' || i + 1 == pattern.length()) {
+                path.append(c);
+                continue;
+            }
+            int j = i + 1;
+            while (j < pattern.length() && Character.isDigit(pattern.charAt(j))) ++j;
+            if (j < pattern.length() && pattern.charAt(j) == 's') {
+                final int end = j == i + 1 ? md5.length() : Math.min(md5.length(), md5Offset + Integer.parseInt(pattern.substring(i + 1, j)));
+                path.append(md5, md5Offset, end);
+                md5Offset = end;
+                i = j;
+            } else if (pattern.charAt(i + 1) == '%') {
+                path.append('%');
+                ++i;
+            } else {
+                path.append(c);
+            }
+        }
+        return new File(path.toString());
+    }
+
+    /**
+     * @return The file in which the sequence with the given MD5 is or would be cached, or null if there is no
+     * cache pattern.
+     */
+    public File getCacheFile(final String md5) {
+        return cachePattern == null ? null : expand(cachePattern, md5);
+    }
+
+    /**
+     * Reads a sequence from the cache or search path.
+     *
+     * @param md5 The lower-case MD5 of the sequence.
+     * @return The bases of the sequence, or null if it is not found in the cache or search path.
+     */
+    public byte[] get(final String md5) {
+        if (!MD5_PATTERN.matcher(md5).matches()) return null;
+        final File cacheFile = getCacheFile(md5);
+        if (cacheFile != null && cacheFile.isFile()) {
+            final byte[] bases = read(cacheFile);
+            if (maxBytes > 0) {
+                // Mark the file as recently used, for this cache and for other processes listing it
+                cacheFile.setLastModified(System.currentTimeMillis());
+                used(cacheFile, bases.length);
+            }
+            return bases;
+        }
+        for (final String pattern : searchPatterns) {
+            final File file = expand(pattern, md5);
+            if (file.isFile()) return read(file);
+        }
+        return null;
+    }
+
+    private static byte[] read(final File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            final long size = randomAccessFile.length();
+            if (size > Integer.MAX_VALUE) throw new RuntimeIOException("Reference sequence file is too large: " + file);
+            final byte[] bases = new byte[(int) size];
+            randomAccessFile.readFully(bases);
+            return bases;
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading cached reference sequence " + file, e);
+        } finally {
+            CloserUtil.close(randomAccessFile);
+        }
+    }
+
+    /**
+     * Writes a sequence to the cache, if there is a cache pattern, and then evicts the least recently used
+     * sequences if the cache is too big.  Failure to write is logged rather than thrown, since the sequence can
+     * still be used.
+     *
+     * @param md5 The lower-case MD5 of the sequence.
+     */
+    public void put(final String md5, final byte[] bases) {
+        if (cachePattern == null) return;
+        if (!MD5_PATTERN.matcher(md5).matches()) throw new IllegalArgumentException("Not an MD5: " + md5);
+        final File cacheFile = getCacheFile(md5);
+        if (cacheFile.isFile()) return;
+
+        File tempFile = null;
+        try {
+            final File dir = cacheFile.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            tempFile = File.createTempFile(cacheFile.getName() + ".", TEMP_SUFFIX, dir);
+            final FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(bases);
+            } finally {
+                out.close();
+            }
+            // Another process may have cached the same sequence in the meantime, in which case either copy will do
+            if (!tempFile.renameTo(cacheFile) && !cacheFile.isFile()) {
+                throw new IOException("Unable to rename " + tempFile + " to " + cacheFile);
+            }
+        } catch (final IOException e) {
+            log.warn("Unable to cache reference sequence " + md5 + ": " + e.getMessage());
+            return;
+        } finally {
+            if (tempFile != null && tempFile.exists()) tempFile.delete();
+        }
+        if (maxBytes > 0) {
+            used(cacheFile, bases.length);
+            evict(cacheFile);
+        }
+    }
+
+    /** Records a cached file as the most recently used, listing the cache first if that has not been done. */
+    private synchronized void used(final File cacheFile, final long length) {
+        if (cachedFiles == null) listCachedFiles();
+        final File file = cacheFile.getAbsoluteFile();
+        final Long previous = cachedFiles.remove(file);
+        if (previous != null) cachedBytes -= previous;
+        cachedFiles.put(file, length);
+        cachedBytes += length;
+    }
+
+    /**
+     * Deletes the least recently used cached files until their total size is within the limit, never deleting the
+     * file just written.
+     */
+    private synchronized void evict(final File justWritten) {
+        final Iterator<Map.Entry<File, Long>> iterator = cachedFiles.entrySet().iterator();
+        while (cachedBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<File, Long> entry = iterator.next();
+            final File file = entry.getKey();
+            if (file.equals(justWritten.getAbsoluteFile())) continue;
+            // A file that cannot be deleted is no longer tracked, rather than being tried after every write
+            iterator.remove();
+            cachedBytes -= entry.getValue();
+            if (file.delete()) log.debug("Evicted cached reference sequence " + file);
+        }
+    }
+
+    /** Lists the cached files, ordering them by when they were last modified. */
+    private void listCachedFiles() {
+        final List<File> files = new ArrayList<File>();
+        listCachedFiles(cacheRoot, 0, files);
+        final long[] lastModified = new long[files.size()];
+        for (int i = 0; i < lastModified.length; ++i) lastModified[i] = files.get(i).lastModified();
+        final Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; ++i) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer a, final Integer b) {
+                return lastModified[a] < lastModified[b] ? -1 : (lastModified[a] == lastModified[b] ? 0 : 1);
+            }
+        });
+
+        cachedFiles = new LinkedHashMap<File, Long>();
+        cachedBytes = 0;
+        for (final int i : order) {
+            final long length = files.get(i).length();
+            cachedFiles.put(files.get(i), length);
+            cachedBytes += length;
+        }
+    }
+
+    /** Collects the files under dir whose names at each level match the cache pattern, without following links. */
+    private void listCachedFiles(final File dir, final int level, final List<File> files) {
+        final String[] names = dir.list();
+        if (names == null) return;
+        final boolean last = level == cachePathPatterns.length - 1;
+        for (final String name : names) {
+            if (!cachePathPatterns[level].matcher(name).matches()) continue;
+            final File child = new File(dir, name);
+            if (isSymbolicLink(child)) continue;
+            if (last ? child.isFile() : child.isDirectory()) {
+                if (last) files.add(child);
+                else listCachedFiles(child, level + 1, files);
+            }
+        }
+    }
+
+    private static boolean isSymbolicLink(final File file) {
+        try {
+            final File inCanonicalDir = new File(file.getAbsoluteFile().getParentFile().getCanonicalFile(), file.getName());
+            return !inCanonicalDir.getCanonicalFile().equals(inCanonicalDir.getAbsoluteFile());
+        } catch (final IOException e) {
+            return true;
+        }
+    }
+
+    /** @return The maximum total size of the cached sequences, or 0 if there is no limit. */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
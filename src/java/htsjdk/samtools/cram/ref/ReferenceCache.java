@@ -0,0 +1,155 @@
+/**
+ * ****************************************************************************
+ * Copyright 2013 EMBL-EBI
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ****************************************************************************
+ */
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.Defaults;
+import htsjdk.samtools.SAMException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A thread-safe cache of reference bases with a limit on the total number of bytes held.  When the limit is
+ * exceeded, the least recently used entries are evicted.  The most recent entry is always kept, even if it is larger
+ * than the limit on its own, so that a sequence too large for the cache is not loaded again on every request.
+ * <p/>
+ * Loading is done outside the cache's lock, and concurrent requests for an entry that is being loaded wait for
+ * that load rather than starting another.
+ */
+public class ReferenceCache {
+    private static ReferenceCache defaultCache = null;
+
+    private final long maxBytes;
+    private long cachedBytes = 0;
+    /** Entries in order of access, least recent first.  Guarded by itself. */
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private final ConcurrentMap<String, FutureTask<byte[]>> loads = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+
+    /**
+     * @param maxBytes The maximum total size of the cached entries.
+     */
+    public ReferenceCache(final long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Cache size must not be negative: " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The cache shared by ReferenceSources that are not given one, whose size is set by
+     * {@link Defaults#REFERENCE_CACHE_SIZE_MB}.
+     */
+    public static synchronized ReferenceCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new ReferenceCache(Defaults.REFERENCE_CACHE_SIZE_MB * 1024L * 1024L);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * @return The bases cached for key, or null if there are none.
+     */
+    public byte[] get(final String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Returns the bases cached for key, loading and caching them if there are none.  If another thread is
+     * already loading them, waits for it to finish instead.
+     *
+     * @param loader Loads the bases, or returns null if they cannot be found, in which case nothing is cached.
+     * @return The bases for key, or null if the loader returned null.
+     */
+    public byte[] get(final String key, final Callable<byte[]> loader) {
+        final byte[] cached = get(key);
+        if (cached != null) return cached;
+
+        final FutureTask<byte[]> task = new FutureTask<byte[]>(loader);
+        final FutureTask<byte[]> existing = loads.putIfAbsent(key, task);
+        if (existing != null) {
+            return getResult(existing);
+        }
+        try {
+            // Another thread may have finished loading between the first lookup and putIfAbsent()
+            final byte[] loaded = get(key);
+            if (loaded != null) return loaded;
+            task.run();
+            final byte[] bases = getResult(task);
+            if (bases != null) put(key, bases);
+            return bases;
+        } finally {
+            loads.remove(key, task);
+        }
+    }
+
+    /**
+     * Caches bases under key, evicting the least recently used other entries if necessary.
+     */
+    public void put(final String key, final byte[] bases) {
+        synchronized (entries) {
+            final byte[] previous = entries.remove(key);
+            if (previous != null) cachedBytes -= previous.length;
+
+            entries.put(key, bases);
+            cachedBytes += bases.length;
+            final Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+            while (cachedBytes > maxBytes && entries.size() > 1) {
+                cachedBytes -= iterator.next().getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Removes all entries. */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /** @return The maximum total size of the cached entries. */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** @return The total size of the cached entries. */
+    public long getCachedBytes() {
+        synchronized (entries) {
+            return cachedBytes;
+        }
+    }
+
+    private static byte[] getResult(final FutureTask<byte[]> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new SAMException("Interrupted while loading reference bases", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new SAMException("Exception loading reference bases", e.getCause());
+        }
+    }
+}
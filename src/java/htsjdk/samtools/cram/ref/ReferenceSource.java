@@ -21,6 +21,8 @@ import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.cram.io.InputStreamUtils;
+import htsjdk.samtools.reference.FastaSequenceFile;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
@@ -28,104 +30,188 @@ import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SequenceUtil;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
+/**
+ * Provides reference bases for CRAM readers and writers, from a reference file or by MD5, first from a
+ * {@link DiskReferenceCache} and then, if allowed by {@link Defaults#USE_CRAM_REF_DOWNLOAD}, by downloading them.
+ * Downloaded sequences are added to the disk cache.  Bases are upper-cased and held in a {@link ReferenceCache},
+ * by default the one shared by all ReferenceSources.  This class is thread-safe.
+ * <p/>
+ * {@link #getReferenceBases(SAMSequenceRecord, boolean)}, which CRAM readers and writers use, caches whole sequences
+ * of one byte per base whatever the reference file, even a
+ * {@link htsjdk.samtools.reference.PackedReferenceSequenceFile}.  Only
+ * {@link #getReferenceBasesByRegion(SAMSequenceRecord, boolean, int, int)} reads just the bases asked for.
+ */
 public class ReferenceSource {
     private static final Log log = Log.getInstance(ReferenceSource.class);
+    private static final AtomicInteger sourcesCreated = new AtomicInteger(0);
+
     private ReferenceSequenceFile rsFile;
     private int downloadTriesBeforeFailing = 2;
+    private volatile DiskReferenceCache diskCache = DiskReferenceCache.getDefault();
+    private volatile String referenceServiceUrlMask =
+            Defaults.USE_CRAM_REF_DOWNLOAD ? Defaults.EBI_REFERENCE_SEVICE_URL_MASK : null;
 
-    private final Map<String, WeakReference<byte[]>> cacheW = new HashMap<String, WeakReference<byte[]>>();
+    private final ReferenceCache cache;
+    /**
+     * Prefix of the cache keys of sequences found by name, which distinguishes them from the sequences of other
+     * references.  Sources reading the same fasta file share a prefix, so that their sequences are cached once;
+     * other sources have a prefix of their own.  Sequences found by MD5 are cached under the lower-case MD5 alone.
+     */
+    private final String nameKeyPrefix;
 
     public ReferenceSource() {
+        this.cache = ReferenceCache.getDefault();
+        this.nameKeyPrefix = makeUniquePrefix();
     }
 
     public ReferenceSource(final File file) {
-        if (file != null)
+        this.cache = ReferenceCache.getDefault();
+        if (file != null) {
             rsFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(file);
+            this.nameKeyPrefix = makeFilePrefix(file);
+        } else {
+            this.nameKeyPrefix = makeUniquePrefix();
+        }
     }
 
     public ReferenceSource(final ReferenceSequenceFile rsFile) {
+        this(rsFile, ReferenceCache.getDefault());
+    }
+
+    /**
+     * @param cache The cache in which to hold reference bases.
+     */
+    public ReferenceSource(final ReferenceSequenceFile rsFile, final ReferenceCache cache) {
         this.rsFile = rsFile;
+        this.cache = cache;
+        if (rsFile instanceof IndexedFastaSequenceFile) {
+            this.nameKeyPrefix = makeFilePrefix(((IndexedFastaSequenceFile) rsFile).getFile());
+        } else if (rsFile instanceof FastaSequenceFile) {
+            this.nameKeyPrefix = makeFilePrefix(((FastaSequenceFile) rsFile).getFile());
+        } else {
+            this.nameKeyPrefix = makeUniquePrefix();
+        }
+    }
+
+    private static String makeUniquePrefix() {
+        return "#" + sourcesCreated.incrementAndGet() + ":";
     }
 
+    /** Identifies a version of a file, so that readers of the same file share its cached sequences. */
+    private static String makeFilePrefix(final File file) {
+        return file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length() + ":";
+    }
+
+    /**
+     * Clears the cache used by this source.  Unless a cache was given to the constructor, this is the cache shared
+     * by all ReferenceSources in the JVM, so the sequences of every other source are dropped as well.
+     */
     public void clearCache() {
-        cacheW.clear();
+        cache.clear();
     }
 
-    private byte[] findInCache(final String name) {
-        final WeakReference<byte[]> weakReference = cacheW.get(name);
-        if (weakReference != null) {
-            final byte[] bytes = weakReference.get();
-            if (bytes != null)
-                return bytes;
-        }
-        return null;
+    private byte[] findInCache(final SAMSequenceRecord record) {
+        final byte[] bases = cache.get(nameKeyPrefix + record.getSequenceName());
+        if (bases != null) return bases;
+        final String md5 = record.getAttribute(SAMSequenceRecord.MD5_TAG);
+        return md5 == null ? null : cache.get(md5.toLowerCase());
     }
 
-    public synchronized byte[] getReferenceBases(final SAMSequenceRecord record,
-                                                 final boolean tryNameVariants) {
-        { // check cache by sequence name:
-            final String name = record.getSequenceName();
-            final byte[] bases = findInCache(name);
+    public byte[] getReferenceBases(final SAMSequenceRecord record,
+                                    final boolean tryNameVariants) {
+        final byte[] cached = findInCache(record);
+        if (cached != null)
+            return cached;
+
+        { // try to fetch sequence by name:
+            final byte[] bases = cache.get(nameKeyPrefix + record.getSequenceName(), new Callable<byte[]>() {
+                public byte[] call() {
+                    final byte[] bases;
+                    synchronized (ReferenceSource.this) {
+                        bases = findBasesByName(record.getSequenceName(), tryNameVariants);
+                    }
+                    if (bases != null) SequenceUtil.upperCase(bases);
+                    return bases;
+                }
+            });
             if (bases != null)
                 return bases;
         }
 
         final String md5 = record.getAttribute(SAMSequenceRecord.MD5_TAG);
-        { // check cache by md5:
-            if (md5 != null) {
-                byte[] bases = findInCache(md5);
-                if (bases != null)
-                    return bases;
-                bases = findInCache(md5.toLowerCase());
-                if (bases != null)
-                    return bases;
-                bases = findInCache(md5.toUpperCase());
-                if (bases != null)
+        final DiskReferenceCache diskCache = this.diskCache;
+        final String urlMask = this.referenceServiceUrlMask;
+        if (md5 != null && (diskCache != null || urlMask != null)) { // try to fetch sequence by md5:
+            return cache.get(md5.toLowerCase(), new Callable<byte[]>() {
+                public byte[] call() {
+                    byte[] bases = diskCache == null ? null : diskCache.get(md5.toLowerCase());
+                    if (bases == null && urlMask != null) {
+                        try {
+                            bases = findBasesByMD5(urlMask, md5.toLowerCase());
+                        } catch (final Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                        if (bases != null && diskCache != null) diskCache.put(md5.toLowerCase(), bases);
+                    }
+                    if (bases != null) SequenceUtil.upperCase(bases);
                     return bases;
-            }
+                }
+            });
         }
 
-        byte[] bases;
+        // sequence not found, give up:
+        return null;
+    }
 
-        { // try to fetch sequence by name:
-            bases = findBasesByName(record.getSequenceName(), tryNameVariants);
-            if (bases != null) {
-                SequenceUtil.upperCase(bases);
-                cacheW.put(record.getSequenceName(), new WeakReference<byte[]>(
-                        bases));
-                return bases;
+    /**
+     * Gets a region of a reference sequence.  If the whole sequence is not already cached and the reference file
+     * is indexed, only the region is read, and it is not cached.
+     *
+     * @param zeroBasedStart The 0-based offset of the first base of the region.
+     * @param length         The length of the region, which is truncated at the end of the sequence.
+     * @return The upper-case bases of the region, or null if the sequence cannot be found.
+     */
+    public byte[] getReferenceBasesByRegion(final SAMSequenceRecord record, final boolean tryNameVariants,
+                                            final int zeroBasedStart, final int length) {
+        byte[] bases = findInCache(record);
+        if (bases == null && rsFile != null && rsFile.isIndexed() && record.getSequenceLength() > 0) {
+            final int end = Math.min(zeroBasedStart + length, record.getSequenceLength());
+            if (end <= zeroBasedStart) return new byte[0];
+            final byte[] region = findRegionByName(record.getSequenceName(), tryNameVariants, zeroBasedStart + 1, end);
+            if (region != null) {
+                SequenceUtil.upperCase(region);
+                return region;
             }
         }
+        if (bases == null) bases = getReferenceBases(record, tryNameVariants);
+        if (bases == null) return null;
+        final int start = Math.min(zeroBasedStart, bases.length);
+        return Arrays.copyOfRange(bases, start, Math.max(start, Math.min(zeroBasedStart + length, bases.length)));
+    }
 
-        {
-            if (Defaults.USE_CRAM_REF_DOWNLOAD) { // try to fetch sequence by md5:
-                if (md5 != null) {
-                    try {
-                        bases = findBasesByMD5(md5.toLowerCase());
-                    } catch (final Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-                if (bases != null) {
-                    SequenceUtil.upperCase(bases);
-                    cacheW.put(md5, new WeakReference<byte[]>(bases));
-                    return bases;
-                }
+    private synchronized byte[] findRegionByName(final String name, final boolean tryVariants, final int start, final int stop) {
+        final List<String> names = new ArrayList<String>();
+        names.add(name);
+        if (tryVariants) names.addAll(getVariants(name));
+        for (final String candidate : names) {
+            try {
+                return rsFile.getSubsequenceAt(candidate, start, stop).getBases();
+            } catch (final SAMException e) {
+                // the only way to test if rsFile contains the sequence is to try and catch exception.
             }
         }
-
-        // sequence not found, give up:
         return null;
     }
 
@@ -156,12 +242,17 @@ public class ReferenceSource {
         return null;
     }
 
-    byte[] findBasesByMD5(final String md5) throws
+    byte[] findBasesByMD5(final String urlMask, final String md5) throws
             IOException {
-        final String url = String.format(Defaults.EBI_REFERENCE_SEVICE_URL_MASK, md5);
+        final String url = String.format(urlMask, md5);
 
         for (int i = 0; i < downloadTriesBeforeFailing; i++) {
-            final InputStream is = new URL(url).openStream();
+            final InputStream is;
+            try {
+                is = new URL(url).openStream();
+            } catch (final FileNotFoundException e) {
+                return null;
+            }
             if (is == null)
                 return null;
 
@@ -220,4 +311,35 @@ public class ReferenceSource {
     public void setDownloadTriesBeforeFailing(final int downloadTriesBeforeFailing) {
         this.downloadTriesBeforeFailing = downloadTriesBeforeFailing;
     }
+
+    /**
+     * @return The disk cache searched for sequences by MD5, by default {@link DiskReferenceCache#getDefault()}.
+     */
+    public DiskReferenceCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * @param diskCache The disk cache searched for sequences by MD5, or null for none.
+     */
+    public void setDiskCache(final DiskReferenceCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * @return The mask of the URLs from which sequences are downloaded by MD5, or null if they are not downloaded.
+     */
+    public String getReferenceServiceUrlMask() {
+        return referenceServiceUrlMask;
+    }
+
+    /**
+     * @param referenceServiceUrlMask The mask of the URLs from which sequences are downloaded by MD5, which must
+     *                                contain one string placeholder, or null not to download them.  By default
+     *                                {@link Defaults#EBI_REFERENCE_SEVICE_URL_MASK} if
+     *                                {@link Defaults#USE_CRAM_REF_DOWNLOAD} is set.
+     */
+    public void setReferenceServiceUrlMask(final String referenceServiceUrlMask) {
+        this.referenceServiceUrlMask = referenceServiceUrlMask;
+    }
 }
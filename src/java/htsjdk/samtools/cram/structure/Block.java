@@ -68,6 +68,7 @@ public class Block {
 
     /**
      * Deserialize the block from the {@link InputStream}. The reading is parametrized by the major CRAM version number.
+     * The content is uncompressed when it is first requested, which may be on another thread.
      *
      * @param major CRAM version major number
      * @param inputStream    input stream to read the block from
@@ -96,7 +97,6 @@ public class Block {
                 throw new RuntimeException(String.format("Block CRC32 mismatch: %04x vs %04x", checksum, actualChecksum));
         }
 
-        block.uncompress();
         return block;
     }
 
@@ -105,6 +105,11 @@ abstract class AbstractFastaSequenceFile implements ReferenceSequenceFile {
         return this.sequenceDictionary;
     }
 
+    /** Returns the reference file. */
+    public File getFile() {
+        return this.file;
+    }
+
     /** Returns the full path to the reference file. */
     public String toString() {
         return this.file.getAbsolutePath();
@@ -24,7 +24,6 @@
 
 package htsjdk.samtools.reference;
 
-import htsjdk.samtools.Defaults;
 import htsjdk.samtools.SAMException;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
@@ -36,19 +35,45 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * A fasta file driven by an index for fast, concurrent lookups.  Supports two interfaces:
  * the ReferenceSequenceFile for old-style, stateful lookups and a direct getter.
+ * <p/>
+ * The file is memory-mapped, and the direct getters {@link #getSubsequenceAt(String, long, long)} and
+ * {@link #fillSubsequence(String, long, long, byte[], int)} may be called concurrently from multiple threads.
+ * Short subsequences are copied from windows of the sequence that are cached, least recently used first out.
+ * The stateful methods {@link #nextSequence()} and {@link #reset()} are not thread-safe.
  */
 public class IndexedFastaSequenceFile extends AbstractFastaSequenceFile implements Closeable {
+    /** The size of each mapping of the file, which the JDK limits to 2GB. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    /** The number of bases in a cached window, and the longest subsequence that is copied from the windows. */
+    static final int WINDOW_SIZE = 1 << 16;
+    /** The number of windows cached. */
+    private static final int CACHED_WINDOWS = 64;
+
     /**
      * The interface facilitating direct access to the fasta.
      */
     private final FileChannel channel;
 
+    /**
+     * The file, mapped in consecutive segments of SEGMENT_SIZE bytes.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Recently used windows of WINDOW_SIZE bases, with line terminators removed, keyed by the sequence index
+     * in the upper 32 bits and the window number in the lower.  Guarded by itself.
+     */
+    private final WindowCache windowCache = new WindowCache();
+
     /**
      * A representation of the sequence index, stored alongside the fasta in a .fasta.fai file.
      */
@@ -77,6 +102,16 @@ public class IndexedFastaSequenceFile extends AbstractFastaSequenceFile implemen
             throw new SAMException("Fasta file should be readable but is not: " + file, e);
         }
         channel = in.getChannel();
+        try {
+            final long fileSize = channel.size();
+            segments = new MappedByteBuffer[(int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; ++i) {
+                final long position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, fileSize - position));
+            }
+        } catch (IOException e) {
+            throw new SAMException("Unable to map fasta file " + file, e);
+        }
         reset();
 
         if(getSequenceDictionary() != null)
@@ -172,66 +207,117 @@ public class IndexedFastaSequenceFile extends AbstractFastaSequenceFile implemen
      * @return The partial reference sequence associated with this range.
      */
     public ReferenceSequence getSubsequenceAt( String contig, long start, long stop ) {
+        final Contig indexedContig = checkQuery(contig, start, stop);
+        final byte[] target = new byte[(int) (stop - start + 1)];
+        fillSubsequence(indexedContig, start, target, 0, target.length);
+        return new ReferenceSequence( contig, indexedContig.sequenceIndex, target );
+    }
+
+    /**
+     * Copies the subsequence of the contig in the range [start,stop] into the caller's buffer.
+     * @param contig Contig whose subsequence to retrieve.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @param dest The buffer into which to copy the bases.
+     * @param destOffset The offset in dest at which to copy the first base.
+     * @return The number of bases copied, which is stop - start + 1.
+     */
+    public int fillSubsequence(final String contig, final long start, final long stop, final byte[] dest, final int destOffset) {
+        final Contig indexedContig = checkQuery(contig, start, stop);
+        final int length = (int) (stop - start + 1);
+        if (destOffset < 0 || destOffset + length > dest.length) {
+            throw new IllegalArgumentException("Buffer of length " + dest.length + " cannot hold " + length +
+                    " bases at offset " + destOffset);
+        }
+        fillSubsequence(indexedContig, start, dest, destOffset, length);
+        return length;
+    }
+
+    private Contig checkQuery(final String contig, final long start, final long stop) {
         if(start > stop + 1)
             throw new SAMException(String.format("Malformed query; start point %d lies after end point %d",start,stop));
 
-        FastaSequenceIndexEntry indexEntry = index.getIndexEntry(contig);
+        final Contig indexedContig = new Contig(index.getIndexEntry(contig));
 
-        if(stop > indexEntry.getSize())
+        if(stop > indexedContig.size)
             throw new SAMException("Query asks for data past end of contig");
+        if (stop - start + 1 > Integer.MAX_VALUE)
+            throw new SAMException("Query is too long: " + (stop - start + 1));
+        return indexedContig;
+    }
 
-        int length = (int)(stop - start + 1);
-
-        byte[] target = new byte[length];
-        ByteBuffer targetBuffer = ByteBuffer.wrap(target);
-
-        final int basesPerLine = indexEntry.getBasesPerLine();
-        final int bytesPerLine = indexEntry.getBytesPerLine();
-        final int terminatorLength = bytesPerLine - basesPerLine;
-
-        long startOffset = ((start-1)/basesPerLine)*bytesPerLine + (start-1)%basesPerLine;
-        // Cast to long so the second argument cannot overflow a signed integer.
-        final long minBufferSize = Math.min((long) Defaults.NON_ZERO_BUFFER_SIZE, (long)(length % basesPerLine + 2) * (long)bytesPerLine);
-        if (minBufferSize > Integer.MAX_VALUE) throw new SAMException("Buffer is too large: " +  minBufferSize);
+    private void fillSubsequence(final Contig contig, final long start, final byte[] dest,
+                                 final int destOffset, final int length) {
+        if (length > WINDOW_SIZE) {
+            readBases(contig, start - 1, dest, destOffset, length);
+            return;
+        }
+        // Copy from the one or two windows that contain the subsequence
+        int copied = 0;
+        while (copied < length) {
+            final long position = start - 1 + copied;
+            final byte[] window = getWindow(contig, position / WINDOW_SIZE);
+            final int offsetInWindow = (int) (position % WINDOW_SIZE);
+            final int count = Math.min(length - copied, window.length - offsetInWindow);
+            System.arraycopy(window, offsetInWindow, dest, destOffset + copied, count);
+            copied += count;
+        }
+    }
 
-        // Allocate a buffer for reading in sequence data.
-        final ByteBuffer channelBuffer = ByteBuffer.allocate((int)minBufferSize);
+    private byte[] getWindow(final Contig contig, final long windowNumber) {
+        final Long key = ((long) contig.sequenceIndex << 32) | windowNumber;
+        synchronized (windowCache) {
+            final byte[] window = windowCache.get(key);
+            if (window != null) return window;
+        }
+        // Another thread may load the same window concurrently, which is harmless
+        final long windowStart = windowNumber * WINDOW_SIZE;
+        final byte[] window = new byte[(int) Math.min(WINDOW_SIZE, contig.size - windowStart)];
+        readBases(contig, windowStart, window, 0, window.length);
+        synchronized (windowCache) {
+            windowCache.put(key, window);
+        }
+        return window;
+    }
 
-        while(targetBuffer.position() < length) {
-            // If the bufferOffset is currently within the eol characters in the string, push the bufferOffset forward to the next printable character.
-            startOffset += Math.max((int)(startOffset%bytesPerLine - basesPerLine + 1),0);
+    /**
+     * Copies bases from the file, one line at a time, skipping line terminators.
+     * @param zeroBasedStart The 0-based position in the contig of the first base to copy.
+     */
+    private void readBases(final Contig contig, final long zeroBasedStart, final byte[] dest,
+                           final int destOffset, final int length) {
+        final int basesPerLine = contig.basesPerLine;
+        final int bytesPerLine = contig.bytesPerLine;
+        int copied = 0;
+        while (copied < length) {
+            final long position = zeroBasedStart + copied;
+            final int positionInLine = (int) (position % basesPerLine);
+            final int count = Math.min(basesPerLine - positionInLine, length - copied);
+            final long fileOffset = contig.location + (position / basesPerLine) * bytesPerLine + positionInLine;
+            readFile(fileOffset, dest, destOffset + copied, count);
+            copied += count;
+        }
+    }
 
-            try {
-                 startOffset += channel.read(channelBuffer,indexEntry.getLocation()+startOffset);
-            }
-            catch(IOException ex) {
-                throw new SAMException("Unable to load " + contig + "(" + start + ", " + stop + ") from " + file);
+    /** Copies bytes from the mapped file, which may span two segments. */
+    private void readFile(final long fileOffset, final byte[] dest, final int destOffset, final int length) {
+        int copied = 0;
+        while (copied < length) {
+            final long offset = fileOffset + copied;
+            final int segmentNumber = (int) (offset / SEGMENT_SIZE);
+            if (segmentNumber >= segments.length) {
+                throw new SAMException("Fasta index points beyond the end of " + file);
             }
-
-            // Reset the buffer for outbound transfers.
-            channelBuffer.flip();
-
-            // Calculate the size of the next run of bases based on the contents we've already retrieved.
-            final int positionInContig = (int)start-1+targetBuffer.position();
-            final int nextBaseSpan = Math.min(basesPerLine-positionInContig%basesPerLine,length-targetBuffer.position());
-            // Cap the bytes to transfer by limiting the nextBaseSpan to the size of the channel buffer.
-            int bytesToTransfer = Math.min(nextBaseSpan,channelBuffer.capacity());
-
-            channelBuffer.limit(channelBuffer.position()+bytesToTransfer);
-
-            while(channelBuffer.hasRemaining()) {
-                targetBuffer.put(channelBuffer);
-
-                bytesToTransfer = Math.min(basesPerLine,length-targetBuffer.position());
-                channelBuffer.limit(Math.min(channelBuffer.position()+bytesToTransfer+terminatorLength,channelBuffer.capacity()));
-                channelBuffer.position(Math.min(channelBuffer.position()+terminatorLength,channelBuffer.capacity()));
+            // A duplicate has its own position, so concurrent readers do not interfere
+            final ByteBuffer segment = segments[segmentNumber].duplicate();
+            segment.position((int) (offset % SEGMENT_SIZE));
+            final int count = Math.min(length - copied, segment.remaining());
+            if (count == 0) {
+                throw new SAMException("Fasta index points beyond the end of " + file);
             }
-
-            // Reset the buffer for inbound transfers.
-            channelBuffer.flip();
+            segment.get(dest, destOffset + copied, count);
+            copied += count;
         }
-
-        return new ReferenceSequence( contig, indexEntry.getSequenceIndex(), target );
     }
 
     /**
@@ -261,6 +347,40 @@ public class IndexedFastaSequenceFile extends AbstractFastaSequenceFile implemen
 
     @Override
     public void close() throws IOException {
+        synchronized (windowCache) {
+            windowCache.clear();
+        }
         channel.close();
     }
+
+    /** The position and layout in the file of a contig, copied from its index entry. */
+    private static class Contig {
+        final int sequenceIndex;
+        final long size;
+        final long location;
+        final int basesPerLine;
+        final int bytesPerLine;
+
+        Contig(final FastaSequenceIndexEntry indexEntry) {
+            this.sequenceIndex = indexEntry.getSequenceIndex();
+            this.size = indexEntry.getSize();
+            this.location = indexEntry.getLocation();
+            this.basesPerLine = indexEntry.getBasesPerLine();
+            this.bytesPerLine = indexEntry.getBytesPerLine();
+        }
+    }
+
+    /** Windows in order of access, least recent first, holding at most CACHED_WINDOWS of them. */
+    private static class WindowCache extends LinkedHashMap<Long, byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        WindowCache() {
+            super(CACHED_WINDOWS * 2, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHED_WINDOWS;
+        }
+    }
 }
@@ -0,0 +1,486 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.reference;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
+import htsjdk.samtools.util.RuntimeIOException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reference held in memory with two bits per base.  Runs of N, runs of lower-case (soft-masked) bases, and any
+ * other bases such as IUPAC ambiguity codes are held separately, so the bases returned are exactly those that
+ * were loaded.
+ * <p/>
+ * A packed reference can be built from any ReferenceSequenceFile, and written to a file from which it can be
+ * loaded quickly.  When loaded from such a file, the packed bases are memory-mapped rather than read, so they
+ * are shared by all processes that load the same file.  {@link #loadOrCreate(File)} keeps such a file alongside
+ * a fasta.
+ * <p/>
+ * Only the packed form is compact: {@link #getSequence(String)} unpacks a whole sequence into a new array of one
+ * byte per base.  A {@link htsjdk.samtools.cram.ref.ReferenceSource} reading CRAM files still fetches and caches
+ * whole sequences that way, so a packed reference saves disk space and loading time there, not heap.  Use
+ * {@link #getSubsequenceAt(String, long, long)} or {@link #fillSubsequence(String, long, long, byte[], int)} to
+ * unpack only the bases needed.
+ * <p/>
+ * {@link #getSubsequenceAt(String, long, long)} and {@link #fillSubsequence(String, long, long, byte[], int)} may
+ * be called concurrently from multiple threads.  The stateful methods {@link #nextSequence()} and {@link #reset()}
+ * are not thread-safe.
+ */
+public class PackedReferenceSequenceFile implements ReferenceSequenceFile {
+    private static final Log log = Log.getInstance(PackedReferenceSequenceFile.class);
+
+    /** The extension of packed reference files. */
+    public static final String PACKED_EXTENSION = ".packed";
+
+    private static final byte[] MAGIC = {'H', 'T', 'S', 'P', 'A', 'C', 'K', 1};
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    private static final int BASES_PER_WORD = 32;
+    /** The most packed bases mapped at once; sequences are mapped together, up to this size, to save mappings. */
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE & ~7L;
+
+    private final String source;
+    private final List<PackedSequence> sequences;
+    private final Map<String, PackedSequence> sequencesByName = new HashMap<String, PackedSequence>();
+    private final SAMSequenceDictionary sequenceDictionary;
+    private int nextSequenceIndex = 0;
+
+    private PackedReferenceSequenceFile(final String source, final List<PackedSequence> sequences) {
+        this.source = source;
+        this.sequences = sequences;
+        final List<SAMSequenceRecord> records = new ArrayList<SAMSequenceRecord>();
+        for (final PackedSequence sequence : sequences) {
+            sequence.index = records.size();
+            sequencesByName.put(sequence.name, sequence);
+            records.add(new SAMSequenceRecord(sequence.name, sequence.length));
+        }
+        this.sequenceDictionary = new SAMSequenceDictionary(records);
+    }
+
+    /**
+     * Packs all the sequences of a reference.  Each sequence is loaded in turn, so memory is needed for the
+     * largest one.
+     */
+    public static PackedReferenceSequenceFile pack(final ReferenceSequenceFile referenceSequenceFile) {
+        final List<PackedSequence> sequences = new ArrayList<PackedSequence>();
+        referenceSequenceFile.reset();
+        ReferenceSequence referenceSequence;
+        while ((referenceSequence = referenceSequenceFile.nextSequence()) != null) {
+            sequences.add(PackedSequence.pack(referenceSequence.getName(), referenceSequence.getBases()));
+        }
+        return new PackedReferenceSequenceFile(referenceSequenceFile.toString(), sequences);
+    }
+
+    /**
+     * Loads a packed reference from the sidecar of the given fasta if it exists and is not older than the fasta.
+     * Otherwise packs the fasta and, if possible, writes the sidecar for next time.
+     */
+    public static PackedReferenceSequenceFile loadOrCreate(final File fasta) {
+        final File packedFile = new File(fasta.getPath() + PACKED_EXTENSION);
+        if (packedFile.exists() && packedFile.lastModified() >= fasta.lastModified()) {
+            return load(packedFile);
+        }
+        final ReferenceSequenceFile referenceSequenceFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(fasta);
+        final PackedReferenceSequenceFile packed;
+        try {
+            packed = pack(referenceSequenceFile);
+        } finally {
+            CloserUtil.close(referenceSequenceFile);
+        }
+        try {
+            packed.write(packedFile);
+        } catch (final RuntimeIOException e) {
+            log.warn("Unable to write packed reference " + packedFile + ": " + e.getMessage());
+        }
+        return packed;
+    }
+
+    /**
+     * Writes the packed reference to a file, from which it can be loaded with {@link #load(File)}.
+     * The file consists of the magic number, the length of the sequence metadata, the metadata itself,
+     * padding to a multiple of 8 bytes, and then the packed bases of each sequence in turn, all big-endian.
+     * The file is written under a temporary name and then renamed, so that it is never seen partly written.
+     */
+    public void write(final File file) {
+        File tempFile = null;
+        try {
+            final ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream();
+            final DataOutputStream metadata = new DataOutputStream(metadataBytes);
+            metadata.writeInt(sequences.size());
+            long dataOffset = 0;
+            for (final PackedSequence sequence : sequences) {
+                sequence.writeMetadata(metadata, dataOffset);
+                dataOffset += 8L * sequence.packed.capacity();
+            }
+            metadata.close();
+
+            tempFile = File.createTempFile(file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.write(MAGIC);
+                out.writeInt(metadataBytes.size());
+                metadataBytes.writeTo(out);
+                for (long i = MAGIC.length + 4 + metadataBytes.size(); i < dataStart(metadataBytes.size()); ++i) {
+                    out.writeByte(0);
+                }
+                for (final PackedSequence sequence : sequences) {
+                    for (int i = 0; i < sequence.packed.capacity(); ++i) {
+                        out.writeLong(sequence.packed.get(i));
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            // Renaming over an existing file fails on some platforms
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+                throw new IOException("Unable to rename " + tempFile + " to " + file);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error writing packed reference " + file, e);
+        } finally {
+            if (tempFile != null && tempFile.exists()) tempFile.delete();
+        }
+    }
+
+    /**
+     * Loads a packed reference written by {@link #write(File)}, memory-mapping the packed bases.
+     *
+     * @throws SAMException if the file is not a packed reference or its length does not match its metadata.
+     */
+    public static PackedReferenceSequenceFile load(final File file) {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            final List<PackedSequence> sequences = new ArrayList<PackedSequence>();
+            final long[] dataOffsets;
+            final int metadataLength;
+            try {
+                final byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC)) {
+                    throw new SAMException("Not a packed reference file: " + file);
+                }
+                metadataLength = in.readInt();
+                final int numSequences = in.readInt();
+                dataOffsets = new long[numSequences];
+                for (int i = 0; i < numSequences; ++i) {
+                    dataOffsets[i] = in.readLong();
+                    sequences.add(PackedSequence.readMetadata(in));
+                }
+            } finally {
+                in.close();
+            }
+
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                final long dataStart = dataStart(metadataLength);
+                long dataLength = 0;
+                for (int i = 0; i < sequences.size(); ++i) {
+                    if (dataOffsets[i] != dataLength || sequences.get(i).length < 0) throw new SAMException("Corrupt packed reference file: " + file);
+                    dataLength += 8 * words(sequences.get(i));
+                }
+                if (channel.size() != dataStart + dataLength) {
+                    throw new SAMException("Packed reference file " + file + " has length " + channel.size() +
+                            " rather than " + (dataStart + dataLength));
+                }
+
+                // Each sequence is a slice of a mapping shared with its neighbours, since the number of mappings a
+                // process may have is limited.  The mappings remain valid after the channel is closed.
+                MappedByteBuffer mapping = null;
+                long mappingOffset = 0;
+                for (int i = 0; i < sequences.size(); ++i) {
+                    final PackedSequence sequence = sequences.get(i);
+                    final long bytes = 8 * words(sequence);
+                    if (mapping == null || dataOffsets[i] + bytes > mappingOffset + mapping.capacity()) {
+                        mappingOffset = dataOffsets[i];
+                        mapping = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + mappingOffset,
+                                Math.min(MAX_MAPPED_BYTES, dataLength - mappingOffset));
+                    }
+                    final ByteBuffer slice = mapping.duplicate();
+                    slice.position((int) (dataOffsets[i] - mappingOffset));
+                    slice.limit((int) (dataOffsets[i] - mappingOffset + bytes));
+                    sequence.packed = slice.slice().asLongBuffer();
+                }
+            } finally {
+                randomAccessFile.close();
+            }
+            return new PackedReferenceSequenceFile(file.getAbsolutePath(), sequences);
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading packed reference " + file, e);
+        }
+    }
+
+    /** @return The number of longs holding the packed bases of a sequence. */
+    private static long words(final PackedSequence sequence) {
+        return ((long) sequence.length + BASES_PER_WORD - 1) / BASES_PER_WORD;
+    }
+
+    /** @return The offset in a packed reference file of the packed bases, which is a multiple of 8. */
+    private static long dataStart(final int metadataLength) {
+        return (MAGIC.length + 4 + metadataLength + 7) & ~7L;
+    }
+
+    public SAMSequenceDictionary getSequenceDictionary() {
+        return sequenceDictionary;
+    }
+
+    public ReferenceSequence nextSequence() {
+        if (nextSequenceIndex == sequences.size()) return null;
+        return getSequence(sequences.get(nextSequenceIndex++).name);
+    }
+
+    public void reset() {
+        nextSequenceIndex = 0;
+    }
+
+    public boolean isIndexed() {
+        return true;
+    }
+
+    public ReferenceSequence getSequence(final String contig) {
+        return getSubsequenceAt(contig, 1, getPackedSequence(contig).length);
+    }
+
+    public ReferenceSequence getSubsequenceAt(final String contig, final long start, final long stop) {
+        final PackedSequence sequence = checkQuery(contig, start, stop);
+        final byte[] bases = new byte[(int) (stop - start + 1)];
+        sequence.unpack((int) start - 1, bases, 0, bases.length);
+        return new ReferenceSequence(contig, sequence.index, bases);
+    }
+
+    /**
+     * Copies the subsequence of the contig in the range [start,stop] into the caller's buffer.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @return The number of bases copied, which is stop - start + 1.
+     */
+    public int fillSubsequence(final String contig, final long start, final long stop, final byte[] dest, final int destOffset) {
+        final PackedSequence sequence = checkQuery(contig, start, stop);
+        final int length = (int) (stop - start + 1);
+        if (destOffset < 0 || destOffset + length > dest.length) {
+            throw new IllegalArgumentException("Buffer of length " + dest.length + " cannot hold " + length +
+                    " bases at offset " + destOffset);
+        }
+        sequence.unpack((int) start - 1, dest, destOffset, length);
+        return length;
+    }
+
+    private PackedSequence getPackedSequence(final String contig) {
+        final PackedSequence sequence = sequencesByName.get(contig);
+        if (sequence == null) throw new SAMException("Unable to find entry for contig: " + contig);
+        return sequence;
+    }
+
+    private PackedSequence checkQuery(final String contig, final long start, final long stop) {
+        final PackedSequence sequence = getPackedSequence(contig);
+        if (start < 1 || start > stop + 1)
+            throw new SAMException(String.format("Malformed query; start point %d lies after end point %d", start, stop));
+        if (stop > sequence.length)
+            throw new SAMException("Query asks for data past end of contig");
+        return sequence;
+    }
+
+    public void close() {
+    }
+
+    public String toString() {
+        return source;
+    }
+
+    /** One sequence, with its bases two bits each and the bases that cannot be represented that way. */
+    private static class PackedSequence {
+        final String name;
+        final int length;
+        int index;
+        /** 32 bases per long, the first in the least significant bits; A=0, C=1, G=2, T=3. */
+        LongBuffer packed;
+        /** Runs of N, as pairs of start (inclusive) and end (exclusive) positions. */
+        final int[] nRuns;
+        /** Runs of lower-case bases, as pairs of start (inclusive) and end (exclusive) positions. */
+        final int[] lowerCaseRuns;
+        /** Positions, in order, of upper-cased bases other than A, C, G, T and N. */
+        final int[] otherPositions;
+        final byte[] otherBases;
+
+        private PackedSequence(final String name, final int length, final int[] nRuns, final int[] lowerCaseRuns,
+                               final int[] otherPositions, final byte[] otherBases) {
+            this.name = name;
+            this.length = length;
+            this.nRuns = nRuns;
+            this.lowerCaseRuns = lowerCaseRuns;
+            this.otherPositions = otherPositions;
+            this.otherBases = otherBases;
+        }
+
+        static PackedSequence pack(final String name, final byte[] bases) {
+            final long[] packed = new long[(bases.length + BASES_PER_WORD - 1) / BASES_PER_WORD];
+            final RunBuilder nRuns = new RunBuilder();
+            final RunBuilder lowerCaseRuns = new RunBuilder();
+            final ByteArrayOutputStream otherBases = new ByteArrayOutputStream();
+            int[] otherPositions = new int[16];
+            int numOthers = 0;
+
+            for (int i = 0; i < bases.length; ++i) {
+                final byte base = bases[i];
+                final boolean lowerCase = base >= 'a' && base <= 'z';
+                final byte upper = lowerCase ? (byte) (base - ('a' - 'A')) : base;
+                lowerCaseRuns.add(i, lowerCase);
+                nRuns.add(i, upper == 'N');
+                long code = 0;
+                switch (upper) {
+                    case 'A': code = 0; break;
+                    case 'C': code = 1; break;
+                    case 'G': code = 2; break;
+                    case 'T': code = 3; break;
+                    case 'N': break;
+                    default:
+                        if (numOthers == otherPositions.length) otherPositions = Arrays.copyOf(otherPositions, numOthers * 2);
+                        otherPositions[numOthers++] = i;
+                        otherBases.write(upper);
+                }
+                packed[i / BASES_PER_WORD] |= code << (2 * (i % BASES_PER_WORD));
+            }
+            final PackedSequence sequence = new PackedSequence(name, bases.length, nRuns.toArray(bases.length),
+                    lowerCaseRuns.toArray(bases.length), Arrays.copyOf(otherPositions, numOthers), otherBases.toByteArray());
+            sequence.packed = LongBuffer.wrap(packed);
+            return sequence;
+        }
+
+        /** Writes the offset of the packed bases relative to the first sequence's, and everything but the bases. */
+        void writeMetadata(final DataOutputStream out, final long dataOffset) throws IOException {
+            out.writeLong(dataOffset);
+            out.writeUTF(name);
+            out.writeInt(length);
+            writeInts(out, nRuns);
+            writeInts(out, lowerCaseRuns);
+            writeInts(out, otherPositions);
+            out.write(otherBases);
+        }
+
+        static PackedSequence readMetadata(final DataInputStream in) throws IOException {
+            final String name = in.readUTF();
+            final int length = in.readInt();
+            final int[] nRuns = readInts(in);
+            final int[] lowerCaseRuns = readInts(in);
+            final int[] otherPositions = readInts(in);
+            final byte[] otherBases = new byte[otherPositions.length];
+            in.readFully(otherBases);
+            return new PackedSequence(name, length, nRuns, lowerCaseRuns, otherPositions, otherBases);
+        }
+
+        private static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+            out.writeInt(values.length);
+            for (final int value : values) out.writeInt(value);
+        }
+
+        private static int[] readInts(final DataInputStream in) throws IOException {
+            final int[] values = new int[in.readInt()];
+            for (int i = 0; i < values.length; ++i) values[i] = in.readInt();
+            return values;
+        }
+
+        /** Copies length bases starting at the 0-based position start into dest. */
+        void unpack(final int start, final byte[] dest, final int destOffset, final int length) {
+            int i = 0;
+            while (i < length) {
+                final int position = start + i;
+                long word = packed.get(position / BASES_PER_WORD) >>> (2 * (position % BASES_PER_WORD));
+                final int end = Math.min(length, i + BASES_PER_WORD - position % BASES_PER_WORD);
+                for (; i < end; ++i) {
+                    dest[destOffset + i] = BASES[(int) word & 3];
+                    word >>>= 2;
+                }
+            }
+
+            final int stop = start + length;
+            for (int run = firstRunEndingAfter(nRuns, start); run < nRuns.length && nRuns[run] < stop; run += 2) {
+                Arrays.fill(dest, destOffset + Math.max(nRuns[run], start) - start,
+                        destOffset + Math.min(nRuns[run + 1], stop) - start, (byte) 'N');
+            }
+            int other = Arrays.binarySearch(otherPositions, start);
+            if (other < 0) other = -other - 1;
+            for (; other < otherPositions.length && otherPositions[other] < stop; ++other) {
+                dest[destOffset + otherPositions[other] - start] = otherBases[other];
+            }
+            for (int run = firstRunEndingAfter(lowerCaseRuns, start); run < lowerCaseRuns.length && lowerCaseRuns[run] < stop; run += 2) {
+                for (int j = Math.max(lowerCaseRuns[run], start); j < Math.min(lowerCaseRuns[run + 1], stop); ++j) {
+                    dest[destOffset + j - start] += 'a' - 'A';
+                }
+            }
+        }
+
+        /** @return The index in runs of the start of the first run that ends after position. */
+        private static int firstRunEndingAfter(final int[] runs, final int position) {
+            int low = 0;
+            int high = runs.length / 2;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (runs[2 * mid + 1] <= position) low = mid + 1;
+                else high = mid;
+            }
+            return 2 * low;
+        }
+    }
+
+    /** Accumulates runs of positions for which a condition holds. */
+    private static class RunBuilder {
+        private int[] runs = new int[16];
+        private int size = 0;
+        private boolean inRun = false;
+
+        void add(final int position, final boolean condition) {
+            if (condition == inRun) return;
+            if (size == runs.length) runs = Arrays.copyOf(runs, size * 2);
+            runs[size++] = position;
+            inRun = condition;
+        }
+
+        int[] toArray(final int length) {
+            add(length, false);
+            return Arrays.copyOf(runs, size);
+        }
+    }
+}
@@ -79,6 +79,9 @@ public class ReferenceSequenceFileFactory {
      */
     public static ReferenceSequenceFile getReferenceSequenceFile(final File file, final boolean truncateNamesAtWhitespace, final boolean preferIndexed) {
         final String name = file.getName();
+        if (name.endsWith(PackedReferenceSequenceFile.PACKED_EXTENSION)) {
+            return PackedReferenceSequenceFile.load(file);
+        }
         for (final String ext : FASTA_EXTENSIONS) {
             if (name.endsWith(ext)) {
                 // Using faidx requires truncateNamesAtWhitespace
@@ -64,6 +64,29 @@ public class AsciiWriter extends Writer {
         os.flush();
     }
 
+    /**
+     * Writes bytes that are already ASCII, bypassing char conversion.
+     */
+    public void writeBytes(final byte[] bytes, int offset, int length) throws IOException {
+        if (length >= buffer.length) {
+            os.write(buffer, 0, numBytes);
+            numBytes = 0;
+            os.write(bytes, offset, length);
+            return;
+        }
+        while (length > 0) {
+            final int bytesToCopy = Math.min(length, buffer.length - numBytes);
+            System.arraycopy(bytes, offset, buffer, numBytes, bytesToCopy);
+            numBytes += bytesToCopy;
+            offset += bytesToCopy;
+            length -= bytesToCopy;
+            if (numBytes == buffer.length) {
+                os.write(buffer, 0, numBytes);
+                numBytes = 0;
+            }
+        }
+    }
+
     /**
      * All other Writer methods vector through this, so this is the only one that must be overridden.
      */
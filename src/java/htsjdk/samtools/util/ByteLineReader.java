@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.Defaults;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * LineReader that reads bytes directly from an InputStream into its own buffer.  In addition to returning lines as
+ * Strings, it can expose the current line in place via {@link #advance()}, {@link #getLineBuffer()},
+ * {@link #getLineStart()} and {@link #getLineEnd()}, so that callers can parse a line without first decoding it into
+ * a String.  Lines may be terminated by LF, CR or CRLF.  Strings are decoded as UTF-8.
+ */
+public class ByteLineReader implements LineReader {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final InputStream stream;
+    private byte[] buffer;
+    /** Offset of the first unread byte in buffer. */
+    private int position = 0;
+    /** Number of valid bytes in buffer. */
+    private int limit = 0;
+    private boolean eof = false;
+    /** Set when the last line ended with CR, in which case a following LF is part of the same terminator. */
+    private boolean skipLineFeed = false;
+
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int lineNumber = 0;
+
+    public ByteLineReader(final InputStream stream) {
+        this(stream, Defaults.NON_ZERO_BUFFER_SIZE);
+    }
+
+    public ByteLineReader(final InputStream stream, final int bufferSize) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        this.stream = stream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Reads the next line, which is then available from {@link #getLineBuffer()} between {@link #getLineStart()}
+     * (inclusive) and {@link #getLineEnd()} (exclusive), without its terminator.  The line remains valid only
+     * until the next call to any read method of this object.
+     *
+     * @return false if EOF has been reached.
+     */
+    public boolean advance() {
+        if (!skipLineFeedIfPresent()) return false;
+        int scanFrom = position;
+        while (true) {
+            for (int i = scanFrom; i < limit; ++i) {
+                final byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    setLine(position, i);
+                    position = i + 1;
+                    skipLineFeed = (b == '\r');
+                    return true;
+                }
+            }
+            scanFrom = limit - position;
+            if (!fill()) {
+                // The last line need not be terminated
+                setLine(position, limit);
+                position = limit;
+                return true;
+            }
+            scanFrom += position;
+        }
+    }
+
+    /** @return the buffer holding the line most recently read by {@link #advance()}. */
+    public byte[] getLineBuffer() {
+        return buffer;
+    }
+
+    /** @return the offset in {@link #getLineBuffer()} of the first byte of the current line. */
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    /** @return the offset in {@link #getLineBuffer()} just past the last byte of the current line. */
+    public int getLineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * Read a line and remove the line terminator
+     *
+     * @return the line read, or null if EOF has been reached.
+     */
+    public String readLine() {
+        if (!advance()) return null;
+        return new String(buffer, lineStart, lineEnd - lineStart, UTF8);
+    }
+
+    /**
+     * @return 1-based number of line most recently read
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Non-destructive one-character look-ahead.
+     *
+     * @return If not eof, the next character that would be read.  If eof, -1.
+     */
+    public int peek() {
+        if (!skipLineFeedIfPresent()) return -1;
+        final byte b = buffer[position];
+        return (b == '\r') ? '\n' : (b & 0xff);
+    }
+
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    private void setLine(final int start, final int end) {
+        lineStart = start;
+        lineEnd = end;
+        ++lineNumber;
+    }
+
+    /**
+     * Ensures there is at least one unread byte, consuming the LF of a CRLF terminator if necessary.
+     *
+     * @return false if EOF has been reached.
+     */
+    private boolean skipLineFeedIfPresent() {
+        if (position == limit && !fill()) return false;
+        if (skipLineFeed) {
+            skipLineFeed = false;
+            if (buffer[position] == '\n') {
+                ++position;
+                if (position == limit && !fill()) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, growing it if it is full, and reads more.
+     * Invalidates the current line.
+     *
+     * @return false if no more bytes could be read.
+     */
+    private boolean fill() {
+        if (eof) return false;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            final byte[] newBuffer = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, limit);
+            buffer = newBuffer;
+        }
+        try {
+            final int count = stream.read(buffer, limit, buffer.length - limit);
+            if (count < 0) {
+                eof = true;
+                return false;
+            }
+            limit += count;
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+}
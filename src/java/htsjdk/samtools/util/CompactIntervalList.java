@@ -0,0 +1,532 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A memory-efficient counterpart to {@link IntervalList} intended for very large interval sets (e.g. genome-wide bins).
+ * Intervals are held as three parallel primitive arrays (sequence index, 1-based start and 1-based inclusive end)
+ * rather than as {@link Interval} objects; strand and name are not retained.
+ *
+ * The set operations ({@link #uniqued()}, {@link #union(CompactIntervalList, CompactIntervalList)},
+ * {@link #intersection(CompactIntervalList, CompactIntervalList)}, {@link #subtract(CompactIntervalList, CompactIntervalList)}
+ * and {@link #invert(CompactIntervalList)}) are implemented as single sweeps over coordinate-sorted inputs: they run
+ * in time linear in the size of the inputs and need no memory beyond the result.  Inputs that are not sorted are
+ * sorted (into a copy) first.  As with {@link IntervalList#uniqued()}, overlapping and directly adjacent intervals
+ * are merged in all results, and results are always coordinate sorted.
+ */
+public class CompactIntervalList {
+    private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    private final SAMFileHeader header;
+    private int[] sequenceIndices;
+    private int[] starts;
+    private int[] ends;
+    private int size = 0;
+    private boolean sorted = true;
+
+    /** Constructs a new, empty interval list using the supplied header information. */
+    public CompactIntervalList(final SAMFileHeader header) {
+        this(header, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /** Constructs a new, empty interval list with room for initialCapacity intervals before it must grow. */
+    public CompactIntervalList(final SAMFileHeader header, final int initialCapacity) {
+        if (header == null) {
+            throw new IllegalArgumentException("SAMFileHeader must be supplied.");
+        }
+        if (initialCapacity < 0) throw new IllegalArgumentException("initialCapacity must be >= 0");
+        this.header = header;
+        this.sequenceIndices = new int[initialCapacity];
+        this.starts = new int[initialCapacity];
+        this.ends = new int[initialCapacity];
+    }
+
+    /** Gets the header for the interval list. */
+    public SAMFileHeader getHeader() { return header; }
+
+    /** Returns the count of intervals in the list. */
+    public int size() { return size; }
+
+    /** Returns the sequence index of the i'th interval. */
+    public int getSequenceIndex(final int i) { checkIndex(i); return sequenceIndices[i]; }
+
+    /** Returns the 1-based start of the i'th interval. */
+    public int getStart(final int i) { checkIndex(i); return starts[i]; }
+
+    /** Returns the 1-based, inclusive end of the i'th interval. */
+    public int getEnd(final int i) { checkIndex(i); return ends[i]; }
+
+    /** True if the intervals, in the order they were added, are sorted by sequence index and then start. */
+    public boolean isSorted() { return sorted; }
+
+    /** Adds an interval given by sequence index, 1-based start and 1-based inclusive end. */
+    public void add(final int sequenceIndex, final int start, final int end) {
+        if (sequenceIndex < 0 || sequenceIndex >= header.getSequenceDictionary().size()) {
+            throw new IllegalArgumentException("Cannot add interval with sequence index " + sequenceIndex + ", contig not in header");
+        }
+        addUnchecked(sequenceIndex, start, end);
+    }
+
+    /** Adds an interval, discarding its strand and name. */
+    public void add(final Interval interval) {
+        final int sequenceIndex = header.getSequenceIndex(interval.getContig());
+        if (sequenceIndex == -1) {
+            throw new IllegalArgumentException(String.format("Cannot add interval %s, contig not in header", interval.toString()));
+        }
+        addUnchecked(sequenceIndex, interval.getStart(), interval.getEnd());
+    }
+
+    private void addUnchecked(final int sequenceIndex, final int start, final int end) {
+        if (size == starts.length) {
+            final int newCapacity = Math.max(DEFAULT_INITIAL_CAPACITY, size + (size >> 1));
+            sequenceIndices = Arrays.copyOf(sequenceIndices, newCapacity);
+            starts = Arrays.copyOf(starts, newCapacity);
+            ends = Arrays.copyOf(ends, newCapacity);
+        }
+        if (sorted && size > 0) {
+            final int last = size - 1;
+            sorted = sequenceIndices[last] < sequenceIndex || (sequenceIndices[last] == sequenceIndex && starts[last] <= start);
+        }
+        sequenceIndices[size] = sequenceIndex;
+        starts[size] = start;
+        ends[size] = end;
+        ++size;
+    }
+
+    private void checkIndex(final int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index " + i + " out of range for list of size " + size);
+    }
+
+    /** Gets the (potentially redundant) sum of the length of the intervals in the list. */
+    public long getBaseCount() {
+        long total = 0;
+        for (int i = 0; i < size; ++i) {
+            total += CoordMath.getLength(starts[i], ends[i]);
+        }
+        return total;
+    }
+
+    /** Gets the count of unique bases represented by the intervals in the list. */
+    public long getUniqueBaseCount() {
+        long total = 0;
+        final MergingCursor cursor = new MergingCursor(sortedIfNecessary(this));
+        while (cursor.advance()) {
+            total += CoordMath.getLength(cursor.start, cursor.end);
+        }
+        return total;
+    }
+
+    /** Returns an independent coordinate-sorted copy of this list. */
+    public CompactIntervalList sorted() {
+        final CompactIntervalList copy = copyOf(this);
+        if (!copy.sorted) {
+            copy.heapSort();
+            copy.sorted = true;
+        }
+        copy.header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        return copy;
+    }
+
+    /** Returns an independent list that is sorted and in which overlapping and abutting intervals have been merged. */
+    public CompactIntervalList uniqued() {
+        final CompactIntervalList result = newResult(header, size);
+        final MergingCursor cursor = new MergingCursor(sortedIfNecessary(this));
+        while (cursor.advance()) result.emit(cursor.sequenceIndex, cursor.start, cursor.end);
+        return result;
+    }
+
+    /** Returns the sorted, uniqued union of the two lists.  The sequence dictionaries must be equal. */
+    public static CompactIntervalList union(final CompactIntervalList list1, final CompactIntervalList list2) {
+        return union(Arrays.asList(list1, list2));
+    }
+
+    /**
+     * Returns the sorted, uniqued union of a collection of lists.  The inputs are merged as sorted streams rather
+     * than concatenated and re-sorted.  The sequence dictionaries must all be equal.
+     */
+    public static CompactIntervalList union(final Collection<CompactIntervalList> lists) {
+        if (lists.isEmpty()) throw new SAMException("Cannot union an empty collection of CompactIntervalLists.");
+        final List<CompactIntervalList> sortedLists = new ArrayList<CompactIntervalList>(lists.size());
+        int totalSize = 0;
+        SAMFileHeader header = null;
+        for (final CompactIntervalList list : lists) {
+            if (header == null) header = list.getHeader();
+            else SequenceUtil.assertSequenceDictionariesEqual(header.getSequenceDictionary(), list.getHeader().getSequenceDictionary());
+            sortedLists.add(sortedIfNecessary(list));
+            totalSize += list.size();
+        }
+
+        final CompactIntervalList result = newResult(header, totalSize);
+        final MergingCursor cursor = new MergingCursor(sortedLists.toArray(new CompactIntervalList[sortedLists.size()]));
+        while (cursor.advance()) result.emit(cursor.sequenceIndex, cursor.start, cursor.end);
+        return result;
+    }
+
+    /** Returns the sorted, uniqued intersection of the two lists.  The sequence dictionaries must be equal. */
+    public static CompactIntervalList intersection(final CompactIntervalList list1, final CompactIntervalList list2) {
+        SequenceUtil.assertSequenceDictionariesEqual(list1.getHeader().getSequenceDictionary(), list2.getHeader().getSequenceDictionary());
+        final CompactIntervalList result = newResult(list1.getHeader(), Math.min(list1.size(), list2.size()));
+        final MergingCursor a = new MergingCursor(sortedIfNecessary(list1));
+        final MergingCursor b = new MergingCursor(sortedIfNecessary(list2));
+
+        boolean hasA = a.advance();
+        boolean hasB = b.advance();
+        while (hasA && hasB) {
+            if (a.sequenceIndex == b.sequenceIndex) {
+                final int start = Math.max(a.start, b.start);
+                final int end = Math.min(a.end, b.end);
+                if (start <= end) result.emit(a.sequenceIndex, start, end);
+            }
+            // Advance whichever run finishes first; the other may still overlap the next run of its partner
+            if (a.compareEndTo(b) < 0) hasA = a.advance();
+            else hasB = b.advance();
+        }
+        return result;
+    }
+
+    /** Returns the sorted, uniqued intersection of a collection of lists. */
+    public static CompactIntervalList intersection(final Collection<CompactIntervalList> lists) {
+        CompactIntervalList intersection = null;
+        for (final CompactIntervalList list : lists) {
+            intersection = (intersection == null) ? list.uniqued() : intersection(intersection, list);
+        }
+        return intersection;
+    }
+
+    /**
+     * Returns the loci that are in lhs but not in rhs, sorted and uniqued.  The sequence dictionaries must be equal.
+     */
+    public static CompactIntervalList subtract(final CompactIntervalList lhs, final CompactIntervalList rhs) {
+        SequenceUtil.assertSequenceDictionariesEqual(lhs.getHeader().getSequenceDictionary(), rhs.getHeader().getSequenceDictionary());
+        final CompactIntervalList result = newResult(lhs.getHeader(), lhs.size());
+        final MergingCursor a = new MergingCursor(sortedIfNecessary(lhs));
+        final MergingCursor b = new MergingCursor(sortedIfNecessary(rhs));
+
+        boolean hasB = b.advance();
+        while (a.advance()) {
+            // the first lhs position not yet emitted or removed
+            int position = a.start;
+            // skip rhs runs that lie entirely before the current lhs run
+            while (hasB && (b.sequenceIndex < a.sequenceIndex || (b.sequenceIndex == a.sequenceIndex && b.end < position))) {
+                hasB = b.advance();
+            }
+            while (hasB && b.sequenceIndex == a.sequenceIndex && b.start <= a.end) {
+                if (b.start > position) result.emit(a.sequenceIndex, position, b.start - 1);
+                position = Math.max(position, b.end + 1);
+                if (b.end > a.end) break; // this rhs run may also cover the start of the next lhs run
+                hasB = b.advance();
+            }
+            if (position <= a.end) result.emit(a.sequenceIndex, position, a.end);
+        }
+        return result;
+    }
+
+    /** Returns a list that contains exactly the bases in the sequence dictionary that are not in the given list. */
+    public static CompactIntervalList invert(final CompactIntervalList list) {
+        final SAMSequenceDictionary dict = list.getHeader().getSequenceDictionary();
+        final CompactIntervalList result = newResult(list.getHeader(), list.size() + dict.size());
+        final MergingCursor cursor = new MergingCursor(sortedIfNecessary(list));
+
+        boolean hasNext = cursor.advance();
+        for (final SAMSequenceRecord rec : dict.getSequences()) {
+            final int sequenceIndex = rec.getSequenceIndex();
+            int lastCoveredPosition = 0;
+            while (hasNext && cursor.sequenceIndex == sequenceIndex) {
+                if (cursor.start > lastCoveredPosition + 1) result.emit(sequenceIndex, lastCoveredPosition + 1, cursor.start - 1);
+                lastCoveredPosition = cursor.end;
+                hasNext = cursor.advance();
+            }
+            if (rec.getSequenceLength() > lastCoveredPosition) {
+                result.emit(sequenceIndex, lastCoveredPosition + 1, rec.getSequenceLength());
+            }
+        }
+        return result;
+    }
+
+    /** Creates an independent copy of the given list. */
+    public static CompactIntervalList copyOf(final CompactIntervalList list) {
+        final CompactIntervalList copy = new CompactIntervalList(list.header.clone(), list.size);
+        System.arraycopy(list.sequenceIndices, 0, copy.sequenceIndices, 0, list.size);
+        System.arraycopy(list.starts, 0, copy.starts, 0, list.size);
+        System.arraycopy(list.ends, 0, copy.ends, 0, list.size);
+        copy.size = list.size;
+        copy.sorted = list.sorted;
+        return copy;
+    }
+
+    /** Creates a compact copy of the given IntervalList, discarding strands and names. */
+    public static CompactIntervalList fromIntervalList(final IntervalList list) {
+        final CompactIntervalList compact = new CompactIntervalList(list.getHeader().clone(), list.size());
+        for (final Interval interval : list) compact.add(interval);
+        return compact;
+    }
+
+    /** Creates an IntervalList holding the same intervals, all on the positive strand and without names. */
+    public IntervalList toIntervalList() {
+        final IntervalList list = new IntervalList(header.clone());
+        for (int i = 0; i < size; ++i) {
+            list.add(new Interval(header.getSequence(sequenceIndices[i]).getSequenceName(), starts[i], ends[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Parses an interval list file directly into primitive form, without creating an {@link Interval} per line.
+     * Strand and name columns are validated for presence but otherwise ignored.
+     */
+    public static CompactIntervalList fromFile(final File file) {
+        final BufferedReader in = IOUtil.openFileForBufferedReading(file);
+        try {
+            final StringBuilder builder = new StringBuilder(4096);
+            String line;
+            while ((line = in.readLine()) != null && line.startsWith("@")) {
+                builder.append(line).append('\n');
+            }
+            if (builder.length() == 0) {
+                throw new IllegalStateException("Interval list file must contain header. ");
+            }
+
+            final SAMFileHeader header = new SAMTextHeaderCodec().decode(new StringLineReader(builder.toString()), file.getAbsolutePath());
+            final CompactIntervalList list = new CompactIntervalList(header);
+            final String[] fields = new String[6];
+            int lastSequenceIndex = -1;
+            String lastSequenceName = null;
+
+            for (; line != null; line = in.readLine()) {
+                if (line.trim().length() == 0) continue; // skip over blank lines
+                final int numFields = StringUtil.split(line, fields, '\t');
+                if (numFields != 5) {
+                    throw new SAMException("Invalid interval record contains " + numFields + " fields: " + line);
+                }
+                // Intervals from the same contig are nearly always adjacent, so avoid the dictionary lookup where possible
+                if (!fields[0].equals(lastSequenceName)) {
+                    lastSequenceName = fields[0];
+                    lastSequenceIndex = header.getSequenceIndex(lastSequenceName);
+                }
+                if (lastSequenceIndex == -1) {
+                    throw new SAMException("Interval for unknown reference in " + file.getAbsolutePath() + ": " + line);
+                }
+                list.addUnchecked(lastSequenceIndex, Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+            }
+            return list;
+        }
+        catch (final NumberFormatException nfe) {
+            throw new SAMException("Error parsing interval list " + file.getAbsolutePath(), nfe);
+        }
+        catch (final IOException ioe) {
+            throw new SAMException("Error parsing interval list " + file.getAbsolutePath(), ioe);
+        }
+        finally {
+            CloserUtil.close(in);
+        }
+    }
+
+    /**
+     * Writes out the list of intervals to the supplied file in interval list format.  Since strand and
+     * name are not retained all intervals are written on the positive strand with a name of ".".
+     */
+    public void write(final File file) {
+        try {
+            final BufferedWriter out = IOUtil.openFileForBufferedWriting(file);
+            new SAMTextHeaderCodec().encode(out, this.header);
+            for (int i = 0; i < size; ++i) {
+                out.write(header.getSequence(sequenceIndices[i]).getSequenceName());
+                out.write('\t');
+                out.write(Integer.toString(starts[i]));
+                out.write('\t');
+                out.write(Integer.toString(ends[i]));
+                out.write("\t+\t.");
+                out.newLine();
+            }
+            out.close();
+        }
+        catch (final IOException ioe) {
+            throw new SAMException("Error writing out interval list to file: " + file.getAbsolutePath(), ioe);
+        }
+    }
+
+    /** Creates an empty coordinate-sorted result list with a copy of the given header. */
+    private static CompactIntervalList newResult(final SAMFileHeader header, final int expectedSize) {
+        final SAMFileHeader resultHeader = header.clone();
+        resultHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        return new CompactIntervalList(resultHeader, Math.max(expectedSize, 16));
+    }
+
+    private static CompactIntervalList sortedIfNecessary(final CompactIntervalList list) {
+        return list.sorted ? list : list.sorted();
+    }
+
+    /**
+     * Appends an interval to a result list that is being built in coordinate order, merging it into the
+     * previous interval if the two overlap or abut.
+     */
+    private void emit(final int sequenceIndex, final int start, final int end) {
+        if (size > 0) {
+            final int last = size - 1;
+            if (sequenceIndices[last] == sequenceIndex && start <= ends[last] + 1) {
+                ends[last] = Math.max(ends[last], end);
+                return;
+            }
+        }
+        addUnchecked(sequenceIndex, start, end);
+    }
+
+    /** In-place heap sort of the parallel arrays by sequence index, start and then end. */
+    private void heapSort() {
+        for (int i = size / 2 - 1; i >= 0; --i) siftDown(i, size);
+        for (int end = size - 1; end > 0; --end) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(int root, final int limit) {
+        while (true) {
+            int child = 2 * root + 1;
+            if (child >= limit) return;
+            if (child + 1 < limit && compare(child, child + 1) < 0) ++child;
+            if (compare(root, child) >= 0) return;
+            swap(root, child);
+            root = child;
+        }
+    }
+
+    private int compare(final int i, final int j) {
+        if (sequenceIndices[i] != sequenceIndices[j]) return sequenceIndices[i] < sequenceIndices[j] ? -1 : 1;
+        if (starts[i] != starts[j]) return starts[i] < starts[j] ? -1 : 1;
+        if (ends[i] != ends[j]) return ends[i] < ends[j] ? -1 : 1;
+        return 0;
+    }
+
+    private void swap(final int i, final int j) {
+        int tmp = sequenceIndices[i]; sequenceIndices[i] = sequenceIndices[j]; sequenceIndices[j] = tmp;
+        tmp = starts[i]; starts[i] = starts[j]; starts[j] = tmp;
+        tmp = ends[i]; ends[i] = ends[j]; ends[j] = tmp;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final CompactIntervalList that = (CompactIntervalList) o;
+        if (size != that.size || !header.equals(that.header)) return false;
+        for (int i = 0; i < size; ++i) {
+            if (sequenceIndices[i] != that.sequenceIndices[i] || starts[i] != that.starts[i] || ends[i] != that.ends[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = header.hashCode();
+        for (int i = 0; i < size; ++i) {
+            result = 31 * result + sequenceIndices[i];
+            result = 31 * result + starts[i];
+            result = 31 * result + ends[i];
+        }
+        return result;
+    }
+
+    /**
+     * Walks one or more coordinate-sorted lists as a single stream, yielding maximal runs of overlapping or
+     * abutting intervals.  Empty intervals (end < start) cover no bases and are skipped.  Holds only a read
+     * position per input list.
+     */
+    private static class MergingCursor {
+        private final CompactIntervalList[] lists;
+        private final int[] positions;
+
+        int sequenceIndex;
+        int start;
+        int end;
+
+        MergingCursor(final CompactIntervalList... lists) {
+            this.lists = lists;
+            this.positions = new int[lists.length];
+        }
+
+        /** Moves to the next merged run, returning false when all inputs are exhausted. */
+        boolean advance() {
+            int source = nextSource();
+            if (source == -1) return false;
+            sequenceIndex = lists[source].sequenceIndices[positions[source]];
+            start = lists[source].starts[positions[source]];
+            end = lists[source].ends[positions[source]];
+            ++positions[source];
+
+            while ((source = nextSource()) != -1) {
+                final CompactIntervalList list = lists[source];
+                final int i = positions[source];
+                if (list.sequenceIndices[i] != sequenceIndex || list.starts[i] > end + 1) break;
+                end = Math.max(end, list.ends[i]);
+                ++positions[source];
+            }
+            return true;
+        }
+
+        /** Compares the end of the current run to that of another cursor. */
+        int compareEndTo(final MergingCursor other) {
+            if (sequenceIndex != other.sequenceIndex) return sequenceIndex < other.sequenceIndex ? -1 : 1;
+            if (end != other.end) return end < other.end ? -1 : 1;
+            return 0;
+        }
+
+        /** Returns the input whose next non-empty interval comes first, or -1 if there is none. */
+        private int nextSource() {
+            int best = -1;
+            for (int k = 0; k < lists.length; ++k) {
+                final CompactIntervalList list = lists[k];
+                while (positions[k] < list.size && list.ends[positions[k]] < list.starts[positions[k]]) ++positions[k];
+                if (positions[k] == list.size) continue;
+                if (best == -1) {
+                    best = k;
+                }
+                else {
+                    final CompactIntervalList bestList = lists[best];
+                    final int i = positions[k], b = positions[best];
+                    if (list.sequenceIndices[i] < bestList.sequenceIndices[b] ||
+                            (list.sequenceIndices[i] == bestList.sequenceIndices[b] && list.starts[i] < bestList.starts[b])) {
+                        best = k;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * ReferenceSequenceMask that stores, for each sequence, the sorted set of maximal runs of set positions as
+ * (start, end) pairs.  Memory use is proportional to the number of runs rather than to the length of the
+ * genome, so both sparse masks (e.g. SNP sites) and dense masks made of long runs (e.g. callable regions)
+ * are cheap to hold.
+ *
+ * get() and nextPosition() are O(1) when probed in ascending order within a sequence, and O(log runs) otherwise.
+ *
+ * A mask can be written to disk with {@link #write(File)}, and {@link #fromFile(File)} memory-maps that file so that
+ * loading a genome-scale mask does not copy it onto the heap.  The file is little-endian and laid out as:
+ * <pre>
+ *     magic ("RSM\1"), int numSequences,
+ *     int[numSequences + 1] index of the first run of each sequence (the last entry being the total run count),
+ *     int[2 * totalRuns] 1-based, inclusive (start, end) of each run
+ * </pre>
+ */
+public class RunLengthReferenceSequenceMask implements ReferenceSequenceMask {
+    static final byte[] MAGIC = {'R', 'S', 'M', 1};
+
+    /** Index into runs of the first run of each sequence; has numSequences + 1 entries. */
+    private final IntBuffer firstRuns;
+    /** Starts and ends of the runs, interleaved. */
+    private final IntBuffer runs;
+    private final int numSequences;
+    private final int lastSequenceIndex;
+    private final int lastPosition;
+
+    /** The run at which the last lookup finished, used to make ascending probes O(1). */
+    private int currentSequenceIndex = -1;
+    private int currentRun = 0;
+
+    private RunLengthReferenceSequenceMask(final IntBuffer firstRuns, final IntBuffer runs) {
+        this.firstRuns = firstRuns;
+        this.runs = runs;
+        this.numSequences = firstRuns.limit() - 1;
+        final int totalRuns = firstRuns.get(numSequences);
+        if (runs.limit() != 2 * totalRuns) {
+            throw new SAMException("Mask has " + runs.limit() / 2 + " runs but its index expects " + totalRuns);
+        }
+
+        int lastIndex = -1;
+        for (int i = numSequences - 1; i >= 0; --i) {
+            if (firstRuns.get(i) < firstRuns.get(i + 1)) {
+                lastIndex = i;
+                break;
+            }
+        }
+        this.lastSequenceIndex = lastIndex;
+        this.lastPosition = lastIndex == -1 ? 0 : end(totalRuns - 1);
+    }
+
+    /** Builds a mask of the loci covered by the given interval list, which need not be sorted or unique. */
+    public static RunLengthReferenceSequenceMask fromIntervalList(final IntervalList intervalList) {
+        return fromIntervalList(CompactIntervalList.fromIntervalList(intervalList));
+    }
+
+    /** Builds a mask of the loci covered by the given interval list, which need not be sorted or unique. */
+    public static RunLengthReferenceSequenceMask fromIntervalList(final CompactIntervalList intervalList) {
+        final CompactIntervalList unique = intervalList.uniqued();
+        final Builder builder = new Builder(unique.getHeader().getSequenceDictionary().size());
+        for (int i = 0; i < unique.size(); ++i) {
+            builder.add(unique.getSequenceIndex(i), unique.getStart(i), unique.getEnd(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Memory-maps a mask previously written with {@link #write(File)}.  The file must not be modified while the
+     * mask is in use.
+     */
+    public static RunLengthReferenceSequenceMask fromFile(final File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            final byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new SAMException("Not a reference sequence mask file: " + file.getAbsolutePath());
+            }
+            final int numSequences = buffer.getInt();
+            final int indexBytes = (numSequences + 1) * 4;
+            if (numSequences < 0 || buffer.remaining() < indexBytes) {
+                throw new SAMException("Truncated reference sequence mask file: " + file.getAbsolutePath());
+            }
+            final ByteBuffer indexBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            indexBuffer.limit(indexBytes);
+            buffer.position(buffer.position() + indexBytes);
+            final ByteBuffer runBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            // The mapping remains valid after the channel is closed
+            return new RunLengthReferenceSequenceMask(indexBuffer.asIntBuffer(), runBuffer.asIntBuffer());
+        } catch (final IOException e) {
+            throw new SAMException("Error reading reference sequence mask " + file.getAbsolutePath(), e);
+        } finally {
+            CloserUtil.close(in);
+        }
+    }
+
+    /** Writes the mask in the form expected by {@link #fromFile(File)}. */
+    public void write(final File file) {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 4 + 4 * (firstRuns.limit() + runs.limit()));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(numSequences);
+        for (int i = 0; i < firstRuns.limit(); ++i) buffer.putInt(firstRuns.get(i));
+        for (int i = 0; i < runs.limit(); ++i) buffer.putInt(runs.get(i));
+        buffer.flip();
+
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            final FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (final IOException e) {
+            throw new SAMException("Error writing reference sequence mask " + file.getAbsolutePath(), e);
+        } finally {
+            CloserUtil.close(out);
+        }
+    }
+
+    /**
+     * @return true if the mask is set for the given sequence and position
+     */
+    public boolean get(final int sequenceIndex, final int position) {
+        if (sequenceIndex < 0) {
+            throw new IllegalArgumentException("Negative sequence index " + sequenceIndex);
+        }
+        if (sequenceIndex >= numSequences) return false;
+        final int run = findRun(sequenceIndex, position);
+        return run < firstRuns.get(sequenceIndex + 1) && start(run) <= position;
+    }
+
+    /**
+     * @return the next pos on the given sequence > position that is set, or -1 if there are no more set positions
+     */
+    public int nextPosition(final int sequenceIndex, final int position) {
+        if (sequenceIndex < 0) {
+            throw new IllegalArgumentException("Negative sequence index " + sequenceIndex);
+        }
+        if (sequenceIndex >= numSequences) return -1;
+        final int target = position + 1;
+        final int run = findRun(sequenceIndex, target);
+        if (run == firstRuns.get(sequenceIndex + 1)) return -1;
+        return Math.max(start(run), target);
+    }
+
+    /**
+     * @return Largest sequence index for which there are set bits.
+     */
+    public int getMaxSequenceIndex() {
+        return lastSequenceIndex;
+    }
+
+    /**
+     * @return the largest position on the last sequence index
+     */
+    public int getMaxPosition() {
+        return lastPosition;
+    }
+
+    /** @return the number of set positions on the given sequence */
+    public long getSetPositionCount(final int sequenceIndex) {
+        long count = 0;
+        for (int run = firstRuns.get(sequenceIndex); run < firstRuns.get(sequenceIndex + 1); ++run) {
+            count += end(run) - start(run) + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the first run on the given sequence whose end is >= position, returning the index one past the
+     * sequence's last run if there is none.
+     */
+    private int findRun(final int sequenceIndex, final int position) {
+        int lo = firstRuns.get(sequenceIndex);
+        final int hi = firstRuns.get(sequenceIndex + 1);
+
+        // If probes are ascending the previous answer is still a lower bound, and is usually the answer itself
+        if (sequenceIndex == currentSequenceIndex && currentRun > lo && end(currentRun - 1) < position) {
+            lo = currentRun;
+        }
+        if (lo < hi && end(lo) < position) {
+            int high = hi;
+            ++lo;
+            while (lo < high) {
+                final int mid = (lo + high) >>> 1;
+                if (end(mid) < position) lo = mid + 1;
+                else high = mid;
+            }
+        }
+
+        currentSequenceIndex = sequenceIndex;
+        currentRun = lo;
+        return lo;
+    }
+
+    private int start(final int run) { return runs.get(2 * run); }
+
+    private int end(final int run) { return runs.get(2 * run + 1); }
+
+    /**
+     * Accumulates runs of set positions in coordinate order.  Overlapping and abutting runs are merged.
+     */
+    public static class Builder {
+        private final int[] firstRuns;
+        private int[] runs = new int[1024];
+        private int numRuns = 0;
+        private int currentSequenceIndex = 0;
+
+        /** @param numSequences the number of sequences in the sequence dictionary the mask applies to */
+        public Builder(final int numSequences) {
+            this.firstRuns = new int[numSequences + 1];
+        }
+
+        /**
+         * Sets the positions start..end (1-based, inclusive) on the given sequence.  Runs must be added in order of
+         * sequence index and then start.
+         */
+        public Builder add(final int sequenceIndex, final int start, final int end) {
+            if (sequenceIndex < currentSequenceIndex || sequenceIndex >= firstRuns.length - 1) {
+                throw new IllegalArgumentException("Sequence index " + sequenceIndex + " is out of order or out of range");
+            }
+            if (start < 1) throw new IllegalArgumentException("Start must be >= 1: " + start);
+            if (end < start) return this;
+
+            while (currentSequenceIndex < sequenceIndex) firstRuns[++currentSequenceIndex] = numRuns;
+            if (numRuns > firstRuns[currentSequenceIndex]) {
+                final int lastStart = runs[2 * numRuns - 2];
+                final int lastEnd = runs[2 * numRuns - 1];
+                if (start < lastStart) {
+                    throw new IllegalArgumentException("Run " + start + "-" + end + " added after run starting at " + lastStart);
+                }
+                if (start <= lastEnd + 1) {
+                    runs[2 * numRuns - 1] = Math.max(lastEnd, end);
+                    return this;
+                }
+            }
+            if (2 * numRuns == runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[2 * numRuns] = start;
+            runs[2 * numRuns + 1] = end;
+            ++numRuns;
+            return this;
+        }
+
+        public RunLengthReferenceSequenceMask build() {
+            final int[] index = Arrays.copyOf(firstRuns, firstRuns.length);
+            for (int i = currentSequenceIndex + 1; i < index.length; ++i) index[i] = numRuns;
+            return new RunLengthReferenceSequenceMask(IntBuffer.wrap(index), IntBuffer.wrap(Arrays.copyOf(runs, 2 * numRuns)));
+        }
+    }
+}
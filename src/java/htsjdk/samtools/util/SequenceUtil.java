@@ -62,6 +62,30 @@ public class SequenceUtil {
         return htsjdk.samtools.util.StringUtil.bytesToString(bases);
     }
 
+    /** The high bit of each byte of a long. */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    /** The low seven bits of each byte of a long. */
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+    /** Added to each byte of a long to set its high bit if the byte is greater than 90, as tested by basesEqual(). */
+    private static final long ABOVE_90 = 0x2525252525252525L;
+
+    /** Complement of each byte, indexed by the byte as an unsigned value. */
+    private static final byte[] COMPLEMENT = new byte[256];
+
+    static {
+        for (int i = 0; i < COMPLEMENT.length; ++i) {
+            COMPLEMENT[i] = (byte) i;
+        }
+        COMPLEMENT[a] = t;
+        COMPLEMENT[c] = g;
+        COMPLEMENT[g] = c;
+        COMPLEMENT[t] = a;
+        COMPLEMENT[A] = T;
+        COMPLEMENT[C] = G;
+        COMPLEMENT[G] = C;
+        COMPLEMENT[T] = A;
+    }
+
     /** Attempts to efficiently compare two bases stored as bytes for equality. */
     public static boolean basesEqual(byte lhs, byte rhs) {
         if (lhs == rhs) return true;
@@ -340,12 +364,10 @@ public class SequenceUtil {
                 final int referenceBlockStart = block.getReferenceStart() - 1 - referenceOffset;
                 final int length = block.getLength();
 
-                for (int i = 0; i < length; ++i) {
-                    if (!bisulfiteSequence) {
-                        if (!basesEqual(readBases[readBlockStart + i], referenceBases[referenceBlockStart + i])) {
-                            ++mismatches;
-                        }
-                    } else {
+                if (!bisulfiteSequence) {
+                    mismatches += countMismatches(readBases, readBlockStart, referenceBases, referenceBlockStart, length);
+                } else {
+                    for (int i = 0; i < length; ++i) {
                         if (!bisulfiteBasesEqual(read.getReadNegativeStrandFlag(), readBases[readBlockStart + i],
                                 referenceBases[referenceBlockStart + i])) {
                             ++mismatches;
@@ -450,13 +472,11 @@ public class SequenceUtil {
             final int referenceBlockStart = block.getReferenceStart() - 1 - referenceOffset;
             final int length = block.getLength();
 
-            for (int i = 0; i < length; ++i) {
-                if (!bisulfiteSequence) {
-                    if (!basesEqual(readBases[readBlockStart + i], referenceBases[referenceBlockStart + i])) {
-                        qualities += readQualities[readBlockStart + i];
-                    }
-
-                } else {
+            if (!bisulfiteSequence) {
+                qualities += sumQualitiesOfMismatches(readBases, readQualities, readBlockStart,
+                        referenceBases, referenceBlockStart, length);
+            } else {
+                for (int i = 0; i < length; ++i) {
                     if (!bisulfiteBasesEqual(read.getReadNegativeStrandFlag(), readBases[readBlockStart + i],
                             referenceBases[referenceBlockStart + i])) {
                         qualities += readQualities[readBlockStart + i];
@@ -503,6 +523,95 @@ public class SequenceUtil {
         return qualities;
     }
 
+    /**
+     * Counts the positions at which two runs of bases differ, treating upper and lower case as equal as
+     * {@link #basesEqual(byte, byte)} does.  Bases are compared eight at a time, packed into a long.
+     *
+     * @param length The number of bases to compare, starting at offset1 in bases1 and offset2 in bases2.
+     */
+    public static int countMismatches(final byte[] bases1, final int offset1, final byte[] bases2, final int offset2,
+                                      final int length) {
+        int mismatches = 0;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            mismatches += Long.bitCount(mismatchMask(bases1, offset1 + i, bases2, offset2 + i));
+        }
+        for (; i < length; ++i) {
+            if (!basesEqual(bases1[offset1 + i], bases2[offset2 + i])) ++mismatches;
+        }
+        return mismatches;
+    }
+
+    /**
+     * Sums the qualities of the read bases that differ from the reference, treating upper and lower case as equal
+     * as {@link #basesEqual(byte, byte)} does.  Bases are compared eight at a time, packed into a long.
+     *
+     * @param readOffset      Offset of the first base to compare in readBases and readQualities.
+     * @param referenceOffset Offset of the first base to compare in referenceBases.
+     * @param length          The number of bases to compare.
+     */
+    public static int sumQualitiesOfMismatches(final byte[] readBases, final byte[] readQualities, final int readOffset,
+                                               final byte[] referenceBases, final int referenceOffset, final int length) {
+        int qualities = 0;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long mask = mismatchMask(readBases, readOffset + i, referenceBases, referenceOffset + i);
+            while (mask != 0) {
+                qualities += readQualities[readOffset + i + (Long.numberOfTrailingZeros(mask) >>> 3)];
+                mask &= mask - 1;
+            }
+        }
+        for (; i < length; ++i) {
+            if (!basesEqual(readBases[readOffset + i], referenceBases[referenceOffset + i])) {
+                qualities += readQualities[readOffset + i];
+            }
+        }
+        return qualities;
+    }
+
+    /**
+     * Compares eight bases from each array.
+     *
+     * @return A long with the high bit of byte k (counting from the least significant) set if the bases at
+     * offset1 + k and offset2 + k are not equal according to basesEqual(), and all other bits clear.
+     */
+    private static long mismatchMask(final byte[] bases1, final int offset1, final byte[] bases2, final int offset2) {
+        final long word1 = getLong(bases1, offset1);
+        final long word2 = getLong(bases2, offset2);
+        if (word1 == word2) return 0;
+        if (((word1 | word2) & HIGH_BITS) == 0) {
+            return nonZeroBytes(upperCase(word1) ^ upperCase(word2));
+        }
+        // basesEqual() does not fold negative bytes, so compare these one at a time
+        long mask = 0;
+        for (int k = 0; k < 8; ++k) {
+            if (!basesEqual(bases1[offset1 + k], bases2[offset2 + k])) mask |= 0x80L << (8 * k);
+        }
+        return mask;
+    }
+
+    /** Subtracts 32 from each byte greater than 90, as basesEqual() does.  All bytes must be less than 128. */
+    private static long upperCase(final long word) {
+        return word - (((word + ABOVE_90) & HIGH_BITS) >>> 2);
+    }
+
+    /** @return A long with the high bit of each non-zero byte of word set, and all other bits clear. */
+    private static long nonZeroBytes(final long word) {
+        return (((word & LOW_BITS) + LOW_BITS) | word) & HIGH_BITS;
+    }
+
+    /** @return The eight bytes starting at offset, with the first in the least significant byte. */
+    private static long getLong(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xffL) |
+                (bytes[offset + 1] & 0xffL) << 8 |
+                (bytes[offset + 2] & 0xffL) << 16 |
+                (bytes[offset + 3] & 0xffL) << 24 |
+                (bytes[offset + 4] & 0xffL) << 32 |
+                (bytes[offset + 5] & 0xffL) << 40 |
+                (bytes[offset + 6] & 0xffL) << 48 |
+                (bytes[offset + 7] & 0xffL) << 56;
+    }
+
     public static int countInsertedBases(final Cigar cigar) {
         int ret = 0;
         for (final CigarElement element : cigar.getCigarElements()) {
@@ -608,26 +717,7 @@ public class SequenceUtil {
 
     /** Returns the complement of a single byte. */
     public static byte complement(final byte b) {
-        switch (b) {
-            case a:
-                return t;
-            case c:
-                return g;
-            case g:
-                return c;
-            case t:
-                return a;
-            case A:
-                return T;
-            case C:
-                return G;
-            case G:
-                return C;
-            case T:
-                return A;
-            default:
-                return b;
-        }
+        return COMPLEMENT[b & 0xff];
     }
 
     /** Reverses and complements the bases in place. */
@@ -898,29 +988,46 @@ public class SequenceUtil {
      */
     public static void calculateMdAndNmTags(final SAMRecord record, final byte[] ref,
                                             final boolean calcMD, final boolean calcNM) {
+        calculateMdAndNmTags(record, ref, 0, calcMD, calcNM);
+    }
+
+    /**
+     * As {@link #calculateMdAndNmTags(SAMRecord, byte[], boolean, boolean)}, for a portion of the reference
+     * sequence.  A tag is only set if its value has changed.
+     *
+     * @param referenceOffset 0-based offset of the first element of ref relative to the start
+     *                        of that reference sequence.
+     */
+    public static void calculateMdAndNmTags(final SAMRecord record, final byte[] ref, final int referenceOffset,
+                                            final boolean calcMD, final boolean calcNM) {
         if (!calcMD && !calcNM)
             return;
 
         final Cigar cigar = record.getCigar();
-        final List<CigarElement> cigarElements = cigar.getCigarElements();
         final byte[] seq = record.getReadBases();
-        final int start = record.getAlignmentStart() - 1;
+        final int start = record.getAlignmentStart() - 1 - referenceOffset;
         int i, x, y, u = 0;
         int nm = 0;
         final StringBuilder str = new StringBuilder();
 
-        final int size = cigarElements.size();
+        final int size = cigar.numCigarElements();
         for (i = y = 0, x = start; i < size; ++i) {
-            final CigarElement ce = cigarElements.get(i);
             int j;
-            final int length = ce.getLength();
-            final CigarOperator op = ce.getOperator();
+            final int length = cigar.getCigarElementLength(i);
+            final CigarOperator op = cigar.getCigarElementOperator(i);
             if (op == CigarOperator.MATCH_OR_MISMATCH || op == CigarOperator.EQ
                     || op == CigarOperator.X) {
-                for (j = 0; j < length; ++j) {
+                // Stop at the end of the reference
+                final int available = Math.min(length, ref.length - x);
+                for (j = 0; j < available; ++j) {
                     final int z = y + j;
 
-                    if (ref.length <= x + j) break; // out of boundary
+                    // Skip eight identical bases at a time
+                    if (j + 8 <= available && getLong(seq, z) == getLong(ref, x + j)) {
+                        u += 8;
+                        j += 7;
+                        continue;
+                    }
 
                     int c1 = 0;
                     int c2 = 0;
@@ -962,8 +1069,14 @@ public class SequenceUtil {
         }
         str.append(u);
 
-        if (calcMD) record.setAttribute(SAMTag.MD.name(), str.toString());
-        if (calcNM) record.setAttribute(SAMTag.NM.name(), nm);
+        if (calcMD) {
+            final String md = str.toString();
+            if (!md.equals(record.getAttribute(SAMTag.MD.name()))) record.setAttribute(SAMTag.MD.name(), md);
+        }
+        if (calcNM) {
+            final Object oldNm = record.getAttribute(SAMTag.NM.name());
+            if (!(oldNm instanceof Number) || ((Number) oldNm).longValue() != nm) record.setAttribute(SAMTag.NM.name(), nm);
+        }
     }
 
     public static byte upperCase(final byte base) {
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the thread pools that readers, writers and iterators use to work on records in parallel.
+ */
+public class ThreadPoolUtil {
+    /** How long an idle thread of a pool lives before it exits. */
+    public static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+
+    private static final ConcurrentMap<String, AtomicInteger> threadsCreated =
+            new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Creates a pool of up to a fixed number of threads, which runs tasks in the order they are submitted.  The
+     * threads are daemons, so a pool that is not shut down does not keep the JVM alive, and they exit after being
+     * idle for {@link #IDLE_THREAD_TIMEOUT_SECONDS}, so an idle pool holds no threads.
+     *
+     * @param namePrefix The name of the threads, to which a number is appended that is unique among the threads
+     *                   created with this prefix.
+     * @param numThreads The most threads to run at once.
+     */
+    public static ThreadPoolExecutor newDaemonFixedThreadPool(final String namePrefix, final int numThreads) {
+        AtomicInteger counter = threadsCreated.get(namePrefix);
+        if (counter == null) {
+            final AtomicInteger newCounter = new AtomicInteger(0);
+            counter = threadsCreated.putIfAbsent(namePrefix, newCounter);
+            if (counter == null) counter = newCounter;
+        }
+        final AtomicInteger threadCounter = counter;
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads,
+                IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, namePrefix + threadCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,144 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.util.CloseableIterator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BinnedPairInfoMapTest {
+
+    private static class StringCodec implements CoordinateSortedPairInfoMap.Codec<String, String> {
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        public void setOutputStream(final OutputStream os) { this.out = new DataOutputStream(os); }
+
+        public void setInputStream(final InputStream is) { this.in = new DataInputStream(is); }
+
+        public void encode(final String key, final String record) {
+            try {
+                out.writeUTF(key);
+                out.writeUTF(record);
+                out.flush();
+            } catch (IOException e) {
+                throw new SAMException(e);
+            }
+        }
+
+        public Map.Entry<String, String> decode() {
+            try {
+                return new AbstractMap.SimpleEntry<String, String>(in.readUTF(), in.readUTF());
+            } catch (IOException e) {
+                throw new SAMException(e);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesHashMapWhileSpilling() {
+        final BinnedPairInfoMap<String, String> map = new BinnedPairInfoMap<String, String>(50, 100, new StringCodec());
+        final Map<String, int[]> positions = new HashMap<String, int[]>();
+        final Random random = new Random(3);
+
+        // Simulate a coordinate-sorted walk in which mates are up to 1000 bases ahead or on another sequence
+        int removed = 0;
+        for (int sequenceIndex = 0; sequenceIndex < 3; ++sequenceIndex) {
+            for (int position = 1; position < 5000; position += 5) {
+                final String name = "read" + sequenceIndex + ":" + position;
+                final int mateSequenceIndex = random.nextInt(10) == 0 ? random.nextInt(3) : sequenceIndex;
+                final int matePosition = position + random.nextInt(1000);
+                if (mateSequenceIndex < sequenceIndex) continue; // mate already passed
+                map.put(mateSequenceIndex, matePosition, name, name + "-info");
+                positions.put(name, new int[]{mateSequenceIndex, matePosition});
+
+                // remove anything whose mate we have now reached
+                for (final java.util.Iterator<Map.Entry<String, int[]>> it = positions.entrySet().iterator(); it.hasNext(); ) {
+                    final Map.Entry<String, int[]> entry = it.next();
+                    if (entry.getValue()[0] == sequenceIndex && entry.getValue()[1] <= position) {
+                        Assert.assertEquals(map.remove(entry.getValue()[0], entry.getValue()[1], entry.getKey()), entry.getKey() + "-info");
+                        it.remove();
+                        ++removed;
+                    }
+                }
+                Assert.assertTrue(map.sizeInRam() <= 50 + 1);
+            }
+        }
+        Assert.assertTrue(removed > 0);
+        Assert.assertEquals(map.size(), positions.size());
+        Assert.assertNull(map.remove(0, 1, "no such read"));
+
+        final CloseableIterator<Map.Entry<String, String>> it = map.iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            final Map.Entry<String, String> entry = it.next();
+            Assert.assertTrue(positions.containsKey(entry.getKey()));
+            Assert.assertEquals(entry.getValue(), entry.getKey() + "-info");
+            ++count;
+        }
+        it.close();
+        Assert.assertEquals(count, positions.size());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final BinnedPairInfoMap<String, String> map = new BinnedPairInfoMap<String, String>(100, 64, new StringCodec());
+        final AtomicInteger failures = new AtomicInteger(0);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; ++t) {
+            final int threadIndex = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; ++i) {
+                        map.put(threadIndex, i, "r" + threadIndex + "." + i, "v" + i);
+                    }
+                    for (int i = 0; i < 2000; ++i) {
+                        if (!("v" + i).equals(map.remove(threadIndex, i, "r" + threadIndex + "." + i))) failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) thread.start();
+        for (final Thread thread : threads) thread.join();
+        Assert.assertEquals(failures.get(), 0);
+        Assert.assertEquals(map.size(), 0);
+    }
+
+    @Test
+    public void testEmptyBinsDiscardedAndCloseDeletesFiles() {
+        final BinnedPairInfoMap<String, String> map = new BinnedPairInfoMap<String, String>(10, 128, new StringCodec());
+        for (int i = 0; i < 40; ++i) map.put(0, i * 16, "r" + i, "v" + i);
+        Assert.assertEquals(map.numBins(), 5);
+        Assert.assertTrue(map.getWorkDir().list().length > 0);
+
+        // Emptying a bin discards it
+        for (int i = 0; i < 8; ++i) Assert.assertEquals(map.remove(0, i * 16, "r" + i), "v" + i);
+        Assert.assertEquals(map.numBins(), 4);
+        map.put(0, 0, "r0", "again");
+        Assert.assertEquals(map.numBins(), 5);
+        Assert.assertEquals(map.remove(0, 0, "r0"), "again");
+
+        map.close();
+        Assert.assertFalse(map.getWorkDir().exists());
+        Assert.assertEquals(map.size(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDuplicatePut() {
+        final BinnedPairInfoMap<String, String> map = new BinnedPairInfoMap<String, String>(10, new StringCodec());
+        map.put(0, 10, "a", "1");
+        map.put(0, 10, "a", "2");
+    }
+}
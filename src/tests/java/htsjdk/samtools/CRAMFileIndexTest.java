@@ -184,6 +184,47 @@ public class CRAMFileIndexTest {
         Assert.assertTrue(counter <= nofReadsPerContainer);
     }
 
+    @Test
+    public void testParallelDecoding() throws IOException {
+        final CRAMFileReader serialReader = new CRAMFileReader(new ByteArraySeekableStream(cramBytes), new ByteArraySeekableStream(baiBytes), source, ValidationStringency.SILENT);
+        final CRAMFileReader parallelReader = new CRAMFileReader(new ByteArraySeekableStream(cramBytes), new ByteArraySeekableStream(baiBytes), source, ValidationStringency.SILENT);
+        parallelReader.enableParallelDecoding(4);
+
+        final CloseableIterator<SAMRecord> serial = serialReader.getIterator();
+        final CloseableIterator<SAMRecord> parallel = parallelReader.getIterator();
+        int counter = 0;
+        while (serial.hasNext()) {
+            Assert.assertTrue(parallel.hasNext());
+            Assert.assertEquals(parallel.next().getSAMString(), serial.next().getSAMString(), "record " + counter);
+            counter++;
+        }
+        Assert.assertFalse(parallel.hasNext());
+        Assert.assertEquals(counter, nofReads);
+        serialReader.close();
+        parallelReader.close();
+    }
+
+    @Test
+    public void testParallelDecodingQuery() throws IOException {
+        final CRAMFileReader serialReader = new CRAMFileReader(new ByteArraySeekableStream(cramBytes), new ByteArraySeekableStream(baiBytes), source, ValidationStringency.SILENT);
+        final CRAMFileReader parallelReader = new CRAMFileReader(new ByteArraySeekableStream(cramBytes), new ByteArraySeekableStream(baiBytes), source, ValidationStringency.SILENT);
+        parallelReader.enableParallelDecoding(4);
+
+        final QueryInterval[] query = new QueryInterval[]{new QueryInterval(0, 1000, 5000), new QueryInterval(1, 1, 1000000)};
+        final CloseableIterator<SAMRecord> serialQuery = serialReader.query(query, false);
+        final CloseableIterator<SAMRecord> parallelQuery = parallelReader.query(query, false);
+        int counter = 0;
+        while (serialQuery.hasNext()) {
+            Assert.assertTrue(parallelQuery.hasNext());
+            Assert.assertEquals(parallelQuery.next().getSAMString(), serialQuery.next().getSAMString());
+            counter++;
+        }
+        Assert.assertFalse(parallelQuery.hasNext());
+        Assert.assertTrue(counter > 0);
+        serialReader.close();
+        parallelReader.close();
+    }
+
     @Test
     public void testQueryInterval() throws IOException {
         CRAMFileReader reader = new CRAMFileReader(new ByteArraySeekableStream(cramBytes), new ByteArraySeekableStream(baiBytes), source, ValidationStringency.SILENT);
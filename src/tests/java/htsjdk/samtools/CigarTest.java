@@ -27,6 +27,11 @@ import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.util.List;
 
 /**
@@ -91,4 +96,65 @@ public class CigarTest {
         Assert.assertEquals(errors.size(), 1, String.format("Got %d error, expected exactly one error.", errors.size()));
         Assert.assertEquals(errors.get(0).getType(), type);
     }
+
+    @Test
+    public void testPrimitiveAccessorsMatchElements() {
+        final Cigar cigar = TextCigarCodec.decode("3H2S10M1I5M2D4N6M7S");
+        Assert.assertEquals(cigar.numCigarElements(), 9);
+        for (int i = 0; i < cigar.numCigarElements(); ++i) {
+            final CigarElement element = cigar.getCigarElements().get(i);
+            Assert.assertEquals(cigar.getCigarElementLength(i), element.getLength());
+            Assert.assertEquals(cigar.getCigarElementOperator(i), element.getOperator());
+            Assert.assertEquals(cigar.getCigarElement(i), element);
+        }
+        Assert.assertEquals(cigar.getLeadingClipLength(), 5);
+        Assert.assertEquals(cigar.getTrailingClipLength(), 7);
+        Assert.assertEquals(cigar.getReadLength(), 2 + 10 + 1 + 5 + 6 + 7);
+        Assert.assertEquals(cigar.getReferenceLength(), 10 + 5 + 2 + 4 + 6);
+        Assert.assertEquals(cigar.toString(), "3H2S10M1I5M2D4N6M7S");
+    }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        final Cigar cigar = TextCigarCodec.decode("5S100M1000000N20M1D3M");
+        final Cigar decoded = BinaryCigarCodec.decode(BinaryCigarCodec.encode(cigar));
+        Assert.assertEquals(decoded, cigar);
+        Assert.assertEquals(decoded.hashCode(), cigar.hashCode());
+        Assert.assertEquals(new Cigar(cigar.getCigarElements()), cigar);
+        Assert.assertFalse(TextCigarCodec.decode("5S100M1000000N20M1D4M").equals(cigar));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testElementListIsUnmodifiable() {
+        TextCigarCodec.decode("10M").getCigarElements().add(new CigarElement(1, CigarOperator.M));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testElementLengthTooLong() {
+        new Cigar().add(new CigarElement(1 << 28, CigarOperator.M));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidBinaryOperator() {
+        BinaryCigarCodec.decode(new int[]{10 << 4 | 0xf});
+    }
+
+    @Test
+    public void testSerializedFormIsElementList() throws Exception {
+        // Earlier versions serialized a single List field named cigarElements
+        final ObjectStreamClass streamClass = ObjectStreamClass.lookup(Cigar.class);
+        Assert.assertEquals(streamClass.getSerialVersionUID(), 1L);
+        Assert.assertEquals(streamClass.getFields().length, 1);
+        Assert.assertEquals(streamClass.getField("cigarElements").getType(), List.class);
+
+        final Cigar cigar = TextCigarCodec.decode("5S100M1000000N20M1D3M");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(cigar);
+        out.close();
+        final Cigar deserialized = (Cigar) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        Assert.assertEquals(deserialized, cigar);
+        deserialized.add(new CigarElement(2, CigarOperator.S));
+        Assert.assertEquals(deserialized.toString(), "5S100M1000000N20M1D3M2S");
+    }
 }
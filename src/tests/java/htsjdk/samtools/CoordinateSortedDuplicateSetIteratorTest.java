@@ -0,0 +1,101 @@
+package htsjdk.samtools;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class CoordinateSortedDuplicateSetIteratorTest {
+    protected final static int DEFAULT_BASE_QUALITY = 10;
+
+    private static final String[] CIGARS = {"36M", "5S31M", "31M5S", "10S26M", "20M2D16M", "2S30M4S"};
+
+    private SAMRecordSetBuilder makeRecords() {
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        records.setReadLength(36);
+        final Random random = new Random(11);
+        // Few distinct positions so that many duplicates arise
+        for (int i = 0; i < 500; ++i) {
+            final int contig = random.nextInt(2);
+            final int start1 = 100 + random.nextInt(20);
+            final int start2 = start1 + random.nextInt(5) * 10;
+            switch (random.nextInt(4)) {
+                case 0:
+                    records.addFrag("FRAG" + i, contig, start1, random.nextBoolean(), false,
+                            CIGARS[random.nextInt(CIGARS.length)], null, DEFAULT_BASE_QUALITY);
+                    break;
+                case 1:
+                    records.addPair("UNMP" + i, contig, start1, start2, false, true,
+                            CIGARS[random.nextInt(CIGARS.length)], null, false, true, DEFAULT_BASE_QUALITY);
+                    break;
+                default:
+                    records.addPair("PAIR" + i, contig, start1, start2, false, false,
+                            CIGARS[random.nextInt(CIGARS.length)], CIGARS[random.nextInt(CIGARS.length)],
+                            random.nextBoolean(), random.nextBoolean(), DEFAULT_BASE_QUALITY);
+            }
+        }
+        records.addUnmappedFragment("UNPLACED0");
+        records.addUnmappedFragment("UNPLACED1");
+        return records;
+    }
+
+    /**
+     * Describes each duplicate set by the sorted names of its records, with the representative first.  The sets are
+     * kept in a fixed order so that they can be compared with assertEquals, which compares collections in order.
+     */
+    private Set<List<String>> describe(final Iterable<DuplicateSet> sets) {
+        final Set<List<String>> descriptions = new TreeSet<List<String>>(new Comparator<List<String>>() {
+            public int compare(final List<String> a, final List<String> b) {
+                return a.toString().compareTo(b.toString());
+            }
+        });
+        for (final DuplicateSet set : sets) {
+            final List<String> names = new ArrayList<String>();
+            for (final SAMRecord record : set.getRecords()) {
+                names.add(record.getReadName() + (record.getReadPairedFlag() && record.getSecondOfPairFlag() ? "/2" : "/1"));
+            }
+            final String representative = names.remove(0);
+            Collections.sort(names);
+            names.add(0, representative);
+            Assert.assertTrue(descriptions.add(names), "Duplicate set seen twice: " + names);
+        }
+        return descriptions;
+    }
+
+    private List<DuplicateSet> drain(final java.util.Iterator<DuplicateSet> iterator) {
+        final List<DuplicateSet> sets = new ArrayList<DuplicateSet>();
+        while (iterator.hasNext()) sets.add(iterator.next());
+        return sets;
+    }
+
+    @Test
+    public void testMatchesDuplicateSetIterator() {
+        final SAMRecordSetBuilder records = makeRecords();
+        final SAMFileHeader header = records.getHeader();
+
+        final Set<List<String>> expected = describe(drain(new DuplicateSetIterator(records.iterator(), header, false)));
+        final Set<List<String>> actual = describe(drain(new CoordinateSortedDuplicateSetIterator(records.iterator(), header)));
+
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testWindowTooSmall() {
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        records.addFrag("READ0", 0, 100, false, false, "50M", null, DEFAULT_BASE_QUALITY);
+        records.addFrag("READ1", 0, 120, false, false, "30S20M", null, DEFAULT_BASE_QUALITY);
+        drain(new CoordinateSortedDuplicateSetIterator(records.iterator(), records.getHeader(), 10));
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testRequiresCoordinateSortedHeader() {
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder(false, SAMFileHeader.SortOrder.unsorted);
+        new CoordinateSortedDuplicateSetIterator(records.iterator(), records.getHeader());
+    }
+}
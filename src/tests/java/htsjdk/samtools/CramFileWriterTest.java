@@ -23,7 +23,9 @@
  */
 package htsjdk.samtools;
 
+import htsjdk.samtools.cram.build.ExternalCompressorSelector;
 import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.cram.structure.EncodingKey;
 import htsjdk.samtools.reference.InMemoryReferenceSequenceFile;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.Log.LogLevel;
@@ -37,6 +39,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class CramFileWriterTest {
 
@@ -97,30 +100,103 @@ public class CramFileWriterTest {
         return list;
     }
 
-    private void doTest(final List<SAMRecord> samRecords) {
+    @Test(description = "Tests that building containers in parallel writes the same file as building them serially")
+    public void parallelEncodingTest() throws Exception {
+        final List<SAMRecord> samRecords = createRecords(1000);
+        final int previousValue = CRAMFileWriter.DEFAULT_RECORDS_PER_SLICE;
+        CRAMFileWriter.DEFAULT_RECORDS_PER_SLICE = 50;
+        try {
+            final byte[] serial = writeCram(samRecords, 0);
+            final byte[] parallel = writeCram(samRecords, 4);
+            Assert.assertTrue(Arrays.equals(parallel, serial));
+            doTest(samRecords, 4);
+        } finally {
+            CRAMFileWriter.DEFAULT_RECORDS_PER_SLICE = previousValue;
+        }
+    }
+
+    @Test(description = "Tests that the time spent reading each data series is collected on request")
+    public void dataSeriesTimingsTest() throws Exception {
+        final List<SAMRecord> samRecords = createRecords(100);
+        final CRAMIterator iterator = new CRAMIterator(new ByteArrayInputStream(writeCram(samRecords, 0)),
+                new ReferenceSource(createReference()));
+        iterator.setValidationStringency(ValidationStringency.SILENT);
+        Assert.assertTrue(iterator.getDataSeriesNanos().isEmpty());
+        iterator.setCollectDataSeriesTimings(true);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(count, samRecords.size());
+        final Map<String, Long> nanos = iterator.getDataSeriesNanos();
+        Assert.assertTrue(nanos.containsKey(EncodingKey.BF_BitFlags.name()), nanos.toString());
+        Assert.assertTrue(nanos.containsKey(EncodingKey.RL_ReadLength.name()), nanos.toString());
+        iterator.close();
+    }
+
+    @Test(description = "Tests that a file with compressors chosen by trial reads back")
+    public void compressorSelectionTest() throws Exception {
+        final List<SAMRecord> samRecords = createRecords(1000);
+        final int previousValue = CRAMFileWriter.DEFAULT_RECORDS_PER_SLICE;
+        CRAMFileWriter.DEFAULT_RECORDS_PER_SLICE = 50;
+        try {
+            final ExternalCompressorSelector selector = new ExternalCompressorSelector();
+            selector.setTrialInterval(150);
+            checkRecords(writeCram(samRecords, 4, selector), samRecords);
+            // Read names have an external block of their own
+            Assert.assertNotNull(selector.getCompressor(2));
+        } finally {
+            CRAMFileWriter.DEFAULT_RECORDS_PER_SLICE = previousValue;
+        }
+    }
+
+    private static SAMFileHeader createHeader() {
         final SAMFileHeader header = new SAMFileHeader();
         header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
         header.addSequence(new SAMSequenceRecord("chr1", 123));
         SAMReadGroupRecord readGroupRecord = new SAMReadGroupRecord("1");
         header.addReadGroup(readGroupRecord);
+        return header;
+    }
 
+    private static InMemoryReferenceSequenceFile createReference() {
         byte[] refBases = new byte[1024 * 1024];
         Arrays.fill(refBases, (byte) 'A');
         InMemoryReferenceSequenceFile rsf = new InMemoryReferenceSequenceFile();
         rsf.add("chr1", refBases);
-        ReferenceSource source = new ReferenceSource(rsf);
+        return rsf;
+    }
 
+    private static byte[] writeCram(final List<SAMRecord> samRecords, final int encodingThreads) {
+        return writeCram(samRecords, encodingThreads, null);
+    }
+
+    private static byte[] writeCram(final List<SAMRecord> samRecords, final int encodingThreads,
+                                    final ExternalCompressorSelector compressorSelector) {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
-        CRAMFileWriter writer = new CRAMFileWriter(os, source, header, null);
+        CRAMFileWriter writer = new CRAMFileWriter(os, new ReferenceSource(createReference()), createHeader(), null);
+        writer.setEncodingThreads(encodingThreads);
+        writer.setCompressorSelector(compressorSelector);
         for (SAMRecord record : samRecords) {
             writer.writeAlignment(record);
         }
         writer.finish();
         writer.close();
+        return os.toByteArray();
+    }
+
+    private void doTest(final List<SAMRecord> samRecords) {
+        doTest(samRecords, 0);
+    }
+
+    private void doTest(final List<SAMRecord> samRecords, final int encodingThreads) {
+        checkRecords(writeCram(samRecords, encodingThreads), samRecords);
+    }
 
-        CRAMFileReader cReader = new CRAMFileReader(null,
-                new ByteArrayInputStream(os.toByteArray()),
-                new ReferenceSource(rsf));
+    private void checkRecords(final byte[] cram, final List<SAMRecord> samRecords) {
+        CRAMFileReader cReader = new CRAMFileReader(null, new ByteArrayInputStream(cram),
+                new ReferenceSource(createReference()));
         SAMRecordIterator iterator2 = cReader.getIterator();
         int index = 0;
         while (iterator2.hasNext()) {
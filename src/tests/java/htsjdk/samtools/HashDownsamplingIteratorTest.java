@@ -0,0 +1,107 @@
+package htsjdk.samtools;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class HashDownsamplingIteratorTest {
+    private static final int NUM_PAIRS = 5000;
+
+    private SAMRecordSetBuilder makeRecords() {
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        final Random random = new Random(1);
+        for (int i = 0; i < NUM_PAIRS; ++i) {
+            final int start = 1 + random.nextInt(100000);
+            records.addPair("pair" + i, random.nextInt(3), start, start + random.nextInt(500));
+        }
+        return records;
+    }
+
+    private static List<SAMRecord> drain(final HashDownsamplingIterator iterator) {
+        final List<SAMRecord> kept = new ArrayList<SAMRecord>();
+        for (final SAMRecord rec : iterator) kept.add(rec);
+        iterator.close();
+        return kept;
+    }
+
+    private static Set<String> names(final List<SAMRecord> records) {
+        final Set<String> names = new HashSet<String>();
+        for (final SAMRecord rec : records) names.add(rec.getReadName());
+        return names;
+    }
+
+    @DataProvider(name = "fractions")
+    public Object[][] fractions() {
+        return new Object[][]{{0.0}, {0.01}, {0.1}, {0.5}, {0.9}, {1.0}};
+    }
+
+    @Test(dataProvider = "fractions")
+    public void testMatesKeptTogetherAndDeterministic(final double fraction) {
+        final SAMRecordSetBuilder records = makeRecords();
+        final List<SAMRecord> kept = drain(new HashDownsamplingIterator(records.iterator(), 42, fraction));
+
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (final SAMRecord rec : kept) {
+            final Integer count = counts.get(rec.getReadName());
+            counts.put(rec.getReadName(), count == null ? 1 : count + 1);
+        }
+        for (final Integer count : counts.values()) Assert.assertEquals((int) count, 2);
+
+        // Roughly the requested fraction, and identical the second time round
+        Assert.assertEquals(counts.size() / (double) NUM_PAIRS, fraction, 0.03);
+        Assert.assertTrue(names(drain(new HashDownsamplingIterator(records.iterator(), 42, fraction))).equals(counts.keySet()));
+    }
+
+    @Test
+    public void testShardsAgreeWithWhole() {
+        final SAMRecordSetBuilder records = makeRecords();
+        final Set<String> whole = names(drain(new HashDownsamplingIterator(records.iterator(), 7, 0.3)));
+
+        // Split into per-contig shards, each processed independently
+        final Set<String> sharded = new HashSet<String>();
+        for (int contig = 0; contig < 3; ++contig) {
+            final List<SAMRecord> shard = new ArrayList<SAMRecord>();
+            for (final SAMRecord rec : records.getRecords()) {
+                if (rec.getReferenceIndex() == contig) shard.add(rec);
+            }
+            sharded.addAll(names(drain(new HashDownsamplingIterator(shard.iterator(), 7, 0.3))));
+        }
+        Assert.assertTrue(sharded.equals(whole));
+        Assert.assertFalse(names(drain(new HashDownsamplingIterator(records.iterator(), 8, 0.3))).equals(whole));
+    }
+
+    @Test(dataProvider = "fractions")
+    public void testExactFraction(final double fraction) {
+        final SAMRecordSetBuilder records = makeRecords();
+        final List<SAMRecord> kept = drain(HashDownsamplingIterator.exactFraction(records.getRecords(), 42, fraction));
+        Assert.assertEquals(names(kept).size(), Math.round(fraction * NUM_PAIRS));
+        Assert.assertEquals(kept.size(), 2 * Math.round(fraction * NUM_PAIRS));
+    }
+
+    @Test(dataProvider = "fractions")
+    public void testExactFractionCountsOnlyFirstOfPair(final double fraction) {
+        // Second-of-pair records whose mates are missing are not counted, and so must not use up the quota
+        final SAMRecordSetBuilder orphans = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        for (int i = 0; i < 20000; ++i) orphans.addPair("orphan" + i, 0, 1 + i, 1 + i);
+        final List<SAMRecord> input = new ArrayList<SAMRecord>();
+        for (final SAMRecord rec : orphans.getRecords()) {
+            if (rec.getSecondOfPairFlag()) input.add(rec);
+        }
+        input.addAll(makeRecords().getRecords());
+
+        final List<SAMRecord> kept = drain(HashDownsamplingIterator.exactFraction(input, 42, fraction));
+        int keptPairs = 0;
+        for (final String name : names(kept)) {
+            if (name.startsWith("pair")) ++keptPairs;
+        }
+        Assert.assertEquals(keptPairs, Math.round(fraction * NUM_PAIRS));
+    }
+}
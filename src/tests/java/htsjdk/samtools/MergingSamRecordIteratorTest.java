@@ -25,12 +25,14 @@ package htsjdk.samtools;
 
 import htsjdk.samtools.util.SequenceUtil;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -268,4 +270,80 @@ public class MergingSamRecordIteratorTest {
         builder1.getSamReader().close();
         builder2.getSamReader().close();
     }
+
+    private List<SamReader> makeReaders(final int numInputs, final SAMFileHeader.SortOrder sortOrder) {
+        final Random random = new Random(5);
+        final List<SamReader> readers = new ArrayList<SamReader>();
+        for (int i = 0; i < numInputs; ++i) {
+            final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, sortOrder);
+            for (int j = random.nextInt(200); j > 0; --j) {
+                builder.addFrag("read" + i + "." + j, random.nextInt(3), 1 + random.nextInt(10000), random.nextBoolean());
+            }
+            readers.add(builder.getSamReader());
+        }
+        return readers;
+    }
+
+    private List<SAMRecord> merge(final List<SamReader> readers, final SAMFileHeader.SortOrder sortOrder, final int prefetch) {
+        final List<SAMFileHeader> headers = new ArrayList<SAMFileHeader>();
+        for (final SamReader reader : readers) headers.add(reader.getFileHeader());
+        final SamFileHeaderMerger merger = new SamFileHeaderMerger(sortOrder, headers, false);
+        final MergingSamRecordIterator iterator = new MergingSamRecordIterator(merger, readers, false).setPrefetch(prefetch);
+        final List<SAMRecord> records = new ArrayList<SAMRecord>();
+        while (iterator.hasNext()) records.add(iterator.next());
+        iterator.close();
+        return records;
+    }
+
+    @DataProvider(name = "manyInputs")
+    public Object[][] manyInputs() {
+        return new Object[][]{
+                {SAMFileHeader.SortOrder.coordinate, 0},
+                {SAMFileHeader.SortOrder.coordinate, 1},
+                {SAMFileHeader.SortOrder.coordinate, 1000},
+                {SAMFileHeader.SortOrder.queryname, 0},
+                {SAMFileHeader.SortOrder.queryname, 50},
+        };
+    }
+
+    @Test(dataProvider = "manyInputs")
+    public void testManyInputs(final SAMFileHeader.SortOrder sortOrder, final int prefetch) throws Exception {
+        final List<SamReader> readers = makeReaders(37, sortOrder);
+        int total = 0;
+        for (final SamReader reader : readers) {
+            final SAMRecordIterator iterator = reader.iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+                ++total;
+            }
+            iterator.close();
+        }
+
+        final List<SAMRecord> records = merge(readers, sortOrder, prefetch);
+        Assert.assertEquals(records.size(), total);
+        final SAMRecordComparator comparator = sortOrder.getComparatorInstance();
+        for (int i = 1; i < records.size(); ++i) {
+            Assert.assertTrue(comparator.compare(records.get(i - 1), records.get(i)) <= 0);
+            Assert.assertSame(records.get(i).getHeader(), records.get(0).getHeader());
+        }
+
+        // Prefetching must not change the order in which records come out
+        final List<SAMRecord> synchronous = merge(readers, sortOrder, 0);
+        for (int i = 0; i < records.size(); ++i) {
+            Assert.assertEquals(records.get(i).getReadName(), synchronous.get(i).getReadName());
+        }
+        for (final SamReader reader : readers) reader.close();
+    }
+
+    @Test
+    public void testCloseBeforeExhaustedWithPrefetch() throws Exception {
+        final List<SamReader> readers = makeReaders(10, SAMFileHeader.SortOrder.coordinate);
+        final List<SAMFileHeader> headers = new ArrayList<SAMFileHeader>();
+        for (final SamReader reader : readers) headers.add(reader.getFileHeader());
+        final SamFileHeaderMerger merger = new SamFileHeaderMerger(SAMFileHeader.SortOrder.coordinate, headers, false);
+        final MergingSamRecordIterator iterator = new MergingSamRecordIterator(merger, readers, false).setPrefetch(2);
+        for (int i = 0; i < 5 && iterator.hasNext(); ++i) iterator.next();
+        iterator.close();
+        for (final SamReader reader : readers) reader.close();
+    }
 }
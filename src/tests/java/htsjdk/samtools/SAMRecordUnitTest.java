@@ -94,4 +94,50 @@ public class SAMRecordUnitTest {
             SAMRecord sam = new SAMRecordSetBuilder().addFrag("test", 0, 1, false, false, cigar, null, 2);
             Assert.assertEquals(sam.getReferencePositionAtReadPosition(posInRead), expectedReferencePos);
     }
+
+    @Test
+    public void testCachedCoordinatesFollowSetters() {
+        final SAMRecord sam = new SAMRecordSetBuilder().addFrag("test", 0, 100, false, false, "3H2S10M1D5M4S", null, 2);
+        Assert.assertEquals(sam.getAlignmentEnd(), 115);
+        Assert.assertEquals(sam.getUnclippedStart(), 95);
+        Assert.assertEquals(sam.getUnclippedEnd(), 119);
+        Assert.assertEquals(sam.getAlignmentBlocks().get(1).getReferenceStart(), 111);
+
+        sam.setAlignmentStart(200);
+        Assert.assertEquals(sam.getAlignmentEnd(), 215);
+        Assert.assertEquals(sam.getUnclippedStart(), 195);
+        Assert.assertEquals(sam.getUnclippedEnd(), 219);
+        Assert.assertEquals(sam.getAlignmentBlocks().get(1).getReferenceStart(), 211);
+
+        sam.setCigarString("1S20M");
+        Assert.assertEquals(sam.getAlignmentEnd(), 219);
+        Assert.assertEquals(sam.getUnclippedStart(), 199);
+        Assert.assertEquals(sam.getUnclippedEnd(), 219);
+        Assert.assertEquals(sam.getAlignmentBlocks().size(), 1);
+
+        sam.setCigar(TextCigarCodec.decode("10M2S"));
+        Assert.assertEquals(sam.getUnclippedStart(), 200);
+        Assert.assertEquals(sam.getUnclippedEnd(), 211);
+
+        sam.setReadUnmappedFlag(true);
+        Assert.assertEquals(sam.getAlignmentEnd(), SAMRecord.NO_ALIGNMENT_START);
+        sam.setReadUnmappedFlag(false);
+        Assert.assertEquals(sam.getUnclippedEnd(), 211);
+    }
+
+    @Test
+    public void testAlignmentBlockCursorMatchesAlignmentBlocks() {
+        final AlignmentBlockCursor cursor = new AlignmentBlockCursor();
+        for (final String cigar : new String[]{"3S9M", "4M1D6M", "4M1I6M", "2H3S4M2N3=1X2P1I3M5S1H", "5S5H"}) {
+            final SAMRecord sam = new SAMRecordSetBuilder().addFrag("test", 0, 10, false, false, cigar, null, 2);
+            cursor.reset(sam);
+            for (final AlignmentBlock block : sam.getAlignmentBlocks()) {
+                Assert.assertTrue(cursor.advance(), cigar);
+                Assert.assertEquals(cursor.getReadStart(), block.getReadStart(), cigar);
+                Assert.assertEquals(cursor.getReferenceStart(), block.getReferenceStart(), cigar);
+                Assert.assertEquals(cursor.getLength(), block.getLength(), cigar);
+            }
+            Assert.assertFalse(cursor.advance(), cigar);
+        }
+    }
 }
@@ -26,10 +26,15 @@ package htsjdk.samtools;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.samtools.util.CloserUtil;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class SAMTextReaderTest {
     // Simple input, spot check that parsed correctly, and make sure nothing blows up.
@@ -134,4 +139,147 @@ public class SAMTextReaderTest {
         Assert.assertEquals(recFromText.getAttribute(SAMTag.CQ.name()), valueWithColons);
         CloserUtil.close(reader);
     }
+
+    private static final File TEST_DATA_DIR = new File("testdata/htsjdk/samtools");
+
+    private static List<SAMRecord> readAll(final SamReaderFactory factory, final SamInputResource input) {
+        final SamReader reader = factory.open(input);
+        final List<SAMRecord> records = new ArrayList<SAMRecord>();
+        for (final SAMRecord rec : reader) records.add(rec);
+        CloserUtil.close(reader);
+        return records;
+    }
+
+    @DataProvider(name = "samFiles")
+    public Object[][] samFiles() {
+        return new Object[][]{{"coordinate_sorted.sam"}, {"queryname_sorted.sam"}, {"roundtrip.sam"},
+                {"unsorted.sam"}, {"serialization_test.sam"}, {"sequenceWithSpace.sam"}};
+    }
+
+    @Test(dataProvider = "samFiles")
+    public void testBinaryParsingMatchesTextParsing(final String fileName) {
+        final File samFile = new File(TEST_DATA_DIR, fileName);
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
+        final List<SAMRecord> expected = readAll(factory, SamInputResource.of(samFile));
+        final List<SAMRecord> actual = readAll(factory.enable(SamReaderFactory.Option.PARSE_SAM_AS_BINARY), SamInputResource.of(samFile));
+
+        Assert.assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            Assert.assertTrue(actual.get(i) instanceof BAMRecord);
+            Assert.assertEquals(actual.get(i).getSAMString(), expected.get(i).getSAMString());
+        }
+    }
+
+    @Test
+    public void testBinaryParsingOfTagsAndLineEndings() {
+        final String samText = "@HD\tVN:1.0\r\n" +
+                "@SQ\tSN:chr1\tLN:1000\r\n" +
+                "read1\t0\tchr1\t10\t30\t3M1I2D4M\t*\t0\t0\tACgt.NACG\t!#%')+-/1\t" +
+                "XA:A:x\tXB:B:c,-128,0,127\tXC:B:S,0,65535\tXD:B:I,4294967295\tXE:B:f,1.5,-2\tXF:f:3.25\t" +
+                "XH:H:00FF7f\tXI:i:-2147483648\tXJ:i:70000\tXK:i:200\tXZ:Z:a:b c\r\n" +
+                "read2\t4\t*\t0\t0\t*\t*\t0\t0\tGT\t**\r" +
+                "read3\t4\t*\t0\t0\t*\t*\t0\t0\tAC\t*";
+        final SamReaderFactory factory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.STRICT);
+        final List<SAMRecord> expected = readAll(factory, SamInputResource.of(new ByteArrayInputStream(samText.getBytes())));
+        final List<SAMRecord> actual = readAll(factory.enable(SamReaderFactory.Option.PARSE_SAM_AS_BINARY),
+                SamInputResource.of(new ByteArrayInputStream(samText.getBytes())));
+
+        Assert.assertEquals(actual.size(), 3);
+        Assert.assertEquals(actual.get(0).getReadString(), "ACGTNNACG");
+        Assert.assertEquals(actual.get(0).getAlignmentEnd(), 18);
+        Assert.assertEquals(actual.get(2).getBaseQualities(), SAMRecord.NULL_QUALS);
+        for (int i = 0; i < expected.size(); ++i) {
+            final SAMRecord rec = actual.get(i);
+            final SAMRecord expectedRec = expected.get(i);
+            Assert.assertEquals(rec.getReadName(), expectedRec.getReadName());
+            Assert.assertEquals(rec.getCigarString(), expectedRec.getCigarString());
+            Assert.assertEquals(rec.getBaseQualities(), expectedRec.getBaseQualities());
+            Assert.assertEquals(rec.getReadString(), expectedRec.getReadString().toUpperCase().replace('.', 'N'));
+            Assert.assertEquals(rec.getAttributes().size(), expectedRec.getAttributes().size());
+            for (final SAMRecord.SAMTagAndValue tagAndValue : expectedRec.getAttributes()) {
+                final Object value = rec.getAttribute(tagAndValue.tag);
+                if (tagAndValue.value.getClass().isArray()) {
+                    Assert.assertEquals(java.lang.reflect.Array.getLength(value), java.lang.reflect.Array.getLength(tagAndValue.value));
+                    Assert.assertEquals(rec.isUnsignedArrayAttribute(tagAndValue.tag), expectedRec.isUnsignedArrayAttribute(tagAndValue.tag));
+                } else {
+                    Assert.assertEquals(value, tagAndValue.value, tagAndValue.tag);
+                }
+            }
+        }
+        Assert.assertTrue(Arrays.equals(actual.get(0).getByteArrayAttribute("XH"), new byte[]{0, -1, 127}));
+        Assert.assertTrue(Arrays.equals(actual.get(0).getFloatArrayAttribute("XE"), new float[]{1.5f, -2f}));
+        Assert.assertTrue(Arrays.equals(actual.get(0).getUnsignedIntArrayAttribute("XD"), new int[]{-1}));
+    }
+
+    @Test(expectedExceptions = SAMFormatException.class)
+    public void testBinaryParsingUnknownReference() {
+        final String samText = "@SQ\tSN:chr1\tLN:1000\n" +
+                "read1\t0\tchr2\t10\t30\t4M\t*\t0\t0\tACGT\t*\n";
+        readAll(SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT)
+                .enable(SamReaderFactory.Option.PARSE_SAM_AS_BINARY), SamInputResource.of(new ByteArrayInputStream(samText.getBytes())));
+    }
+
+    private static byte[] makeLargeSamText(final int numPairs) {
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        for (int i = 0; i < numPairs; ++i) {
+            records.addPair("pair" + i, i % 3, 1 + i, 100 + i);
+        }
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(records.getHeader(), true, os);
+        for (final SAMRecord rec : records) writer.addAlignment(rec);
+        writer.close();
+        return os.toByteArray();
+    }
+
+    private static List<String> readAllAsStrings(final SAMTextReader reader) {
+        final List<String> lines = new ArrayList<String>();
+        final CloseableIterator<SAMRecord> iterator = reader.getIterator();
+        while (iterator.hasNext()) lines.add(iterator.next().getSAMString());
+        iterator.close();
+        return lines;
+    }
+
+    @Test
+    public void testParallelParsingMatchesSequential() {
+        final byte[] samText = makeLargeSamText(5000);
+        final List<String> expected = readAllAsStrings(new SAMTextReader(new ByteArrayInputStream(samText),
+                ValidationStringency.STRICT, DefaultSAMRecordFactory.getInstance()));
+        Assert.assertEquals(expected.size(), 10000);
+
+        for (final boolean binary : new boolean[]{false, true}) {
+            final SAMTextReader reader = new SAMTextReader(new ByteArrayInputStream(samText),
+                    ValidationStringency.STRICT, DefaultSAMRecordFactory.getInstance());
+            reader.enableParallelParsing(4);
+            reader.enableBinaryParsing(binary);
+            Assert.assertEquals(readAllAsStrings(reader), expected);
+        }
+    }
+
+    @Test
+    public void testParallelParsingErrorAfterPrecedingRecords() {
+        final String samText = new String(makeLargeSamText(5000));
+        final int badLineStart = samText.indexOf("pair4000\t");
+        final String badSamText = samText.substring(0, badLineStart) + "bad\tline\n" + samText.substring(badLineStart);
+        int recordsBeforeBadLine = 0;
+        for (final String line : samText.substring(0, badLineStart).split("\n")) {
+            if (!line.startsWith("@")) ++recordsBeforeBadLine;
+        }
+
+        final SAMTextReader reader = new SAMTextReader(new ByteArrayInputStream(badSamText.getBytes()),
+                ValidationStringency.STRICT, DefaultSAMRecordFactory.getInstance());
+        reader.enableParallelParsing(4);
+        final CloseableIterator<SAMRecord> iterator = reader.getIterator();
+        int count = 0;
+        try {
+            while (iterator.hasNext()) {
+                iterator.next();
+                ++count;
+            }
+            Assert.fail("Expected parsing error");
+        } catch (final SAMFormatException e) {
+            Assert.assertEquals(count, recordsBeforeBadLine);
+        } finally {
+            iterator.close();
+        }
+    }
 }
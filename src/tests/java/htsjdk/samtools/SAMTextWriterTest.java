@@ -26,6 +26,7 @@ package htsjdk.samtools;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -92,4 +93,62 @@ public class SAMTextWriterTest {
         Assert.assertFalse(newSAMIt.hasNext());
         inputSAM.close();
     }
+
+    private SAMRecordSetBuilder makeRecordsWithTags(final int numPairs) {
+        final SAMRecordSetBuilder records = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        for (int i = 0; i < numPairs; ++i) {
+            records.addPair("pair" + i, i % 3, 1 + i, 100 + i);
+        }
+        records.addUnmappedFragment("unmapped");
+        int i = 0;
+        for (final SAMRecord rec : records) {
+            rec.setAttribute("XI", -i * 1000);
+            rec.setAttribute("XB", (short) -3);
+            rec.setAttribute("XC", 'c');
+            rec.setAttribute("XF", i / 7.0f);
+            rec.setAttribute("XZ", "Hi,Mom!" + i);
+            rec.setAttribute("Xb", new byte[]{-1, 0, 1});
+            rec.setAttribute("Xs", new short[]{Short.MIN_VALUE, 2});
+            rec.setAttribute("Xi", new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE});
+            rec.setAttribute("Xf", new float[]{0.5f, -1e-10f});
+            rec.setUnsignedArrayAttribute("Ub", new byte[]{-1, 2});
+            rec.setUnsignedArrayAttribute("Ui", new int[]{-1});
+            if (i % 5 == 0) {
+                rec.setReadBases(SAMRecord.NULL_SEQUENCE);
+                rec.setBaseQualities(SAMRecord.NULL_QUALS);
+            }
+            ++i;
+        }
+        return records;
+    }
+
+    @Test
+    public void testLineEncoderMatchesGetSAMString() {
+        final SAMLineEncoder encoder = new SAMLineEncoder(16);
+        final StringBuilder expected = new StringBuilder();
+        for (final SAMRecord rec : makeRecordsWithTags(100)) {
+            encoder.encode(rec);
+            expected.append(rec.getSAMString());
+        }
+        Assert.assertEquals(new String(encoder.getBuffer(), 0, encoder.getLength()), expected.toString());
+    }
+
+    private byte[] writeToBytes(final SAMRecordSetBuilder records, final int formattingThreads) {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        final SAMFileWriter writer = new SAMFileWriterFactory().setSamFormattingThreads(formattingThreads)
+                .makeSAMWriter(records.getHeader(), true, os);
+        for (final SAMRecord rec : records) writer.addAlignment(rec);
+        writer.close();
+        return os.toByteArray();
+    }
+
+    @Test
+    public void testParallelFormatting() {
+        final SAMRecordSetBuilder records = makeRecordsWithTags(5000);
+        final String expected = new String(writeToBytes(records, 1));
+        SAMRecord last = null;
+        for (final SAMRecord rec : records) last = rec;
+        Assert.assertTrue(expected.endsWith(last.getSAMString()));
+        Assert.assertEquals(new String(writeToBytes(records, 4)), expected);
+    }
 }
@@ -41,6 +41,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -262,4 +263,94 @@ public class SamFileHeaderMergerTest {
         final SamFileHeaderMerger headerMerger = new SamFileHeaderMerger(SAMFileHeader.SortOrder.coordinate, new ArrayList<SAMFileHeader>(), true);
         Assert.assertEquals(expectedValue, headerMerger.positiveFourDigitBase36Str(toConvert));
     }
+
+    /** Makes headers that share a few sequence dictionaries and program chains, but whose read groups all use the same id. */
+    private List<SAMFileHeader> makeManyHeaders(final int numHeaders) {
+        final List<SAMFileHeader> headers = new ArrayList<SAMFileHeader>();
+        for (int i = 0; i < numHeaders; ++i) {
+            final SAMFileHeader header = new SAMFileHeader();
+            final List<SAMSequenceRecord> sequences = new ArrayList<SAMSequenceRecord>();
+            sequences.add(new SAMSequenceRecord("chr1", 1000));
+            if (i % 3 == 1) sequences.add(new SAMSequenceRecord("chr1_random", 100));
+            sequences.add(new SAMSequenceRecord("chr2", 1000));
+            if (i % 3 == 2) sequences.add(new SAMSequenceRecord("chrM", 16000));
+            header.setSequenceDictionary(new SAMSequenceDictionary(sequences));
+
+            final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("A");
+            readGroup.setSample("sample" + i);
+            header.addReadGroup(readGroup);
+
+            final SAMProgramRecord aligner = new SAMProgramRecord("1");
+            aligner.setProgramName("aligner");
+            aligner.setProgramVersion(String.valueOf(i % 2));
+            header.addProgramRecord(aligner);
+            final SAMProgramRecord marker = new SAMProgramRecord("2");
+            marker.setProgramName("marker");
+            marker.setPreviousProgramGroupId("1");
+            header.addProgramRecord(marker);
+            headers.add(header);
+        }
+        return headers;
+    }
+
+    @Test
+    public void testManyHeaders() {
+        final List<SAMFileHeader> headers = makeManyHeaders(2000);
+        final SamFileHeaderMerger merger = new SamFileHeaderMerger(SAMFileHeader.SortOrder.coordinate, headers, true);
+        final SAMFileHeader merged = merger.getMergedHeader();
+
+        Assert.assertEquals(merged.getSequenceDictionary().size(), 4);
+        Assert.assertEquals(merged.getSequenceIndex("chr1_random"), 1);
+        Assert.assertEquals(merged.getSequenceIndex("chrM"), 3);
+        Assert.assertEquals(merged.getReadGroups().size(), headers.size());
+        Assert.assertEquals(merged.getProgramRecords().size(), 4);
+        Assert.assertTrue(merger.hasReadGroupCollisions());
+        Assert.assertTrue(merger.hasProgramGroupCollisions());
+
+        for (int i = 0; i < headers.size(); ++i) {
+            final SAMFileHeader header = headers.get(i);
+            final SAMReadGroupRecord readGroup = merged.getReadGroup(merger.getReadGroupId(header, "A"));
+            Assert.assertEquals(readGroup.getSample(), "sample" + i);
+            final SAMProgramRecord marker = merged.getProgramRecord(merger.getProgramGroupId(header, "2"));
+            Assert.assertEquals(marker.getPreviousProgramGroupId(), merger.getProgramGroupId(header, "1"));
+            Assert.assertEquals(merged.getProgramRecord(marker.getPreviousProgramGroupId()).getProgramVersion(), String.valueOf(i % 2));
+            Assert.assertEquals((int) merger.getMergedSequenceIndex(header, header.getSequenceIndex("chr2")), 2);
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final List<SAMFileHeader> headers = makeManyHeaders(50);
+        headers.add(headers.get(0).clone());
+        final SamFileHeaderMerger merger = new SamFileHeaderMerger(SAMFileHeader.SortOrder.queryname, headers, true);
+        final File file = File.createTempFile("SamFileHeaderMergerTest.", ".merge");
+        file.deleteOnExit();
+        merger.write(file);
+
+        // Reload against copies of the headers, as if they had been read again from the input files
+        final List<SAMFileHeader> reread = new ArrayList<SAMFileHeader>();
+        for (final SAMFileHeader header : headers) reread.add(header.clone());
+        final SamFileHeaderMerger loaded = SamFileHeaderMerger.read(file, reread);
+
+        Assert.assertEquals(loaded.getMergedHeader(), merger.getMergedHeader());
+        Assert.assertEquals(loaded.getMergedHeader().getSortOrder(), SAMFileHeader.SortOrder.queryname);
+        Assert.assertEquals(loaded.hasReadGroupCollisions(), merger.hasReadGroupCollisions());
+        Assert.assertEquals(loaded.hasProgramGroupCollisions(), merger.hasProgramGroupCollisions());
+        Assert.assertEquals(loaded.hasMergedSequenceDictionary(), merger.hasMergedSequenceDictionary());
+        for (int i = 0; i < headers.size(); ++i) {
+            Assert.assertEquals(loaded.getReadGroupId(reread.get(i), "A"), merger.getReadGroupId(headers.get(i), "A"));
+            Assert.assertEquals(loaded.getProgramGroupId(reread.get(i), "2"), merger.getProgramGroupId(headers.get(i), "2"));
+            Assert.assertEquals(loaded.getMergedSequenceIndex(reread.get(i), 1), merger.getMergedSequenceIndex(headers.get(i), 1));
+        }
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testReadWithDifferentHeaders() throws IOException {
+        final List<SAMFileHeader> headers = makeManyHeaders(5);
+        final File file = File.createTempFile("SamFileHeaderMergerTest.", ".merge");
+        file.deleteOnExit();
+        new SamFileHeaderMerger(SAMFileHeader.SortOrder.coordinate, headers, true).write(file);
+        Collections.reverse(headers);
+        SamFileHeaderMerger.read(file, headers);
+    }
 }
@@ -0,0 +1,121 @@
+package htsjdk.samtools;
+
+import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.SequenceUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+public class SetNmMdAndUqTagsIteratorTest {
+    private static final File REFERENCE_DIR = new File("testdata/htsjdk/samtools/reference");
+    private static final File INDEXED_REFERENCE = new File(REFERENCE_DIR, "Homo_sapiens_assembly18.trimmed.fasta");
+    private static final File UNINDEXED_REFERENCE = new File(REFERENCE_DIR, "Homo_sapiens_assembly18.trimmed.noindex.fasta");
+
+    private static final String[] CIGARS = {"50M", "5S45M", "20M2D30M", "20M3I27M", "10M100N40M"};
+
+    /** Makes coordinate-sorted records with bases taken from the reference, some of them changed. */
+    private List<SAMRecord> makeRecords(final ReferenceSequenceFile reference, final int count) {
+        final SAMFileHeader header = new SAMFileHeader();
+        header.setSequenceDictionary(reference.getSequenceDictionary());
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final Random random = new Random(3);
+        final List<SAMRecord> records = new ArrayList<SAMRecord>();
+        for (int contig = 0; contig < 2; ++contig) {
+            final SAMSequenceRecord sequence = header.getSequence(contig);
+            final byte[] bases = reference.getSequence(sequence.getSequenceName()).getBases();
+            int start = 1;
+            for (int i = 0; i < count / 2; ++i) {
+                start += random.nextInt(2 * (sequence.getSequenceLength() - 300) / count);
+                final SAMRecord rec = new SAMRecord(header);
+                rec.setReadName("read" + contig + "_" + i);
+                rec.setReferenceIndex(contig);
+                rec.setAlignmentStart(start);
+                rec.setCigarString(CIGARS[random.nextInt(CIGARS.length)]);
+                final byte[] readBases = new byte[50];
+                final byte[] quals = new byte[50];
+                int refPos = start - 1;
+                int readPos = 0;
+                for (final CigarElement element : rec.getCigar().getCigarElements()) {
+                    for (int j = 0; j < element.getLength(); ++j) {
+                        if (element.getOperator().consumesReadBases()) {
+                            readBases[readPos] = element.getOperator().consumesReferenceBases() ? bases[refPos] : (byte) 'A';
+                            if (random.nextInt(20) == 0) readBases[readPos] = SequenceUtil.VALID_BASES_UPPER[random.nextInt(4)];
+                            quals[readPos] = (byte) random.nextInt(40);
+                            ++readPos;
+                        }
+                        if (element.getOperator().consumesReferenceBases()) ++refPos;
+                    }
+                }
+                rec.setReadBases(readBases);
+                rec.setBaseQualities(quals);
+                if (random.nextBoolean()) {
+                    rec.setAttribute(SAMTag.NM.name(), 99);
+                    rec.setAttribute(SAMTag.MD.name(), "0");
+                }
+                records.add(rec);
+            }
+        }
+        final SAMRecord unmapped = new SAMRecord(header);
+        unmapped.setReadName("unmapped");
+        unmapped.setReadUnmappedFlag(true);
+        unmapped.setReadString("ACGT");
+        unmapped.setBaseQualityString("IIII");
+        records.add(unmapped);
+        return records;
+    }
+
+    @DataProvider(name = "references")
+    public Object[][] references() {
+        return new Object[][]{
+                {INDEXED_REFERENCE, 4},
+                {INDEXED_REFERENCE, 1},
+                {UNINDEXED_REFERENCE, 4},
+        };
+    }
+
+    @Test(dataProvider = "references")
+    public void testMatchesSequenceUtil(final File referenceFile, final int numThreads) throws Exception {
+        final ReferenceSequenceFile reference = ReferenceSequenceFileFactory.getReferenceSequenceFile(INDEXED_REFERENCE);
+        final List<SAMRecord> records = makeRecords(reference, 3 * SetNmMdAndUqTagsIterator.BATCH_SIZE);
+
+        final List<SAMRecord> expected = new ArrayList<SAMRecord>();
+        for (final SAMRecord rec : records) {
+            final SAMRecord copy = (SAMRecord) rec.clone();
+            if (!copy.getReadUnmappedFlag()) {
+                final byte[] bases = reference.getSequence(copy.getReferenceName()).getBases();
+                SequenceUtil.calculateMdAndNmTags(copy, bases, true, true);
+                copy.setAttribute(SAMTag.UQ.name(), SequenceUtil.sumQualitiesOfMismatches(copy, bases, 0));
+            }
+            expected.add(copy);
+        }
+
+        final SetNmMdAndUqTagsIterator iterator = new SetNmMdAndUqTagsIterator(records.iterator(),
+                ReferenceSequenceFileFactory.getReferenceSequenceFile(referenceFile), true, true, numThreads);
+        final Iterator<SAMRecord> expectedIterator = expected.iterator();
+        while (iterator.hasNext()) {
+            final SAMRecord actual = iterator.next();
+            final SAMRecord rec = expectedIterator.next();
+            Assert.assertEquals(actual.getReadName(), rec.getReadName());
+            Assert.assertEquals(actual.getAttribute(SAMTag.MD.name()), rec.getAttribute(SAMTag.MD.name()), rec.getSAMString());
+            Assert.assertEquals(actual.getAttribute(SAMTag.NM.name()), rec.getAttribute(SAMTag.NM.name()), rec.getSAMString());
+            Assert.assertEquals(actual.getAttribute(SAMTag.UQ.name()), rec.getAttribute(SAMTag.UQ.name()), rec.getSAMString());
+        }
+        Assert.assertFalse(expectedIterator.hasNext());
+        iterator.close();
+        Assert.assertEquals(iterator.getRecordsChanged(), records.size() - 1);
+
+        // Nothing changes the second time round
+        final SetNmMdAndUqTagsIterator again = new SetNmMdAndUqTagsIterator(records.iterator(),
+                ReferenceSequenceFileFactory.getReferenceSequenceFile(referenceFile), true, true, numThreads);
+        while (again.hasNext()) again.next();
+        again.close();
+        Assert.assertEquals(again.getRecordsChanged(), 0);
+    }
+}
@@ -0,0 +1,123 @@
+package htsjdk.samtools.cram.build;
+
+import htsjdk.samtools.cram.encoding.ExternalCompressor;
+import htsjdk.samtools.cram.encoding.rans.RANS;
+import htsjdk.samtools.cram.structure.BlockCompressionMethod;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class ExternalCompressorSelectorTest {
+
+    private static byte[] compressible(final int size) {
+        final byte[] data = new byte[size];
+        final Random random = new Random(1);
+        for (int i = 0; i < data.length; i++) data[i] = (byte) ('A' + random.nextInt(4));
+        return data;
+    }
+
+    private static byte[] incompressible(final int size) {
+        final byte[] data = new byte[size];
+        new Random(2).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testCandidatesRoundTrip() {
+        final byte[] data = compressible(10000);
+        for (final ExternalCompressor compressor : ExternalCompressorSelector.defaultCandidates()) {
+            Assert.assertTrue(Arrays.equals(compressor.uncompress(compressor.compress(data)), data),
+                    compressor.getMethod().name());
+        }
+    }
+
+    @Test
+    public void testSmallestWins() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(Arrays.asList(
+                ExternalCompressor.createRAW(), ExternalCompressor.createRANS(RANS.ORDER.ZERO)), 0, 0);
+        final ExternalCompressor defaultCompressor = ExternalCompressor.createGZIP();
+
+        Assert.assertNull(selector.getCompressor(1));
+        final byte[] data = compressible(1000);
+        final ExternalCompressorSelector.Selection selection = selector.select(1, data, defaultCompressor, 0, 10);
+        Assert.assertEquals(selection.compressor.getMethod(), BlockCompressionMethod.RANS);
+        // The winner's output is returned rather than compressed again
+        Assert.assertTrue(Arrays.equals(selection.compressor.uncompress(selection.compressed), data));
+        Assert.assertEquals(selector.select(2, incompressible(1000), defaultCompressor, 0, 10).compressor.getMethod(),
+                BlockCompressionMethod.RAW);
+        Assert.assertEquals(selector.getCompressor(1).getMethod(), BlockCompressionMethod.RANS);
+        Assert.assertEquals(selector.getCompressor(2).getMethod(), BlockCompressionMethod.RAW);
+    }
+
+    @Test
+    public void testEmptyTrial() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(Arrays.asList(
+                ExternalCompressor.createRAW(), ExternalCompressor.createRANS(RANS.ORDER.ZERO)), 0, 0);
+        final ExternalCompressor defaultCompressor = ExternalCompressor.createGZIP();
+
+        Assert.assertEquals(selector.select(1, new byte[0], defaultCompressor, 0, 10).compressor, defaultCompressor);
+        Assert.assertNull(selector.getCompressor(1));
+        // Later slices of the run fall back to the default too
+        Assert.assertEquals(selector.select(1, compressible(1000), defaultCompressor, 10, 10).compressor,
+                defaultCompressor);
+    }
+
+    @Test
+    public void testTrialInterval() {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(Arrays.asList(
+                ExternalCompressor.createRAW(), ExternalCompressor.createRANS(RANS.ORDER.ZERO)), 0, 0);
+        selector.setTrialInterval(30);
+        final ExternalCompressor defaultCompressor = ExternalCompressor.createGZIP();
+
+        // Slices of 10 records: the slices starting at records 0 and 30 run trials
+        Assert.assertEquals(selector.select(1, compressible(1000), defaultCompressor, 0, 10).compressor.getMethod(),
+                BlockCompressionMethod.RANS);
+        Assert.assertEquals(selector.select(1, incompressible(1000), defaultCompressor, 10, 10).compressor.getMethod(),
+                BlockCompressionMethod.RANS);
+        Assert.assertEquals(selector.select(1, incompressible(1000), defaultCompressor, 20, 10).compressor.getMethod(),
+                BlockCompressionMethod.RANS);
+        Assert.assertEquals(selector.select(1, incompressible(1000), defaultCompressor, 30, 10).compressor.getMethod(),
+                BlockCompressionMethod.RAW);
+        Assert.assertEquals(selector.getCompressor(1).getMethod(), BlockCompressionMethod.RAW);
+    }
+
+    @Test
+    public void testTrialsIndependentOfOrder() throws Exception {
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(Arrays.asList(
+                ExternalCompressor.createRAW(), ExternalCompressor.createRANS(RANS.ORDER.ZERO)), 0, 0);
+        selector.setTrialInterval(30);
+        final ExternalCompressor defaultCompressor = ExternalCompressor.createGZIP();
+
+        // A later slice of the run waits for the trial, even if it gets to the selector first
+        final ExternalCompressorSelector.Selection[] later = new ExternalCompressorSelector.Selection[1];
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                later[0] = selector.select(1, incompressible(1000), defaultCompressor, 45, 10);
+            }
+        };
+        thread.start();
+        Thread.sleep(100);
+        Assert.assertTrue(thread.isAlive());
+        Assert.assertEquals(selector.select(1, compressible(1000), defaultCompressor, 25, 10).compressor.getMethod(),
+                BlockCompressionMethod.RANS);
+        thread.join();
+        Assert.assertEquals(later[0].compressor.getMethod(), BlockCompressionMethod.RANS);
+    }
+
+    @Test
+    public void testDecodeTimeWeight() {
+        // A heavy enough weight on decoding time rules out everything but storing the data raw
+        final ExternalCompressorSelector selector = new ExternalCompressorSelector(
+                ExternalCompressorSelector.defaultCandidates(), 0, 1000);
+        Assert.assertEquals(selector.select(1, compressible(100000), null, 0, 1).compressor.getMethod(), BlockCompressionMethod.RAW);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoCandidates() {
+        new ExternalCompressorSelector(Collections.<ExternalCompressor>emptyList(), 0, 0);
+    }
+}
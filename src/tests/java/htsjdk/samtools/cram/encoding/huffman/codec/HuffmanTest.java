@@ -1,6 +1,8 @@
 package htsjdk.samtools.cram.encoding.huffman.codec;
 
 import htsjdk.samtools.cram.build.CompressionHeaderFactory;
+import htsjdk.samtools.cram.io.ByteArrayBitInputStream;
+import htsjdk.samtools.cram.io.ByteArrayBitOutputStream;
 import htsjdk.samtools.cram.io.DefaultBitInputStream;
 import htsjdk.samtools.cram.io.DefaultBitOutputStream;
 import htsjdk.samtools.cram.structure.ReadTag;
@@ -10,6 +12,7 @@ import org.testng.annotations.Test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Random;
 
 /**
  * Created by vadim on 22/04/2015.
@@ -101,4 +104,94 @@ public class HuffmanTest {
             }
         }
     }
+
+    @Test
+    public void testHuffmanByteCodecPrimitiveAndBoxedMethodsAgree() throws IOException {
+        CompressionHeaderFactory.HuffmanParamsCalculator cal = new CompressionHeaderFactory.HuffmanParamsCalculator();
+        for (byte i = 33; i < 33 + 15; i++)
+            cal.add((int) i, i - 32);
+        cal.calculate();
+
+        CanonicalHuffmanByteCodec codec = new CanonicalHuffmanByteCodec(cal.valuesAsBytes(), cal.bitLens());
+        byte[] values = cal.valuesAsBytes();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DefaultBitOutputStream bos = new DefaultBitOutputStream(baos);
+        long bits = 0;
+        for (byte b : values) {
+            Assert.assertEquals(codec.numberOfBits(b), codec.numberOfBits(Byte.valueOf(b)));
+            bits += codec.writeByte(bos, b);
+        }
+        for (byte b : values) {
+            bits += codec.write(bos, b);
+        }
+        bos.close();
+        Assert.assertEquals(baos.size(), (bits + 7) / 8);
+
+        DefaultBitInputStream bis = new DefaultBitInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        byte[] read = new byte[values.length];
+        codec.readInto(bis, read, 0, values.length);
+        Assert.assertEquals(new String(read), new String(values));
+        for (byte b : values) {
+            Assert.assertEquals(codec.read(bis).byteValue(), b);
+        }
+    }
+
+    @Test
+    public void testHuffmanByteCodecHighByteValues() throws IOException {
+        CompressionHeaderFactory.HuffmanParamsCalculator cal = new CompressionHeaderFactory.HuffmanParamsCalculator();
+        for (int i = 0x7E; i <= 0xFF; i++)
+            cal.add((int) (byte) i, i);
+        cal.calculate();
+
+        CanonicalHuffmanByteCodec codec = new CanonicalHuffmanByteCodec(cal.valuesAsBytes(), cal.bitLens());
+        byte[] values = cal.valuesAsBytes();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DefaultBitOutputStream bos = new DefaultBitOutputStream(baos);
+        for (byte b : values) {
+            Assert.assertEquals(codec.writeByte(bos, b), codec.numberOfBits(b));
+        }
+        bos.close();
+
+        DefaultBitInputStream bis = new DefaultBitInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        for (byte b : values) {
+            Assert.assertEquals(codec.readByte(bis), b);
+        }
+    }
+
+    @Test
+    public void testTableLookupWithLongCodes() throws IOException {
+        // Exponentially distributed frequencies give codes both shorter and longer than the lookup table width
+        CompressionHeaderFactory.HuffmanParamsCalculator cal = new CompressionHeaderFactory.HuffmanParamsCalculator();
+        for (int i = 0; i < 20; i++)
+            cal.add(i * 7, 1 << (20 - i));
+        cal.calculate();
+        int maxBitLength = 0;
+        for (int bitLength : cal.bitLens())
+            maxBitLength = Math.max(maxBitLength, bitLength);
+        Assert.assertTrue(maxBitLength > HuffmanLookupTable.MAX_LOOKUP_BITS);
+
+        HuffmanIntHelper helper = new HuffmanIntHelper(cal.values(), cal.bitLens());
+        ByteArrayBitOutputStream bos = new ByteArrayBitOutputStream();
+        Random random = new Random(3);
+        int[] written = new int[10000];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = cal.values()[random.nextInt(cal.values().length)];
+            helper.write(bos, written[i]);
+        }
+        bos.close();
+
+        ByteArrayBitInputStream bis = new ByteArrayBitInputStream(bos.toByteArray());
+        for (int i = 0; i < written.length; i++)
+            Assert.assertEquals(helper.read(bis), written[i], "at " + i);
+    }
+
+    @Test
+    public void testTableLookupWithSingleSymbol() throws IOException {
+        HuffmanByteHelper helper = new HuffmanByteHelper(new byte[]{'A'}, new int[]{0});
+        ByteArrayBitInputStream bis = new ByteArrayBitInputStream(new byte[0]);
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(helper.read(bis), (byte) 'A');
+    }
 }
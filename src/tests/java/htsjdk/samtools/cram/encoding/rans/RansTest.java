@@ -170,6 +170,77 @@ public class RansTest {
         Assert.assertEquals(compressed.getInt(), data.length);
     }
 
+    @Test
+    public void testByteArrayCompressMatchesBuffer() {
+        for (int size : new int[]{0, 3, 1000, 100 * 1000, 5 * 1000 * 1000}) {
+            byte[] data = randomBytes_GD(size, 0.01);
+            for (RANS.ORDER order : RANS.ORDER.values()) {
+                ByteBuffer compressed = RANS.compress(ByteBuffer.wrap(data), order, null);
+                byte[] expected = new byte[compressed.remaining()];
+                compressed.get(expected);
+                Assert.assertTrue(Arrays.equals(RANS.compress(data, order), expected));
+            }
+        }
+    }
+
+    @Test
+    public void testUncompressDirectAndOffsetBuffers() {
+        byte[] data = randomBytes_GD(10001, 0.05);
+        for (RANS.ORDER order : RANS.ORDER.values()) {
+            byte[] compressed = RANS.compress(data, order);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(compressed.length);
+            direct.put(compressed);
+            direct.flip();
+            ByteBuffer directOut = ByteBuffer.allocateDirect(data.length);
+            RANS.uncompress(direct, directOut);
+            Assert.assertFalse(direct.hasRemaining());
+            byte[] uncompressed = new byte[data.length];
+            directOut.get(uncompressed);
+            Assert.assertTrue(Arrays.equals(uncompressed, data));
+
+            ByteBuffer padded = ByteBuffer.allocate(compressed.length + 10);
+            padded.position(7);
+            ByteBuffer in = padded.slice();
+            in.put(compressed);
+            in.flip();
+            padded = ByteBuffer.allocate(data.length + 5);
+            padded.position(5);
+            ByteBuffer out = padded.slice();
+            RANS.uncompress(in, out);
+            Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(padded.array(), 5, padded.capacity()), data));
+        }
+    }
+
+    @Test
+    public void testAlternatingBlocksOnOneThread() {
+        // Decoding tables are reused between blocks, so decode blocks with different alphabets in turn
+        byte[][] blocks = new byte[6][];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = randomBytes_GD(5000 + i, i % 2 == 0 ? 0.5 : 0.01);
+            for (int j = 0; j < blocks[i].length; j++)
+                blocks[i][j] += 33 * i;
+        }
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < blocks.length; i++) {
+                RANS.ORDER order = RANS.ORDER.values()[(i + round) % 2];
+                ByteBuffer uncompressed = RANS.uncompress(ByteBuffer.wrap(RANS.compress(blocks[i], order)), null);
+                Assert.assertTrue(Arrays.equals(uncompressed.array(), blocks[i]), "block " + i + ", order " + order);
+            }
+        }
+    }
+
+    @Test
+    public void testOrder1TablesKeptAreCapped() {
+        // Every byte value follows every other, so all 256 contexts occur
+        final byte[] data = new byte[256 * 256 * 2];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i % 2 == 0 ? i / 512 : i / 2);
+        final ByteBuffer uncompressed = RANS.uncompress(ByteBuffer.wrap(RANS.compress(data, RANS.ORDER.ONE)), null);
+        Assert.assertTrue(Arrays.equals(uncompressed.array(), data));
+        Assert.assertEquals(Decoding.getTables().order1Count(), Decoding.MAX_KEPT_ORDER1_TABLES);
+    }
+
     private static void roundTrip(ByteBuffer data) {
         for (RANS.ORDER order : RANS.ORDER.values()) {
             roundTrip(data, order);
@@ -0,0 +1,99 @@
+package htsjdk.samtools.cram.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests ByteArrayBitOutputStream and ByteArrayBitInputStream against the stream based implementations.
+ */
+public class ByteArrayBitStreamTest {
+    private static final int COUNT = 10000;
+
+    /** Writes the same random bits to both streams, and returns the lengths of the writes. */
+    private static int[] writeRandomBits(final long seed, final BitOutputStream a, final BitOutputStream b) throws IOException {
+        final Random random = new Random(seed);
+        final int[] lengths = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            final long value = random.nextLong();
+            switch (random.nextInt(5)) {
+                case 0:
+                    lengths[i] = random.nextInt(65);
+                    a.write(value, lengths[i]);
+                    b.write(value, lengths[i]);
+                    break;
+                case 1:
+                    lengths[i] = random.nextInt(33);
+                    a.write((int) value, lengths[i]);
+                    b.write((int) value, lengths[i]);
+                    break;
+                case 2:
+                    lengths[i] = 1 + random.nextInt(8);
+                    a.write((byte) value, lengths[i]);
+                    b.write((byte) value, lengths[i]);
+                    break;
+                case 3:
+                    lengths[i] = 1;
+                    a.write(value < 0);
+                    b.write(value < 0);
+                    break;
+                default:
+                    lengths[i] = random.nextInt(100);
+                    a.write(value < 0, lengths[i]);
+                    b.write(value < 0, lengths[i]);
+                    break;
+            }
+        }
+        return lengths;
+    }
+
+    @Test
+    public void testSameBitsAsDefaultStreams() throws IOException {
+        final ByteArrayBitOutputStream arrayStream = new ByteArrayBitOutputStream(1);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DefaultBitOutputStream defaultStream = new DefaultBitOutputStream(baos);
+        final int[] lengths = writeRandomBits(7, arrayStream, defaultStream);
+        arrayStream.close();
+        defaultStream.close();
+        final byte[] bytes = arrayStream.toByteArray();
+        Assert.assertTrue(Arrays.equals(bytes, baos.toByteArray()));
+
+        final ByteArrayBitInputStream arrayInput = new ByteArrayBitInputStream(bytes);
+        final DefaultBitInputStream defaultInput = new DefaultBitInputStream(new ByteArrayInputStream(bytes));
+        for (final int length : lengths) {
+            if (length <= 32) {
+                final int expected = defaultInput.readBits(length);
+                Assert.assertEquals(arrayInput.peekBits(length), expected);
+                Assert.assertEquals(arrayInput.readBits(length), expected);
+            } else if (length <= 64) {
+                Assert.assertEquals(arrayInput.readLongBits(length), defaultInput.readLongBits(length));
+            } else {
+                Assert.assertEquals(arrayInput.readLongBits(length - 64), defaultInput.readLongBits(length - 64));
+                Assert.assertEquals(arrayInput.readLongBits(64), defaultInput.readLongBits(64));
+            }
+        }
+    }
+
+    @Test
+    public void testReadBitsAndEnd() throws IOException {
+        final ByteArrayBitInputStream input = new ByteArrayBitInputStream(new byte[]{(byte) 0xA5, (byte) 0xF0});
+        Assert.assertTrue(input.readBit());
+        Assert.assertFalse(input.readBit());
+        Assert.assertEquals(input.readBits(6), 0x25);
+        Assert.assertEquals(input.peekBits(12), 0xF00);
+        Assert.assertEquals(input.readBits(4), 0xF);
+        Assert.assertEquals(input.readBits(4), 0);
+        try {
+            input.readBit();
+            Assert.fail("Expected EOFException");
+        } catch (final EOFException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.StringUtil;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class DiskReferenceCacheTest {
+    private static final String MD5 = "0123456789abcdef0123456789abcdef";
+
+    private File dir;
+
+    @BeforeMethod
+    public void createDir() throws IOException {
+        dir = File.createTempFile("DiskReferenceCacheTest.", ".tmp");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @AfterMethod
+    public void deleteDir() {
+        IOUtil.deleteDirectoryTree(dir);
+    }
+
+    private static void writeFile(final File file, final byte[] bytes) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+    }
+
+    @Test
+    public void testExpand() {
+        Assert.assertEquals(DiskReferenceCache.expand("/c/%2s/%2s/%s", MD5).getPath(),
+                "/c/01/23/456789abcdef0123456789abcdef");
+        Assert.assertEquals(DiskReferenceCache.expand("/c/%s.fa", MD5).getPath(), "/c/" + MD5 + ".fa");
+        Assert.assertEquals(DiskReferenceCache.expand("/c/100%%/%4s/%s", MD5).getPath(),
+                "/c/100%/0123/456789abcdef0123456789abcdef");
+    }
+
+    @Test
+    public void testParseSearchPath() {
+        final String separator = File.pathSeparator;
+        final List<String> patterns = DiskReferenceCache.parseSearchPath(
+                "/a/%s" + separator + "http" + separator + "//www.ebi.ac.uk/ena/cram/md5/%s" + separator + separator + "/b");
+        Assert.assertEquals(patterns, Arrays.asList("/a/%s", "/b"));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final DiskReferenceCache cache = new DiskReferenceCache(dir.getPath() + "/%2s/%s", 0);
+        Assert.assertNull(cache.get(MD5));
+        final byte[] bases = StringUtil.stringToBytes("ACGTNacgt");
+        cache.put(MD5, bases);
+        final File file = new File(dir, "01/23456789abcdef0123456789abcdef");
+        Assert.assertEquals(cache.getCacheFile(MD5), file);
+        Assert.assertTrue(file.isFile());
+        Assert.assertEquals(file.getParentFile().list().length, 1);
+        Assert.assertTrue(Arrays.equals(cache.get(MD5), bases));
+
+        // Not an MD5, so never looked for
+        Assert.assertNull(cache.get("../../etc/passwd"));
+    }
+
+    @Test
+    public void testSearchPath() throws IOException {
+        final File searched = new File(dir, "searched");
+        final byte[] bases = StringUtil.stringToBytes("ACGT");
+        writeFile(new File(searched, MD5), bases);
+        final DiskReferenceCache cache = new DiskReferenceCache(new File(dir, "cache").getPath(),
+                Arrays.asList(searched.getPath()), 0);
+        Assert.assertTrue(Arrays.equals(cache.get(MD5), bases));
+        Assert.assertFalse(cache.getCacheFile(MD5).exists());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        final DiskReferenceCache cache = new DiskReferenceCache(dir.getPath() + "/%2s/%s", 250);
+        final String[] md5s = new String[3];
+        for (int i = 0; i < md5s.length; ++i) {
+            md5s[i] = SequenceUtil.calculateMD5String(new byte[]{(byte) i}, 0, 1);
+            cache.put(md5s[i], new byte[100]);
+            cache.getCacheFile(md5s[i]).setLastModified(1000000000000L + i * 10000L);
+        }
+        // The newest file is kept even though it takes the cache over its limit
+        Assert.assertFalse(cache.getCacheFile(md5s[0]).exists());
+        Assert.assertTrue(cache.getCacheFile(md5s[1]).exists());
+        Assert.assertTrue(cache.getCacheFile(md5s[2]).exists());
+    }
+
+    @Test
+    public void testEvictsOnlyCachedFiles() throws IOException, InterruptedException {
+        final File cached = new File(dir, "cache");
+        final File old = new File(cached, MD5);
+        writeFile(old, new byte[100]);
+        old.setLastModified(1000000000000L);
+        // Files that are not expansions of the pattern for an MD5, and files behind a link, are left alone
+        final File[] others = {new File(cached, "abc"), new File(cached, MD5 + ".fa"), new File(cached, MD5.toUpperCase()),
+                new File(dir, "other/" + MD5)};
+        for (final File other : others) writeFile(other, new byte[100]);
+        final File link = new File(cached, SequenceUtil.calculateMD5String(new byte[]{1}, 0, 1));
+        final boolean linked = Runtime.getRuntime().exec(new String[]{"ln", "-s", others[3].getPath(), link.getPath()}).waitFor() == 0;
+
+        final DiskReferenceCache cache = new DiskReferenceCache(cached.getPath(), 150);
+        final String md5 = SequenceUtil.calculateMD5String(new byte[]{0}, 0, 1);
+        cache.put(md5, new byte[100]);
+        Assert.assertFalse(old.exists());
+        Assert.assertTrue(cache.getCacheFile(md5).exists());
+        for (final File other : others) Assert.assertTrue(other.exists(), other.getPath());
+        if (linked) Assert.assertTrue(link.exists());
+    }
+
+    @Test
+    public void testReferenceSourceUsesDiskCacheBeforeDownloading() throws IOException {
+        final byte[] bases = StringUtil.stringToBytes("ACGTACGTNNacgt");
+        final String md5 = SequenceUtil.calculateMD5String(bases, 0, bases.length);
+        final File remote = new File(dir, "remote");
+        writeFile(new File(remote, md5), bases);
+        final SAMSequenceRecord record = new SAMSequenceRecord("contig", bases.length);
+        record.setAttribute(SAMSequenceRecord.MD5_TAG, md5);
+
+        final DiskReferenceCache diskCache = new DiskReferenceCache(dir.getPath() + "/cache/%2s/%2s/%s", 0);
+        final ReferenceSource source = new ReferenceSource(null, new ReferenceCache(1000));
+        source.setDiskCache(diskCache);
+        Assert.assertNull(source.getReferenceBases(record, false));
+
+        source.setReferenceServiceUrlMask(remote.toURI().toString() + "%s");
+        Assert.assertEquals(StringUtil.bytesToString(source.getReferenceBases(record, false)), "ACGTACGTNNACGT");
+        Assert.assertTrue(Arrays.equals(diskCache.get(md5), bases));
+
+        // A new source finds the sequence on disk without downloading it
+        IOUtil.deleteDirectoryTree(remote);
+        final ReferenceSource another = new ReferenceSource(null, new ReferenceCache(1000));
+        another.setDiskCache(diskCache);
+        another.setReferenceServiceUrlMask(remote.toURI().toString() + "%s");
+        Assert.assertEquals(StringUtil.bytesToString(another.getReferenceBases(record, false)), "ACGTACGTNNACGT");
+
+        final SAMSequenceRecord missing = new SAMSequenceRecord("missing", 10);
+        missing.setAttribute(SAMSequenceRecord.MD5_TAG, MD5);
+        Assert.assertNull(another.getReferenceBases(missing, false));
+    }
+}
@@ -0,0 +1,131 @@
+package htsjdk.samtools.cram.ref;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.StringUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReferenceCacheTest {
+    private static final File REFERENCE = new File("testdata/htsjdk/samtools/reference/Homo_sapiens_assembly18.trimmed.fasta");
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final ReferenceCache cache = new ReferenceCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("c", new byte[40]);
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(cache.getCachedBytes(), 80);
+
+        // Too big for the cache, so kept on its own until the next entry
+        cache.put("d", new byte[101]);
+        Assert.assertNotNull(cache.get("d"));
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNull(cache.get("c"));
+        Assert.assertEquals(cache.getCachedBytes(), 101);
+        cache.put("e", new byte[40]);
+        Assert.assertNull(cache.get("d"));
+        Assert.assertEquals(cache.getCachedBytes(), 40);
+
+        cache.clear();
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneLoad() throws Exception {
+        final ReferenceCache cache = new ReferenceCache(1000);
+        final AtomicInteger loads = new AtomicInteger(0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final byte[] bases = StringUtil.stringToBytes("ACGT");
+        final Callable<byte[]> loader = new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                loads.incrementAndGet();
+                started.countDown();
+                release.await();
+                return bases;
+            }
+        };
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        final byte[][] results = new byte[4][];
+        for (int i = 0; i < results.length; ++i) {
+            final int index = i;
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    results[index] = cache.get("key", loader);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+            if (i == 0) started.await();
+        }
+        // Give the other threads time to find the load in progress
+        Thread.sleep(100);
+        release.countDown();
+        for (final Thread thread : threads) thread.join();
+
+        Assert.assertEquals(loads.get(), 1);
+        for (final byte[] result : results) Assert.assertSame(result, bases);
+    }
+
+    @Test
+    public void testNullIsNotCached() {
+        final ReferenceCache cache = new ReferenceCache(1000);
+        final Callable<byte[]> loader = new Callable<byte[]>() {
+            public byte[] call() {
+                return null;
+            }
+        };
+        Assert.assertNull(cache.get("key", loader));
+        Assert.assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testReferenceSourcesOfOneFileShareEntries() {
+        final ReferenceCache cache = new ReferenceCache(10 * 1000 * 1000);
+        final SAMSequenceRecord record = new SAMSequenceRecord("chrM", 16571);
+        final byte[] bases = new ReferenceSource(ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE), cache)
+                .getReferenceBases(record, false);
+        final ReferenceSource another = new ReferenceSource(ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE), cache);
+        Assert.assertSame(another.getReferenceBases(record, false), bases);
+        Assert.assertEquals(cache.getCachedBytes(), 16571);
+    }
+
+    @Test
+    public void testReferenceSourceRegions() {
+        final ReferenceCache cache = new ReferenceCache(10 * 1000 * 1000);
+        final ReferenceSource source = new ReferenceSource(ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE), cache);
+        final SAMSequenceRecord record = new SAMSequenceRecord("chrM", 16571);
+
+        // Regions are read without caching the whole sequence
+        final byte[] region = source.getReferenceBasesByRegion(record, false, 100, 50);
+        Assert.assertEquals(region.length, 50);
+        Assert.assertEquals(cache.getCachedBytes(), 0);
+
+        final byte[] whole = source.getReferenceBases(record, false);
+        Assert.assertEquals(whole.length, 16571);
+        Assert.assertEquals(cache.getCachedBytes(), 16571);
+        Assert.assertSame(source.getReferenceBases(record, false), whole);
+        Assert.assertEquals(StringUtil.bytesToString(region), StringUtil.bytesToString(whole, 100, 50));
+
+        // Now cut from the cached sequence, truncated at its end
+        Assert.assertEquals(StringUtil.bytesToString(source.getReferenceBasesByRegion(record, false, 100, 50)),
+                StringUtil.bytesToString(region));
+        Assert.assertEquals(source.getReferenceBasesByRegion(record, false, 16560, 50).length, 11);
+
+        Assert.assertNull(source.getReferenceBases(new SAMSequenceRecord("noSuchSequence", 10), false));
+    }
+}
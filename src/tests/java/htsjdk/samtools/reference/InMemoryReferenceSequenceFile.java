@@ -3,6 +3,7 @@ package htsjdk.samtools.reference;
 import htsjdk.samtools.SAMSequenceDictionary;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,13 +11,14 @@ import java.util.Map;
 public class InMemoryReferenceSequenceFile implements
         ReferenceSequenceFile {
     Map<String, ReferenceSequence> map = new HashMap<String, ReferenceSequence>();
-    List<String> index;
+    List<String> index = new ArrayList<String>();
     int current = 0;
 
     public void add(final String name, final byte[] bases) {
         final ReferenceSequence sequence = new ReferenceSequence(name,
                 map.size(), bases);
         map.put(sequence.getName(), sequence);
+        index.add(sequence.getName());
     }
 
     @Override
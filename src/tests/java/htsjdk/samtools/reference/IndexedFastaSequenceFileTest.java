@@ -33,6 +33,13 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Test the indexed fasta sequence file reader.
@@ -299,4 +306,54 @@ public class IndexedFastaSequenceFileTest{
         new IndexedFastaSequenceFile(new File(TEST_DATA_DIR, "non-existent.fasta"));
         Assert.fail("FileNotFoundException should have been thrown");
     }
+
+    @Test
+    public void testFillSubsequence() throws FileNotFoundException {
+        final IndexedFastaSequenceFile sequenceFile = new IndexedFastaSequenceFile(SEQUENCE_FILE);
+        final byte[] buffer = new byte[extendedBasesOfChrM.length() + 2];
+        Assert.assertEquals(sequenceFile.fillSubsequence("chrM", 1, extendedBasesOfChrM.length(), buffer, 2),
+                extendedBasesOfChrM.length());
+        Assert.assertEquals(StringUtil.bytesToString(buffer, 2, extendedBasesOfChrM.length()), extendedBasesOfChrM);
+        Assert.assertEquals(sequenceFile.fillSubsequence("chr20", CHR20_LENGTH - 19, CHR20_LENGTH, buffer, 0), 20);
+        Assert.assertEquals(StringUtil.bytesToString(buffer, 0, 20), lastBasesOfChr20);
+        CloserUtil.close(sequenceFile);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testFillSubsequenceBufferTooSmall() throws FileNotFoundException {
+        new IndexedFastaSequenceFile(SEQUENCE_FILE).fillSubsequence("chrM", 1, 20, new byte[19], 0);
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final IndexedFastaSequenceFile sequenceFile = new IndexedFastaSequenceFile(SEQUENCE_FILE);
+        final FastaSequenceFile originalSequenceFile = new FastaSequenceFile(SEQUENCE_FILE, true);
+        originalSequenceFile.nextSequence();
+        final ReferenceSequence chr20 = originalSequenceFile.nextSequence();
+        originalSequenceFile.close();
+        final String expected = StringUtil.bytesToString(chr20.getBases());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int t = 0; t < 4; ++t) {
+            final int seed = t;
+            results.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    final Random random = new Random(seed);
+                    for (int i = 0; i < 2000; ++i) {
+                        // Mostly short lookups, served from the window cache, and some longer ones
+                        final int length = i % 10 == 0 ? random.nextInt(3 * IndexedFastaSequenceFile.WINDOW_SIZE) : random.nextInt(300);
+                        final int start = 1 + random.nextInt(CHR20_LENGTH - length);
+                        final String bases = StringUtil.bytesToString(
+                                sequenceFile.getSubsequenceAt("chr20", start, start + length - 1).getBases());
+                        if (!bases.equals(expected.substring(start - 1, start - 1 + length))) return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (final Future<Boolean> result : results) Assert.assertTrue(result.get());
+        executor.shutdown();
+        CloserUtil.close(sequenceFile);
+    }
 }
@@ -0,0 +1,136 @@
+package htsjdk.samtools.reference;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.StringUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+public class PackedReferenceSequenceFileTest {
+    private static final File REFERENCE = new File("testdata/htsjdk/samtools/reference/Homo_sapiens_assembly18.trimmed.fasta");
+
+    private static InMemoryReferenceSequenceFile makeReference() {
+        final InMemoryReferenceSequenceFile reference = new InMemoryReferenceSequenceFile();
+        reference.add("plain", StringUtil.stringToBytes("ACGTACGTACGTACGTACGTACGTACGTACGTACGTA"));
+        reference.add("mixed", StringUtil.stringToBytes("NNNNacgtRYmkACGTnnnnNNacgtACGT*ACGTTTTTn"));
+        reference.add("empty", new byte[0]);
+        final byte[] random = new byte[1000];
+        final Random rng = new Random(5);
+        final byte[] alphabet = StringUtil.stringToBytes("ACGTACGTACGTacgtNnRWs");
+        for (int i = 0; i < random.length; ++i) random[i] = alphabet[rng.nextInt(alphabet.length)];
+        reference.add("random", random);
+        return reference;
+    }
+
+    private static void assertSameBases(final ReferenceSequenceFile actual, final ReferenceSequenceFile expected) {
+        expected.reset();
+        int count = 0;
+        ReferenceSequence expectedSequence;
+        while ((expectedSequence = expected.nextSequence()) != null) {
+            ++count;
+            final ReferenceSequence actualSequence = actual.getSequence(expectedSequence.getName());
+            Assert.assertEquals(actualSequence.getContigIndex(), expectedSequence.getContigIndex());
+            Assert.assertEquals(StringUtil.bytesToString(actualSequence.getBases()),
+                    StringUtil.bytesToString(expectedSequence.getBases()), expectedSequence.getName());
+        }
+        Assert.assertEquals(actual.getSequenceDictionary().size(), count);
+    }
+
+    @Test
+    public void testPackedBasesMatch() {
+        final InMemoryReferenceSequenceFile reference = makeReference();
+        final PackedReferenceSequenceFile packed = PackedReferenceSequenceFile.pack(reference);
+        assertSameBases(packed, reference);
+
+        packed.reset();
+        Assert.assertEquals(packed.nextSequence().getName(), "plain");
+        Assert.assertEquals(packed.nextSequence().getName(), "mixed");
+    }
+
+    @Test
+    public void testSubsequences() {
+        final InMemoryReferenceSequenceFile reference = makeReference();
+        final PackedReferenceSequenceFile packed = PackedReferenceSequenceFile.pack(reference);
+        final String random = StringUtil.bytesToString(reference.getSequence("random").getBases());
+        for (int start = 1; start <= 1000; start += 37) {
+            for (final int length : new int[]{1, 31, 32, 33, 100}) {
+                final int stop = Math.min(1000, start + length - 1);
+                Assert.assertEquals(StringUtil.bytesToString(packed.getSubsequenceAt("random", start, stop).getBases()),
+                        random.substring(start - 1, stop));
+            }
+        }
+
+        final byte[] dest = new byte[12];
+        packed.fillSubsequence("mixed", 3, 12, dest, 1);
+        Assert.assertEquals(StringUtil.bytesToString(dest, 1, 10), "NNacgtRYmk");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testFillTooSmall() {
+        PackedReferenceSequenceFile.pack(makeReference()).fillSubsequence("plain", 1, 10, new byte[9], 0);
+    }
+
+    @Test
+    public void testWriteAndLoad() throws IOException {
+        final InMemoryReferenceSequenceFile reference = makeReference();
+        final File file = File.createTempFile("PackedReferenceSequenceFileTest.", PackedReferenceSequenceFile.PACKED_EXTENSION);
+        file.deleteOnExit();
+        PackedReferenceSequenceFile.pack(reference).write(file);
+
+        final ReferenceSequenceFile loaded = ReferenceSequenceFileFactory.getReferenceSequenceFile(file);
+        Assert.assertTrue(loaded instanceof PackedReferenceSequenceFile);
+        assertSameBases(loaded, reference);
+        final SAMSequenceRecord random = loaded.getSequenceDictionary().getSequence("random");
+        Assert.assertEquals(random.getSequenceLength(), 1000);
+    }
+
+    @Test
+    public void testLoadChecksLength() throws IOException {
+        final File dir = File.createTempFile("PackedReferenceSequenceFileTest.", ".tmp");
+        dir.delete();
+        dir.mkdir();
+        final File file = new File(dir, "reference" + PackedReferenceSequenceFile.PACKED_EXTENSION);
+        try {
+            PackedReferenceSequenceFile.pack(makeReference()).write(file);
+            // Only the packed file itself is left behind
+            Assert.assertEquals(dir.list(), new String[]{file.getName()});
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.setLength(randomAccessFile.length() - 8);
+            randomAccessFile.close();
+            try {
+                PackedReferenceSequenceFile.load(file);
+                Assert.fail("Loaded a truncated packed reference");
+            } catch (final SAMException e) {
+                // expected
+            }
+        } finally {
+            IOUtil.deleteDirectoryTree(dir);
+        }
+    }
+
+    @Test
+    public void testLoadOrCreate() throws IOException {
+        final File dir = File.createTempFile("PackedReferenceSequenceFileTest.", ".tmp");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        final File fasta = new File(dir, "reference.fasta");
+        fasta.deleteOnExit();
+        final File packedFile = new File(dir, "reference.fasta" + PackedReferenceSequenceFile.PACKED_EXTENSION);
+        packedFile.deleteOnExit();
+        IOUtil.copyFile(REFERENCE, fasta);
+
+        final ReferenceSequenceFile expected = ReferenceSequenceFileFactory.getReferenceSequenceFile(REFERENCE);
+        assertSameBases(PackedReferenceSequenceFile.loadOrCreate(fasta), expected);
+        Assert.assertTrue(packedFile.exists());
+        final long written = packedFile.lastModified();
+        assertSameBases(PackedReferenceSequenceFile.loadOrCreate(fasta), expected);
+        Assert.assertEquals(packedFile.lastModified(), written);
+    }
+}
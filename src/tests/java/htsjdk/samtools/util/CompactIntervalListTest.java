@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests CompactIntervalList by checking its set operations against those of IntervalList.
+ */
+public class CompactIntervalListTest {
+    private final SAMFileHeader fileHeader;
+
+    public CompactIntervalListTest() {
+        fileHeader = IntervalList.fromFile(new File("testdata/htsjdk/samtools/intervallist/IntervalListchr123_empty.interval_list")).getHeader();
+        fileHeader.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+    }
+
+    private IntervalList randomIntervalList(final Random random, final int count) {
+        final IntervalList list = new IntervalList(fileHeader.clone());
+        for (int i = 0; i < count; ++i) {
+            final int sequenceIndex = random.nextInt(fileHeader.getSequenceDictionary().size());
+            final String contig = fileHeader.getSequence(sequenceIndex).getSequenceName();
+            final int start = 1 + random.nextInt(Math.min(2000, fileHeader.getSequence(sequenceIndex).getSequenceLength() - 100));
+            list.add(new Interval(contig, start, start + random.nextInt(100)));
+        }
+        return list;
+    }
+
+    /** Strips strands and names so that results can be compared with those of CompactIntervalList. */
+    private static List<Interval> anonymous(final IntervalList list) {
+        final List<Interval> intervals = new ArrayList<Interval>();
+        for (final Interval i : list) intervals.add(new Interval(i.getContig(), i.getStart(), i.getEnd()));
+        return intervals;
+    }
+
+    @DataProvider(name = "randomLists")
+    public Object[][] randomLists() {
+        final Random random = new Random(42);
+        final List<Object[]> data = new ArrayList<Object[]>();
+        for (final int count : new int[]{0, 1, 10, 100, 1000}) {
+            data.add(new Object[]{randomIntervalList(random, count), randomIntervalList(random, count / 2 + 1)});
+        }
+        return data.toArray(new Object[data.size()][]);
+    }
+
+    @Test(dataProvider = "randomLists")
+    public void testUniqued(final IntervalList list1, final IntervalList list2) {
+        final CompactIntervalList compact = CompactIntervalList.fromIntervalList(list1);
+        Assert.assertEquals(compact.uniqued().toIntervalList().getIntervals(), anonymous(list1.uniqued()));
+        Assert.assertEquals(compact.getUniqueBaseCount(), list1.getUniqueBaseCount());
+        Assert.assertEquals(compact.getBaseCount(), list1.getBaseCount());
+    }
+
+    @Test(dataProvider = "randomLists")
+    public void testUnion(final IntervalList list1, final IntervalList list2) {
+        final CompactIntervalList union = CompactIntervalList.union(CompactIntervalList.fromIntervalList(list1), CompactIntervalList.fromIntervalList(list2));
+        Assert.assertEquals(union.toIntervalList().getIntervals(), anonymous(IntervalList.union(list1, list2)));
+    }
+
+    @Test(dataProvider = "randomLists")
+    public void testIntersection(final IntervalList list1, final IntervalList list2) {
+        final CompactIntervalList intersection = CompactIntervalList.intersection(CompactIntervalList.fromIntervalList(list1), CompactIntervalList.fromIntervalList(list2));
+        Assert.assertEquals(intersection.toIntervalList().getIntervals(), anonymous(IntervalList.intersection(list1, list2)));
+    }
+
+    @Test(dataProvider = "randomLists")
+    public void testSubtract(final IntervalList list1, final IntervalList list2) {
+        final CompactIntervalList difference = CompactIntervalList.subtract(CompactIntervalList.fromIntervalList(list1), CompactIntervalList.fromIntervalList(list2));
+        Assert.assertEquals(difference.toIntervalList().getIntervals(), anonymous(IntervalList.subtract(list1, list2)));
+    }
+
+    @Test(dataProvider = "randomLists")
+    public void testInvert(final IntervalList list1, final IntervalList list2) {
+        final CompactIntervalList inverse = CompactIntervalList.invert(CompactIntervalList.fromIntervalList(list1));
+        Assert.assertEquals(inverse.toIntervalList().getIntervals(), anonymous(IntervalList.invert(list1)));
+    }
+
+    @Test
+    public void testSortedAndRoundTrip() throws Exception {
+        final CompactIntervalList list = new CompactIntervalList(fileHeader.clone());
+        list.add(1, 200, 300);
+        list.add(0, 50, 60);
+        list.add(1, 100, 150);
+        list.add(0, 10, 20);
+        Assert.assertFalse(list.isSorted());
+
+        final CompactIntervalList sorted = list.sorted();
+        Assert.assertTrue(sorted.isSorted());
+        Assert.assertEquals(sorted.size(), 4);
+        Assert.assertEquals(sorted.getStart(0), 10);
+        Assert.assertEquals(sorted.getStart(1), 50);
+        Assert.assertEquals(sorted.getStart(2), 100);
+        Assert.assertEquals(sorted.getEnd(3), 300);
+
+        final File file = File.createTempFile("CompactIntervalListTest.", IntervalList.INTERVAL_LIST_FILE_EXTENSION);
+        file.deleteOnExit();
+        sorted.write(file);
+        Assert.assertEquals(CompactIntervalList.fromFile(file), sorted);
+        Assert.assertEquals(IntervalList.fromFile(file).getIntervals(), sorted.toIntervalList().getIntervals());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2015 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package htsjdk.samtools.util;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Random;
+
+public class RunLengthReferenceSequenceMaskTest {
+    private static final int MAX_POSITION = 3000;
+
+    private IntervalList makeIntervalList() {
+        final SAMFileHeader header = IntervalList.fromFile(new File("testdata/htsjdk/samtools/intervallist/IntervalListchr123_empty.interval_list")).getHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+        final IntervalList list = new IntervalList(header);
+        final Random random = new Random(7);
+        // Skip the last sequence so that getMaxSequenceIndex() is exercised
+        for (int i = 0; i < 200; ++i) {
+            final int sequenceIndex = random.nextInt(header.getSequenceDictionary().size() - 1);
+            final int start = 1 + random.nextInt(MAX_POSITION - 100);
+            list.add(new Interval(header.getSequence(sequenceIndex).getSequenceName(), start, start + random.nextInt(random.nextBoolean() ? 1 : 50)));
+        }
+        return list;
+    }
+
+    private void assertMasksEqual(final ReferenceSequenceMask actual, final ReferenceSequenceMask expected, final int numSequences) {
+        Assert.assertEquals(actual.getMaxSequenceIndex(), expected.getMaxSequenceIndex());
+        Assert.assertEquals(actual.getMaxPosition(), expected.getMaxPosition());
+        for (int sequenceIndex = 0; sequenceIndex < numSequences; ++sequenceIndex) {
+            for (int position = 1; position <= MAX_POSITION; ++position) {
+                Assert.assertEquals(actual.get(sequenceIndex, position), expected.get(sequenceIndex, position),
+                        "get(" + sequenceIndex + ", " + position + ")");
+                Assert.assertEquals(actual.nextPosition(sequenceIndex, position), expected.nextPosition(sequenceIndex, position),
+                        "nextPosition(" + sequenceIndex + ", " + position + ")");
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesIntervalListMask() {
+        final IntervalList list = makeIntervalList();
+        final int numSequences = list.getHeader().getSequenceDictionary().size();
+        assertMasksEqual(RunLengthReferenceSequenceMask.fromIntervalList(list), new IntervalListReferenceSequenceMask(list), numSequences);
+    }
+
+    @Test
+    public void testMemoryMappedRoundTrip() throws Exception {
+        final IntervalList list = makeIntervalList();
+        final int numSequences = list.getHeader().getSequenceDictionary().size();
+        final RunLengthReferenceSequenceMask mask = RunLengthReferenceSequenceMask.fromIntervalList(list);
+
+        final File file = File.createTempFile("RunLengthReferenceSequenceMaskTest.", ".mask");
+        file.deleteOnExit();
+        mask.write(file);
+        assertMasksEqual(RunLengthReferenceSequenceMask.fromFile(file), new IntervalListReferenceSequenceMask(list), numSequences);
+    }
+
+    @Test
+    public void testRandomAccessAndBuilder() {
+        final RunLengthReferenceSequenceMask mask = new RunLengthReferenceSequenceMask.Builder(3)
+                .add(0, 10, 20).add(0, 21, 30).add(0, 25, 26).add(2, 5, 5).build();
+        Assert.assertEquals(mask.getSetPositionCount(0), 21);
+        Assert.assertEquals(mask.getSetPositionCount(1), 0);
+        Assert.assertTrue(mask.get(0, 30));
+        Assert.assertTrue(mask.get(0, 10));
+        Assert.assertFalse(mask.get(0, 9));
+        Assert.assertEquals(mask.nextPosition(0, 1), 10);
+        Assert.assertEquals(mask.nextPosition(0, 30), -1);
+        Assert.assertEquals(mask.nextPosition(1, 1), -1);
+        Assert.assertTrue(mask.get(2, 5));
+        Assert.assertFalse(mask.get(5, 5));
+        Assert.assertEquals(mask.getMaxSequenceIndex(), 2);
+        Assert.assertEquals(mask.getMaxPosition(), 5);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutOfOrderBuilder() {
+        new RunLengthReferenceSequenceMask.Builder(3).add(1, 10, 20).add(0, 1, 5);
+    }
+}
@@ -37,6 +37,7 @@ import org.testng.annotations.Test;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -177,4 +178,73 @@ public class SequenceUtilTest {
         final Set<String> expectedSet = new HashSet<String>(Arrays.asList(expectedKmers));
         Assert.assertTrue(actualSet.equals(expectedSet));
     }
+
+    @Test
+    public void testMismatchKernelsMatchBasesEqual() {
+        final byte[] alphabet = StringUtil.stringToBytes("ACGTNacgtn.=[{");
+        final Random random = new Random(5);
+        for (int trial = 0; trial < 2000; ++trial) {
+            final int length = random.nextInt(40);
+            final byte[] bases1 = new byte[length + 3];
+            final byte[] bases2 = new byte[length + 5];
+            final byte[] quals = new byte[bases1.length];
+            for (int i = 0; i < bases1.length; ++i) {
+                bases1[i] = alphabet[random.nextInt(alphabet.length)];
+                quals[i] = (byte) random.nextInt(60);
+            }
+            for (int i = 0; i < bases2.length; ++i) {
+                // Mostly identical, with occasional differences and bytes outside ASCII
+                bases2[i] = i >= 2 && i - 2 < bases1.length && random.nextInt(4) != 0 ? bases1[i - 2] :
+                        random.nextInt(10) == 0 ? (byte) (128 + random.nextInt(128)) : alphabet[random.nextInt(alphabet.length)];
+            }
+            final int offset1 = random.nextInt(4);
+            final int offset2 = 2 + random.nextInt(3);
+            final int n = Math.min(length, Math.min(bases1.length - offset1, bases2.length - offset2));
+
+            int expectedMismatches = 0;
+            int expectedQualities = 0;
+            for (int i = 0; i < n; ++i) {
+                if (!SequenceUtil.basesEqual(bases1[offset1 + i], bases2[offset2 + i])) {
+                    ++expectedMismatches;
+                    expectedQualities += quals[offset1 + i];
+                }
+            }
+            Assert.assertEquals(SequenceUtil.countMismatches(bases1, offset1, bases2, offset2, n), expectedMismatches);
+            Assert.assertEquals(SequenceUtil.sumQualitiesOfMismatches(bases1, quals, offset1, bases2, offset2, n), expectedQualities);
+        }
+    }
+
+    @DataProvider(name = "mdAndNmTags")
+    public Object[][] mdAndNmTags() {
+        final String ref = "AAAAACCCCCGGGGGTTTTTACGTACGTACGTACGT";
+        return new Object[][]{
+                {ref, 1, ref.substring(0, 30), "30M", "30", 0},
+                {ref, 1, ref.substring(0, 17) + "A" + ref.substring(18, 30), "30M", "17T12", 1},
+                {ref, 3, "GG" + ref.substring(2, 14) + "TT" + ref.substring(14, 26), "2S12M2I12M", "24", 2},
+                {ref, 1, ref.substring(0, 10) + ref.substring(12, 30), "10M2D18M", "10^GG18", 2},
+                // The reference ends before the alignment does
+                {ref, 30, ref.substring(29) + "AAA", "10M", "7", 0},
+        };
+    }
+
+    @Test(dataProvider = "mdAndNmTags")
+    public void testCalculateMdAndNmTags(final String ref, final int start, final String seq, final String cigar,
+                                         final String expectedMd, final int expectedNm) {
+        final SAMRecord rec = new SAMRecord(null);
+        rec.setReadName("test");
+        rec.setReadString(seq);
+        rec.setCigarString(cigar);
+        rec.setAlignmentStart(start);
+        SequenceUtil.calculateMdAndNmTags(rec, StringUtil.stringToBytes(ref), true, true);
+        Assert.assertEquals(rec.getAttribute(SAMTag.MD.name()), expectedMd);
+        Assert.assertEquals(rec.getAttribute(SAMTag.NM.name()), expectedNm);
+    }
+
+    @Test
+    public void testReverseComplement() {
+        Assert.assertEquals(SequenceUtil.reverseComplement("ACGTNacgtn.XY"), "YX.nacgtNACGT");
+        final byte[] bases = StringUtil.stringToBytes("xxAACGy");
+        SequenceUtil.reverseComplement(bases, 2, 4);
+        Assert.assertEquals(StringUtil.bytesToString(bases), "xxCGTTy");
+    }
 }
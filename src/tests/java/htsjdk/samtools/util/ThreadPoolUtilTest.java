@@ -0,0 +1,28 @@
+package htsjdk.samtools.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+
+public class ThreadPoolUtilTest {
+
+    @Test
+    public void testDaemonFixedThreadPool() throws Exception {
+        final ThreadPoolExecutor executor = ThreadPoolUtil.newDaemonFixedThreadPool("ThreadPoolUtilTest", 2);
+        try {
+            Assert.assertEquals(executor.getMaximumPoolSize(), 2);
+            Assert.assertTrue(executor.allowsCoreThreadTimeOut());
+            final Thread thread = executor.submit(new Callable<Thread>() {
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            Assert.assertTrue(thread.isDaemon());
+            Assert.assertTrue(thread.getName().startsWith("ThreadPoolUtilTest"), thread.getName());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}